@@ -0,0 +1,88 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the data the benchmarks work on. The benchmarks are run with the working directory set to build/jmh by the
+ * jmh task, so the data directory they create does not touch the one used by the program.
+ */
+class BenchmarkData {
+    static final String PLAYLIST_NAME = "Benchmark playlist 0";
+    static final String CATEGORY_NAME = "Gaming";
+
+    /**
+     * Initializes ConfigManager in the working directory, with a category and playlists so no benchmark needs to ask
+     * Youtube for them
+     * @param playlistCount the number of playlists to save in the playlist cache
+     */
+    static void prepareDataDir(int playlistCount) {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        configManager.configManager();
+        configManager.saveLocalizedCategories("20:" + CATEGORY_NAME);
+        configManager.savePlaylistCache(playlistCache(playlistCount));
+    }
+
+    /**
+     * @param count the number of playlists
+     * @return a playlist cache in the same format as PlaylistUtils saves
+     */
+    static String playlistCache(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append("\n");
+            }
+            builder.append(i % 5 != 0).append(":PLbenchmark").append(i).append("xYz:Benchmark playlist ").append(i);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return a preset that uses all tags the TagProcessors handles
+     */
+    static UploadDetails preset() {
+        return new UploadDetails.Builder()
+                .setVideoName("$(rawname) - episode $(ep)")
+                .setVideoDescription("A episode of the series, the rest is in $(playlist)\n\n" +
+                        "Recorded with a lot of fps and a good microphone.\nLinks:\nhttps://example.com/a\n" +
+                        "https://example.com/b")
+                .setVisibility(VisibilityStatus.UNLISTED)
+                .setVideoTags(Arrays.asList("series", "lets play", "episode", "benchmark", "game"))
+                .setSelectedPlaylist(PLAYLIST_NAME)
+                .setCategory(CATEGORY_NAME)
+                .setTellSubs(true)
+                .build();
+    }
+
+    /**
+     * @param count the number of files
+     * @return video files with names like the ones from a recording program, the files does not exist
+     */
+    static List<File> videoFiles(int count) {
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new File("recordings", String.format("2018-06-%02d %02d-%02d-%02d.mp4",
+                    i % 28 + 1, i % 24, i % 60, (i * 7) % 60)));
+        }
+        return files;
+    }
+
+    /**
+     * @param size the number of characters
+     * @return text with lines of about 80 characters
+     */
+    static String text(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append(builder.length() % 81 == 80 ? '\n' : (char) ('a' + builder.length() % 26));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigManager.configManager() as called at start up, it reads the settings and all saved presets
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigManagerBenchmark {
+
+    @Param({"10", "200"})
+    public int presetCount;
+
+    @Setup
+    public void setup() {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        configManager.configManager();
+        for (String presetName : configManager.getPresetNames()) {
+            configManager.deletePreset(presetName);
+        }
+        UploadDetails preset = BenchmarkData.preset();
+        for (int i = 0; i < presetCount; i++) {
+            configManager.savePreset("Benchmark preset " + i,
+                    preset.toBuilder().setVideoName("Preset " + i + " $(ep)").build().toString());
+        }
+    }
+
+    @Benchmark
+    public ConfigManager loadPresets() {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        configManager.configManager();
+        return configManager;
+    }
+}
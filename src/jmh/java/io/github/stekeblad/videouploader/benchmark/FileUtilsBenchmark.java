@@ -0,0 +1,50 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileUtils.readAll() and writeAll() that all settings, presets and caches are read and written with
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileUtilsBenchmark {
+    private static final String READ_FILE = "benchmark read";
+    private static final String WRITE_FILE = "benchmark write";
+
+    // A preset is about 1 KiB, a large upload index or metrics file is a few MiB
+    @Param({"1024", "1048576"})
+    public int size;
+
+    private String data;
+
+    @Setup
+    public void setup() throws IOException {
+        data = BenchmarkData.text(size);
+        FileUtils.writeAll(READ_FILE, data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(READ_FILE).delete();
+        new File(WRITE_FILE).delete();
+    }
+
+    @Benchmark
+    public String readAll() throws IOException {
+        return FileUtils.readAll(READ_FILE);
+    }
+
+    @Benchmark
+    public void writeAll() throws IOException {
+        FileUtils.writeAll(WRITE_FILE, data);
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PlaylistUtils.loadCache() as called at start up and by the headless mode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlaylistCacheBenchmark {
+
+    @Param({"25", "1000"})
+    public int playlistCount;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.prepareDataDir(playlistCount);
+    }
+
+    @Benchmark
+    public PlaylistUtils loadCache() {
+        PlaylistUtils playlistUtils = PlaylistUtils.INSTANCE;
+        playlistUtils.loadCache();
+        return playlistUtils;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.tagProcessing.TagProcessorChain;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying a preset with all tags to 10 000 video files, like the apply preset button and the watch folders does.
+ * The score is the time per file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagProcessorChainBenchmark {
+    private static final int FILE_COUNT = 10000;
+
+    private UploadDetails preset;
+    private List<File> videoFiles;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.prepareDataDir(25);
+        PlaylistUtils.INSTANCE.loadCache(); // the $(playlist) tag needs the playlists
+        preset = BenchmarkData.preset();
+        videoFiles = BenchmarkData.videoFiles(FILE_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_COUNT)
+    public void applyPreset(Blackhole blackhole) {
+        TagProcessorChain chain = new TagProcessorChain(preset, 1);
+        for (File videoFile : videoFiles) {
+            blackhole.consume(chain.apply(videoFile));
+        }
+    }
+}
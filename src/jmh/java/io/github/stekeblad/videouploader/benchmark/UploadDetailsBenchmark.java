@@ -0,0 +1,40 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and creating the string format waiting uploads and presets are saved in, without the UI parts of
+ * VideoUpload. This is what the headless mode and the upload engine uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadDetailsBenchmark {
+    private UploadDetails details;
+    private String saved;
+
+    @Setup
+    public void setup() {
+        details = BenchmarkData.preset().toBuilder()
+                .setVideoFile(new File("recordings/2018-06-01 20-00-00.mp4"))
+                .build();
+        saved = details.toString();
+    }
+
+    @Benchmark
+    public UploadDetails fromString() throws Exception {
+        return UploadDetails.fromString(saved);
+    }
+
+    @Benchmark
+    public String toStringSerialization() {
+        return details.toString();
+    }
+}
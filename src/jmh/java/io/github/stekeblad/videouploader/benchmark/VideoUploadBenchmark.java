@@ -0,0 +1,53 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.VideoUpload;
+import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import javafx.embed.swing.JFXPanel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoUpload(String, String) as used when the waiting uploads are loaded at start up, and toString() as used when they
+ * are saved at exit. The constructor creates the UI of the upload, so the JavaFX toolkit is started and a display is
+ * needed to run this benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoUploadBenchmark {
+    private VideoUpload videoUpload;
+    private String saved;
+
+    @Setup
+    public void setup() throws Exception {
+        new JFXPanel(); // starts the JavaFX toolkit
+        BenchmarkData.prepareDataDir(25);
+        TranslationsManager.loadAllTranslations(Locale.ENGLISH);
+        PlaylistUtils.INSTANCE.loadCache();
+        CategoryUtils.INSTANCE.loadCategories();
+        String details = BenchmarkData.preset().toBuilder()
+                .setVideoFile(new File("recordings/2018-06-01 20-00-00.mp4"))
+                .build()
+                .toString();
+        videoUpload = new VideoUpload(details, "benchmark");
+        saved = videoUpload.toString();
+    }
+
+    @Benchmark
+    public VideoUpload parse() throws Exception {
+        return new VideoUpload(saved, "benchmark");
+    }
+
+    @Benchmark
+    public String toStringSerialization() {
+        return videoUpload.toString();
+    }
+}
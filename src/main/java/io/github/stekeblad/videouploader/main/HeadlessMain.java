@@ -0,0 +1,332 @@
+package io.github.stekeblad.videouploader.main;
+
+import io.github.stekeblad.videouploader.tagProcessing.TagProcessorChain;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.background.WatchFolderIngester;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.FrameExtractor;
+import io.github.stekeblad.videouploader.youtube.PreflightValidator;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import io.github.stekeblad.videouploader.youtube.UploadListener;
+import io.github.stekeblad.videouploader.youtube.UploadProgressBus;
+import io.github.stekeblad.videouploader.youtube.Uploader;
+import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads videos without the UI, for running on a server or from a script. A preset saved in the UI is applied to the
+ * given video files the same way as the apply preset button does and the videos are uploaded with the same Uploader as
+ * the UI uses. Progress and throughput is written to stdout. The user must have given the program permission to the
+ * channel from the UI once before, no display is needed after that.
+ *
+ * Usage: --preset name [--lanes N] [--auto-num N] [--log-interval seconds] files or directories...
+ *    or: --watch [--lanes N] [--log-interval seconds] [--preset name files or directories...]
+ * Directories are not searched recursively, the files in them are uploaded in name order.
+ * The exit code is 0 if all videos was uploaded, 1 if at least one failed and 2 if the arguments are invalid.
+ * With --watch the program does not exit, it keeps uploading new videos in the watch folders (see
+ * WatchFolderIngester) with the preset of their folder until it is stopped.
+ */
+public class HeadlessMain {
+    private static final String UPLOAD_NAME_PREFIX = "headless_";
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private String presetName = null;
+    private int lanes = -1;
+    private int autoNum = 1;
+    private int logInterval = 10;
+    private boolean watch = false;
+    private final List<File> videoFiles = new ArrayList<>();
+
+    private Uploader uploader;
+    private final Map<String, File> uploads = new ConcurrentHashMap<>();
+    private final Set<String> activeUploads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger failedCount = new AtomicInteger(0);
+    private final AtomicInteger uploadCounter = new AtomicInteger(0);
+    private final AtomicInteger remaining = new AtomicInteger(0);
+    private final Semaphore done = new Semaphore(0);
+    private WatchFolderIngester watchFolderIngester = null;
+
+    public static void main(String[] args) {
+        HeadlessMain headless = new HeadlessMain();
+        if (!headless.readArguments(args)) {
+            printUsage();
+            System.exit(2);
+        }
+        System.exit(headless.run());
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: HeadlessMain --preset name [--lanes N] [--auto-num N] [--log-interval seconds] " +
+                "files or directories...");
+        System.err.println("   or: HeadlessMain --watch [--lanes N] [--log-interval seconds] " +
+                "[--preset name files or directories...]");
+    }
+
+    /**
+     * Reads the command line arguments
+     * @return true if the arguments are valid
+     */
+    private boolean readArguments(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--preset":
+                        presetName = args[++i];
+                        break;
+                    case "--lanes":
+                        lanes = Integer.parseInt(args[++i]);
+                        break;
+                    case "--auto-num":
+                        autoNum = Integer.parseInt(args[++i]);
+                        break;
+                    case "--log-interval":
+                        logInterval = Integer.parseInt(args[++i]);
+                        break;
+                    case "--watch":
+                        watch = true;
+                        break;
+                    default:
+                        addVideoFiles(new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            return false;
+        }
+        if (presetName == null && !videoFiles.isEmpty()) {
+            System.err.println("No preset selected");
+            return false;
+        }
+        if (videoFiles.isEmpty() && !watch) {
+            System.err.println("No video files to upload");
+            return false;
+        }
+        if (lanes == 0 || lanes < -1 || logInterval < 1) {
+            System.err.println("--lanes and --log-interval must be at least 1");
+            return false;
+        }
+        return true;
+    }
+
+    private void addVideoFiles(File file) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles(File::isFile);
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparing(File::getName));
+                videoFiles.addAll(Arrays.asList(files));
+            }
+        } else if (file.isFile()) {
+            videoFiles.add(file);
+        } else {
+            System.err.println("Skipping \"" + file.getPath() + "\", it is not a file or a directory");
+        }
+    }
+
+    /**
+     * Loads the settings and the preset, uploads all videos and waits for them to finish
+     * @return the exit code
+     */
+    private int run() {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        UploadDetails preset = null;
+        try {
+            configManager.configManager();
+            String localeString = configManager.getSelectedLanguage();
+            TranslationsManager.loadAllTranslations(localeString != null && !localeString.isEmpty() ?
+                    new Locale(localeString) : Locale.getDefault());
+            PlaylistUtils.INSTANCE.loadCache();
+            CategoryUtils.INSTANCE.loadCategories();
+
+            if (presetName != null) {
+                String presetString = configManager.getPresetString(presetName);
+                if (presetString == null) {
+                    System.err.println("Could not find the preset \"" + presetName + "\"");
+                    return 2;
+                }
+                preset = UploadDetails.fromString(presetString);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to load the settings or the preset \"" + presetName + "\"");
+            e.printStackTrace();
+            return 2;
+        }
+
+        // No UI thread, the listener is called directly on the upload threads
+        uploader = new Uploader(Runnable::run);
+        if (lanes > 0) {
+            uploader.setLaneCount(lanes);
+        }
+        uploader.setUploadListener(new Listener());
+        // If the program is stopped the uploads can be resumed next time, like when the UI is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (watchFolderIngester != null) {
+                watchFolderIngester.stop();
+            }
+            if (remaining.get() > 0) {
+                log("Stopping, " + remaining.get() + " uploads was not finished");
+                uploader.kill();
+            }
+        }));
+
+        if (preset != null) {
+            TagProcessorChain tagProcessorChain = new TagProcessorChain(preset, autoNum);
+            List<UploadDetails> batch = new ArrayList<>();
+            for (File videoFile : videoFiles) {
+                batch.add(tagProcessorChain.apply(videoFile));
+            }
+            queueAll(batch);
+        }
+        if (watch) {
+            watchFolderIngester = new WatchFolderIngester(this::queueAll);
+            try {
+                int folderCount = watchFolderIngester.start();
+                if (folderCount == 0) {
+                    System.err.println("There are no watch folders that can be watched");
+                    return 2;
+                }
+                log("Watching " + folderCount + " folders for new videos");
+            } catch (IOException e) {
+                System.err.println("Could not start watching the watch folders");
+                e.printStackTrace();
+                return 2;
+            }
+        }
+
+        ScheduledExecutorService progressLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Headless progress log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressLogger.scheduleAtFixedRate(this::logProgress, logInterval, logInterval, TimeUnit.SECONDS);
+        try {
+            if (watch) {
+                new CountDownLatch(1).await(); // until the program is stopped
+            } else {
+                done.acquire(videoFiles.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        progressLogger.shutdownNow();
+        uploader.kill();
+        log("All uploads done, " + (uploadCounter.get() - failedCount.get()) + " uploaded and " + failedCount.get() +
+                " failed");
+        return failedCount.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Checks the uploads in parallel with PreflightValidator and adds the ones without errors to the uploader. The
+     * ones with errors is counted as failed. Called on the main thread and the watch folder thread
+     * @param batch the details of the videos to upload
+     */
+    private void queueAll(List<UploadDetails> batch) {
+        for (PreflightValidator.Report report : PreflightValidator.INSTANCE.validate(batch)) {
+            if (!report.isClean()) {
+                log("Problems with \"" + report.getDetails().getVideoName() + "\": " + report);
+            }
+            if (report.hasErrors()) {
+                uploadCounter.incrementAndGet();
+                failedCount.incrementAndGet();
+                log(report.getVideoFile().getName() + ": not uploaded, fix the problems and try again");
+                done.release();
+            } else {
+                queue(report.getDetails());
+            }
+        }
+    }
+
+    /**
+     * Adds a upload to the uploader
+     * @param details the details of the video to upload
+     */
+    private void queue(UploadDetails details) {
+        String cancelName = UPLOAD_NAME_PREFIX + uploadCounter.getAndIncrement();
+        uploads.put(cancelName, details.getVideoFile());
+        remaining.incrementAndGet();
+        if (details.getThumbNail() == null && details.getThumbnailFrame() != null) {
+            // Grabbed while the video file is uploaded, the uploader waits for it if it is not done
+            FrameExtractor.INSTANCE.extract(details.getVideoFile(), details.getThumbnailFrame(), null);
+        }
+        uploader.add(details, cancelName);
+        log("Queued \"" + details.getVideoName() + "\" (" + details.getVideoFile().getName() + ")");
+    }
+
+    /**
+     * Writes the progress and throughput of all uploads that is uploading their video file
+     */
+    private void logProgress() {
+        long totalThroughput = 0;
+        int uploading = 0;
+        for (String cancelName : activeUploads) {
+            UploadProgressBus.ProgressSnapshot snapshot = uploader.getProgress(cancelName);
+            if (snapshot == null) {
+                continue;
+            }
+            uploading++;
+            totalThroughput += snapshot.getThroughput();
+            log(String.format("%s: %d%% %s (average %s), %s left", uploads.get(cancelName).getName(),
+                    (int) Math.floor(snapshot.getProgress() * 100),
+                    UploadProgressBus.formatThroughput(snapshot.getThroughput()),
+                    UploadProgressBus.formatThroughput(snapshot.getAverageThroughput()),
+                    snapshot.getEta() < 0 ? "unknown" : UploadProgressBus.formatDuration(snapshot.getEta())));
+        }
+        if (uploading > 1) {
+            log("Total: " + UploadProgressBus.formatThroughput(totalThroughput) + " on " + uploading + " uploads");
+        }
+        if (uploading == 0 && remaining.get() > 0) {
+            log(remaining.get() + " uploads waiting");
+        }
+        if (watchFolderIngester != null && watchFolderIngester.getWaitingCount() > 0) {
+            log(watchFolderIngester.getWaitingCount() + " new files in the watch folders are still being written");
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + LOG_TIME_FORMAT.format(LocalTime.now()) + "] " + message);
+    }
+
+    /**
+     * Writes the result of the uploads, the progress is written by logProgress() at a lower rate
+     */
+    private class Listener implements UploadListener {
+
+        @Override
+        public void onProgress(String cancelName, double progress, String statusText, String link) {
+            if (link == null) {
+                activeUploads.add(cancelName);
+            } else {
+                log(uploads.get(cancelName).getName() + ": " + link);
+            }
+        }
+
+        @Override
+        public void onStatus(String cancelName, String text) {
+            log(uploads.get(cancelName).getName() + ": " + text);
+        }
+
+        @Override
+        public void onFinished(String cancelName) {
+            activeUploads.remove(cancelName);
+            log(uploads.get(cancelName).getName() + ": uploaded");
+            remaining.decrementAndGet();
+            done.release();
+        }
+
+        @Override
+        public void onFailed(String cancelName, Throwable error) {
+            activeUploads.remove(cancelName);
+            failedCount.incrementAndGet();
+            log(uploads.get(cancelName).getName() + ": failed, " + error);
+            remaining.decrementAndGet();
+            done.release();
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package io.github.stekeblad.videouploader.main;
 
 import io.github.stekeblad.videouploader.jfxExtension.MyStage;
-import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.TagProcessorChain;
 import io.github.stekeblad.videouploader.utils.AlertUtils;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.Constants;
 import io.github.stekeblad.videouploader.utils.FileUtils;
 import io.github.stekeblad.videouploader.utils.background.OpenInBrowser;
+import io.github.stekeblad.videouploader.utils.background.WatchFolderIngester;
 import io.github.stekeblad.videouploader.utils.state.ButtonProperties;
 import io.github.stekeblad.videouploader.utils.state.VideoUploadState;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.windowControllers.PresetsWindowController;
+import io.github.stekeblad.videouploader.youtube.DuplicateIndex;
+import io.github.stekeblad.videouploader.youtube.FrameExtractor;
+import io.github.stekeblad.videouploader.youtube.PreflightValidator;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
+import io.github.stekeblad.videouploader.youtube.RetryEngine;
+import io.github.stekeblad.videouploader.youtube.ThumbnailNormalizer;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+import io.github.stekeblad.videouploader.youtube.UploadJournal;
+import io.github.stekeblad.videouploader.youtube.UploadListener;
+import io.github.stekeblad.videouploader.youtube.UploadRegistry;
 import io.github.stekeblad.videouploader.youtube.Uploader;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 import io.github.stekeblad.videouploader.youtube.VideoUpload;
@@ -34,9 +45,13 @@ import javafx.stage.Stage;
 import org.jcodec.containers.mp4.boxes.MetaValue;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static io.github.stekeblad.videouploader.utils.Constants.*;
 import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SIZE;
@@ -60,6 +75,7 @@ public class mainWindowController {
     public Button btn_abortAndClear;
     public Label label_selectPreset;
     public Label label_numbering;
+    public Label label_quota;
 
     private ConfigManager configManager;
     private PlaylistUtils playlistUtils;
@@ -68,9 +84,17 @@ public class mainWindowController {
     private List<VideoUpload> uploadQueueVideos;
     private List<File> videosToAdd;
     private HashMap<String, VideoUpload> editBackups;
+    // The thumbnail frame of the uploads that uses a frame grabbed from their video as thumbnail and is not started, by
+    // paneId. Given to the uploader so it can grab the frame again if it has been deleted from the cache.
+    private final HashMap<String, FrameExtractor.Position> thumbnailFrames = new HashMap<>();
+    // The uploads that shows the progress of grabbing their thumbnail frame, by paneId
+    private final Set<String> grabbingThumbnails = new HashSet<>();
     private Uploader uploader;
+    private UploadJournal uploadJournal;
+    private WatchFolderIngester watchFolderIngester;
     private static final String UPLOAD_PANE_ID_PREFIX = "upload-";
     private boolean bypassAbortWarning = false;
+    private boolean bypassPreflight = false;
     private VideoUploadState buttonStates;
 
     private Translations transMainWin;
@@ -98,7 +122,19 @@ public class mainWindowController {
             mainWindowPane.getScene().getStylesheets().add(css_path.toString());
         }
 
-        uploader = new Uploader();
+        // The uploader does not use JavaFX, its listener is called on the FX thread
+        uploader = new Uploader(Platform::runLater);
+        // Every change to the upload queue is written to the journal so the queue survives a crash
+        uploadJournal = new UploadJournal(Paths.get(UPLOAD_JOURNAL_FILE));
+        List<UploadJournal.Entry> journaledUploads;
+        try {
+            journaledUploads = uploadJournal.open();
+        } catch (IOException e) {
+            System.err.println("Could not open the upload journal, the upload queue is not saved");
+            e.printStackTrace();
+            journaledUploads = Collections.emptyList();
+        }
+        uploader.setJournal(uploadJournal);
 
         uploadPaneCounter = 0;
         uploadQueueVideos = new ArrayList<>();
@@ -127,8 +163,30 @@ public class mainWindowController {
                 txt_autoNum.setText(newValue.replaceAll("[^\\d]", ""));
             }
         });
-        uploader.setUploadFinishedCallback(s -> Platform.runLater(() -> onUploadFinished(s)));
-        uploader.setUploadErredCallback((videoUpload, throwable) -> Platform.runLater(() -> onUploadErred(videoUpload, throwable)));
+        uploader.setUploadListener(new UploadListener() {
+            @Override
+            public void onProgress(String cancelName, double progress, String statusText, String link) {
+                onUploadProgress(cancelName, progress, statusText, link);
+            }
+
+            @Override
+            public void onStatus(String cancelName, String text) {
+                onUploadStatus(cancelName, text);
+            }
+
+            @Override
+            public void onFinished(String cancelName) {
+                onUploadFinished(cancelName);
+            }
+
+            @Override
+            public void onFailed(String cancelName, Throwable error) {
+                int index = getUploadIndexByName(cancelName);
+                onUploadErred(index == -1 ? null : uploadQueueVideos.get(index), error);
+            }
+        });
+        uploader.setQueueChangedCallback(() -> Platform.runLater(this::showQueuePositions));
+        QuotaLedger.INSTANCE.setChangedCallback(() -> Platform.runLater(this::showQuotaUse));
 
         // Set up button sets for the different states a upload can be in: editing, locked, uploading, failed/erred
         defineUploadStates();
@@ -148,6 +206,10 @@ public class mainWindowController {
                         transUpload.autoTranslate(loadedUpload.getPane(), loadedUpload.getPaneId());
 
                         uploadQueueVideos.add(loadedUpload);
+                        // Uploads that failed and was waiting to be tried again continues without the user
+                        if (RetryEngine.INSTANCE.hasRetryState(loadedUpload.getVideoFile())) {
+                            queueUpload(loadedUpload);
+                        }
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -155,6 +217,21 @@ public class mainWindowController {
             }
             updateUploadList();
         }
+        // Rebuild the upload queue from the journal, the uploads keeps their names so the journal stays valid
+        if (!journaledUploads.isEmpty()) {
+            for (UploadJournal.Entry entry : journaledUploads) {
+                restoreJournaledUpload(entry);
+            }
+            updateUploadList();
+        }
+        // Upload new videos in the watched folders automatically
+        watchFolderIngester = new WatchFolderIngester(batch -> Platform.runLater(() -> onWatchFolderBatch(batch)));
+        try {
+            watchFolderIngester.start();
+        } catch (IOException e) {
+            System.err.println("Could not start watching the watch folders");
+            e.printStackTrace();
+        }
         // Set so pressing F1 opens the wiki page for this window
         Scene scene = mainWindowPane.getScene();
         scene.setOnKeyPressed((event) -> {
@@ -165,6 +242,52 @@ public class mainWindowController {
         });
     }
 
+    /**
+     * Adds a upload from the journal to the list and queues it again, unless the video file was already uploaded when
+     * the program stopped. Those is added as stopped so the user can decide, uploading them again would create a
+     * duplicate on Youtube. If the upload has a thumbnail frame that was not grabbed yet it is grabbed again.
+     * @param entry the upload from the journal
+     */
+    private void restoreJournaledUpload(UploadJournal.Entry entry) {
+        String paneId = entry.getCancelName();
+        try {
+            VideoUpload loadedUpload = new VideoUpload(entry.getDetails(), paneId);
+            loadedUpload.setThumbnailCursorEventHandler(this::updateCursor);
+
+            // Auto resize width and translation
+            loadedUpload.getPane().prefWidthProperty().bind(listView.widthProperty());
+            transUpload.autoTranslate(loadedUpload.getPane(), loadedUpload.getPaneId());
+
+            uploadQueueVideos.add(loadedUpload);
+            // New uploads must not get the same name
+            if (paneId.startsWith(UPLOAD_PANE_ID_PREFIX)) {
+                try {
+                    int number = Integer.parseInt(paneId.substring(UPLOAD_PANE_ID_PREFIX.length()));
+                    uploadPaneCounter = Math.max(uploadPaneCounter, number + 1);
+                } catch (NumberFormatException ignored) {
+                    // not a number, can not collide with a new upload
+                }
+            }
+            if (entry.getState() == UploadRegistry.State.POST_PROCESSING) {
+                buttonStates.setLocked(loadedUpload);
+                uploadJournal.removed(paneId);
+            } else {
+                // The upload was queued before its frame was grabbed or the frame has been deleted from the thumbnail
+                // cache since, the thumbnail frame is only in the details
+                UploadDetails details = UploadDetails.fromString(entry.getDetails());
+                if (details.getThumbnailFrame() != null &&
+                        (details.getThumbNail() == null || !details.getThumbNail().isFile())) {
+                    grabThumbnail(loadedUpload, details.getThumbnailFrame());
+                }
+                queueUpload(loadedUpload, entry.getPriority(), entry.getDeadline());
+            }
+        } catch (Exception e) {
+            System.err.println("Could not restore the upload \"" + paneId + "\" from the upload journal");
+            e.printStackTrace();
+            uploadJournal.removed(paneId);
+        }
+    }
+
     /**
      * This method is called when this window's close button is clicked.
      * If one or more uploads is queued a confirmation dialog will be showed to ask the user if they want to
@@ -174,7 +297,9 @@ public class mainWindowController {
     public boolean onWindowClose() {
         // Check if uploads is in progress, if not then directly return true
         if (! uploader.getIsActive()) {
+            watchFolderIngester.stop();
             uploader.kill(); // just because it does not do anything it started and must be stopped
+            uploadJournal.close();
             return true;
         }
         String op1 = transMainWin.getString("diag_closeWarn_op1");
@@ -188,17 +313,17 @@ public class mainWindowController {
         if (choice.equals(op1)) {
             return false;
         } else if (choice.equals(op2)) {
+            watchFolderIngester.stop();
             uploader.kill();
+            // The uploads should not continue next time
+            uploadJournal.clear();
+            uploadJournal.close();
             return true;
         } else if (choice.equals(op3)) {
-
-            Set<String> tasks = uploader.kill();
-            tasks.forEach(s -> {
-                int index = getUploadIndexByName(s);
-                if (index != -1) { // If a task does not have a index it has been removed and is not interesting, or bugged with a bad id, skip them
-                    configManager.saveWaitingUpload(uploadQueueVideos.get(index).toString(), String.valueOf(index));
-                }
-            });
+            watchFolderIngester.stop();
+            // The unfinished uploads is kept in the upload journal and is queued again the next time the program starts
+            uploader.kill();
+            uploadJournal.close();
             return true;
         }
         return false;
@@ -210,21 +335,42 @@ public class mainWindowController {
      * @param actionEvent the click event
      */
     public void onPickFileClicked(ActionEvent actionEvent) {
-        videosToAdd = FileUtils.pickVideos(Long.MAX_VALUE);
-        ArrayList<String> filenames = new ArrayList<>();
-        if(videosToAdd != null) {
+        // The files is checked in the background, the list is set when they are checked
+        FileUtils.pickVideos(Long.MAX_VALUE, pickedVideos -> {
+            videosToAdd = pickedVideos;
+            ArrayList<String> filenames = new ArrayList<>();
             for (File file : videosToAdd) {
                 filenames.add(file.getName());
             }
-        }
-        chosen_files.setItems(FXCollections.observableArrayList(filenames));
+            chosen_files.setItems(FXCollections.observableArrayList(filenames));
+        });
         actionEvent.consume();
     }
 
+    /**
+     * Asks the user if the files that looks like they have already been uploaded should be added anyway, if not they
+     * are removed from videosToAdd.
+     * @param duplicates the files in videosToAdd that looks like uploaded files and the entries they look like
+     */
+    private void skipDuplicates(Map<File, DuplicateIndex.Entry> duplicates) {
+        if (duplicates.isEmpty()) {
+            return;
+        }
+        StringBuilder list = new StringBuilder();
+        duplicates.forEach((file, entry) -> list.append(file.getName()).append(" -> ")
+                .append(entry.getVideoUrl()).append("\n"));
+        ButtonType userChoice = AlertUtils.yesNo(transMainWin.getString("diag_duplicates_short"),
+                String.format(transMainWin.getString("diag_duplicates_full"), list.toString()), ButtonType.NO);
+        if (userChoice != ButtonType.YES) {
+            videosToAdd = new ArrayList<>(videosToAdd);
+            videosToAdd.removeAll(duplicates.keySet());
+        }
+    }
+
     /**
      * Called when the apply preset button is clicked.
      * Takes the files in the selected files list and applies the selected preset or uses a blank preset if none is selected.
-     * Populates the uploads list.
+     * Populates the uploads list. The files is first checked for duplicates in the background.
      * @param actionEvent the click event
      */
     public void onApplyPresetClicked(ActionEvent actionEvent) {
@@ -233,6 +379,34 @@ public class mainWindowController {
                     transMainWin.getString("diag_noFiles_full")).show();
             return;
         }
+        List<File> checkedFiles = videosToAdd;
+        DuplicateIndex.INSTANCE.findDuplicatesAsync(checkedFiles).whenComplete((duplicates, error) ->
+                Platform.runLater(() -> {
+                    // The files has been added by a earlier click or new files has been picked while checking
+                    if (videosToAdd != checkedFiles) {
+                        return;
+                    }
+                    if (error != null) {
+                        System.err.println("Could not check if the files has been uploaded before");
+                        error.printStackTrace();
+                    } else {
+                        skipDuplicates(duplicates);
+                    }
+                    applyPreset();
+                }));
+        actionEvent.consume();
+    }
+
+    /**
+     * Adds the files in videosToAdd to the uploads list with the selected preset, the second half of
+     * onApplyPresetClicked
+     */
+    private void applyPreset() {
+        if (videosToAdd.isEmpty()) {
+            videosToAdd = null;
+            chosen_files.setItems(FXCollections.observableArrayList());
+            return;
+        }
         // Check what preset / if a preset is selected
         if (choice_presets.getSelectionModel().getSelectedIndex() < 1) {
             // No preset, add videos to upload list with file name as title and blank/default values on the rest
@@ -279,25 +453,15 @@ public class mainWindowController {
                 autoNum = 1;
             }
 
-            // Find TagProcessors
-            ArrayList<ITagProcessor> tagProcessors = new ArrayList<>();
-            ServiceLoader<ITagProcessor> tagProcessorServiceLoader = ServiceLoader.load(ITagProcessor.class);
-            for (ITagProcessor tagProcessor : tagProcessorServiceLoader) {
-                tagProcessor.init(chosenPreset, autoNum);
-                tagProcessors.add(tagProcessor);
+            // The same preset and TagProcessors as when uploading without the UI
+            TagProcessorChain tagProcessorChain = new TagProcessorChain(chosenPreset.getDetails(), autoNum);
+            // Converts the thumbnail in the background now if it needs it, it is only done once for all the videos
+            if (chosenPreset.getThumbNail() != null) {
+                ThumbnailNormalizer.INSTANCE.normalize(chosenPreset.getThumbNail());
             }
 
             // Iterate over all selected video files
             for (File videoFile : videosToAdd) {
-                // Insert raw file name in title, exclude file extension
-                // (may be a TagProcessor later, do not want to pass the File to all TagProcessors)
-                String name = chosenPreset.getVideoName();
-                if (name.contains("$(rawname)")) {
-                    String rawFileName = videoFile.getName().substring(0, videoFile.getName().lastIndexOf("."));
-                    name = name.replace("$(rawname)", rawFileName);
-                }
-
-
                 // Debug: print all metadata to the console
                 try {
                     org.jcodec.movtool.MetadataEditor f = org.jcodec.movtool.MetadataEditor.createFrom(videoFile);
@@ -312,37 +476,7 @@ public class mainWindowController {
 
 
 
-                // Execute the TagProcessors
-                String description = chosenPreset.getVideoDescription();
-                List<String> videoTags = chosenPreset.getVideoTags();
-                for (ITagProcessor processor : tagProcessors) {
-                    name = processor.processTitle(name, videoFile);
-                    description = processor.processDescription(description, videoFile);
-                    videoTags = processor.processTags(videoTags, videoFile);
-                }
-
-                VideoUpload.Builder newUploadBuilder = new VideoUpload.Builder()
-                        .setVideoName(name)
-                        .setVideoDescription(description)
-                        .setVisibility(chosenPreset.getVisibility())
-                        .setVideoTags(videoTags)
-                        .setSelectedPlaylist(chosenPreset.getSelectedPlaylist())
-                        .setCategory(chosenPreset.getCategory())
-                        .setTellSubs(chosenPreset.isTellSubs())
-                        .setPaneName(UPLOAD_PANE_ID_PREFIX + uploadPaneCounter)
-                        .setVideoFile(videoFile);
-                if (chosenPreset.getThumbNail() != null) {
-                    newUploadBuilder.setThumbNailPath(chosenPreset.getThumbNail().getAbsolutePath());
-                }
-                VideoUpload newUpload = newUploadBuilder.build();
-                // make the upload change its width together with the uploads list and the window
-                newUpload.getPane().prefWidthProperty().bind(listView.widthProperty());
-                newUpload.setThumbnailCursorEventHandler(this::updateCursor);
-
-                transUpload.autoTranslate(newUpload.getPane(), newUpload.getPaneId());
-                buttonStates.setLocked(newUpload);
-                uploadQueueVideos.add(newUpload);
-                uploadPaneCounter++;
+                addUploadToList(tagProcessorChain.apply(videoFile));
             }
             // update autoNum textField
             txt_autoNum.setText(String.valueOf(autoNum));
@@ -351,7 +485,107 @@ public class mainWindowController {
         videosToAdd = null;
         chosen_files.setItems(FXCollections.observableArrayList(new ArrayList<>()));
         updateUploadList();
-        actionEvent.consume();
+    }
+
+    /**
+     * Creates a locked upload from details and adds it last in the uploads list
+     * @param details the details of the upload, must have a video file
+     * @return the new upload
+     */
+    private VideoUpload addUploadToList(UploadDetails details) {
+        VideoUpload.Builder newUploadBuilder = new VideoUpload.Builder()
+                .setVideoName(details.getVideoName())
+                .setVideoDescription(details.getVideoDescription())
+                .setVisibility(details.getVisibility())
+                .setVideoTags(details.getVideoTags())
+                .setSelectedPlaylist(details.getSelectedPlaylist())
+                .setCategory(details.getCategory())
+                .setTellSubs(details.isTellSubs())
+                .setPaneName(UPLOAD_PANE_ID_PREFIX + uploadPaneCounter)
+                .setVideoFile(details.getVideoFile());
+        if (details.getThumbNail() != null) {
+            newUploadBuilder.setThumbNailPath(details.getThumbNail().getAbsolutePath());
+        }
+        VideoUpload newUpload = newUploadBuilder.build();
+        // make the upload change its width together with the uploads list and the window
+        newUpload.getPane().prefWidthProperty().bind(listView.widthProperty());
+        newUpload.setThumbnailCursorEventHandler(this::updateCursor);
+
+        transUpload.autoTranslate(newUpload.getPane(), newUpload.getPaneId());
+        buttonStates.setLocked(newUpload);
+        uploadQueueVideos.add(newUpload);
+        uploadPaneCounter++;
+        if (details.getThumbNail() == null && details.getThumbnailFrame() != null) {
+            grabThumbnail(newUpload, details.getThumbnailFrame());
+        }
+        return newUpload;
+    }
+
+    /**
+     * Grabs a frame from the video file of a upload in the background and shows it as the thumbnail when it is done.
+     * If it is waiting or being grabbed is shown on the upload until it is started. Many uploads can be added at the
+     * same time, they wait in the queue of FrameExtractor.
+     * @param video the upload
+     * @param position where in the video to grab the frame
+     */
+    private void grabThumbnail(VideoUpload video, FrameExtractor.Position position) {
+        String paneId = video.getPaneId();
+        thumbnailFrames.put(paneId, position);
+        grabbingThumbnails.add(paneId);
+        FrameExtractor.INSTANCE.extract(video.getVideoFile(), position, progress -> Platform.runLater(() -> {
+            // Removed by queueUpload() when the upload is started, then the label shows the upload progress
+            if (grabbingThumbnails.contains(paneId)) {
+                video.setStatusLabelText(transMainWin.getString(progress == 0 ?
+                        "extractingThumbnailWait" : "extractingThumbnail"));
+            }
+        })).whenComplete((frame, error) -> Platform.runLater(() -> {
+            boolean waiting = grabbingThumbnails.remove(paneId);
+            if (getUploadIndexByName(paneId) == -1) {
+                thumbnailFrames.remove(paneId); // deleted from the list
+            }
+            if (error != null) {
+                System.err.println("Could not grab a thumbnail from \"" + video.getVideoFile().getName() + "\"");
+                error.printStackTrace();
+            } else if (getUploadIndexByName(paneId) != -1 && video.getThumbNail() == null) {
+                try {
+                    video.setGeneratedThumbNail(frame);
+                } catch (FileNotFoundException e) {
+                    System.err.println("The grabbed thumbnail of \"" + video.getVideoFile().getName() +
+                            "\" was removed from the cache");
+                }
+            }
+            if (waiting) {
+                video.setStatusLabelText(transUpload.getString("_status"));
+            }
+        }));
+    }
+
+    /**
+     * Called when new videos has been found in a watched folder, adds them to the uploads list and starts them.
+     * Runs on the FX thread
+     * @param batch the details of the new videos, with the preset of their folder applied
+     */
+    private void onWatchFolderBatch(List<UploadDetails> batch) {
+        // The files in the folders when the program starts is also given here, skip the ones that is already in the
+        // list, like uploads restored from the journal that has not been uploaded yet
+        Set<File> listed = new HashSet<>();
+        for (VideoUpload video : uploadQueueVideos) {
+            listed.add(video.getVideoFile().getAbsoluteFile());
+        }
+        List<VideoUpload> added = new ArrayList<>();
+        for (UploadDetails details : batch) {
+            if (!listed.contains(details.getVideoFile().getAbsoluteFile())) {
+                added.add(addUploadToList(details));
+            }
+        }
+        updateUploadList();
+        // Uploads with errors is left in the list so the user can fix them
+        preflight(added, passed -> {
+            for (VideoUpload video : passed) {
+                queueUpload(video);
+            }
+            updateUploadList();
+        });
     }
 
     /**
@@ -402,6 +636,11 @@ public class mainWindowController {
             stage.makeScene(fxmlLoader.load(), Constants.SETTINGS_WINDOW_DIMENSIONS_RESTRICTION);
             stage.setTitle(transBasic.getString("app_settingsWindowTitle"));
             stage.initModality(Modality.APPLICATION_MODAL); // Make it always above mainWindow
+            // The number of simultaneous uploads and the upload order can be changed without a restart
+            stage.setOnHidden(event -> {
+                uploader.setLaneCount(configManager.getUploadLanes());
+                uploader.updateQueueOrder();
+            });
             stage.prepareControllerAndShow(fxmlLoader.getController());
         } catch (IOException e) {
             AlertUtils.exceptionDialog(transBasic.getString("error"), transBasic.getString("errOpenWindow"), e);
@@ -441,13 +680,24 @@ public class mainWindowController {
                 return;
             }
         }
-        // Permission given, start uploads
+        // Permission given, check all uploads at the same time and start the ones without errors
+        List<VideoUpload> startable = new ArrayList<>();
         for (VideoUpload uploadQueueVideo : uploadQueueVideos) {
             if (uploadQueueVideo.getButton3Id() != null &&
                     uploadQueueVideo.getButton3Id().contains(BUTTON_START_UPLOAD)) {
-                onStartUpload(uploadQueueVideo.getButton3Id());
+                startable.add(uploadQueueVideo);
             }
         }
+        preflight(startable, passed -> {
+            bypassPreflight = true;
+            try {
+                for (VideoUpload video : passed) {
+                    onStartUpload(video.getButton3Id());
+                }
+            } finally {
+                bypassPreflight = false;
+            }
+        });
         actionEvent.consume();
     }
 
@@ -539,7 +789,7 @@ public class mainWindowController {
 
         // Define Uploading
         buttonStates.defineUploading(new ButtonProperties[]{
-                new ButtonProperties("_ghost1", "Just to give it width", null),
+                new ButtonProperties(BUTTON_UPLOAD_NEXT, transBasic.getString("uploadNext"), this::onUploadNext),
                 new ButtonProperties(BUTTON_ABORT_UPLOAD, transBasic.getString("abort"), this::onAbort),
                 new ButtonProperties("_ghost", "", null)
         });
@@ -562,6 +812,20 @@ public class mainWindowController {
             uploadQueuePanes.add(vid.getPane());
         }
         listView.setItems(FXCollections.observableArrayList(uploadQueuePanes));
+        showQuotaUse();
+    }
+
+    /**
+     * Shows how much of the daily API quota that has been used and how much the unfinished uploads will need.
+     * The text is red if the unfinished uploads will not fit in what is left today.
+     */
+    private void showQuotaUse() {
+        QuotaLedger quotaLedger = QuotaLedger.INSTANCE;
+        int used = quotaLedger.getUsedToday();
+        int limit = quotaLedger.getDailyLimit();
+        int projected = uploader.getProjectedQuotaUse();
+        label_quota.setText(String.format(transMainWin.getString("quotaUse"), used, limit, projected));
+        label_quota.setStyle(used + projected > limit ? "-fx-text-fill: red" : "");
     }
 
     /**
@@ -774,16 +1038,127 @@ public class mainWindowController {
         }
         // User is authenticated or is warned about the upcoming prompt to do so.
 
-        // Queue upload
-        uploader.add(uploadQueueVideos.get(selected), uploadQueueVideos.get(selected).getPaneId());
+        // Checked before it is given to the uploader, not needed if it was checked by onStartAllUploadsClicked
+        if (bypassPreflight) {
+            queueUpload(uploadQueueVideos.get(selected));
+            // Make sure visual change get to the UI
+            updateUploadList();
+            return;
+        }
+        preflight(Collections.singletonList(uploadQueueVideos.get(selected)), passed -> {
+            for (VideoUpload video : passed) {
+                queueUpload(video);
+            }
+            // Make sure visual change get to the UI
+            updateUploadList();
+        });
+    }
+
+    /**
+     * Checks the uploads against the limits of the Youtube API in parallel in the background. If any upload has a
+     * problem a dialog is shown with all problems.
+     * @param videos the uploads to check
+     * @param onPassed called on the FX thread with the uploads without errors that can still be started, uploads with
+     *                 only warnings is included. Uploads that was removed, started or edited while they was checked is
+     *                 not included.
+     */
+    private void preflight(List<VideoUpload> videos, Consumer<List<VideoUpload>> onPassed) {
+        List<UploadDetails> details = new ArrayList<>();
+        for (VideoUpload video : videos) {
+            details.add(video.getDetails());
+        }
+        PreflightValidator.INSTANCE.validateAsync(details).whenComplete((reports, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                AlertUtils.exceptionDialog(transMainWin.getString("diag_preflight_short"),
+                        transMainWin.getString("diag_preflight_error"), error);
+                return;
+            }
+            List<VideoUpload> passed = new ArrayList<>();
+            StringBuilder problems = new StringBuilder();
+            for (int i = 0; i < reports.size(); i++) {
+                PreflightValidator.Report report = reports.get(i);
+                if (!report.hasErrors() && isStartable(videos.get(i))) {
+                    passed.add(videos.get(i));
+                }
+                if (!report.isClean()) {
+                    problems.append(videos.get(i).getVideoName()).append(" - ").append(report)
+                            .append(System.lineSeparator());
+                }
+            }
+            if (problems.length() > 0) {
+                AlertUtils.simpleClose_longContent(transMainWin.getString("diag_preflight_short"),
+                        String.format(transMainWin.getString("diag_preflight_full"), problems.toString()));
+            }
+            onPassed.accept(passed);
+        }));
+    }
+
+    /**
+     * @return true if video is in the uploads list and shows the start upload button
+     */
+    private boolean isStartable(VideoUpload video) {
+        return getUploadIndexByName(video.getPaneId()) != -1 && video.getButton3Id() != null &&
+                video.getButton3Id().contains(BUTTON_START_UPLOAD);
+    }
+
+    /**
+     * Gives video to the uploader and shows that it is waiting to be uploaded
+     * @param video the upload to start
+     */
+    private void queueUpload(VideoUpload video) {
+        queueUpload(video, 0, null);
+    }
+
+    /**
+     * Gives video to the uploader with a priority and deadline and shows that it is waiting
+     * @param video the upload to queue
+     * @param priority uploads with a higher priority is started first
+     * @param deadline when the video should be uploaded, or null
+     */
+    private void queueUpload(VideoUpload video, int priority, LocalDateTime deadline) {
+        UploadDetails details = video.getDetails();
+        // If the frame is not grabbed yet the uploader waits for it before setting the thumbnail, if it is grabbed the
+        // uploader grabs it again if it has been deleted from the thumbnail cache
+        grabbingThumbnails.remove(video.getPaneId());
+        FrameExtractor.Position thumbnailFrame = thumbnailFrames.remove(video.getPaneId());
+        if (thumbnailFrame != null) {
+            details = details.toBuilder().setThumbnailFrame(thumbnailFrame).build();
+        }
+        uploader.add(details, video.getPaneId(), priority, deadline);
 
         // Change buttons, make progressbar visible and set text to show it is waiting to be uploaded.
-        buttonStates.setUploading(uploadQueueVideos.get(selected));
-        uploadQueueVideos.get(selected).setProgressBarVisibility(true);
-        uploadQueueVideos.get(selected).setStatusLabelText(transBasic.getString("waiting"));
+        buttonStates.setUploading(video);
+        video.setProgressBarVisibility(true);
+        video.setStatusLabelText(transBasic.getString("waiting"));
+    }
 
-        // Make sure visual change get to the UI
-        updateUploadList();
+    /**
+     * Called when the upload next button is clicked on a upload that is scheduled or in progress.
+     * Moves the upload first in the queue, does nothing if it has already started.
+     * @param callerId the id of the upload + button name
+     */
+    private void onUploadNext(String callerId) {
+        String parentId = callerId.substring(0, callerId.indexOf('_'));
+        int selected = getUploadIndexByName(parentId);
+        if (selected == -1) {
+            System.err.println("upload next button belongs to a invalid or non-existing parent");
+            return;
+        }
+        uploader.prioritize(uploadQueueVideos.get(selected).getPaneId());
+    }
+
+    /**
+     * Shows the place in the queue on all uploads that is waiting to be started. Called when the queue changes.
+     */
+    private void showQueuePositions() {
+        List<String> waiting = uploader.getWaitingUploads();
+        for (int i = 0; i < waiting.size(); i++) {
+            int index = getUploadIndexByName(waiting.get(i));
+            if (index != -1) {
+                uploadQueueVideos.get(index).setStatusLabelText(
+                        String.format(transMainWin.getString("waitingInQueue"), i + 1));
+            }
+        }
     }
 
     /**
@@ -848,6 +1223,39 @@ public class mainWindowController {
         updateUploadList();
     }
 
+    /**
+     * Called by the uploader a few times per second while a upload is uploading. Runs on the FX thread
+     * @param paneId the paneId of the upload
+     * @param progress how much of the video file that has been sent, between 0 and 1
+     * @param statusText the text to show in the status label of the upload
+     * @param link the URL of the uploaded video when it is done, otherwise null
+     */
+    private void onUploadProgress(String paneId, double progress, String statusText, String link) {
+        int index = getUploadIndexByName(paneId);
+        if (index == -1) {
+            return; // removed from the list while uploading
+        }
+        VideoUpload video = uploadQueueVideos.get(index);
+        video.setProgressBarProgress(progress);
+        video.setStatusLabelText(statusText);
+        if (link != null) {
+            video.setStatusLabelOnClickUrl(link);
+        }
+    }
+
+    /**
+     * Called by the uploader when a upload is waiting for something, like a retry or the quota to be reset.
+     * Runs on the FX thread
+     * @param paneId the paneId of the upload
+     * @param text the text to show in the status label of the upload
+     */
+    private void onUploadStatus(String paneId, String text) {
+        int index = getUploadIndexByName(paneId);
+        if (index != -1) {
+            uploadQueueVideos.get(index).setStatusLabelText(text);
+        }
+    }
+
     /**
      * Called when an upload finishes.
      * Places the hide button
@@ -1,5 +1,6 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 
 import java.io.File;
@@ -18,10 +19,23 @@ public interface ITagProcessor {
      * reduce the amount of work needed in the process methods. For example if the tag this TagProcessor is looking for
      * does not exist in the preset it can set a boolean so it returns directly in the process methods.
      *
+     * @param preset        the details of the selected VideoPreset
+     * @param initialAutoNum the value in the auto num field when the apply preset button was pressed
+     */
+    void init(UploadDetails preset, int initialAutoNum);
+
+    /**
+     * The constructor used before TagProcessors could run without the UI, kept so code calling it still works.
+     * Calls init(UploadDetails, int) with the details of the preset.
+     *
      * @param preset        the selected VideoPreset
      * @param initialAutoNum the value in the auto num field when the apply preset button was pressed
+     * @deprecated use init(UploadDetails, int), this method can not be used when uploading without the UI
      */
-    void init(VideoPreset preset, int initialAutoNum);
+    @Deprecated
+    default void init(VideoPreset preset, int initialAutoNum) {
+        init(preset.getDetails(), initialAutoNum);
+    }
 
     /**
      * Processes the title field of a video and replaces the tags target by this TagProcessor with new data. Note that the
@@ -1,6 +1,6 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
-import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
 
 import java.io.File;
 import java.util.HashMap;
@@ -20,7 +20,7 @@ public class MetaTagProcessor implements ITagProcessor {
     // if , is found first it starts matching fallback until a ) is found
     private final Pattern METADATA_TAG = Pattern.compile("\\$\\(metadata:([^,)]+)(,[^)]*)?\\)");
     @Override
-    public void init(VideoPreset preset, int initialAutoNum) {
+    public void init(UploadDetails preset, int initialAutoNum) {
         tagFoundInTitle = false;
         tagFoundInDescription = false;
         tagsInTitle = new HashMap<>();
@@ -1,6 +1,6 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
-import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
 import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
 
 import java.io.File;
@@ -14,7 +14,7 @@ public class PlaylistTagProcessor implements ITagProcessor {
     public PlaylistTagProcessor() {
     }
 
-    public void init(VideoPreset preset, int initialAutoNum) {
+    public void init(UploadDetails preset, int initialAutoNum) {
         tagFound = preset.getVideoDescription().contains(PLAYLIST_TAG);
         if (!tagFound)
             return;
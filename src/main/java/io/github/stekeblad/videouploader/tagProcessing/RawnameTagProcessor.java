@@ -1,13 +1,13 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
-import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
 
 import java.io.File;
 import java.util.List;
 
 public class RawnameTagProcessor implements ITagProcessor {
     @Override
-    public void init(VideoPreset preset, int initialAutoNum) {
+    public void init(UploadDetails preset, int initialAutoNum) {
 
     }
 
@@ -0,0 +1,70 @@
+package io.github.stekeblad.videouploader.tagProcessing;
+
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Applies a preset to video files the same way as the apply preset button in the main window: $(rawname) is replaced
+ * with the file name and then all TagProcessors found by the ServiceLoader are executed in order. Create a new chain
+ * every time a preset is applied to a set of files, the TagProcessors keeps state between files (like the episode number).
+ * This class is not threadsafe.
+ */
+public class TagProcessorChain {
+    private static final String RAWNAME_TAG = "$(rawname)";
+
+    private final UploadDetails preset;
+    private final List<ITagProcessor> tagProcessors;
+
+    /**
+     * Finds all TagProcessors and initializes them with preset
+     * @param preset the details of the selected preset
+     * @param autoNum the value of the automatic numbering for the first file
+     */
+    public TagProcessorChain(UploadDetails preset, int autoNum) {
+        this.preset = preset;
+        tagProcessors = new ArrayList<>();
+        ServiceLoader<ITagProcessor> tagProcessorServiceLoader = ServiceLoader.load(ITagProcessor.class);
+        for (ITagProcessor tagProcessor : tagProcessorServiceLoader) {
+            tagProcessor.init(preset, autoNum);
+            tagProcessors.add(tagProcessor);
+        }
+    }
+
+    /**
+     * Creates the details for uploading videoFile with the preset, call it for the files in the order they should
+     * be numbered
+     * @param videoFile the video file
+     * @return the details of the preset with all tags replaced and the video file set
+     */
+    public UploadDetails apply(File videoFile) {
+        // Insert raw file name in title, exclude file extension
+        // (may be a TagProcessor later, do not want to pass the File to all TagProcessors)
+        String name = preset.getVideoName();
+        if (name.contains(RAWNAME_TAG)) {
+            int extensionIndex = videoFile.getName().lastIndexOf(".");
+            String rawFileName = extensionIndex < 0 ? videoFile.getName() :
+                    videoFile.getName().substring(0, extensionIndex);
+            name = name.replace(RAWNAME_TAG, rawFileName);
+        }
+
+        // Execute the TagProcessors
+        String description = preset.getVideoDescription();
+        List<String> videoTags = preset.getVideoTags();
+        for (ITagProcessor processor : tagProcessors) {
+            name = processor.processTitle(name, videoFile);
+            description = processor.processDescription(description, videoFile);
+            videoTags = processor.processTags(videoTags, videoFile);
+        }
+
+        return preset.toBuilder()
+                .setVideoName(name)
+                .setVideoDescription(description)
+                .setVideoTags(videoTags)
+                .setVideoFile(videoFile)
+                .build();
+    }
+}
@@ -1,9 +1,13 @@
 package io.github.stekeblad.videouploader.utils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Locale;
@@ -18,9 +22,15 @@ import static io.github.stekeblad.videouploader.utils.Constants.*;
 public enum ConfigManager {
     INSTANCE;
 
+    private static final long METRICS_FILE_MAX_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_LANES = 2;
+    private static final int DEFAULT_HTTP_SEND_BUFFER_KIB = 1024;
+
     private Path filesPath;
     private Properties mainProp;
     private HashMap<String, String> presetStringsMap;
+    // The header the metrics file is known to start with, so it does not need to be read for every snapshot
+    private String metricsFileHeader = null;
 
     /**
      * Like a constructor, call this method once before calling any other method in this class anywhere in the project
@@ -65,6 +75,36 @@ public enum ConfigManager {
             }
         }
 
+        Path uploadSessionsPath = Paths.get(UPLOAD_SESSION_DIR).toAbsolutePath();
+        if (!Files.exists(uploadSessionsPath)) {
+            try {
+                Files.createDirectory(uploadSessionsPath);
+            } catch (IOException e) {
+                System.err.println("Could not find or create directory for upload sessions!");
+                e.printStackTrace();
+            }
+        }
+
+        Path retryStatePath = Paths.get(RETRY_STATE_DIR).toAbsolutePath();
+        if (!Files.exists(retryStatePath)) {
+            try {
+                Files.createDirectory(retryStatePath);
+            } catch (IOException e) {
+                System.err.println("Could not find or create directory for retry state!");
+                e.printStackTrace();
+            }
+        }
+
+        Path thumbnailCachePath = Paths.get(THUMBNAIL_CACHE_DIR).toAbsolutePath();
+        if (!Files.exists(thumbnailCachePath)) {
+            try {
+                Files.createDirectory(thumbnailCachePath);
+            } catch (IOException e) {
+                System.err.println("Could not find or create directory for the thumbnail cache!");
+                e.printStackTrace();
+            }
+        }
+
         loadSettings();
     }
 
@@ -99,12 +139,26 @@ public enum ConfigManager {
             setIfMissing("category_country", "");
             setIfMissing("category_language", "");
             setIfMissing("ui_language", String.valueOf(Locale.getDefault()));
+            setIfMissing("upload_lanes", String.valueOf(DEFAULT_UPLOAD_LANES));
+            setIfMissing("upload_queue_order", "ADDED");
+            setIfMissing("http_max_connections", "10");
+            setIfMissing("http_keep_alive", "true");
+            setIfMissing("http_send_buffer_kib", String.valueOf(DEFAULT_HTTP_SEND_BUFFER_KIB));
+            setIfMissing("http_connect_timeout", "20");
+            setIfMissing("http_read_timeout", "60");
+            setIfMissing("bandwidth_limit", "0");
+            setIfMissing("bandwidth_schedule", "");
+            setIfMissing("quota_parked_until", "0");
+            setIfMissing("quota_daily_limit", "10000");
+            setIfMissing("watch_stable_seconds", "15");
+            setIfMissing("metrics_interval_seconds", "60");
+            setIfMissing("api_root_url", "");
 
             setIfMissing(WIN_SIZE + WindowPropertyNames.MAIN, "900x825");
             setIfMissing(WIN_LOC + WindowPropertyNames.MAIN, "50x50");
             setIfMissing(WIN_SIZE + WindowPropertyNames.PRESETS, "725x700");
             setIfMissing(WIN_LOC + WindowPropertyNames.PRESETS, "150x100");
-            setIfMissing(WIN_SIZE + WindowPropertyNames.SETTINGS, "600x450");
+            setIfMissing(WIN_SIZE + WindowPropertyNames.SETTINGS, "600x800");
             setIfMissing(WIN_LOC + WindowPropertyNames.SETTINGS, "200x150");
             setIfMissing(WIN_SIZE + WindowPropertyNames.LOCALIZE, "400x450");
             setIfMissing(WIN_LOC + WindowPropertyNames.LOCALIZE, "275x250");
@@ -120,25 +174,29 @@ public enum ConfigManager {
     }
 
     /**
-     * Saves the properties to the settings.properties file
+     * Saves the properties to the settings.properties file. Can be called from many threads at the same time, the
+     * settings are written to a temporary file that replaces the settings file so a crash or a other thread can never
+     * leave a half written settings file.
      */
-    public void saveSettings() {
-        OutputStream output = null;
-        try {
-            output = new FileOutputStream(filesPath + "/settings.properties");
+    public synchronized void saveSettings() {
+        Path settingsPath = filesPath.resolve("settings.properties");
+        Path tempPath = filesPath.resolve("settings.properties.tmp");
+        try (OutputStream output = Files.newOutputStream(tempPath)) {
             mainProp.store(output, "main settings file for Stekeblads Video Uploader");
-        } catch (FileNotFoundException e) {
-            System.err.println("File is not a file or do not have permission to create settings file");
         } catch (IOException e) {
             System.err.println("Error writing settings to file");
-        } finally {
-            if (output != null) {
-                try {
-                    output.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            e.printStackTrace();
+            return;
+        }
+        try {
+            try {
+                Files.move(tempPath, settingsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, settingsPath, StandardCopyOption.REPLACE_EXISTING);
             }
+        } catch (IOException e) {
+            System.err.println("Could not replace the settings file");
+            e.printStackTrace();
         }
     }
 
@@ -182,6 +240,210 @@ public enum ConfigManager {
         mainProp.setProperty("ui_language", languageName);
     }
 
+    /**
+     * @return the number of uploads that should be uploaded at the same time, at least 1
+     */
+    public int getUploadLanes() {
+        return Math.max(1, getIntProperty("upload_lanes", DEFAULT_UPLOAD_LANES));
+    }
+
+    public void setUploadLanes(int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("There must be at least one upload lane");
+        }
+        mainProp.setProperty("upload_lanes", String.valueOf(lanes));
+    }
+
+    /**
+     * @return the name of a UploadQueue.Order, how uploads with the same priority are ordered
+     */
+    public String getUploadQueueOrder() {
+        return mainProp.getProperty("upload_queue_order");
+    }
+
+    public void setUploadQueueOrder(String order) {
+        mainProp.setProperty("upload_queue_order", order);
+    }
+
+    // Network settings, see HttpTransportFactory
+
+    /**
+     * @return the max number of idle connections to keep open to each host
+     */
+    public int getHttpMaxConnections() {
+        return Math.max(1, getIntProperty("http_max_connections", 10));
+    }
+
+    public void setHttpMaxConnections(int maxConnections) {
+        mainProp.setProperty("http_max_connections", String.valueOf(Math.max(1, maxConnections)));
+    }
+
+    public boolean getHttpKeepAlive() {
+        return mainProp.getProperty("http_keep_alive").equals("true");
+    }
+
+    public void setHttpKeepAlive(boolean keepAlive) {
+        mainProp.setProperty("http_keep_alive", keepAlive ? "true" : "false");
+    }
+
+    /**
+     * @return the socket send buffer size in bytes, 0 for the OS default
+     */
+    public int getHttpSendBufferSize() {
+        return Math.max(0, getIntProperty("http_send_buffer_kib", DEFAULT_HTTP_SEND_BUFFER_KIB)) * 1024;
+    }
+
+    /**
+     * @param kibibytes the socket send buffer size in KiB, 0 for the OS default
+     */
+    public void setHttpSendBufferKib(int kibibytes) {
+        mainProp.setProperty("http_send_buffer_kib", String.valueOf(Math.max(0, kibibytes)));
+    }
+
+    /**
+     * @return the connect timeout in milliseconds, the setting is stored in seconds
+     */
+    public int getHttpConnectTimeout() {
+        return Math.max(0, getIntProperty("http_connect_timeout", 20)) * 1000;
+    }
+
+    public void setHttpConnectTimeout(int seconds) {
+        mainProp.setProperty("http_connect_timeout", String.valueOf(Math.max(0, seconds)));
+    }
+
+    /**
+     * @return the read timeout in milliseconds, the setting is stored in seconds
+     */
+    public int getHttpReadTimeout() {
+        return Math.max(0, getIntProperty("http_read_timeout", 60)) * 1000;
+    }
+
+    public void setHttpReadTimeout(int seconds) {
+        mainProp.setProperty("http_read_timeout", String.valueOf(Math.max(0, seconds)));
+    }
+
+    /**
+     * @return the upload bandwidth limit in kbit/s when no rule in the bandwidth schedule matches, 0 for unlimited
+     */
+    public int getBandwidthLimit() {
+        return Math.max(0, getIntProperty("bandwidth_limit", 0));
+    }
+
+    public void setBandwidthLimit(int kbitPerSecond) {
+        mainProp.setProperty("bandwidth_limit", String.valueOf(Math.max(0, kbitPerSecond)));
+    }
+
+    /**
+     * @return the rules of the bandwidth schedule, see BandwidthSchedule for the format
+     */
+    public String getBandwidthSchedule() {
+        return mainProp.getProperty("bandwidth_schedule");
+    }
+
+    public void setBandwidthSchedule(String schedule) {
+        mainProp.setProperty("bandwidth_schedule", schedule);
+    }
+
+    /**
+     * @return the number of API quota units that can be used per day
+     */
+    public int getQuotaDailyLimit() {
+        return Math.max(0, getIntProperty("quota_daily_limit", 10000));
+    }
+
+    public void setQuotaDailyLimit(int units) {
+        mainProp.setProperty("quota_daily_limit", String.valueOf(Math.max(0, units)));
+    }
+
+    /**
+     * @return the time in epoch milliseconds uploads should wait until because the daily quota is used, 0 if not waiting
+     */
+    public long getQuotaParkedUntil() {
+        try {
+            return Long.parseLong(mainProp.getProperty("quota_parked_until"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void setQuotaParkedUntil(long epochMillis) {
+        mainProp.setProperty("quota_parked_until", String.valueOf(epochMillis));
+    }
+
+    /**
+     * @return the number of seconds a file in a watched folder must keep the same size before it is uploaded
+     */
+    public int getWatchStableSeconds() {
+        return Math.max(1, getIntProperty("watch_stable_seconds", 15));
+    }
+
+    public void setWatchStableSeconds(int seconds) {
+        mainProp.setProperty("watch_stable_seconds", String.valueOf(Math.max(1, seconds)));
+    }
+
+    /**
+     * @return the root URL of a stand-in for the Youtube API (like a LocalApiServer) with a / at the end, or a empty
+     * string to use the real API
+     */
+    public String getApiRootUrl() {
+        String rootUrl = mainProp.getProperty("api_root_url", "").trim();
+        if (!rootUrl.isEmpty() && !rootUrl.endsWith("/")) {
+            rootUrl += "/";
+        }
+        return rootUrl;
+    }
+
+    public void setApiRootUrl(String rootUrl) {
+        mainProp.setProperty("api_root_url", rootUrl == null ? "" : rootUrl.trim());
+    }
+
+    /**
+     * @return how often a snapshot of the upload metrics is written to the metrics file in seconds, 0 if it is
+     * turned off
+     */
+    public int getMetricsIntervalSeconds() {
+        return Math.max(0, getIntProperty("metrics_interval_seconds", 60));
+    }
+
+    public void setMetricsIntervalSeconds(int seconds) {
+        mainProp.setProperty("metrics_interval_seconds", String.valueOf(Math.max(0, seconds)));
+    }
+
+    /**
+     * @param prop name of a property with a integer value
+     * @param defaultValue value to return if the property is missing or not a integer
+     * @return the value of the property
+     */
+    private int getIntProperty(String prop, int defaultValue) {
+        try {
+            return Integer.parseInt(mainProp.getProperty(prop));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static final String CHUNK_SIZE = "chunk_size_";
+
+    /**
+     * @param networkName a name for the network, letters that are not allowed in property names is replaced
+     * @return the last chunk size that worked well on networkName or -1 if there is none
+     */
+    public int getChunkSize(String networkName) {
+        try {
+            return Integer.parseInt(mainProp.getProperty(CHUNK_SIZE + cleanPropertyName(networkName), "-1"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void setChunkSize(String networkName, int chunkSize) {
+        mainProp.setProperty(CHUNK_SIZE + cleanPropertyName(networkName), String.valueOf(chunkSize));
+    }
+
+    private String cleanPropertyName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
     private static final String WIN_LOC = "window_location_";
     private static final String WIN_SIZE = "window_size_";
 
@@ -349,6 +611,136 @@ public enum ConfigManager {
         return playlistString;
     }
 
+    // Quota ledger
+
+    /**
+     * Saves the API quota used today
+     * @param ledger the quota ledger as a string
+     */
+    public void saveQuotaLedger(String ledger) {
+        try {
+            FileUtils.writeAll(QUOTA_LEDGER_FILE, ledger);
+        } catch (IOException e) {
+            System.err.println("Could not save the quota ledger to file");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the saved API quota usage
+     * @return the quota ledger as a string, or null if it has not been saved or could not be read
+     */
+    public String loadQuotaLedger() {
+        if (!Files.exists(Paths.get(QUOTA_LEDGER_FILE))) {
+            return null;
+        }
+        try {
+            return FileUtils.readAll(QUOTA_LEDGER_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not read the quota ledger file");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Upload index
+
+    /**
+     * Saves the index of uploaded files
+     * @param index the index, one uploaded file per line
+     */
+    public void saveUploadIndex(String index) {
+        try {
+            FileUtils.writeAll(UPLOAD_INDEX_FILE, index);
+        } catch (IOException e) {
+            System.err.println("Could not save the upload index to file");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the index of uploaded files
+     * @return a ArrayList with one uploaded file per element, or null if there is no index
+     */
+    public ArrayList<String> loadUploadIndex() {
+        if (!Files.exists(Paths.get(UPLOAD_INDEX_FILE))) {
+            return null;
+        }
+        try {
+            return FileUtils.readAllLines(UPLOAD_INDEX_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not read the upload index file");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Watch folders
+
+    /**
+     * Saves the folders that is watched for new videos and the preset used for each of them
+     * @param watchFolders the watch folders, one folder per line
+     */
+    public void saveWatchFolders(String watchFolders) {
+        try {
+            FileUtils.writeAll(WATCH_FOLDERS_FILE, watchFolders);
+        } catch (IOException e) {
+            System.err.println("Could not save the watch folders to file");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the folders that is watched for new videos
+     * @return a ArrayList with one watch folder per element, or null if no watch folders has been saved
+     */
+    public ArrayList<String> loadWatchFolders() {
+        if (!Files.exists(Paths.get(WATCH_FOLDERS_FILE))) {
+            return null;
+        }
+        try {
+            return FileUtils.readAllLines(WATCH_FOLDERS_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not read the watch folders file");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Upload metrics
+
+    /**
+     * Appends a snapshot of the upload metrics to the metrics file. When the file is larger than
+     * METRICS_FILE_MAX_SIZE it is renamed to "metrics.old" (replacing the previous old file) and a new file is started,
+     * so the file does not grow forever but always has at least the last week or so of snapshots.
+     * The file is also rolled over the same way if its first line is not header, when a new version has added or
+     * removed columns, so every line in the file matches the header at the top of it.
+     * @param header the column names, written first in a new file
+     * @param line one snapshot, without line break
+     */
+    public synchronized void appendMetrics(String header, String line) {
+        Path metricsPath = Paths.get(METRICS_FILE);
+        try {
+            if (Files.exists(metricsPath) && (Files.size(metricsPath) > METRICS_FILE_MAX_SIZE ||
+                    !header.equals(metricsFileHeader) && !header.equals(readFirstLine(metricsPath)))) {
+                Files.move(metricsPath, Paths.get(METRICS_FILE + ".old"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            metricsFileHeader = header;
+            String data = Files.exists(metricsPath) ? line + "\n" : header + "\n" + line + "\n";
+            Files.write(metricsPath, data.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not write to the metrics file");
+            e.printStackTrace();
+        }
+    }
+
+    private static String readFirstLine(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return reader.readLine();
+        }
+    }
+
     // Waiting Uploads
 
     /**
@@ -414,6 +806,98 @@ public enum ConfigManager {
         }
     }
 
+    // Upload sessions
+
+    /**
+     * Saves information about a resumable upload session so the upload can be resumed after a restart
+     * @param sessionName name of the session, must be valid as a file name
+     * @param sessionData the session information
+     */
+    public void saveUploadSession(String sessionName, String sessionData) {
+        try {
+            FileUtils.writeAll(UPLOAD_SESSION_DIR + "/" + sessionName, sessionData);
+        } catch (IOException e) {
+            System.err.println("Failed saving upload session \"" + sessionName + "\"");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads information about a resumable upload session
+     * @param sessionName name of the session
+     * @return the saved session information or null if there is no session named sessionName
+     */
+    public String loadUploadSession(String sessionName) {
+        if (!Files.exists(Paths.get(UPLOAD_SESSION_DIR + "/" + sessionName))) {
+            return null;
+        }
+        try {
+            return FileUtils.readAll(UPLOAD_SESSION_DIR + "/" + sessionName);
+        } catch (IOException e) {
+            System.err.println("Error loading upload session \"" + sessionName + "\"");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a saved upload session
+     * @param sessionName name of the session
+     */
+    public void deleteUploadSession(String sessionName) {
+        try {
+            Files.deleteIfExists(Paths.get(UPLOAD_SESSION_DIR + "/" + sessionName));
+        } catch (IOException e) {
+            System.err.println("Failed to delete upload session \"" + sessionName + "\"");
+        }
+    }
+
+    // Retry state
+
+    /**
+     * Saves how many times a failed upload has been retried and when it should be tried again
+     * @param name name of the upload, must be valid as a file name
+     * @param retryState the retry information
+     */
+    public void saveRetryState(String name, String retryState) {
+        try {
+            FileUtils.writeAll(RETRY_STATE_DIR + "/" + name, retryState);
+        } catch (IOException e) {
+            System.err.println("Failed saving retry state \"" + name + "\"");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the retry information of a upload
+     * @param name name of the upload
+     * @return the saved retry information or null if the upload has not failed
+     */
+    public String loadRetryState(String name) {
+        if (!Files.exists(Paths.get(RETRY_STATE_DIR + "/" + name))) {
+            return null;
+        }
+        try {
+            return FileUtils.readAll(RETRY_STATE_DIR + "/" + name);
+        } catch (IOException e) {
+            System.err.println("Error loading retry state \"" + name + "\"");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the retry information of a upload
+     * @param name name of the upload
+     */
+    public void deleteRetryState(String name) {
+        try {
+            Files.deleteIfExists(Paths.get(RETRY_STATE_DIR + "/" + name));
+        } catch (IOException e) {
+            System.err.println("Failed to delete retry state \"" + name + "\"");
+        }
+    }
+
     // Categories
 
     /**
@@ -5,8 +5,16 @@ public class Constants {
     public static final String AUTH_DIR = DATA_DIR + "/.auth";
     public static final String PRESET_DIR = DATA_DIR + "/presets";
     public static final String UPLOAD_DIR = DATA_DIR + "/waiting uploads";
+    public static final String UPLOAD_SESSION_DIR = DATA_DIR + "/upload sessions";
+    public static final String RETRY_STATE_DIR = DATA_DIR + "/retry state";
     public static final String PLAYLIST_FILE = DATA_DIR + "/playlist";
+    public static final String QUOTA_LEDGER_FILE = DATA_DIR + "/quota ledger";
+    public static final String UPLOAD_INDEX_FILE = DATA_DIR + "/upload index";
+    public static final String WATCH_FOLDERS_FILE = DATA_DIR + "/watch folders";
+    public static final String METRICS_FILE = DATA_DIR + "/metrics";
     public static final String CATEGORIES_FILE = DATA_DIR + "/categories";
+    public static final String UPLOAD_JOURNAL_FILE = DATA_DIR + "/upload journal";
+    public static final String THUMBNAIL_CACHE_DIR = DATA_DIR + "/thumbnail cache";
 
     public static final String BUTTON_EDIT = "_buttonEdit";
     public static final String BUTTON_SAVE = "_buttonSave";
@@ -17,9 +25,10 @@ public class Constants {
     public static final String BUTTON_FINISHED_UPLOAD = "_buttonFinishedUpload";
     public static final String BUTTON_RESET = "_buttonReset";
     public static final String BUTTON_CLONE = "_buttonClone";
+    public static final String BUTTON_UPLOAD_NEXT = "_buttonUploadNext";
 
     public static final String DEFAULT_LOCALE = "default (english)";
 
     public static final WindowDimensionsRestriction SETTINGS_WINDOW_DIMENSIONS_RESTRICTION =
-            new WindowDimensionsRestriction(500, 500, 500, 500);
+            new WindowDimensionsRestriction(500, 500, 800, 800);
 }
@@ -1,5 +1,8 @@
 package io.github.stekeblad.videouploader.utils;
 
+import io.github.stekeblad.videouploader.youtube.PreflightValidator;
+import io.github.stekeblad.videouploader.youtube.ThumbnailNormalizer;
+import javafx.application.Platform;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Pair;
@@ -9,12 +12,11 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -24,17 +26,14 @@ import java.util.jar.JarFile;
  */
 public class FileUtils {
 
-    private static final String VIDEO_FILE_FORMAT = "video/";
-
     /**
-     * Thumbnail chooser dialog. Only allows files of the specified types
-     * to be selected and with a configurable max allowed file size
-     * Displays a non-blocking dialog if the selected file is to large, showing the max allowed size and the size of the
-     * selected file, and returns null.
+     * Thumbnail chooser dialog. Only allows files of the specified types to be selected.
+     * If the selected file is to large it is converted to a smaller jpg by ThumbnailNormalizer in the background, the
+     * converted file is used when the thumbnail is uploaded.
      *
      * @param allowedFormats a List of allowed file formats or null for all file formats
-     * @param maxFileSize The max allowed file size in bytes, for no limit pass Long.Max_VALUE
-     * @return A file object for the selected file, null if no file is selected or the selected file is to large.
+     * @param maxFileSize Files larger than this many bytes is converted, to never convert pass Long.Max_VALUE
+     * @return A file object for the selected file, null if no file is selected.
      * @throws IllegalArgumentException if maxFileSize is less than or equal to zero
      */
     public static File pickThumbnail(List<String> allowedFormats, long maxFileSize) {
@@ -48,68 +47,84 @@ public class FileUtils {
         }
         Stage fileChooserStage = new Stage();
         File thumbnail = fileChooser.showOpenDialog(fileChooserStage);
-        if (thumbnail != null) {
-            if (thumbnail.length() > maxFileSize) {
-                AlertUtils.simpleClose("Warning", "Image to large, the max size is " +
-                        BigDecimal.valueOf((double) maxFileSize / (1024 * 1024)).setScale(3, RoundingMode.HALF_UP) + "MB" +
-                        "\n the chosen file is " + BigDecimal.valueOf((double) thumbnail.length() / (1024 * 1024)).setScale(3, RoundingMode.HALF_UP) + "MB").show();
-                return null;
-            }
-            return thumbnail;
+        if (thumbnail != null && thumbnail.length() > maxFileSize) {
+            // Started now so it is ready when the upload needs it, errors is shown by the pre-flight check
+            ThumbnailNormalizer.INSTANCE.normalize(thumbnail);
         }
-        return null;
+        return thumbnail;
     }
 
     /**
      * Video file chooser dialog. Allows multiple files to be selected and filters out all files witch does not have a mimeType
      * of "video/*". If one or more files was filtered out a non-blocking dialog is displayed telling some files was ignored and why.
-     * (to large or invalid file type)
+     * (to large or invalid file type). The files is checked in parallel by PreflightValidator in the background so
+     * the UI is not blocked while the files is read, onPicked is called when they are checked.
      *
      * @param maxFileSize The max allowed file size in bytes, for no limit pass Long.Max_VALUE
-     * @return A List of File with all files that was select and not filtered out.
+     * @param onPicked called on the FX thread with a List of File with all files that was select and not filtered out,
+     *                 not called if no files was selected
      * @throws IllegalArgumentException if maxFileSize is less than or equal to zero
      */
-    public static List<File> pickVideos(long maxFileSize) {
+    public static void pickVideos(long maxFileSize, Consumer<List<File>> onPicked) {
         if (maxFileSize < 1)
             throw new IllegalArgumentException("Max file size can't be a negative value or zero");
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Choose video files to upload");
         Stage fileChooserStage = new Stage();
         List<File> chosenFiles = fileChooser.showOpenMultipleDialog(fileChooserStage);
-        List<File> filesToUpload = new ArrayList<>();
-        if (chosenFiles != null) {
-            List<Pair<String, String>> skippedFiles = new ArrayList<>();
-            for (File chosenFile : chosenFiles) {
-                try { // Check file MIME to see if it is a video file
-                    String contentType = Files.probeContentType(Paths.get(chosenFile.toURI()));
-                    if (contentType == null || !contentType.startsWith(VIDEO_FILE_FORMAT)) {
-                        skippedFiles.add(new Pair<>(chosenFile.getName(), "Invalid file type"));
-                    } else if (chosenFile.length() > maxFileSize) {
-                        skippedFiles.add(new Pair<>(chosenFile.getName(), "Too large"));
-                    } else {
-                        filesToUpload.add(chosenFile);
+        if (chosenFiles == null) {
+            return;
+        }
+        // Checks the MIME type and size of all files in parallel, only video files is allowed
+        PreflightValidator.INSTANCE.validateFilesAsync(chosenFiles, maxFileSize).whenComplete((reports, error) ->
+                Platform.runLater(() -> {
+                    if (error != null) {
+                        AlertUtils.exceptionDialog("Invalid files", "The selected files could not be checked", error);
+                        return;
                     }
-                } catch (Exception e) {
-                    skippedFiles.add(new Pair<>(chosenFile.getName(), "Could not read file"));
-                }
+                    onPicked.accept(showSkippedVideos(reports, maxFileSize));
+                }));
+    }
+
+    /**
+     * Shows a dialog with the files that has errors, if any
+     * @return the files without errors
+     */
+    private static List<File> showSkippedVideos(List<PreflightValidator.Report> reports, long maxFileSize) {
+        List<File> filesToUpload = new ArrayList<>();
+        List<Pair<String, String>> skippedFiles = new ArrayList<>();
+        for (PreflightValidator.Report report : reports) {
+            if (report.hasErrors()) {
+                skippedFiles.add(new Pair<>(report.getVideoFile().getName(), firstError(report)));
+            } else {
+                filesToUpload.add(report.getVideoFile());
             }
-            if (!skippedFiles.isEmpty()) {
-                StringBuilder errorString = new StringBuilder("One or more of the selected files was not added. " +
-                        "It may have failed because only video files is allowed");
-                if (maxFileSize != Long.MAX_VALUE)
-                    errorString.append(", the max allowed file size is ")
-                            .append(BigDecimal.valueOf((double) maxFileSize / (1024 * 1024)).setScale(3, RoundingMode.HALF_UP))
-                            .append("MB");
-                errorString.append(" or they could not be read.");
-                for (Pair<String, String> file : skippedFiles) {
-                    errorString.append(System.lineSeparator()).append(file.getKey()).append(" - ").append(file.getValue());
-                }
-                AlertUtils.simpleClose_longContent("Invalid files", errorString.toString());
+        }
+        if (!skippedFiles.isEmpty()) {
+            StringBuilder errorString = new StringBuilder("One or more of the selected files was not added. " +
+                    "It may have failed because only video files is allowed");
+            if (maxFileSize != Long.MAX_VALUE)
+                errorString.append(", the max allowed file size is ")
+                        .append(BigDecimal.valueOf((double) maxFileSize / (1024 * 1024)).setScale(3, RoundingMode.HALF_UP))
+                        .append("MB");
+            errorString.append(" or they could not be read.");
+            for (Pair<String, String> file : skippedFiles) {
+                errorString.append(System.lineSeparator()).append(file.getKey()).append(" - ").append(file.getValue());
             }
+            AlertUtils.simpleClose_longContent("Invalid files", errorString.toString());
         }
         return filesToUpload;
     }
 
+    private static String firstError(PreflightValidator.Report report) {
+        for (PreflightValidator.Problem problem : report.getProblems()) {
+            if (problem.getSeverity() == PreflightValidator.Severity.ERROR) {
+                return problem.getMessage();
+            }
+        }
+        return "";
+    }
+
     /**
      * Returns a list of names of all files and directories in a resource directory (not recursive)
      * Most important part of this method is that it needs to be done in different ways if the program is executed
@@ -0,0 +1,438 @@
+package io.github.stekeblad.videouploader.utils.background;
+
+import io.github.stekeblad.videouploader.tagProcessing.TagProcessorChain;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.youtube.DuplicateIndex;
+import io.github.stekeblad.videouploader.youtube.PreflightValidator;
+import io.github.stekeblad.videouploader.youtube.UploadDetails;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches folders for new video files and applies the preset of the folder to them, the same way as the apply preset
+ * button does. A file is only used when its size and modification time has not changed for a while (see
+ * ConfigManager.getWatchStableSeconds()) and it can be opened for reading, so files that are still being recorded or
+ * copied are not uploaded. Files that are found at the same time in the same folder are handled as one batch, in name
+ * order, so the automatic numbering of the preset follows the file names. Files that already exists when the watching
+ * starts is handled like new files, so files that was copied while the program was closed is also uploaded. Files that
+ * has been uploaded before (see DuplicateIndex) are skipped. If the batch of a folder can not be made, like when its
+ * preset has been removed, the files are tried again a minute later.
+ *
+ * The folders and their presets are saved by ConfigManager, one folder per line as "preset name:next auto number:path".
+ * The next auto number is saved after every batch so the numbering continues after a restart.
+ * The watching is done on a background thread and the batches are given to the callback on a second background thread.
+ * All public methods are threadsafe.
+ */
+public class WatchFolderIngester {
+    private static final long CHECK_INTERVAL_MS = 1000;
+    private static final long RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Consumer<List<UploadDetails>> enqueue;
+    private final Map<Path, WatchFolder> watchFolders = new ConcurrentHashMap<>();
+    // All saved folders, also those that could not be watched, so they are not lost when the settings are saved
+    private volatile List<WatchFolder> savedFolders = Collections.emptyList();
+    // Files that has not been stable long enough yet
+    private final Map<Path, Candidate> candidates = new ConcurrentHashMap<>();
+    // Files that has been given to the callback or skipped, removed again when the file is deleted
+    private final Set<Path> known = ConcurrentHashMap.newKeySet();
+    private final long stableNanos;
+    // Only used by the checker thread
+    private long lastPrune = System.nanoTime();
+    private WatchService watchService = null;
+    private Thread watchThread = null;
+    private ScheduledExecutorService checker = null;
+
+    /**
+     * A watched folder and the preset to use for the videos in it
+     */
+    public static class WatchFolder {
+        private final Path folder;
+        private final String presetName;
+        private volatile int nextAutoNum;
+
+        public WatchFolder(Path folder, String presetName, int nextAutoNum) {
+            this.folder = folder.toAbsolutePath().normalize();
+            this.presetName = presetName;
+            this.nextAutoNum = nextAutoNum;
+        }
+
+        /**
+         * @param line a line in the format of toString()
+         * @return the watch folder, or null if line is not valid
+         */
+        public static WatchFolder fromString(String line) {
+            // Preset names can not contain ':' as they are used as file names, the path last as it can
+            String[] parts = line.split(":", 3);
+            if (parts.length != 3 || parts[0].isEmpty() || parts[2].isEmpty()) {
+                return null;
+            }
+            try {
+                return new WatchFolder(Paths.get(parts[2]), parts[0], Integer.parseInt(parts[1]));
+            } catch (NumberFormatException | InvalidPathException e) {
+                return null;
+            }
+        }
+
+        public Path getFolder() {
+            return folder;
+        }
+
+        public String getPresetName() {
+            return presetName;
+        }
+
+        /**
+         * @return the automatic numbering value to use for the next video in this folder
+         */
+        public int getNextAutoNum() {
+            return nextAutoNum;
+        }
+
+        @Override
+        public String toString() {
+            return presetName + ":" + nextAutoNum + ":" + folder;
+        }
+    }
+
+    /**
+     * A new file that is waiting to get a stable size
+     */
+    private static class Candidate {
+        private long size = -1;
+        private long modified = -1;
+        private long stableSince;
+        // System.nanoTime() before which the file is not tried again after a failed batch, 0 if it has not failed
+        private long retryAt = 0;
+    }
+
+    /**
+     * @param enqueue called with the details of the new videos, one list per folder and batch in the order the
+     *                videos should be uploaded. Called on a background thread
+     */
+    public WatchFolderIngester(Consumer<List<UploadDetails>> enqueue) {
+        this.enqueue = enqueue;
+        this.stableNanos = TimeUnit.SECONDS.toNanos(ConfigManager.INSTANCE.getWatchStableSeconds());
+    }
+
+    /**
+     * @return the watch folders saved in the settings, or a empty list if there are none
+     */
+    public static List<WatchFolder> loadWatchFolders() {
+        List<WatchFolder> folders = new ArrayList<>();
+        List<String> lines = ConfigManager.INSTANCE.loadWatchFolders();
+        if (lines != null) {
+            for (String line : lines) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                WatchFolder folder = WatchFolder.fromString(line);
+                if (folder == null) {
+                    System.err.println("Ignoring invalid watch folder: " + line);
+                } else {
+                    folders.add(folder);
+                }
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Starts watching the folders saved in the settings. Does nothing if it is already started.
+     * @return the number of folders that is watched
+     * @throws IOException if the watching could not be started
+     */
+    public synchronized int start() throws IOException {
+        if (watchService != null) {
+            return watchFolders.size();
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        savedFolders = loadWatchFolders();
+        for (WatchFolder watchFolder : savedFolders) {
+            try {
+                watchFolder.getFolder().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                watchFolders.put(watchFolder.getFolder(), watchFolder);
+                // Files that was added while the program was closed, or is still being copied. The ones that has
+                // been uploaded before is skipped by ingest()
+                for (Path file : listFiles(watchFolder.getFolder())) {
+                    addCandidate(file);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not watch the folder \"" + watchFolder.getFolder() + "\"");
+                e.printStackTrace();
+            }
+        }
+        if (watchFolders.isEmpty()) {
+            watchService.close();
+            watchService = null;
+            return 0;
+        }
+        WatchService service = watchService;
+        watchThread = new Thread(() -> watch(service), "Watch folders");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Watch folders checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkCandidates, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        return watchFolders.size();
+    }
+
+    /**
+     * Stops watching the folders, files that are waiting to become stable are forgotten
+     */
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        checker.shutdownNow();
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        watchService = null;
+        watchFolders.clear();
+        candidates.clear();
+    }
+
+    /**
+     * @return the number of new files that is waiting for their size to stop changing
+     */
+    public int getWaitingCount() {
+        return candidates.size();
+    }
+
+    /**
+     * Runs on the watch thread, only records which files has changed. Reading the size of the files is done by the
+     * checker so a burst of events is handled fast and the event queue does not overflow.
+     */
+    private void watch(WatchService service) {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path folder = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // Too many events, some was lost. Look at all files in the folder instead
+                    for (Path file : listFiles(folder)) {
+                        addCandidate(file);
+                    }
+                    continue;
+                }
+                addCandidate(folder.resolve((Path) event.context()));
+            }
+            if (!key.reset()) {
+                System.err.println("The watch folder \"" + folder + "\" can no longer be watched");
+                watchFolders.remove(folder);
+            }
+        }
+    }
+
+    private void addCandidate(Path file) {
+        if (!known.contains(file)) {
+            candidates.computeIfAbsent(file, f -> new Candidate());
+        }
+    }
+
+    /**
+     * Runs on the checker thread, finds the files that has been stable long enough and gives them to the callback
+     */
+    private void checkCandidates() {
+        long now = System.nanoTime();
+        pruneKnown(now);
+        Map<Path, List<File>> ready = new HashMap<>();
+        for (Map.Entry<Path, Candidate> entry : candidates.entrySet()) {
+            Path file = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (candidate.retryAt != 0 && now - candidate.retryAt < 0) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                candidates.remove(file); // deleted or renamed, a rename is a new event
+                continue;
+            }
+            if (!attributes.isRegularFile() || isTemporary(file)) {
+                candidates.remove(file);
+                continue;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() != candidate.size || modified != candidate.modified) {
+                candidate.size = attributes.size();
+                candidate.modified = modified;
+                candidate.stableSince = now;
+            } else if (now - candidate.stableSince >= stableNanos && canRead(file)) {
+                // Stays a candidate until it is handed off so a failed batch does not lose it
+                ready.computeIfAbsent(file.getParent(), folder -> new ArrayList<>()).add(file.toFile());
+            }
+        }
+        for (Map.Entry<Path, List<File>> folderFiles : ready.entrySet()) {
+            WatchFolder watchFolder = watchFolders.get(folderFiles.getKey());
+            if (watchFolder == null) {
+                // No longer watched
+                for (File file : folderFiles.getValue()) {
+                    candidates.remove(file.toPath());
+                }
+                continue;
+            }
+            try {
+                ingest(watchFolder, folderFiles.getValue());
+            } catch (Exception e) {
+                System.err.println("Failed to add the new videos in \"" + watchFolder.getFolder() +
+                        "\", trying again in a minute");
+                e.printStackTrace();
+                for (File file : folderFiles.getValue()) {
+                    Candidate candidate = candidates.get(file.toPath());
+                    if (candidate != null) {
+                        candidate.retryAt = now + RETRY_NANOS;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the known files that has been deleted so the set does not grow forever, a new file with the same name
+     * is then a new candidate. Runs on the checker thread.
+     */
+    private void pruneKnown(long now) {
+        if (now - lastPrune < PRUNE_INTERVAL_NANOS) {
+            return;
+        }
+        lastPrune = now;
+        known.removeIf(file -> !Files.exists(file));
+    }
+
+    /**
+     * Marks files as handled, they will not be candidates again unless they are deleted and created again
+     */
+    private void markKnown(Collection<File> files) {
+        for (File file : files) {
+            known.add(file.toPath());
+            candidates.remove(file.toPath());
+        }
+    }
+
+    /**
+     * Applies the preset of watchFolder to the files and gives them to the callback. The files are only marked as
+     * known when they have been skipped or handed off, if this throws they are still candidates.
+     */
+    private void ingest(WatchFolder watchFolder, List<File> files) throws Exception {
+        files.sort(Comparator.comparing(File::getName));
+        List<File> videoFiles = new ArrayList<>();
+        List<File> skipped = new ArrayList<>();
+        for (File file : files) {
+            if (!isVideo(file)) {
+                skipped.add(file);
+                continue;
+            }
+            DuplicateIndex.Entry duplicate = DuplicateIndex.INSTANCE.findDuplicate(file);
+            if (duplicate != null) {
+                System.err.println("Skipping \"" + file.getAbsolutePath() + "\", it looks like it has been uploaded " +
+                        "before as " + duplicate.getVideoUrl());
+                skipped.add(file);
+                continue;
+            }
+            videoFiles.add(file);
+        }
+        markKnown(skipped);
+        if (videoFiles.isEmpty()) {
+            return;
+        }
+        String presetString = ConfigManager.INSTANCE.getPresetString(watchFolder.getPresetName());
+        if (presetString == null) {
+            throw new Exception("The preset \"" + watchFolder.getPresetName() + "\" does not exist");
+        }
+        TagProcessorChain tagProcessorChain = new TagProcessorChain(UploadDetails.fromString(presetString),
+                watchFolder.getNextAutoNum());
+        List<UploadDetails> batch = new ArrayList<>();
+        for (File videoFile : videoFiles) {
+            batch.add(tagProcessorChain.apply(videoFile));
+        }
+        watchFolder.nextAutoNum += videoFiles.size();
+        saveWatchFolders();
+        enqueue.accept(batch);
+        markKnown(videoFiles);
+    }
+
+    private void saveWatchFolders() {
+        StringBuilder builder = new StringBuilder();
+        for (WatchFolder watchFolder : savedFolders) {
+            builder.append(watchFolder.toString()).append("\n");
+        }
+        ConfigManager.INSTANCE.saveWatchFolders(builder.toString());
+    }
+
+    /**
+     * @return all files in folder, not recursive
+     */
+    private static List<Path> listFiles(Path folder) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not list the files in \"" + folder + "\"");
+            e.printStackTrace();
+        }
+        return files;
+    }
+
+    /**
+     * @return true if file looks like a file a program is still writing to and will rename when it is done
+     */
+    private static boolean isTemporary(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(".") || name.endsWith("~") || name.endsWith(".tmp") || name.endsWith(".part");
+    }
+
+    /**
+     * @return true if the file can be opened for reading, on some systems a file can not be opened while it is written
+     */
+    private static boolean canRead(Path file) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Same check as when picking videos, with a fallback on the file extension for systems that does not know the
+     * type of video files
+     */
+    private static boolean isVideo(File file) {
+        try {
+            String contentType = Files.probeContentType(file.toPath());
+            if (contentType != null) {
+                return contentType.startsWith("video/");
+            }
+        } catch (IOException e) {
+            // check the extension
+        }
+        return PreflightValidator.hasVideoExtension(file);
+    }
+}
@@ -11,6 +11,7 @@ import io.github.stekeblad.videouploader.utils.state.VideoPresetState;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.FrameExtractor;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
 import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
@@ -430,6 +431,14 @@ public class PresetsWindowController {
                     transPresetWin.getString("diag_presetNeedName_full")).show();
             return;
         }
+        // make sure the thumbnail frame can be read, it is optional
+        try {
+            FrameExtractor.Position.parse(videoPresets.get(selected).getThumbnailFrame());
+        } catch (IllegalArgumentException e) {
+            AlertUtils.simpleClose(transPresetWin.getString("diag_invalidThumbnailFrame_short"),
+                    transPresetWin.getString("diag_invalidThumbnailFrame_full")).show();
+            return;
+        }
         // Test if the preset name has been changed and now is equal to another preset, if so abort saving
         int otherPreset = -1;
         for (int i = 0; i < videoPresets.size(); i++) {
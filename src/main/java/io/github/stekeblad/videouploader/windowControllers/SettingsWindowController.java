@@ -1,5 +1,6 @@
 package io.github.stekeblad.videouploader.windowControllers;
 
+import io.github.stekeblad.videouploader.jfxExtension.IWindowController;
 import io.github.stekeblad.videouploader.utils.AlertUtils;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.RecursiveDirectoryDeleter;
@@ -8,15 +9,14 @@ import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsMeta;
+import io.github.stekeblad.videouploader.youtube.BandwidthGovernor;
+import io.github.stekeblad.videouploader.youtube.BandwidthSchedule;
+import io.github.stekeblad.videouploader.youtube.UploadQueue;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
-import javafx.scene.control.Button;
-import javafx.scene.control.ButtonType;
-import javafx.scene.control.ChoiceBox;
-import javafx.scene.control.Label;
+import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.GridPane;
-import javafx.stage.WindowEvent;
 
 import java.io.File;
 import java.io.IOException;
@@ -24,7 +24,7 @@ import java.nio.file.Files;
 
 import static io.github.stekeblad.videouploader.utils.Constants.DATA_DIR;
 
-public class SettingsWindowController {
+public class SettingsWindowController implements IWindowController {
     public GridPane settingsWindow;
     public Label label_langSelect;
     public Label label_links;
@@ -35,6 +35,26 @@ public class SettingsWindowController {
     public Button btn_translationDetails;
     public Label label_resetSettings;
     public Button btn_clearStoredData;
+    public Label label_network;
+    public Label label_uploadLanes;
+    public TextField txt_uploadLanes;
+    public Label label_maxConnections;
+    public TextField txt_maxConnections;
+    public CheckBox check_keepAlive;
+    public Label label_sendBuffer;
+    public TextField txt_sendBuffer;
+    public Label label_connectTimeout;
+    public TextField txt_connectTimeout;
+    public Label label_readTimeout;
+    public TextField txt_readTimeout;
+    public Label label_bandwidthLimit;
+    public TextField txt_bandwidthLimit;
+    public Label label_bandwidthSchedule;
+    public TextField txt_bandwidthSchedule;
+    public Label label_queueOrder;
+    public ChoiceBox<String> choice_queueOrder;
+    public Label label_quotaLimit;
+    public TextField txt_quotaLimit;
 
     private TranslationsMeta translationsMeta;
     private Translations settingsTrans;
@@ -55,6 +75,35 @@ public class SettingsWindowController {
 
         choice_languages.getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) -> hasDoneChanges = true);
 
+        txt_uploadLanes.setText(String.valueOf(configManager.getUploadLanes()));
+        txt_maxConnections.setText(String.valueOf(configManager.getHttpMaxConnections()));
+        check_keepAlive.setSelected(configManager.getHttpKeepAlive());
+        txt_sendBuffer.setText(String.valueOf(configManager.getHttpSendBufferSize() / 1024));
+        txt_connectTimeout.setText(String.valueOf(configManager.getHttpConnectTimeout() / 1000));
+        txt_readTimeout.setText(String.valueOf(configManager.getHttpReadTimeout() / 1000));
+        txt_bandwidthLimit.setText(String.valueOf(configManager.getBandwidthLimit()));
+        txt_bandwidthSchedule.setText(configManager.getBandwidthSchedule());
+        txt_quotaLimit.setText(String.valueOf(configManager.getQuotaDailyLimit()));
+        // Same order as UploadQueue.Order
+        choice_queueOrder.setItems(FXCollections.observableArrayList(settingsTrans.getString("queueOrder_added"),
+                settingsTrans.getString("queueOrder_shortestFirst"), settingsTrans.getString("queueOrder_deadline")));
+        try {
+            choice_queueOrder.getSelectionModel().select(
+                    UploadQueue.Order.valueOf(configManager.getUploadQueueOrder()).ordinal());
+        } catch (IllegalArgumentException e) {
+            choice_queueOrder.getSelectionModel().select(UploadQueue.Order.ADDED.ordinal());
+        }
+
+        // Only allow numbers in the number fields. The connection pool is created when the program starts
+        onlyNumbers(txt_uploadLanes, false);
+        onlyNumbers(txt_maxConnections, true);
+        check_keepAlive.selectedProperty().addListener((observable, oldValue, newValue) -> hasDoneChanges = true);
+        onlyNumbers(txt_sendBuffer, true);
+        onlyNumbers(txt_connectTimeout, false);
+        onlyNumbers(txt_readTimeout, false);
+        onlyNumbers(txt_bandwidthLimit, false);
+        onlyNumbers(txt_quotaLimit, false);
+
         // F1 for wiki on this window
         settingsWindow.getScene().setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.F1) {
@@ -67,15 +116,64 @@ public class SettingsWindowController {
     /**
      * Executed when the user tries to close the window
      *
-     * @param windowEvent the close window event
+     * @return true if the window can be closed, false if the bandwidth schedule is not valid
      */
-    public void onWindowClose(WindowEvent windowEvent) {
+    public boolean onWindowClose() {
+        // The speed limit is used directly by the uploads in progress
+        int bandwidthLimit = parseOrDefault(txt_bandwidthLimit, configManager.getBandwidthLimit());
+        BandwidthSchedule schedule;
+        try {
+            schedule = BandwidthSchedule.parse(bandwidthLimit, txt_bandwidthSchedule.getText());
+        } catch (IllegalArgumentException e) {
+            AlertUtils.simpleClose(settingsTrans.getString("diag_invalidSchedule_short"),
+                    String.format(settingsTrans.getString("diag_invalidSchedule_full"), e.getMessage())).showAndWait();
+            return false;
+        }
+        BandwidthGovernor.INSTANCE.setSchedule(schedule);
+        configManager.setBandwidthLimit(bandwidthLimit);
+        configManager.setBandwidthSchedule(schedule.getRules());
+
         if (hasDoneChanges) {
             AlertUtils.simpleClose("restart may be required", "For some changes to take effect you may need to restart the program").showAndWait();
         }
         configManager.setSelectedLanguage(translationsMeta.langNameToLocaleCode(choice_languages.getValue()));
+        configManager.setUploadQueueOrder(
+                UploadQueue.Order.values()[choice_queueOrder.getSelectionModel().getSelectedIndex()].name());
+        configManager.setUploadLanes(Math.max(1, parseOrDefault(txt_uploadLanes, configManager.getUploadLanes())));
+        configManager.setHttpMaxConnections(parseOrDefault(txt_maxConnections, configManager.getHttpMaxConnections()));
+        configManager.setHttpKeepAlive(check_keepAlive.isSelected());
+        configManager.setHttpSendBufferKib(parseOrDefault(txt_sendBuffer, configManager.getHttpSendBufferSize() / 1024));
+        configManager.setHttpConnectTimeout(parseOrDefault(txt_connectTimeout, configManager.getHttpConnectTimeout() / 1000));
+        configManager.setHttpReadTimeout(parseOrDefault(txt_readTimeout, configManager.getHttpReadTimeout() / 1000));
+        configManager.setQuotaDailyLimit(parseOrDefault(txt_quotaLimit, configManager.getQuotaDailyLimit()));
         configManager.saveSettings();
-        // do not consume event, it will prevent the window from closing
+        return true;
+    }
+
+    /**
+     * Removes everything that is not a digit from what is written in textField
+     * @param textField the TextField to only allow numbers in
+     * @param requiresRestart true if changing the value only takes effect after a restart
+     */
+    private void onlyNumbers(TextField textField, boolean requiresRestart) {
+        textField.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue.matches("\\d*")) {
+                textField.setText(newValue.replaceAll("[^\\d]", ""));
+            } else if (requiresRestart) {
+                hasDoneChanges = true;
+            }
+        });
+    }
+
+    /**
+     * @return the number in textField or defaultValue if it is empty or too large
+     */
+    private int parseOrDefault(TextField textField, int defaultValue) {
+        try {
+            return Integer.parseInt(textField.getText());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     public void onGotoMainPageClicked(ActionEvent actionEvent) {
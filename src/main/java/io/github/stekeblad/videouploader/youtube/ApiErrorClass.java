@@ -0,0 +1,71 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The kinds of errors a upload can fail with, decides if and when the upload is tried again
+ */
+public enum ApiErrorClass {
+    /** The connection was lost or timed out, will most likely work later */
+    TRANSIENT_NETWORK,
+    /** Youtube responded with 5xx, will most likely work later */
+    SERVER_ERROR,
+    /** Too many requests in a short time, works again after a while */
+    RATE_LIMITED,
+    /**
+     * The daily quota or the number of videos the channel may upload per day is used, works again when the quota is
+     * reset at midnight Pacific time
+     */
+    QUOTA_EXCEEDED,
+    /** The request, the video or the files is wrong, will fail again until the user changes something */
+    PERMANENT;
+
+    /**
+     * @param error the exception a upload failed with
+     * @return the class of error
+     */
+    public static ApiErrorClass classify(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof GoogleJsonResponseException) {
+            GoogleJsonError details = ((GoogleJsonResponseException) error).getDetails();
+            if (details != null && details.getErrors() != null) {
+                for (GoogleJsonError.ErrorInfo info : details.getErrors()) {
+                    String reason = info.getReason();
+                    if ("quotaExceeded".equals(reason) || "dailyLimitExceeded".equals(reason) ||
+                            "uploadLimitExceeded".equals(reason)) {
+                        return QUOTA_EXCEEDED;
+                    }
+                    if ("rateLimitExceeded".equals(reason) || "userRateLimitExceeded".equals(reason)) {
+                        return RATE_LIMITED;
+                    }
+                }
+            }
+        }
+        if (error instanceof HttpResponseException) {
+            int code = ((HttpResponseException) error).getStatusCode();
+            if (code == 429) {
+                return RATE_LIMITED;
+            }
+            if (code >= 500) {
+                return SERVER_ERROR;
+            }
+            // A response without a status is a connection that was closed before the response was read
+            return code <= 0 ? TRANSIENT_NETWORK : PERMANENT;
+        }
+        if (error instanceof FileNotFoundException) {
+            return PERMANENT;
+        }
+        if (error instanceof IOException) {
+            return TRANSIENT_NETWORK;
+        }
+        return PERMANENT;
+    }
+}
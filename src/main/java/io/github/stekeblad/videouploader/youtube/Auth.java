@@ -1,16 +1,20 @@
 package io.github.stekeblad.videouploader.youtube;
 
+import com.google.api.client.auth.oauth2.BearerToken;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
+import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.YouTubeScopes;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
 
 import java.io.File;
 import java.io.IOException;
@@ -18,31 +22,300 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static io.github.stekeblad.videouploader.utils.Constants.AUTH_DIR;
 
 /**
  * Contains the logic of getting permission to access the user's YouTube account.
+ * The authorization flow, the credential and a YouTube client is created the first time they are needed and then
+ * shared by the entire program. The access token is refreshed in the background a few minutes before it expires so
+ * requests do not need to wait for it. All methods are threadsafe.
+ * If a stand-in for the API is used (see LocalApiServer and the setting api_root_url) all requests are sent to it
+ * with a fake access token and the user is never asked for permission.
  */
 public class Auth {
 
-    public static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+    public static final HttpTransport HTTP_TRANSPORT = HttpTransportFactory.createFromSettings();
     public static final JsonFactory JSON_FACTORY = new JacksonFactory();
+    public static final String APP_NAME = "Stekeblads Video Uploader";
 
+    // Refresh the token this many seconds before it expires
+    private static final long REFRESH_MARGIN = 5 * 60;
+    // Seconds to wait before trying again when the background refresh fails
+    private static final long REFRESH_RETRY_DELAY = 30;
+    private static final String BATCH_URL = "https://www.googleapis.com/batch/youtube/v3";
+    private static final String LOCAL_API_TOKEN = "local-api-token";
+
+    private static GoogleAuthorizationCodeFlow authFlow = null;
+    // Written while holding the class lock, read without it
+    private static volatile Credential credential = null;
+    private static volatile YouTube youTube = null;
+    private static ScheduledExecutorService refresher = null;
+    private static ScheduledFuture<?> scheduledRefresh = null;
+    private static String rootUrl = null; // "" for the real API, read from the settings the first time
+
+    private static volatile long authorizeTime = 0;
+    private static volatile long lastRefreshTime = 0;
+    private static volatile long totalRefreshTime = 0;
+    private static volatile int refreshCount = 0;
+
+    /**
+     * Returns the credential for the user, the user is asked to give permission the first time if it has not been
+     * done before. The same credential is returned every time without locking, the access token is kept fresh by a
+     * background refresh and is only refreshed here if it has already expired (like when the background refresh failed).
+     * @return the credential for the user
+     * @throws IOException if the client secrets could not be read or the authorization failed
+     */
     public static Credential authUser() throws IOException {
-        List<String> scope = new ArrayList<>();
-        scope.add(YouTubeScopes.YOUTUBE_UPLOAD);
-        scope.add(YouTubeScopes.YOUTUBE);
+        Credential ready = credential;
+        if (ready != null && !isExpired(ready)) {
+            return ready;
+        }
+        synchronized (Auth.class) {
+            if (isLocalApi()) {
+                if (credential == null) {
+                    credential = new Credential(BearerToken.authorizationHeaderAccessMethod())
+                            .setAccessToken(LOCAL_API_TOKEN);
+                }
+                return credential;
+            }
+            if (credential == null) {
+                long start = System.currentTimeMillis();
+                LocalServerReceiver localReceiver = new LocalServerReceiver.Builder().setPort(7835).build();
+                Credential authorized = new AuthorizationCodeInstalledApp(getAuthFlow(), localReceiver).authorize("user");
+                authorizeTime = System.currentTimeMillis() - start;
+                Long expiresIn = authorized.getExpiresInSeconds();
+                if (expiresIn == null || expiresIn < REFRESH_MARGIN) {
+                    refresh(authorized);
+                } else {
+                    scheduleRefresh(expiresIn - REFRESH_MARGIN);
+                }
+                // Published when it is ready to be used
+                credential = authorized;
+            } else if (isExpired(credential)) {
+                // Another thread may have refreshed it while this one waited for the lock
+                refresh(credential);
+            }
+            return credential;
+        }
+    }
+
+    /**
+     * @return true if the access token of c has expired, false if it has not or the expiration time is unknown
+     */
+    private static boolean isExpired(Credential c) {
+        Long expiresIn = c.getExpiresInSeconds();
+        return expiresIn != null && expiresIn <= 0;
+    }
+
+    /**
+     * Returns a YouTube client shared by all parts of the program that does not need to customize the requests
+     * @return a YouTube client that uses the user's credential
+     * @throws IOException if the user could not be authorized
+     */
+    public static YouTube getYouTube() throws IOException {
+        YouTube ready = youTube;
+        if (ready != null) {
+            return ready;
+        }
+        synchronized (Auth.class) {
+            // Authorizes the user now so the error is thrown here and not by the first request
+            authUser();
+            if (youTube == null) {
+                youTube = newYouTubeBuilder(Auth::initializeRequest).build();
+            }
+            return youTube;
+        }
+    }
+
+    /**
+     * Creates a builder for a YouTube client that sends its requests to the API in use, the real one or a stand-in.
+     * Use this for all YouTube clients.
+     * @param initializer the initializer for every request, it should call initializeRequest()
+     * @return a builder with the transport, application name and root URL set
+     */
+    public static YouTube.Builder newYouTubeBuilder(HttpRequestInitializer initializer) {
+        return newYouTubeBuilder(HTTP_TRANSPORT, initializer);
+    }
+
+    /**
+     * Same as newYouTubeBuilder(initializer) but with a transport other than the shared one, like a transport from
+     * HttpTransportFactory.createCancellable()
+     * @param transport the transport for the requests
+     * @param initializer the initializer for every request, it should call initializeRequest()
+     * @return a builder with the transport, application name and root URL set
+     */
+    public static YouTube.Builder newYouTubeBuilder(HttpTransport transport, HttpRequestInitializer initializer) {
+        YouTube.Builder builder = new YouTube.Builder(transport, JSON_FACTORY, initializer)
+                .setApplicationName(APP_NAME);
+        if (isLocalApi()) {
+            builder.setRootUrl(getRootUrl());
+        }
+        return builder;
+    }
+
+    /**
+     * @return the URL batch requests is sent to
+     */
+    public static String getBatchUrl() {
+        return isLocalApi() ? getRootUrl() + "batch/youtube/v3" : BATCH_URL;
+    }
+
+    /**
+     * @return the root URL of the stand-in for the API with a / at the end, or a empty string if the real API is used
+     */
+    public static synchronized String getRootUrl() {
+        if (rootUrl == null) {
+            rootUrl = ConfigManager.INSTANCE.getApiRootUrl();
+        }
+        return rootUrl;
+    }
+
+    /**
+     * @return true if requests is sent to a stand-in for the API instead of Youtube
+     */
+    public static boolean isLocalApi() {
+        return !getRootUrl().isEmpty();
+    }
 
-        Reader clientSecretReader = new InputStreamReader(Auth.class.getClassLoader().getResourceAsStream(".auth/client_secrets.json"));
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, clientSecretReader);
-        FileDataStoreFactory fileFactory = new FileDataStoreFactory(new File(AUTH_DIR));
+    /**
+     * Sends all following requests to a stand-in for the API, like a LocalApiServer started in the same program for
+     * a load test. The shared credential and YouTube client is thrown away, clients created before this is called
+     * still uses the old API.
+     * @param localRootUrl the root URL of the stand-in, or a empty string to go back to the real API
+     */
+    public static synchronized void useLocalApi(String localRootUrl) {
+        rootUrl = localRootUrl.isEmpty() || localRootUrl.endsWith("/") ? localRootUrl : localRootUrl + "/";
+        credential = null;
+        youTube = null;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Prepares a request to be sent to Youtube, adds the user's credential and sets the timeouts.
+     * Use this (directly or from another HttpRequestInitializer) for all requests to Youtube.
+     * @param request the request to prepare
+     * @throws IOException if the user could not be authorized
+     */
+    public static void initializeRequest(HttpRequest request) throws IOException {
+        authUser().initialize(request);
+        HttpTransportFactory.applyTimeouts(request);
+    }
+
+    /**
+     * @return the time in milliseconds the first authorization took (loading the saved token or waiting for the user
+     * to give permission), 0 if not authorized yet
+     */
+    public static long getAuthorizeTime() {
+        return authorizeTime;
+    }
+
+    /**
+     * @return the time in milliseconds the last token refresh took, 0 if the token has not been refreshed
+     */
+    public static long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
+    /**
+     * @return the total time in milliseconds spent refreshing the token
+     */
+    public static long getTotalRefreshTime() {
+        return totalRefreshTime;
+    }
 
-        GoogleAuthorizationCodeFlow authFlow = new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scope).setDataStoreFactory(fileFactory)
-                .build();
+    /**
+     * @return the number of times the token has been refreshed
+     */
+    public static int getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Reads the client secrets and creates the authorization flow, only done once
+     */
+    private static GoogleAuthorizationCodeFlow getAuthFlow() throws IOException {
+        if (authFlow == null) {
+            List<String> scope = new ArrayList<>();
+            scope.add(YouTubeScopes.YOUTUBE_UPLOAD);
+            scope.add(YouTubeScopes.YOUTUBE);
+
+            try (Reader clientSecretReader = new InputStreamReader(
+                    Auth.class.getClassLoader().getResourceAsStream(".auth/client_secrets.json"))) {
+                GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, clientSecretReader);
+                FileDataStoreFactory fileFactory = new FileDataStoreFactory(new File(AUTH_DIR));
+
+                authFlow = new GoogleAuthorizationCodeFlow.Builder(
+                        HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scope).setDataStoreFactory(fileFactory)
+                        .build();
+            }
+        }
+        return authFlow;
+    }
+
+    /**
+     * Refreshes the access token now and schedules the next refresh
+     * @param toRefresh the credential to refresh
+     * @return true if the token was refreshed
+     */
+    private static synchronized boolean refresh(Credential toRefresh) throws IOException {
+        long start = System.currentTimeMillis();
+        boolean refreshed = toRefresh.refreshToken();
+        long time = System.currentTimeMillis() - start;
+        lastRefreshTime = time;
+        totalRefreshTime += time;
+        refreshCount++;
+        if (!refreshed) {
+            System.err.println("Failed to refresh the access token");
+            return false;
+        }
+        Long expiresIn = toRefresh.getExpiresInSeconds();
+        if (expiresIn != null) {
+            scheduleRefresh(Math.max(0, expiresIn - REFRESH_MARGIN));
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure the token is refreshed in the background before it expires
+     * @param delay the number of seconds until the refresh
+     */
+    private static synchronized void scheduleRefresh(long delay) {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Token refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (scheduledRefresh != null && !scheduledRefresh.isDone()) {
+            return; // already scheduled
+        }
+        scheduledRefresh = refresher.schedule(Auth::backgroundRefresh, delay, TimeUnit.SECONDS);
+    }
 
-        LocalServerReceiver localReceiver = new LocalServerReceiver.Builder().setPort(7835).build();
-        return new AuthorizationCodeInstalledApp(authFlow, localReceiver).authorize("user");
+    private static synchronized void backgroundRefresh() {
+        scheduledRefresh = null; // this one is running, allow the next to be scheduled
+        Credential toRefresh = credential;
+        if (toRefresh == null || isLocalApi()) {
+            return; // thrown away by useLocalApi()
+        }
+        try {
+            if (refresh(toRefresh)) {
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Background refresh of the access token failed");
+            e.printStackTrace();
+        }
+        // Requests keep using the old token until it expires, then authUser() refreshes it
+        scheduleRefresh(REFRESH_RETRY_DELAY);
     }
 }
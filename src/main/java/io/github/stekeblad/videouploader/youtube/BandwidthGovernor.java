@@ -0,0 +1,121 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Enum-Singleton that limits the total upload speed of all uploads. It is a token bucket, every upload asks for
+ * permission to send the bytes it has read from the video file and waits until the bucket has enough tokens.
+ * The limit comes from a BandwidthSchedule and is checked again every second so a new limit in the schedule, or a
+ * new schedule, is used by the uploads that are in progress without restarting them.
+ * All methods are threadsafe.
+ */
+public enum BandwidthGovernor {
+    INSTANCE;
+
+    // The bucket holds at most this much time worth of bytes, how large bursts that are allowed
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long SCHEDULE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // A single read waits at most about this long, so a changed limit is noticed quickly
+    private static final int READS_PER_SECOND = 20;
+    private static final int MIN_READ_SIZE = 1024;
+
+    private BandwidthSchedule schedule = null;
+    private long bytesPerSecond = 0; // 0 = unlimited
+    private double tokens = 0;
+    private long lastRefill = 0;
+    private long lastScheduleCheck = 0;
+    private boolean scheduleChecked = false;
+
+    /**
+     * Sets a new schedule, it is used directly by all uploads
+     * @param schedule the new schedule
+     */
+    public synchronized void setSchedule(BandwidthSchedule schedule) {
+        this.schedule = schedule;
+        scheduleChecked = false;
+    }
+
+    /**
+     * @return the schedule in use, loaded from the settings the first time
+     */
+    public synchronized BandwidthSchedule getSchedule() {
+        if (schedule == null) {
+            ConfigManager configManager = ConfigManager.INSTANCE;
+            try {
+                schedule = BandwidthSchedule.parse(configManager.getBandwidthLimit(),
+                        configManager.getBandwidthSchedule());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid bandwidth schedule in settings, only using the default limit: " + e.getMessage());
+                schedule = BandwidthSchedule.parse(configManager.getBandwidthLimit(), "");
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * @return the current limit in kbit/s, 0 if unlimited
+     */
+    public synchronized long getCurrentLimit() {
+        updateRate(System.nanoTime());
+        return bytesPerSecond / 125;
+    }
+
+    /**
+     * @param wanted the number of bytes the caller wants to read
+     * @return how many bytes that should be read at most before calling acquire(), wanted if unlimited
+     */
+    public synchronized int getMaxReadSize(int wanted) {
+        updateRate(System.nanoTime());
+        if (bytesPerSecond == 0) {
+            return wanted;
+        }
+        return (int) Math.min(wanted, Math.max(MIN_READ_SIZE, bytesPerSecond / READS_PER_SECOND));
+    }
+
+    /**
+     * Takes bytes from the bucket, waits if there is not enough. Callers that has to wait are served in the order they
+     * called this method as every caller reserves its bytes before waiting.
+     * @param bytes the number of bytes that is about to be sent
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            updateRate(now);
+            if (bytesPerSecond == 0) {
+                return;
+            }
+            double maxTokens = bytesPerSecond * (double) BURST_NANOS / TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(maxTokens, tokens + (now - lastRefill) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Reads the limit from the schedule if it has not been done in the last second. Must hold the lock.
+     */
+    private void updateRate(long now) {
+        if (scheduleChecked && now - lastScheduleCheck < SCHEDULE_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        scheduleChecked = true;
+        lastScheduleCheck = now;
+        long newRate = getSchedule().getLimit(LocalDateTime.now()) * 125L; // kbit/s to bytes/s
+        if (newRate != bytesPerSecond) {
+            // Forget what is reserved for the old limit, otherwise going from a low limit to a high could still
+            // make the uploads wait for a long time
+            bytesPerSecond = newRate;
+            tokens = 0;
+            lastRefill = now;
+        }
+    }
+}
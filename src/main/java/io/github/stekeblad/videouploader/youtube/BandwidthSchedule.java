@@ -0,0 +1,181 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A weekly schedule for the upload bandwidth limit. The schedule is a number of rules separated by ";", every rule has
+ * the days it is active, a time range and the limit in kbit/s, for example
+ * "mon-fri 08:00-17:00 5000; sat,sun 10:00-14:00 20000". The days can be a single day, a range, a comma separated list
+ * or "*" for all days. If the end time is before the start time the rule goes past midnight. The first rule that
+ * matches is used, when no rule matches the default limit is used. A limit of 0 means unlimited.
+ * Instances are immutable.
+ */
+public class BandwidthSchedule {
+    private final int defaultLimit;
+    private final List<Rule> rules;
+
+    private BandwidthSchedule(int defaultLimit, List<Rule> rules) {
+        this.defaultLimit = defaultLimit;
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * @return a schedule without any limit
+     */
+    public static BandwidthSchedule unlimited() {
+        return new BandwidthSchedule(0, new ArrayList<>());
+    }
+
+    /**
+     * Reads a schedule
+     * @param defaultLimit the limit in kbit/s to use when no rule matches, 0 for unlimited
+     * @param schedule the rules, see the class description for the format. Empty for only using defaultLimit
+     * @return the schedule
+     * @throws IllegalArgumentException if schedule is not valid, the message tells what rule is wrong
+     */
+    public static BandwidthSchedule parse(int defaultLimit, String schedule) {
+        if (defaultLimit < 0) {
+            throw new IllegalArgumentException("The limit can not be negative");
+        }
+        List<Rule> rules = new ArrayList<>();
+        if (schedule != null) {
+            for (String ruleString : schedule.split(";")) {
+                if (!ruleString.trim().isEmpty()) {
+                    rules.add(Rule.parse(ruleString.trim()));
+                }
+            }
+        }
+        return new BandwidthSchedule(defaultLimit, rules);
+    }
+
+    /**
+     * @param time a date and time
+     * @return the limit in kbit/s at time, 0 if unlimited
+     */
+    public int getLimit(LocalDateTime time) {
+        for (Rule rule : rules) {
+            if (rule.matches(time)) {
+                return rule.limit;
+            }
+        }
+        return defaultLimit;
+    }
+
+    public int getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    /**
+     * @return the rules in the same format as parse() accepts
+     */
+    public String getRules() {
+        StringBuilder builder = new StringBuilder();
+        for (Rule rule : rules) {
+            if (builder.length() > 0) {
+                builder.append("; ");
+            }
+            builder.append(rule.text);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * One line in the schedule, like "mon-fri 08:00-17:00 5000"
+     */
+    private static class Rule {
+        private final String text;
+        private final EnumSet<DayOfWeek> days;
+        private final LocalTime start;
+        private final LocalTime end;
+        private final int limit;
+
+        private Rule(String text, EnumSet<DayOfWeek> days, LocalTime start, LocalTime end, int limit) {
+            this.text = text;
+            this.days = days;
+            this.start = start;
+            this.end = end;
+            this.limit = limit;
+        }
+
+        static Rule parse(String text) {
+            String[] parts = text.split("\\s+");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("\"" + text + "\" should be days, time range and limit");
+            }
+            String[] times = parts[1].split("-");
+            if (times.length != 2) {
+                throw new IllegalArgumentException("\"" + parts[1] + "\" is not a time range like 08:00-17:00");
+            }
+            try {
+                int limit = Integer.parseInt(parts[2]);
+                if (limit < 0) {
+                    throw new IllegalArgumentException("The limit can not be negative in \"" + text + "\"");
+                }
+                return new Rule(text, parseDays(parts[0]), parseTime(times[0]), parseTime(times[1]), limit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"" + parts[2] + "\" is not a limit in kbit/s");
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("\"" + parts[1] + "\" is not a time range like 08:00-17:00");
+            }
+        }
+
+        boolean matches(LocalDateTime dateTime) {
+            LocalTime time = dateTime.toLocalTime();
+            if (start.isBefore(end)) {
+                return days.contains(dateTime.getDayOfWeek()) && !time.isBefore(start) && time.isBefore(end);
+            }
+            // Goes past midnight, the part after midnight belongs to the day before
+            if (!time.isBefore(start)) {
+                return days.contains(dateTime.getDayOfWeek());
+            }
+            return time.isBefore(end) && days.contains(dateTime.getDayOfWeek().minus(1));
+        }
+
+        private static LocalTime parseTime(String time) {
+            // 24:00 is allowed as the end of the day
+            return time.equals("24:00") ? LocalTime.MAX : LocalTime.parse(time);
+        }
+
+        private static EnumSet<DayOfWeek> parseDays(String days) {
+            if (days.equals("*")) {
+                return EnumSet.allOf(DayOfWeek.class);
+            }
+            EnumSet<DayOfWeek> result = EnumSet.noneOf(DayOfWeek.class);
+            for (String part : days.split(",")) {
+                String[] range = part.split("-");
+                if (range.length == 1) {
+                    result.add(parseDay(range[0]));
+                } else if (range.length == 2) {
+                    DayOfWeek day = parseDay(range[0]);
+                    DayOfWeek last = parseDay(range[1]);
+                    result.add(day);
+                    while (day != last) {
+                        day = day.plus(1);
+                        result.add(day);
+                    }
+                } else {
+                    throw new IllegalArgumentException("\"" + part + "\" is not a day or range of days");
+                }
+            }
+            return result;
+        }
+
+        private static DayOfWeek parseDay(String day) {
+            String lowerDay = day.toLowerCase(Locale.ROOT);
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                if (lowerDay.length() >= 3 && dayOfWeek.name().toLowerCase(Locale.ROOT).startsWith(lowerDay)) {
+                    return dayOfWeek;
+                }
+            }
+            throw new IllegalArgumentException("\"" + day + "\" is not a day, use mon, tue, wed, thu, fri, sat or sun");
+        }
+    }
+}
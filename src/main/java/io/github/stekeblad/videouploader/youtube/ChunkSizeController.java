@@ -0,0 +1,229 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adjusts the chunk size of a resumable upload while it is in progress. The time it takes to send every chunk is
+ * measured and the size of the next chunk is increased if chunks are sent quickly (to reduce the number of round trips)
+ * and decreased if they are slow or fails (so less data needs to be sent again if a chunk fails). The chunk size is
+ * always a multiple of MediaHttpUploader.MINIMUM_CHUNK_SIZE (256 KiB) as required by the API.
+ * The last chunk size that worked well is stored in the settings for each network so the next upload on the same
+ * network can start with a good size directly.
+ * One instance should be used for one upload and it is not threadsafe.
+ */
+public class ChunkSizeController {
+    private static final int MIN_CHUNK = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+    private static final int MAX_CHUNK = 256 * MIN_CHUNK; // 64 MiB
+    // A chunk should take between these times to send, outside this range the chunk size is changed
+    private static final long MIN_CHUNK_TIME_MS = 4000;
+    private static final long MAX_CHUNK_TIME_MS = 20000;
+    // Round trips should not be more than a tenth of the time spent on a chunk
+    private static final int RTT_OVERHEAD_FACTOR = 10;
+    // The settings file is not written more often than this for chunk sizes, a size that is not written is saved
+    // together with the next settings that is saved
+    private static final long SAVE_INTERVAL_MS = 60 * 1000;
+    private static final AtomicLong lastSave = new AtomicLong(0);
+
+    private final ConfigManager configManager = ConfigManager.INSTANCE;
+    private final String networkName;
+    private MediaHttpUploader uploader = null;
+    private int chunkSize;
+    private long initiationStarted = 0;
+    private long roundTripTime = 0;
+    private long chunkStarted = 0;
+    private long bytesAtChunkStart = 0;
+    private double throughput = 0; // bytes per millisecond, exponentially weighted
+    private boolean hadErrors = false;
+
+    /**
+     * Creates a controller with the last good chunk size for the current network as start size
+     */
+    public ChunkSizeController() {
+        networkName = detectNetwork();
+        int saved = configManager.getChunkSize(networkName);
+        chunkSize = saved > 0 ? align(saved) : MediaHttpUploader.DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Sets the MediaHttpUploader to control the chunk size of and gives it the start size
+     * @param uploader the MediaHttpUploader for the upload
+     */
+    public void attach(MediaHttpUploader uploader) {
+        this.uploader = uploader;
+        uploader.setChunkSize(chunkSize);
+    }
+
+    /**
+     * @return the chunk size that will be used for the next chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return measured time in milliseconds for the initiation request, used as an estimation of the round trip time
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * @return the measured upload speed in bytes per second
+     */
+    public long getThroughput() {
+        return (long) (throughput * 1000);
+    }
+
+    /**
+     * Call this from the progress listener every time the progress listener is called
+     * @param state the state the uploader is in
+     * @param bytesUploaded the number of bytes the server has confirmed
+     */
+    public void onProgress(MediaHttpUploader.UploadState state, long bytesUploaded) {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case INITIATION_STARTED:
+                initiationStarted = now;
+                break;
+            case INITIATION_COMPLETE:
+                roundTripTime = now - initiationStarted;
+                chunkStarted = now;
+                bytesAtChunkStart = bytesUploaded;
+                break;
+            case MEDIA_IN_PROGRESS:
+                onChunkComplete(now - chunkStarted, bytesUploaded - bytesAtChunkStart);
+                chunkStarted = now;
+                bytesAtChunkStart = bytesUploaded;
+                break;
+            case MEDIA_COMPLETE:
+                // The last chunk is not used for the chunk size but it is part of the metrics
+                if (chunkStarted > 0 && bytesUploaded > bytesAtChunkStart) {
+                    UploadMetrics.INSTANCE.onChunkSent(bytesUploaded - bytesAtChunkStart, now - chunkStarted);
+                }
+                // Only remember sizes that worked without problems
+                if (!hadErrors) {
+                    saveChunkSize(now);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Remembers the chunk size for the network. Many lanes can finish at about the same time, the settings file is only
+     * written if the size has changed and it was not written by another upload the last minute.
+     */
+    private void saveChunkSize(long now) {
+        if (configManager.getChunkSize(networkName) == chunkSize) {
+            return;
+        }
+        configManager.setChunkSize(networkName, chunkSize);
+        long last = lastSave.get();
+        if (now - last >= SAVE_INTERVAL_MS && lastSave.compareAndSet(last, now)) {
+            configManager.saveSettings();
+        }
+    }
+
+    /**
+     * Call this when a chunk failed and will be sent again, the next chunk will be smaller
+     */
+    public void onChunkFailed() {
+        UploadMetrics.INSTANCE.onChunkFailed();
+        hadErrors = true;
+        setChunkSize(chunkSize / 2);
+    }
+
+    /**
+     * Calculates the next chunk size based on how long the last chunk took to send
+     * @param duration the time in milliseconds it took to send the chunk and get a response
+     * @param bytes the number of bytes in the chunk
+     */
+    private void onChunkComplete(long duration, long bytes) {
+        if (bytes > 0) {
+            UploadMetrics.INSTANCE.onChunkSent(bytes, duration);
+        }
+        if (duration <= 0 || bytes <= 0) {
+            return;
+        }
+        double chunkThroughput = (double) bytes / duration;
+        throughput = throughput == 0 ? chunkThroughput : throughput * 0.7 + chunkThroughput * 0.3;
+
+        // The last chunk may be smaller than chunkSize, then the measurements do not say much about chunkSize
+        if (bytes < chunkSize) {
+            return;
+        }
+        if (duration > MAX_CHUNK_TIME_MS) {
+            // Slow, send smaller chunks so less is lost if a chunk fails
+            setChunkSize(chunkSize / 2);
+        } else if (duration < MIN_CHUNK_TIME_MS || duration < roundTripTime * RTT_OVERHEAD_FACTOR) {
+            // Fast, the round trips is a large part of the time, send larger chunks
+            setChunkSize(chunkSize * 2);
+        }
+    }
+
+    private void setChunkSize(int newSize) {
+        chunkSize = align(newSize);
+        if (uploader != null) {
+            uploader.setChunkSize(chunkSize);
+        }
+    }
+
+    /**
+     * @param size a chunk size
+     * @return size rounded down to a multiple of the minimum chunk size and limited to the allowed range
+     */
+    private static int align(int size) {
+        int aligned = (size / MIN_CHUNK) * MIN_CHUNK;
+        return Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, aligned));
+    }
+
+    /**
+     * Makes a name for the network used to reach the internet, the name of the network interface and its subnet.
+     * No data is sent, connecting a DatagramSocket only selects the interface a packet would have been sent on.
+     * @return a name for the current network or "default" if it could not be detected
+     */
+    private static String detectNetwork() {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(InetAddress.getByName("8.8.8.8"), 443);
+            InetAddress local = socket.getLocalAddress();
+            NetworkInterface netInterface = NetworkInterface.getByInetAddress(local);
+            if (netInterface == null) {
+                return "default";
+            }
+            for (InterfaceAddress address : netInterface.getInterfaceAddresses()) {
+                if (address.getAddress().equals(local)) {
+                    return netInterface.getName() + "_" + subnet(local.getAddress(), address.getNetworkPrefixLength());
+                }
+            }
+            return netInterface.getName();
+        } catch (Exception e) {
+            return "default";
+        }
+    }
+
+    /**
+     * @param address an IP address
+     * @param prefixLength the number of bits in the network part of the address
+     * @return the network part of the address as a string, like 192.168.1.0-24
+     */
+    private static String subnet(byte[] address, int prefixLength) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < address.length; i++) {
+            int bitsInByte = Math.max(0, Math.min(8, prefixLength - i * 8));
+            int mask = bitsInByte == 0 ? 0 : (0xFF << (8 - bitsInByte)) & 0xFF;
+            if (i > 0) {
+                builder.append(address.length == 4 ? "." : ":");
+            }
+            builder.append(address.length == 4 ? Integer.toString(address[i] & mask) : Integer.toHexString(address[i] & mask));
+        }
+        return builder.append("-").append(prefixLength).toString();
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Enum-Singleton with a index of all video files that has been uploaded, used for warning the user before the same
+ * file is uploaded again. Every entry has the SHA-256 and partial fingerprint (see UploadHasher) of the file, its size,
+ * the id of the video on Youtube and the name of the file. The index is saved to disc every time a entry is added.
+ * All methods are threadsafe.
+ */
+public enum DuplicateIndex {
+    INSTANCE;
+
+    private List<Entry> entries = null;
+
+    /**
+     * A uploaded video file
+     */
+    public static class Entry {
+        private final String sha256;
+        private final String fingerprint;
+        private final long size;
+        private final String videoId;
+        private final String fileName;
+
+        Entry(String sha256, String fingerprint, long size, String videoId, String fileName) {
+            this.sha256 = sha256;
+            this.fingerprint = fingerprint;
+            this.size = size;
+            this.videoId = videoId;
+            this.fileName = fileName;
+        }
+
+        /**
+         * @param line a line from the saved index, in the same format as toString()
+         * @return the entry, or null if line is not valid
+         */
+        static Entry fromString(String line) {
+            // The file name is last as it can contain the separator
+            String[] parts = line.split(":", 5);
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(parts[0], parts[1], Long.parseLong(parts[2]), parts[3], parts[4]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getVideoId() {
+            return videoId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return a link to the video on Youtube
+         */
+        public String getVideoUrl() {
+            return "https://youtu.be/" + videoId;
+        }
+
+        @Override
+        public String toString() {
+            return sha256 + ":" + fingerprint + ":" + size + ":" + videoId + ":" + fileName;
+        }
+    }
+
+    /**
+     * Adds a uploaded file to the index
+     * @param hasher the hasher that hashed the entire file while it was uploaded
+     * @param videoFile the file that was uploaded
+     * @param videoId the id of the uploaded video
+     */
+    public synchronized void add(UploadHasher hasher, File videoFile, String videoId) {
+        if (!hasher.isComplete()) {
+            System.err.println("The entire file \"" + videoFile.getName() + "\" was not hashed, it is not added to the " +
+                    "duplicate index");
+            return;
+        }
+        getEntries().add(new Entry(hasher.getSha256(), hasher.getFingerprint(), videoFile.length(), videoId,
+                videoFile.getName()));
+        save();
+    }
+
+    /**
+     * @param sha256 the SHA-256 of a file
+     * @return the entry of the file with the same hash, or null if it has not been uploaded
+     */
+    public synchronized Entry findBySha256(String sha256) {
+        for (Entry entry : getEntries()) {
+            if (entry.getSha256().equals(sha256)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a file looks like it has been uploaded by comparing the size and the first and last MiB of the file.
+     * This is fast also for large files but a changed byte in the middle of the file is not noticed.
+     * @param videoFile a file to check
+     * @return the entry of the file that looks the same, or null if no such file has been uploaded
+     * @throws IOException if videoFile could not be read
+     */
+    public Entry findDuplicate(File videoFile) throws IOException {
+        long size = videoFile.length();
+        synchronized (this) {
+            // Only read the file if there is a entry with the same size
+            if (getEntries().stream().noneMatch(entry -> entry.getSize() == size)) {
+                return null;
+            }
+        }
+        // Read without holding the lock so other threads can use the index meanwhile
+        String fingerprint = UploadHasher.fingerprint(videoFile);
+        synchronized (this) {
+            for (Entry entry : getEntries()) {
+                if (entry.getSize() == size && entry.getFingerprint().equals(fingerprint)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs findDuplicate() for all files in the background, reading the files and loading the index is too slow for
+     * the FX thread. Files that could not be read is printed and not included.
+     * @param videoFiles the files to check
+     * @return a future with the files that looks like they have been uploaded and the entry they look like, in the
+     * order of videoFiles
+     */
+    public CompletableFuture<Map<File, Entry>> findDuplicatesAsync(List<File> videoFiles) {
+        List<File> files = new ArrayList<>(videoFiles);
+        return CompletableFuture.supplyAsync(() -> {
+            Map<File, Entry> duplicates = new LinkedHashMap<>();
+            for (File videoFile : files) {
+                try {
+                    Entry duplicate = findDuplicate(videoFile);
+                    if (duplicate != null) {
+                        duplicates.put(videoFile, duplicate);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Could not check if \"" + videoFile.getName() + "\" has been uploaded before");
+                    e.printStackTrace();
+                }
+            }
+            return duplicates;
+        });
+    }
+
+    /**
+     * Loads the index the first time. Must hold the lock.
+     */
+    private List<Entry> getEntries() {
+        if (entries == null) {
+            entries = new ArrayList<>();
+            List<String> lines = ConfigManager.INSTANCE.loadUploadIndex();
+            if (lines != null) {
+                for (String line : lines) {
+                    Entry entry = Entry.fromString(line);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void save() {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : entries) {
+            builder.append(entry.toString()).append("\n");
+        }
+        ConfigManager.INSTANCE.saveUploadIndex(builder.toString());
+    }
+}
@@ -0,0 +1,295 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Media content for a video file that reads the file through a FileChannel. Compared to a InputStreamContent with a
+ * BufferedInputStream this content knows its exact length, can be retried and the streams it returns supports mark
+ * and reset by moving the position in the file. MediaHttpUploader marks the stream before every chunk and resets it if
+ * the chunk must be sent again, with this content that does not cause the entire chunk to be buffered in memory and
+ * the bytes are read directly into the buffer of the caller.
+ * If a BandwidthGovernor is set the streams waits for it after every read so the upload does not exceed the limit.
+ * If a UploadHasher is set every read byte is given to it so the file is hashed while it is uploaded.
+ */
+public class FileChannelContent extends AbstractInputStreamContent {
+    private final File file;
+    private final long length;
+    private volatile ChannelInputStream currentStream = null;
+    private BandwidthGovernor governor = null;
+    private UploadHasher hasher = null;
+
+    /**
+     * @param type the content type, like "video/"
+     * @param file the file to read
+     * @throws FileNotFoundException if file does not exist or is not a file
+     */
+    public FileChannelContent(String type, File file) throws FileNotFoundException {
+        super(type);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        this.file = file;
+        this.length = file.length();
+    }
+
+    /**
+     * Limits how fast the streams of this content can be read
+     * @param governor the governor to ask before every read, null for no limit
+     * @return this
+     */
+    public FileChannelContent setBandwidthGovernor(BandwidthGovernor governor) {
+        this.governor = governor;
+        return this;
+    }
+
+    /**
+     * Hashes the file while it is read
+     * @param hasher the hasher to give the read bytes to, null for not hashing
+     * @return this
+     */
+    public FileChannelContent setHasher(UploadHasher hasher) {
+        this.hasher = hasher;
+        return this;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean retrySupported() {
+        return true;
+    }
+
+    /**
+     * @return a new stream that starts at the beginning of the file
+     * @throws IOException if the file could not be opened
+     */
+    @Override
+    public ChannelInputStream getInputStream() throws IOException {
+        return getInputStream(0);
+    }
+
+    /**
+     * @param offset the position in the file to start reading at
+     * @return a new stream that starts at offset in the file
+     * @throws IOException if the file could not be opened
+     */
+    public ChannelInputStream getInputStream(long offset) throws IOException {
+        ChannelInputStream stream = new ChannelInputStream(
+                FileChannel.open(file.toPath(), StandardOpenOption.READ), governor, hasher);
+        stream.seek(offset);
+        currentStream = stream;
+        return stream;
+    }
+
+    /**
+     * Returns how far into the file the last created stream has read. This is how much of the file that has been
+     * given to the connection, it goes back if a chunk is sent again. This method is threadsafe and cheap enough to be
+     * called often, it does not touch the file.
+     * @return the read position of the last stream returned by getInputStream or 0 if no stream has been created
+     */
+    public long getBytesRead() {
+        ChannelInputStream stream = currentStream;
+        return stream == null ? 0 : stream.readPosition;
+    }
+
+    /**
+     * Closes the file channel of the last created stream. A thread reading from it, like a upload writing a chunk,
+     * gets a AsynchronousCloseException right away. This method is threadsafe.
+     * @throws IOException if the channel could not be closed
+     */
+    public void closeCurrentStream() throws IOException {
+        ChannelInputStream stream = currentStream;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes the entire file to out. Used when the content is sent in one request instead of in chunks.
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (governor != null || hasher != null) {
+            // transferTo can not be limited or hashed, go through a stream that can
+            try (ChannelInputStream in = getInputStream()) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            out.flush();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, target);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * A InputStream that reads from a FileChannel. mark() saves the position in the file and reset() goes back to it,
+     * there is no limit on how much can be read between mark() and reset().
+     */
+    public static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer singleByte = ByteBuffer.allocate(1);
+        private long markedPosition = 0;
+        private volatile long readPosition = 0;
+        private final BandwidthGovernor governor;
+        private final UploadHasher hasher;
+
+        ChannelInputStream(FileChannel channel, BandwidthGovernor governor, UploadHasher hasher) {
+            this.channel = channel;
+            this.governor = governor;
+            this.hasher = hasher;
+        }
+
+        /**
+         * Moves the read position
+         * @param position the position in the file, from the beginning of the file
+         * @throws IOException if the channel is closed
+         */
+        public void seek(long position) throws IOException {
+            channel.position(position);
+            readPosition = position;
+        }
+
+        /**
+         * @return the current read position in the file
+         * @throws IOException if the channel is closed
+         */
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public int read() throws IOException {
+            singleByte.clear();
+            int read = channel.read(singleByte);
+            if (read < 1) {
+                return -1;
+            }
+            hash(readPosition, singleByte.array(), 0, read);
+            readPosition += read;
+            throttle(read);
+            return singleByte.get(0) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (governor != null) {
+                len = governor.getMaxReadSize(len);
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, len));
+            if (read > 0) {
+                hash(readPosition, b, off, read);
+                readPosition += read;
+                throttle(read);
+            }
+            return read;
+        }
+
+        /**
+         * Gives read bytes to the hasher. If the stream starts after the part that has been hashed, like when a upload
+         * is resumed, the part in between is read and hashed first as it will not be sent in this upload.
+         */
+        private void hash(long position, byte[] b, int off, int len) throws IOException {
+            if (hasher == null) {
+                return;
+            }
+            if (!hasher.update(position, b, off, len)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                long hashedUpTo;
+                while ((hashedUpTo = hasher.getHashedUpTo()) < position) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), position - hashedUpTo));
+                    int read = channel.read(buffer, hashedUpTo); // does not move the position of the stream
+                    if (read < 0) {
+                        throw new IOException("The file got shorter while it was read");
+                    }
+                    hasher.update(hashedUpTo, buffer.array(), 0, read);
+                }
+                hasher.update(position, b, off, len);
+            }
+        }
+
+        /**
+         * Waits until the governor allows bytes to be sent
+         */
+        private void throttle(int bytes) throws IOException {
+            if (governor == null) {
+                return;
+            }
+            try {
+                governor.acquire(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("INTERRUPTED");
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            long position = channel.position();
+            long skipped = Math.min(n, channel.size() - position);
+            channel.position(position + skipped);
+            readPosition = position + skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, channel.size() - channel.position());
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            try {
+                markedPosition = channel.position();
+            } catch (IOException e) {
+                // the channel is closed, reset() will fail
+                markedPosition = -1;
+            }
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            if (markedPosition < 0) {
+                throw new IOException("Stream was not marked");
+            }
+            channel.position(markedPosition);
+            readPosition = markedPosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
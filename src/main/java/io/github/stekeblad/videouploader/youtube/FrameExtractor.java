@@ -0,0 +1,241 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import org.jcodec.api.FrameGrab;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.AWTUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+import static io.github.stekeblad.videouploader.utils.Constants.THUMBNAIL_CACHE_DIR;
+
+/**
+ * A Enum-Singleton that grabs a frame from a video file with jcodec and saves it as a jpg, used as the thumbnail for
+ * presets that has a thumbnail frame (like "10s" or "25%") instead of a thumbnail file.
+ * The frames is grabbed on a thread pool with one thread per core, many files added at the same time waits in the
+ * queue of the pool. The grabbed frames is saved in the thumbnail cache directory, named by the path, last modified
+ * time and size of the video file and the position, so a frame is only grabbed once also after a restart. The cache
+ * is kept small by ThumbnailNormalizer, a frame that has been deleted from it is grabbed again when it is needed.
+ * All methods are threadsafe.
+ */
+public enum FrameExtractor {
+    INSTANCE;
+
+    private static final float JPEG_QUALITY = 0.92f;
+    /**
+     * The progress while the frame is being grabbed. jcodec does not tell how far it has come when seeking and
+     * decoding, so there is no percentage to show. Same value as ProgressBar.INDETERMINATE_PROGRESS.
+     */
+    public static final double INDETERMINATE = -1;
+
+    private final ExecutorService exec;
+    // The frames that is being grabbed or waiting to be grabbed, by cache key
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    FrameExtractor() {
+        // Decoding is all CPU, more threads than cores does not make it faster
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger(0);
+        exec = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Frame extractor " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Where in a video to grab the frame, a number of seconds from the start or a percentage of the length
+     */
+    public static class Position {
+        private final double value;
+        private final boolean percent;
+
+        private Position(double value, boolean percent) {
+            this.value = value;
+            this.percent = percent;
+        }
+
+        /**
+         * @param text a number followed by "s" for seconds or "%" for percent of the length, like "10s", "2.5s" or
+         *             "25%"
+         * @return the position, or null if text is null or empty
+         * @throws IllegalArgumentException if text is not a valid position
+         */
+        public static Position parse(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                return null;
+            }
+            String trimmed = text.trim().toLowerCase(Locale.ROOT);
+            boolean percent = trimmed.endsWith("%");
+            if (!percent && !trimmed.endsWith("s")) {
+                throw new IllegalArgumentException("\"" + text + "\" does not end with s or %");
+            }
+            double value;
+            try {
+                value = Double.parseDouble(trimmed.substring(0, trimmed.length() - 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"" + text + "\" does not start with a number");
+            }
+            if (value < 0 || Double.isNaN(value) || Double.isInfinite(value) || (percent && value > 100)) {
+                throw new IllegalArgumentException("\"" + text + "\" is not a position in the video");
+            }
+            return new Position(value, percent);
+        }
+
+        /**
+         * @param duration the length of the video in seconds
+         * @return the second to grab the frame at, never after the end of the video
+         */
+        public double toSeconds(double duration) {
+            double seconds = percent ? duration * value / 100 : value;
+            // The last frame starts a bit before the end
+            return Math.max(0, Math.min(seconds, duration - 0.1));
+        }
+
+        /**
+         * @return the position in the same format as parse() reads
+         */
+        @Override
+        public String toString() {
+            String number = value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+            return number + (percent ? "%" : "s");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) o;
+            return value == other.value && percent == other.percent;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(value) * 31 + (percent ? 1 : 0);
+        }
+    }
+
+    /**
+     * A frame that is being grabbed and the listeners that want to know its progress
+     */
+    private static class Job {
+        private final CompletableFuture<File> future = new CompletableFuture<>();
+        private final CopyOnWriteArrayList<DoubleConsumer> progressListeners = new CopyOnWriteArrayList<>();
+        private volatile double progress = 0;
+
+        void setProgress(double progress) {
+            this.progress = progress;
+            for (DoubleConsumer listener : progressListeners) {
+                listener.accept(progress);
+            }
+        }
+    }
+
+    /**
+     * Starts grabbing a frame in the background if it is not already grabbed. Never blocks.
+     * @param videoFile the video file
+     * @param position where in the video to grab the frame
+     * @param progress called with 0 while waiting in the queue, INDETERMINATE when the grabbing starts and 1 when it is
+     *                 done, on the extractor thread. Can be null
+     * @return a future with the jpg file, completed exceptionally with a IOException if the frame could not be grabbed
+     */
+    public CompletableFuture<File> extract(File videoFile, Position position, DoubleConsumer progress) {
+        String key = ThumbnailNormalizer.cacheKey("frame:" + videoFile.getAbsolutePath() + ":" +
+                videoFile.lastModified() + ":" + videoFile.length() + ":" + position);
+        File cached = new File(THUMBNAIL_CACHE_DIR, key + ".jpg");
+        if (cached.isFile()) {
+            ThumbnailNormalizer.markUsed(cached);
+            if (progress != null) {
+                progress.accept(1);
+            }
+            return CompletableFuture.completedFuture(cached);
+        }
+        Job job = new Job();
+        Job running = jobs.putIfAbsent(key, job);
+        // Files added more than once shares the job that was started first
+        Job current = running == null ? job : running;
+        if (progress != null) {
+            current.progressListeners.add(progress);
+            progress.accept(current.progress);
+        }
+        if (running != null) {
+            return running.future;
+        }
+        exec.execute(() -> {
+            try {
+                job.future.complete(grab(videoFile, position, cached, job));
+            } catch (Throwable e) {
+                job.future.completeExceptionally(e);
+            } finally {
+                jobs.remove(key, job);
+            }
+        });
+        return job.future;
+    }
+
+    /**
+     * Like extract() but waits for the result. Must not be called on the FX thread.
+     * @param videoFile the video file
+     * @param position where in the video to grab the frame
+     * @return the jpg file
+     * @throws IOException if the frame could not be grabbed, or with the message "INTERRUPTED" if the thread was
+     * interrupted while waiting
+     */
+    public File getExtracted(File videoFile, Position position) throws IOException {
+        try {
+            return extract(videoFile, position, null).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("INTERRUPTED");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not grab a frame from \"" + videoFile.getName() + "\"", e.getCause());
+        }
+    }
+
+    /**
+     * Grabs the frame and saves it in the cache
+     */
+    private File grab(File videoFile, Position position, File cached, Job job) throws IOException {
+        job.setProgress(INDETERMINATE);
+        BufferedImage image;
+        try (FileChannelWrapper channel = NIOUtils.readableChannel(videoFile)) {
+            FrameGrab frameGrab = FrameGrab.createFrameGrab(channel);
+            double duration = frameGrab.getVideoTrack().getMeta().getTotalDuration();
+            // Decodes from the key frame before the position, this is most of the work
+            frameGrab.seekToSecondPrecise(position.toSeconds(duration));
+            Picture picture = frameGrab.getNativeFrame();
+            if (picture == null) {
+                throw new IOException("\"" + videoFile.getName() + "\" has no frame at " + position);
+            }
+            image = AWTUtil.toBufferedImage(picture);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // jcodec throws JCodecException and runtime exceptions for formats it can not read
+            throw new IOException("Could not grab a frame from \"" + videoFile.getName() + "\", only mp4 and mov " +
+                    "videos with H.264 is supported", e);
+        }
+        byte[] encoded = ThumbnailNormalizer.encodeJpeg(image, JPEG_QUALITY);
+        image.flush();
+        ThumbnailNormalizer.writeToCache(encoded, cached);
+        job.setProgress(1);
+        return cached;
+    }
+}
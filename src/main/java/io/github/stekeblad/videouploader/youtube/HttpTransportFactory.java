@@ -0,0 +1,181 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.ConnectionFactory;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+
+/**
+ * Creates the HttpTransport used for all communication with Youtube and sets the timeouts on requests.
+ * The transport is a NetHttpTransport, it uses HttpURLConnection and the connection pool of the JVM. The size of that
+ * pool and if connections should be kept alive is set with the system properties http.maxConnections and http.keepAlive,
+ * they are read by the JVM the first time a connection is made so changes requires a restart.
+ * The send buffer of the sockets can be made larger than the OS default so large video files can be sent faster on
+ * connections with a high latency. For HTTPS it is set by the socket factory given to the connections, plain HTTP
+ * (like a LocalApiServer) uses PlainHttpConnection as the HttpURLConnection of the JVM can not set it.
+ */
+public class HttpTransportFactory {
+    // The JVM only reuses a kept alive HTTPS connection for a request with the same SSLSocketFactory instance, all
+    // transports must share one factory or every upload opens new connections
+    private static SendBufferSocketFactory sharedSocketFactory = null;
+
+    /**
+     * Creates a transport with the values from the settings
+     * @return a new HttpTransport
+     */
+    public static HttpTransport createFromSettings() {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        return create(configManager.getHttpMaxConnections(), configManager.getHttpKeepAlive(),
+                configManager.getHttpSendBufferSize());
+    }
+
+    /**
+     * Creates a transport with the given settings
+     * @param maxConnections the max number of idle connections to keep open to each host
+     * @param keepAlive true if connections should be reused, false to close them after each request
+     * @param sendBufferSize the size of the socket send buffer in bytes, 0 to use the OS default
+     * @return a new HttpTransport
+     */
+    public static HttpTransport create(int maxConnections, boolean keepAlive, int sendBufferSize) {
+        System.setProperty("http.keepAlive", String.valueOf(keepAlive));
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(1, maxConnections)));
+        return newBuilder(sendBufferSize).build();
+    }
+
+    /**
+     * Creates a transport for a single upload that gives every connection it opens to cancellation, so aborting the
+     * upload disconnects the request that is being sent. The transports shares the socket factory, so the HTTPS
+     * connections are taken from and returned to the same keep-alive pool of the JVM as the connections of the shared
+     * transport.
+     * @param cancellation the cancellation token of the upload
+     * @return a new HttpTransport with the send buffer size from the settings
+     */
+    public static HttpTransport createCancellable(UploadCancellation cancellation) {
+        ConnectionFactory connectionFactory = connectionFactory(ConfigManager.INSTANCE.getHttpSendBufferSize());
+        return new NetHttpTransport.Builder()
+                .setConnectionFactory(url -> {
+                    cancellation.throwIfCancelled();
+                    HttpURLConnection connection = connectionFactory.openConnection(url);
+                    cancellation.setConnection(connection);
+                    return connection;
+                })
+                .build();
+    }
+
+    private static NetHttpTransport.Builder newBuilder(int sendBufferSize) {
+        return new NetHttpTransport.Builder().setConnectionFactory(connectionFactory(sendBufferSize));
+    }
+
+    /**
+     * @param sendBufferSize the size of the socket send buffer in bytes, 0 to use the OS default
+     * @return a ConnectionFactory that opens connections with the given send buffer size for both HTTP and HTTPS
+     */
+    static ConnectionFactory connectionFactory(int sendBufferSize) {
+        return url -> openConnection(url, sendBufferSize);
+    }
+
+    private static HttpURLConnection openConnection(URL url, int sendBufferSize) throws IOException {
+        if (sendBufferSize <= 0) {
+            return (HttpURLConnection) url.openConnection();
+        }
+        if ("http".equals(url.getProtocol())) {
+            return new PlainHttpConnection(url, sendBufferSize);
+        }
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(getSocketFactory(sendBufferSize));
+        }
+        return connection;
+    }
+
+    /**
+     * @return the shared socket factory, a new one is only created when the send buffer size has been changed
+     */
+    private static synchronized SSLSocketFactory getSocketFactory(int sendBufferSize) {
+        if (sharedSocketFactory == null || sharedSocketFactory.sendBufferSize != sendBufferSize) {
+            sharedSocketFactory = new SendBufferSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory(),
+                    sendBufferSize);
+        }
+        return sharedSocketFactory;
+    }
+
+    /**
+     * Sets the connect and read timeouts from the settings on request
+     * @param request the request to set the timeouts on
+     */
+    public static void applyTimeouts(HttpRequest request) {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        request.setConnectTimeout(configManager.getHttpConnectTimeout());
+        request.setReadTimeout(configManager.getHttpReadTimeout());
+    }
+
+    /**
+     * Wraps a SSLSocketFactory and sets the send buffer size on every socket it creates.
+     */
+    private static class SendBufferSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+        private final int sendBufferSize;
+
+        SendBufferSocketFactory(SSLSocketFactory delegate, int sendBufferSize) {
+            this.delegate = delegate;
+            this.sendBufferSize = sendBufferSize;
+        }
+
+        private Socket configure(Socket socket) throws IOException {
+            socket.setSendBufferSize(sendBufferSize);
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            // Not connected yet, the best time to set the buffer size
+            return configure(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            configure(socket);
+            return configure(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return configure(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return configure(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
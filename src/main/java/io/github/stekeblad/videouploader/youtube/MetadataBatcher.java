@@ -0,0 +1,194 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Groups small API calls that changes metadata (like adding a video to a playlist) into batch requests so many of them
+ * can be sent in one round trip. A request is sent when there is enough requests for a full batch or a short time after
+ * it was added, whatever happens first. Every request gets its own result and is retried on its own if it fails with a
+ * server error, the other requests in the same batch are not affected.
+ * Media uploads (like setting a thumbnail) can not be sent in a batch.
+ * All methods are threadsafe.
+ */
+public class MetadataBatcher {
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final long LINGER_MS = 2000;
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final List<PendingRequest<?>> pending = new ArrayList<>();
+    private final ScheduledExecutorService sender;
+    private ScheduledFuture<?> scheduledSend = null;
+
+    public MetadataBatcher() {
+        sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Metadata batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a request to the next batch
+     * @param request a request made with a YouTube object, it is not executed directly
+     * @param <T> the type of the response
+     * @return a future that is completed with the response when the request succeeds, or with a
+     * GoogleJsonResponseException or IOException when it has failed. Cancel it to not send the request.
+     */
+    public <T> CompletableFuture<T> submit(AbstractGoogleJsonClientRequest<T> request) {
+        return submit(request, () -> {});
+    }
+
+    /**
+     * Adds a request to the next batch and runs onAttempt every time it is sent, the first time and every retry
+     * @param request a request made with a YouTube object, it is not executed directly
+     * @param onAttempt called on the sender thread before each attempt, like recording the quota the request uses
+     * @param <T> the type of the response
+     * @return a future that is completed with the response when the request succeeds, or with a
+     * GoogleJsonResponseException or IOException when it has failed. Cancel it to not send the request.
+     */
+    public <T> CompletableFuture<T> submit(AbstractGoogleJsonClientRequest<T> request, Runnable onAttempt) {
+        PendingRequest<T> pendingRequest = new PendingRequest<>(request, onAttempt);
+        add(Collections.singletonList(pendingRequest));
+        return pendingRequest.result;
+    }
+
+    /**
+     * Sends all waiting requests now without waiting for a full batch
+     */
+    public void flush() {
+        sender.execute(this::sendPending);
+    }
+
+    /**
+     * Stops the batcher, requests that has not been sent are not sent
+     */
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    private synchronized void add(Collection<PendingRequest<?>> requests) {
+        pending.addAll(requests);
+        if (pending.size() >= MAX_BATCH_SIZE) {
+            sender.execute(this::sendPending);
+        } else if (scheduledSend == null || scheduledSend.isDone()) {
+            scheduledSend = sender.schedule(this::sendPending, LINGER_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the waiting requests in batches, runs on the sender thread
+     */
+    private void sendPending() {
+        while (true) {
+            List<PendingRequest<?>> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                int size = Math.min(MAX_BATCH_SIZE, pending.size());
+                batch = new ArrayList<>(pending.subList(0, size));
+                pending.subList(0, size).clear();
+            }
+            send(batch);
+        }
+    }
+
+    private void send(List<PendingRequest<?>> requests) {
+        Set<PendingRequest<?>> retry = new LinkedHashSet<>();
+        // Sending the batch is one attempt for every request in it, also if the batch fails before they are queued
+        for (PendingRequest<?> request : requests) {
+            if (!request.result.isDone()) {
+                request.attempts++;
+                request.onAttempt.run();
+            }
+        }
+        try {
+            BatchRequest batch = Auth.getYouTube().batch(Auth::initializeRequest);
+            // The global batch endpoint is deprecated, every API has its own
+            batch.setBatchUrl(new GenericUrl(Auth.getBatchUrl()));
+            for (PendingRequest<?> request : requests) {
+                // Cancelled requests is not sent
+                if (!request.result.isDone()) {
+                    request.queue(batch, retry);
+                }
+            }
+            if (batch.size() > 0) {
+                batch.execute();
+            }
+        } catch (IOException e) {
+            // The entire batch failed, try again with the requests that did not get a response
+            for (PendingRequest<?> request : requests) {
+                if (!request.result.isDone() && !request.completeIfLastAttempt(e)) {
+                    retry.add(request);
+                }
+            }
+        }
+        if (!retry.isEmpty()) {
+            int attempts = retry.iterator().next().attempts;
+            // Waits 2, 4, 8... seconds, attempts is at least 1 here but the shift is kept in range anyway
+            int shift = Math.max(0, Math.min(attempts - 1, MAX_ATTEMPTS));
+            sender.schedule(() -> add(retry), LINGER_MS << shift, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A request that is waiting to be sent and its result
+     */
+    private static class PendingRequest<T> {
+        private final AbstractGoogleJsonClientRequest<T> request;
+        private final Runnable onAttempt;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempts = 0;
+
+        PendingRequest(AbstractGoogleJsonClientRequest<T> request, Runnable onAttempt) {
+            this.request = request;
+            this.onAttempt = onAttempt;
+        }
+
+        void queue(BatchRequest batch, Set<PendingRequest<?>> retry) throws IOException {
+            request.queue(batch, new JsonBatchCallback<T>() {
+                @Override
+                public void onSuccess(T response, HttpHeaders responseHeaders) {
+                    result.complete(response);
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                    GoogleJsonResponseException exception = new GoogleJsonResponseException(
+                            new HttpResponseException.Builder(error.getCode(), error.getMessage(), responseHeaders),
+                            error);
+                    // 4xx except 429 Too Many Requests is a problem with the request, it will not work next time either
+                    boolean canRetry = error.getCode() >= 500 || error.getCode() == 429;
+                    if (canRetry && attempts < MAX_ATTEMPTS) {
+                        retry.add(PendingRequest.this);
+                    } else {
+                        result.completeExceptionally(exception);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Called when the entire batch failed, fails the request if it has no attempts left
+         * @return true if this was the last attempt and the result has been completed with e
+         */
+        boolean completeIfLastAttempt(IOException e) {
+            if (attempts >= MAX_ATTEMPTS) {
+                result.completeExceptionally(e);
+                return true;
+            }
+            return false;
+        }
+    }
+}
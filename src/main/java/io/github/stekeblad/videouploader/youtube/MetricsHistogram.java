@@ -0,0 +1,193 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values (like latencies in milliseconds) in buckets that are powers of two, 4 buckets per power so a
+ * percentile is within about 20% of the real value. Recording is lock free and cheap enough to do for every chunk.
+ * Percentiles are estimated by interpolating inside the bucket the percentile is in.
+ * All methods are threadsafe.
+ */
+public class MetricsHistogram implements MetricsHistogramMXBean {
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    // Values 0-3 get one bucket each, then 4 buckets for every power of two up to Long.MAX_VALUE
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param name the name of the histogram, used in the metrics file and as the JMX name
+     * @param unit the unit of the recorded values
+     */
+    public MetricsHistogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the time since startNanos in milliseconds
+     * @param startNanos a value from System.nanoTime() when the measured thing started
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMean() {
+        return snapshot().getMean();
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public long getP50() {
+        return Math.min(getMax(), snapshot().getPercentile(0.50));
+    }
+
+    @Override
+    public long getP95() {
+        return Math.min(getMax(), snapshot().getPercentile(0.95));
+    }
+
+    @Override
+    public long getP99() {
+        return Math.min(getMax(), snapshot().getPercentile(0.99));
+    }
+
+    /**
+     * @return a copy of the current counts. The values recorded while the copy is made may be partly included.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, sum.sum());
+    }
+
+    /**
+     * @param value a value that is 0 or larger
+     * @return the index of the bucket value is counted in
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (highestBit - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the smallest value counted in the bucket
+     */
+    static long bucketStart(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int highestBit = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (1L << highestBit) + (subBucket << (highestBit - SUB_BUCKET_BITS));
+    }
+
+    /**
+     * The counts of a histogram at one point in time. Two snapshots can be subtracted to get the values recorded
+     * between them, that is how the metrics file gets the percentiles of every interval.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @param earlier a earlier snapshot of the same histogram
+         * @return the values that was recorded after earlier was taken
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] difference = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = Math.max(0, counts[i] - earlier.counts[i]);
+            }
+            return new Snapshot(difference, Math.max(0, sum - earlier.sum));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param fraction the percentile as a fraction, like 0.95
+         * @return the estimated value at the percentile, 0 if there is no values
+         */
+        public long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            double rank = Math.max(1, Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                if (seen + counts[i] >= rank) {
+                    long start = bucketStart(i);
+                    long width = i + 1 < counts.length ? bucketStart(i + 1) - start : 0;
+                    return start + (long) (width * ((rank - seen) / counts[i]));
+                }
+                seen += counts[i];
+            }
+            return bucketStart(counts.length - 1);
+        }
+    }
+}
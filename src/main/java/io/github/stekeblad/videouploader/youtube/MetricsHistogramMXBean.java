@@ -0,0 +1,33 @@
+package io.github.stekeblad.videouploader.youtube;
+
+/**
+ * The values of a MetricsHistogram that is published with JMX, all values are since the program was started
+ */
+public interface MetricsHistogramMXBean {
+
+    /**
+     * @return the unit of the recorded values, like "ms" or "B/s"
+     */
+    String getUnit();
+
+    /**
+     * @return the number of recorded values
+     */
+    long getCount();
+
+    /**
+     * @return the mean of all recorded values, 0 if there is none
+     */
+    double getMean();
+
+    /**
+     * @return the largest recorded value, 0 if there is none
+     */
+    long getMax();
+
+    long getP50();
+
+    long getP95();
+
+    long getP99();
+}
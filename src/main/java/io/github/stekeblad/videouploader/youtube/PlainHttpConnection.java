@@ -0,0 +1,510 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A HttpURLConnection for http:// URLs that opens its own socket, so the send buffer size can be set before the socket
+ * is connected. The HttpURLConnection of the JVM has no way to do that for plain HTTP, for HTTPS the socket factory is
+ * used instead (see HttpTransportFactory).
+ *
+ * Only what NetHttpTransport uses is supported: a fixed length, chunked or buffered request body and a response body
+ * with a Content-Length, chunked or until the connection is closed. Proxies and redirects is not supported and every
+ * connection is closed after one request. Plain HTTP is only used against a local server (like LocalApiServer)
+ * where opening a connection costs nothing.
+ */
+class PlainHttpConnection extends HttpURLConnection {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final int sendBufferSize;
+    private Socket socket;
+    private OutputStream socketOut;
+    private InputStream socketIn;
+    private Map<String, List<String>> requestHeaders;
+    private boolean headSent = false;
+    private ByteArrayOutputStream bufferedBody = null;
+    private OutputStream requestBody = null;
+    private boolean responseRead = false;
+    private InputStream responseBody;
+    // Index 0 is the status line with a null key, like the HttpURLConnection of the JVM
+    private final List<String> headerKeys = new ArrayList<>();
+    private final List<String> headerValues = new ArrayList<>();
+
+    /**
+     * @param url a http:// URL
+     * @param sendBufferSize the size of the socket send buffer in bytes
+     */
+    PlainHttpConnection(URL url, int sendBufferSize) {
+        super(url);
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (connected) {
+            return;
+        }
+        Socket newSocket = new Socket();
+        try {
+            // Must be set before connecting, the TCP window is agreed on in the handshake
+            newSocket.setSendBufferSize(sendBufferSize);
+            int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            newSocket.connect(new InetSocketAddress(url.getHost(), port), getConnectTimeout());
+            newSocket.setSoTimeout(getReadTimeout());
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+        socketOut = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        socketIn = new BufferedInputStream(socket.getInputStream(), 8192);
+        // URLConnection does not give out the request headers when connected
+        requestHeaders = getRequestProperties();
+        connected = true;
+    }
+
+    @Override
+    public void disconnect() {
+        // Can be called from another thread to abort a request, closing the socket makes blocked reads and writes fail
+        Socket toClose = socket;
+        if (toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+    /**
+     * @return the send buffer size of the socket as reported by the OS, it can be larger than the requested size
+     */
+    int getSocketSendBufferSize() throws IOException {
+        if (socket == null) {
+            throw new IOException("Not connected");
+        }
+        return socket.getSendBufferSize();
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (!doOutput) {
+            throw new ProtocolException("Can not write a request body when doOutput is false");
+        }
+        if (responseRead) {
+            throw new ProtocolException("Can not write a request body after the response has been read");
+        }
+        if (requestBody != null) {
+            return requestBody;
+        }
+        long fixedLength = fixedContentLengthLong != -1 ? fixedContentLengthLong : fixedContentLength;
+        if (fixedLength != -1) {
+            connect();
+            sendHead(fixedLength, false);
+            requestBody = new FixedLengthOutputStream(socketOut, fixedLength);
+        } else if (chunkLength != -1) {
+            connect();
+            sendHead(-1, true);
+            requestBody = new ChunkedOutputStream(socketOut);
+        } else {
+            // The length is not known until the response is asked for
+            bufferedBody = new ByteArrayOutputStream();
+            requestBody = bufferedBody;
+        }
+        return requestBody;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        readResponse();
+        if (responseCode >= 400) {
+            throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+        }
+        return responseBody;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return responseRead && responseCode >= 400 ? responseBody : null;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        readResponse();
+        return responseCode;
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        readResponse();
+        return responseMessage;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        if (!tryReadResponse()) {
+            return null;
+        }
+        // The last value wins, like the HttpURLConnection of the JVM
+        for (int i = headerKeys.size() - 1; i > 0; i--) {
+            if (headerKeys.get(i).equalsIgnoreCase(name)) {
+                return headerValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return tryReadResponse() && n >= 0 && n < headerKeys.size() ? headerKeys.get(n) : null;
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return tryReadResponse() && n >= 0 && n < headerValues.size() ? headerValues.get(n) : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        if (!tryReadResponse()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        for (int i = 0; i < headerKeys.size(); i++) {
+            fields.computeIfAbsent(headerKeys.get(i), key -> new ArrayList<>()).add(headerValues.get(i));
+        }
+        fields.replaceAll((key, values) -> Collections.unmodifiableList(values));
+        return Collections.unmodifiableMap(fields);
+    }
+
+    private boolean tryReadResponse() {
+        try {
+            readResponse();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the request line and the headers
+     * @param contentLength the length of the body, -1 if there is no body or it is chunked
+     * @param chunked true if the body is sent with chunked transfer encoding
+     */
+    private void sendHead(long contentLength, boolean chunked) throws IOException {
+        StringBuilder head = new StringBuilder();
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        head.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+        boolean hasHost = false;
+        for (Map.Entry<String, List<String>> property : requestHeaders.entrySet()) {
+            String name = property.getKey();
+            if (name == null || name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding")
+                    || name.equalsIgnoreCase("Connection")) {
+                // Set below from how the body is sent
+                continue;
+            }
+            hasHost |= name.equalsIgnoreCase("Host");
+            for (String value : property.getValue()) {
+                head.append(name).append(": ").append(value).append("\r\n");
+            }
+        }
+        if (!hasHost) {
+            head.append("Host: ").append(url.getHost());
+            if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+                head.append(':').append(url.getPort());
+            }
+            head.append("\r\n");
+        }
+        if (chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else if (contentLength >= 0) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+        socketOut.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        headSent = true;
+    }
+
+    /**
+     * Sends what is left of the request and reads the status line and the headers of the response
+     */
+    private synchronized void readResponse() throws IOException {
+        if (responseRead) {
+            return;
+        }
+        connect();
+        if (!headSent) {
+            byte[] body = bufferedBody == null ? null : bufferedBody.toByteArray();
+            boolean sendsBody = body != null || "POST".equals(method) || "PUT".equals(method);
+            sendHead(sendsBody ? (body == null ? 0 : body.length) : -1, false);
+            if (body != null) {
+                socketOut.write(body);
+            }
+        } else if (requestBody != null) {
+            // Ends a chunked body and checks that a fixed length body is complete
+            requestBody.close();
+        }
+        socketOut.flush();
+
+        String statusLine;
+        do {
+            statusLine = readLine(socketIn);
+            headerKeys.clear();
+            headerValues.clear();
+            headerKeys.add(null);
+            headerValues.add(statusLine);
+            String line;
+            while (!(line = readLine(socketIn)).isEmpty()) {
+                int colonIndex = line.indexOf(':');
+                if (colonIndex > 0) {
+                    headerKeys.add(line.substring(0, colonIndex).trim());
+                    headerValues.add(line.substring(colonIndex + 1).trim());
+                }
+            }
+            // Skip 100 Continue and other informational responses
+        } while (parseStatus(statusLine) < 200);
+
+        // Closing the body closes the socket, the server was told to close the connection after the response
+        String transferEncoding = findHeader("Transfer-Encoding");
+        String contentLength = findHeader("Content-Length");
+        if ("HEAD".equals(method) || responseCode == 204 || responseCode == 304) {
+            responseBody = new LimitedInputStream(socketIn, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            responseBody = new ChunkedInputStream(socketIn);
+        } else if (contentLength != null) {
+            responseBody = new LimitedInputStream(socketIn, Long.parseLong(contentLength));
+        } else {
+            responseBody = socketIn;
+        }
+        responseRead = true;
+    }
+
+    private String findHeader(String name) {
+        for (int i = headerKeys.size() - 1; i > 0; i--) {
+            if (headerKeys.get(i).equalsIgnoreCase(name)) {
+                return headerValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets responseCode and responseMessage from a status line like "HTTP/1.1 200 OK"
+     */
+    private int parseStatus(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+        try {
+            responseCode = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+        responseMessage = parts.length > 2 ? parts[2] : "";
+        return responseCode;
+    }
+
+    /**
+     * Reads a line ended by CRLF or LF
+     * @return the line without the line break
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("The connection was closed before the response was complete");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Writes to the socket without closing it and checks that exactly length bytes is written
+     */
+    private static class FixedLengthOutputStream extends FilterOutputStream {
+        private long remaining;
+        private boolean closed = false;
+
+        FixedLengthOutputStream(OutputStream out, long length) {
+            super(out);
+            remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (length > remaining) {
+                throw new IOException("Too many bytes written, expected " + remaining + " more but got " + length);
+            }
+            out.write(buffer, offset, length);
+            remaining -= length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (remaining != 0) {
+                throw new IOException("Too few bytes written, " + remaining + " bytes is missing");
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes every write as a chunk and the last empty chunk when closed, the socket is not closed
+     */
+    private static class ChunkedOutputStream extends FilterOutputStream {
+        private boolean closed = false;
+
+        ChunkedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (length == 0) {
+                return;
+            }
+            out.write(Integer.toHexString(length).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+            out.write(buffer, offset, length);
+            out.write(CRLF);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.write('0');
+            out.write(CRLF);
+            out.write(CRLF);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads at most length bytes
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new EOFException("The connection was closed with " + remaining + " bytes of the body left");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    /**
+     * Reads a body with chunked transfer encoding
+     */
+    private static class ChunkedInputStream extends FilterInputStream {
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        ChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (chunkRemaining == 0) {
+                String sizeLine = readLine(in);
+                int extensionIndex = sizeLine.indexOf(';');
+                try {
+                    chunkRemaining = Long.parseLong(
+                            (extensionIndex < 0 ? sizeLine : sizeLine.substring(0, extensionIndex)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid chunk size: " + sizeLine);
+                }
+                if (chunkRemaining == 0) {
+                    // Skip the trailers
+                    String trailer;
+                    do {
+                        trailer = readLine(in);
+                    } while (!trailer.isEmpty());
+                    finished = true;
+                    return -1;
+                }
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("The connection was closed in the middle of a chunk");
+            }
+            chunkRemaining -= read;
+            if (chunkRemaining == 0) {
+                readLine(in); // the CRLF after the chunk
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return finished ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
+import io.github.stekeblad.videouploader.utils.translation.Translations;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Checks uploads against the limits of the Youtube API before they is given to the Uploader, so a problem is shown
+ * when the video is added and not when the API rejects it. The files of all uploads is checked in parallel on a
+ * fork-join pool because most of the time is spent waiting for the disk (content type, file size, thumbnail header).
+ * A report is returned for every upload, in the same order as they was given. The messages of the problems is
+ * translated with the uploader translations.
+ * The async methods never blocks and can be used from the FX thread, the others waits for the result.
+ */
+public enum PreflightValidator {
+    INSTANCE;
+
+    // Limits of the Youtube API
+    public static final int MAX_TITLE_LENGTH = 100;
+    public static final int MAX_DESCRIPTION_BYTES = 5000;
+    public static final int MAX_TAGS_LENGTH = 500;
+    public static final long MAX_VIDEO_SIZE = 256L * 1024 * 1024 * 1024;
+    // Recommended thumbnail size, smaller or not 16:9 thumbnails is allowed but looks bad
+    public static final int MIN_THUMB_WIDTH = 640;
+    private static final double THUMB_ASPECT_RATIO = 16.0 / 9.0;
+    private static final double THUMB_ASPECT_TOLERANCE = 0.05;
+
+    private static final String VIDEO_FILE_FORMAT = "video/";
+    // Used when the system does not know the type of a file
+    private static final List<String> VIDEO_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(
+            "mp4", "m4v", "mkv", "mov", "avi", "wmv", "flv", "webm", "mpg", "mpeg", "ts", "3gp"));
+    private static final List<String> THUMBNAIL_FORMATS = Collections.unmodifiableList(
+            Arrays.asList("jpeg", "png"));
+    // Below this many uploads a task checks them itself instead of splitting
+    private static final int SPLIT_THRESHOLD = 2;
+
+    private final ForkJoinPool pool;
+
+    PreflightValidator() {
+        // The checks mostly wait for IO, use more threads than cores so a slow disk does not leave the cores idle
+        int parallelism = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Preflight " + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * How bad a problem is
+     */
+    public enum Severity {
+        /** The API will reject the upload */
+        ERROR,
+        /** The upload will work but the result may not be what the user wants */
+        WARNING
+    }
+
+    /**
+     * A problem with one field of a upload
+     */
+    public static class Problem {
+        private final Severity severity;
+        private final String field;
+        private final String message;
+
+        /**
+         * @param field the field with the problem, also the end of the translation key of the field name
+         * @param messageKey the translation key of the message, it is formatted with args
+         */
+        Problem(Severity severity, String field, String messageKey, Object... args) {
+            this.severity = severity;
+            this.field = field;
+            this.message = String.format(translations().getString(messageKey), args);
+        }
+
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        /**
+         * @return the field with the problem: "title", "description", "tags", "thumbnail" or "video file"
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * @return the translated name of the field with the problem
+         */
+        public String getFieldName() {
+            return translations().getString("preflight_field_" + field.replace(" ", ""));
+        }
+
+        /**
+         * @return the translated description of the problem
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return translations().getString("preflight_" + severity) + " " + getFieldName() + ": " + message;
+        }
+    }
+
+    /**
+     * The result of checking one upload
+     */
+    public static class Report {
+        private final UploadDetails details;
+        private final File videoFile;
+        private final List<Problem> problems;
+
+        Report(UploadDetails details, File videoFile, List<Problem> problems) {
+            this.details = details;
+            this.videoFile = videoFile;
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * @return the checked upload, null if only the video file was checked
+         */
+        public UploadDetails getDetails() {
+            return details;
+        }
+
+        public File getVideoFile() {
+            return videoFile;
+        }
+
+        public List<Problem> getProblems() {
+            return problems;
+        }
+
+        /**
+         * @return true if the API would reject the upload
+         */
+        public boolean hasErrors() {
+            for (Problem problem : problems) {
+                if (problem.getSeverity() == Severity.ERROR) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if there is no problems, not even warnings
+         */
+        public boolean isClean() {
+            return problems.isEmpty();
+        }
+
+        /**
+         * @return the name of the video file followed by one line per problem
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(videoFile == null ?
+                    translations().getString("preflight_noVideoFile") : videoFile.getName());
+            for (Problem problem : problems) {
+                builder.append(System.lineSeparator()).append("    ").append(problem);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Checks all fields and files of the uploads in parallel. Blocks until all uploads is checked, use validateAsync()
+     * on the FX thread.
+     * @param uploads the uploads to check
+     * @return one report per upload, in the same order as uploads
+     */
+    public List<Report> validate(List<UploadDetails> uploads) {
+        return validateAsync(uploads).join();
+    }
+
+    /**
+     * Checks all fields and files of the uploads in parallel without waiting for the result
+     * @param uploads the uploads to check
+     * @return a future with one report per upload, in the same order as uploads. It is completed on a thread of the
+     * validator, not on the calling thread.
+     */
+    public CompletableFuture<List<Report>> validateAsync(List<UploadDetails> uploads) {
+        return check(uploads, details -> new Report(details, details.getVideoFile(), checkDetails(details)));
+    }
+
+    /**
+     * Checks only the video files in parallel, used when files is picked and has no details yet.
+     * Blocks until all files is checked, use validateFilesAsync() on the FX thread.
+     * @param videoFiles the files to check
+     * @param maxFileSize the max allowed file size in bytes, for no limit other than Youtube's pass Long.MAX_VALUE
+     * @return one report per file, in the same order as videoFiles
+     */
+    public List<Report> validateFiles(List<File> videoFiles, long maxFileSize) {
+        return validateFilesAsync(videoFiles, maxFileSize).join();
+    }
+
+    /**
+     * Checks only the video files in parallel without waiting for the result
+     * @param videoFiles the files to check
+     * @param maxFileSize the max allowed file size in bytes, for no limit other than Youtube's pass Long.MAX_VALUE
+     * @return a future with one report per file, in the same order as videoFiles. It is completed on a thread of the
+     * validator, not on the calling thread.
+     */
+    public CompletableFuture<List<Report>> validateFilesAsync(List<File> videoFiles, long maxFileSize) {
+        return check(videoFiles, file -> {
+            List<Problem> problems = new ArrayList<>();
+            checkVideoFile(file, maxFileSize, problems);
+            return new Report(null, file, problems);
+        });
+    }
+
+    /**
+     * Checks if the file name ends with the extension of a common video format, for when the system can not tell the
+     * type of a file
+     * @param file the file to check
+     * @return true if the extension is a video extension
+     */
+    public static boolean hasVideoExtension(File file) {
+        String name = file.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        return extensionIndex > 0 &&
+                VIDEO_EXTENSIONS.contains(name.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private <T> CompletableFuture<List<Report>> check(List<T> items, Function<T, Report> checker) {
+        if (items.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        // invoke() on a thread of the pool runs the task there and forks the parts to the other threads of the pool
+        return CompletableFuture.supplyAsync(() -> new CheckTask<>(items, 0, items.size(), checker).invoke(), pool);
+    }
+
+    /**
+     * Splits the list in halves until the parts is small, checks the parts in parallel and joins the reports in order
+     */
+    private static class CheckTask<T> extends RecursiveTask<List<Report>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> items;
+        private final int from;
+        private final int to;
+        private final Function<T, Report> checker;
+
+        CheckTask(List<T> items, int from, int to, Function<T, Report> checker) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.checker = checker;
+        }
+
+        @Override
+        protected List<Report> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                List<Report> reports = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    reports.add(checker.apply(items.get(i)));
+                }
+                return reports;
+            }
+            int middle = (from + to) >>> 1;
+            CheckTask<T> left = new CheckTask<>(items, from, middle, checker);
+            left.fork();
+            List<Report> reports = new CheckTask<>(items, middle, to, checker).compute();
+            List<Report> leftReports = left.join();
+            leftReports.addAll(reports);
+            return leftReports;
+        }
+    }
+
+    private List<Problem> checkDetails(UploadDetails details) {
+        List<Problem> problems = new ArrayList<>();
+        checkTitle(details.getVideoName(), problems);
+        checkDescription(details.getVideoDescription(), problems);
+        checkTags(details.getVideoTags(), problems);
+        checkThumbnail(details.getThumbNail(), problems);
+        checkVideoFile(details.getVideoFile(), MAX_VIDEO_SIZE, problems);
+        return problems;
+    }
+
+    private void checkTitle(String title, List<Problem> problems) {
+        if (title == null || title.trim().isEmpty()) {
+            problems.add(new Problem(Severity.ERROR, "title", "preflight_noTitle"));
+            return;
+        }
+        int length = title.codePointCount(0, title.length());
+        if (length > MAX_TITLE_LENGTH) {
+            problems.add(new Problem(Severity.ERROR, "title", "preflight_tooLong", length,
+                    MAX_TITLE_LENGTH));
+        }
+        if (title.indexOf('<') >= 0 || title.indexOf('>') >= 0) {
+            problems.add(new Problem(Severity.ERROR, "title", "preflight_angleBrackets"));
+        }
+    }
+
+    private void checkDescription(String description, List<Problem> problems) {
+        if (description == null) {
+            return;
+        }
+        int bytes = description.getBytes(StandardCharsets.UTF_8).length;
+        if (bytes > MAX_DESCRIPTION_BYTES) {
+            problems.add(new Problem(Severity.ERROR, "description", "preflight_tooManyBytes", bytes,
+                    MAX_DESCRIPTION_BYTES));
+        }
+        if (description.indexOf('<') >= 0 || description.indexOf('>') >= 0) {
+            problems.add(new Problem(Severity.ERROR, "description", "preflight_angleBrackets"));
+        }
+    }
+
+    /**
+     * Youtube counts the length of the tags with a comma between them and quotes around tags with spaces in
+     */
+    private void checkTags(List<String> tags, List<Problem> problems) {
+        int length = 0;
+        int count = 0;
+        for (String tag : tags) {
+            String trimmed = tag.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (count > 0) {
+                length++;
+            }
+            length += trimmed.codePointCount(0, trimmed.length());
+            if (trimmed.indexOf(' ') >= 0) {
+                length += 2;
+            }
+            if (trimmed.indexOf('<') >= 0 || trimmed.indexOf('>') >= 0) {
+                problems.add(new Problem(Severity.ERROR, "tags", "preflight_tagAngleBrackets", trimmed));
+            }
+            count++;
+        }
+        if (length > MAX_TAGS_LENGTH) {
+            problems.add(new Problem(Severity.ERROR, "tags", "preflight_tagsTooLong", length,
+                    MAX_TAGS_LENGTH));
+        }
+    }
+
+    private void checkThumbnail(File thumbnail, List<Problem> problems) {
+        if (thumbnail == null) {
+            return;
+        }
+        if (!thumbnail.isFile() || !thumbnail.canRead()) {
+            problems.add(new Problem(Severity.ERROR, "thumbnail", "preflight_cantReadPath",
+                    thumbnail.getAbsolutePath()));
+            return;
+        }
+        // Only the header is read to get the format and size, not the whole image
+        try (ImageInputStream input = ImageIO.createImageInputStream(thumbnail)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                problems.add(new Problem(Severity.ERROR, "thumbnail", "preflight_notImage"));
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                // ThumbnailNormalizer converts it to a 1280x720 jpg, the size of the original does not matter
+                if (!THUMBNAIL_FORMATS.contains(format)) {
+                    problems.add(new Problem(Severity.WARNING, "thumbnail", "preflight_thumbConverted",
+                            format));
+                    return;
+                }
+                if (thumbnail.length() > VideoInformationBase.MAX_THUMB_SIZE) {
+                    problems.add(new Problem(Severity.WARNING, "thumbnail", "preflight_thumbTooLarge",
+                            formatMegabytes(thumbnail.length()), formatMegabytes(VideoInformationBase.MAX_THUMB_SIZE)));
+                    return;
+                }
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width < MIN_THUMB_WIDTH) {
+                    problems.add(new Problem(Severity.WARNING, "thumbnail", "preflight_thumbNarrow", width,
+                            MIN_THUMB_WIDTH));
+                }
+                if (height > 0 && Math.abs((double) width / height - THUMB_ASPECT_RATIO) / THUMB_ASPECT_RATIO >
+                        THUMB_ASPECT_TOLERANCE) {
+                    problems.add(new Problem(Severity.WARNING, "thumbnail", "preflight_thumbAspect", width,
+                            height));
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            problems.add(new Problem(Severity.ERROR, "thumbnail", "preflight_imageReadError", e.getMessage()));
+        }
+    }
+
+    private void checkVideoFile(File videoFile, long maxFileSize, List<Problem> problems) {
+        if (videoFile == null) {
+            problems.add(new Problem(Severity.ERROR, "video file", "preflight_noVideoFile"));
+            return;
+        }
+        if (!videoFile.isFile() || !videoFile.canRead()) {
+            problems.add(new Problem(Severity.ERROR, "video file", "preflight_cantRead"));
+            return;
+        }
+        String contentType = null;
+        try {
+            contentType = Files.probeContentType(videoFile.toPath());
+        } catch (IOException e) {
+            // Same as a unknown type, check the extension
+        }
+        if (contentType != null && !contentType.startsWith(VIDEO_FILE_FORMAT)) {
+            problems.add(new Problem(Severity.ERROR, "video file", "preflight_invalidType"));
+            return;
+        }
+        // Systems without a MIME database does not know any type, then only the extension can be checked. Youtube
+        // decides in the end so a unknown type is not stopped here.
+        if (contentType == null && !hasVideoExtension(videoFile)) {
+            problems.add(new Problem(Severity.WARNING, "video file", "preflight_unknownType"));
+        }
+        long length = videoFile.length();
+        if (length == 0) {
+            problems.add(new Problem(Severity.ERROR, "video file", "preflight_empty"));
+        } else if (length > Math.min(maxFileSize, MAX_VIDEO_SIZE)) {
+            problems.add(new Problem(Severity.ERROR, "video file", "preflight_tooLarge"));
+        }
+    }
+
+    private static Translations translations() {
+        return TranslationsManager.getTranslation(TranslationBundles.UPLOADER);
+    }
+
+    private static String formatMegabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.3fMB", (double) bytes / (1024 * 1024));
+    }
+}
@@ -0,0 +1,328 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Enum-Singleton that counts the Youtube API quota used today. Every call to the API costs a number of quota units
+ * and a project can only use a limited number of units per day, the day starts at midnight Pacific time.
+ * The usage is saved to disc after every call so it is correct after a restart.
+ * Uploads reserve the quota they will need before they are started, so the upload lanes does not start more uploads
+ * than the remaining quota is enough for. A reservation is reduced when the calls it was made for is recorded.
+ * A upload that does not fit only because of the reservations of other uploads waits for them with awaitChange(), only
+ * a upload that does not fit in what is left after the used quota needs to wait for the next quota day.
+ * All methods are threadsafe.
+ */
+public enum QuotaLedger {
+    INSTANCE;
+
+    private static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+
+    /**
+     * The API calls this program makes and what they cost
+     */
+    public enum ApiCall {
+        VIDEOS_INSERT(1600),
+        THUMBNAILS_SET(50),
+        PLAYLIST_ITEMS_INSERT(50),
+        PLAYLISTS_INSERT(50),
+        PLAYLISTS_LIST(1),
+        VIDEO_CATEGORIES_LIST(1);
+
+        private final int cost;
+
+        ApiCall(int cost) {
+            this.cost = cost;
+        }
+
+        /**
+         * @return the number of quota units one call costs
+         */
+        public int getCost() {
+            return cost;
+        }
+    }
+
+    private LocalDate day = null;
+    private int used = 0;
+    private final EnumMap<ApiCall, Integer> calls = new EnumMap<>(ApiCall.class);
+    private final Map<String, Integer> reservations = new HashMap<>();
+    // Increased every time the used or reserved quota changes, awaitChange() waits for it
+    private long changes = 0;
+    private Runnable changedCallback = null;
+
+    /**
+     * Sets a method to be called every time the used or reserved quota changes. It is called on the thread that made
+     * the change.
+     * @param callback the method to call, or null
+     */
+    public synchronized void setChangedCallback(Runnable callback) {
+        this.changedCallback = callback;
+    }
+
+    /**
+     * Records that a API call is made, call it before the request is sent as failed requests also costs quota
+     * @param call the call that is made
+     */
+    public void record(ApiCall call) {
+        record(call, null);
+    }
+
+    /**
+     * Records that a API call is made and reduces the reservation it was made for
+     * @param call the call that is made
+     * @param reservation the name the quota was reserved with, or null
+     */
+    public void record(ApiCall call, String reservation) {
+        synchronized (this) {
+            rollOver();
+            used += call.getCost();
+            calls.merge(call, 1, Integer::sum);
+            if (reservation != null) {
+                reservations.computeIfPresent(reservation, (name, units) -> Math.max(0, units - call.getCost()));
+            }
+            save();
+            signalChange();
+        }
+        onChanged();
+    }
+
+    /**
+     * Marks all quota as used for today, called when Youtube says the quota is exceeded even if the ledger did not
+     * expect it (like when the quota was used by another program using the same project)
+     */
+    public void markExhausted() {
+        synchronized (this) {
+            rollOver();
+            used = Math.max(used, getDailyLimit());
+            save();
+            signalChange();
+        }
+        onChanged();
+    }
+
+    /**
+     * Reserves quota for a upload if enough is left today. If the daily limit is smaller than what a single upload
+     * needs, one upload at a time is allowed when no quota has been used today.
+     * @param name a name for the reservation, like the cancelName of the upload
+     * @param units the number of units the upload will use
+     * @return true if the quota is reserved (or name already had a reservation), false if there is not enough left
+     */
+    public boolean tryReserve(String name, int units) {
+        synchronized (this) {
+            rollOver();
+            if (reservations.containsKey(name)) {
+                return true;
+            }
+            int reserved = getReserved();
+            boolean nothingUsed = used == 0 && reserved == 0;
+            if (used + reserved + units > getDailyLimit() && !nothingUsed) {
+                return false;
+            }
+            reservations.put(name, units);
+        }
+        onChanged();
+        return true;
+    }
+
+    /**
+     * Removes the reservation, called when the upload is finished, failed or aborted
+     * @param name the name the quota was reserved with
+     */
+    public void release(String name) {
+        boolean removed;
+        synchronized (this) {
+            removed = reservations.remove(name) != null;
+            if (removed) {
+                signalChange();
+            }
+        }
+        if (removed) {
+            onChanged();
+        }
+    }
+
+    /**
+     * Checks if a upload can not fit today even if all reservations was released, then it has to wait for the next
+     * quota day. Otherwise it only has to wait for other uploads to release their reservations.
+     * @param units the number of units the upload will use
+     * @return true if the used quota leaves too little for units
+     */
+    public synchronized boolean isUsedUp(int units) {
+        rollOver();
+        // Same rule as tryReserve(), a upload larger than the limit can run when nothing is used
+        return used > 0 && used + units > getDailyLimit();
+    }
+
+    /**
+     * @return a number that is increased every time the used or reserved quota changes, give it to awaitChange()
+     */
+    public synchronized long getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * Waits until the used or reserved quota has changed since getChangeCount() returned seen, like when a upload
+     * releases its reservation, or until the timeout. Used to try tryReserve() again.
+     * @param seen the value of getChangeCount() read before the failed tryReserve()
+     * @param timeoutMs the longest time to wait, in milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void awaitChange(long seen, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long left = timeoutMs;
+        while (changes == seen && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param name the name the quota was reserved with
+     * @return the number of units still reserved by name, -1 if name has no reservation
+     */
+    public synchronized int getReservation(String name) {
+        return reservations.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return the number of units reserved by uploads in progress
+     */
+    public synchronized int getReserved() {
+        int reserved = 0;
+        for (int units : reservations.values()) {
+            reserved += units;
+        }
+        return reserved;
+    }
+
+    /**
+     * @return the number of units used today
+     */
+    public synchronized int getUsedToday() {
+        rollOver();
+        return used;
+    }
+
+    /**
+     * @param call a API call
+     * @return how many times call has been made today
+     */
+    public synchronized int getCallCount(ApiCall call) {
+        rollOver();
+        return calls.getOrDefault(call, 0);
+    }
+
+    /**
+     * @return the number of units left today that is not used or reserved
+     */
+    public synchronized int getRemainingToday() {
+        rollOver();
+        return Math.max(0, getDailyLimit() - used - getReserved());
+    }
+
+    /**
+     * @return the number of units that can be used per day
+     */
+    public int getDailyLimit() {
+        return ConfigManager.INSTANCE.getQuotaDailyLimit();
+    }
+
+    /**
+     * @param now a time in epoch milliseconds
+     * @return the time the quota is reset after now, midnight Pacific time, in epoch milliseconds
+     */
+    public static long getNextReset(long now) {
+        return quotaDay(now).plusDays(1).atStartOfDay(QUOTA_ZONE).toInstant().toEpochMilli();
+    }
+
+    private static LocalDate quotaDay(long now) {
+        return Instant.ofEpochMilli(now).atZone(QUOTA_ZONE).toLocalDate();
+    }
+
+    /**
+     * Loads the ledger the first time and starts over when a new quota day has started. Must hold the lock.
+     */
+    private void rollOver() {
+        LocalDate today = quotaDay(System.currentTimeMillis());
+        if (day == null) {
+            load();
+        }
+        if (!today.equals(day)) {
+            day = today;
+            used = 0;
+            calls.clear();
+            signalChange();
+        }
+    }
+
+    /**
+     * Wakes the threads in awaitChange(). Must hold the lock.
+     */
+    private void signalChange() {
+        changes++;
+        notifyAll();
+    }
+
+    /**
+     * Reads the saved ledger, the format is "day:date\nused:units\n" followed by one "call:count" line per API call
+     */
+    private void load() {
+        String ledger = ConfigManager.INSTANCE.loadQuotaLedger();
+        if (ledger == null) {
+            return;
+        }
+        try {
+            for (String line : ledger.split("\n")) {
+                String[] parts = line.split(":", 2);
+                if (parts.length != 2) {
+                    continue;
+                }
+                String value = parts[1].trim();
+                if (parts[0].equals("day")) {
+                    day = LocalDate.parse(value);
+                } else if (parts[0].equals("used")) {
+                    used = Integer.parseInt(value);
+                } else {
+                    try {
+                        calls.put(ApiCall.valueOf(parts[0]), Integer.parseInt(value));
+                    } catch (IllegalArgumentException e) {
+                        // A call this version does not know about, skip it
+                    }
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            System.err.println("Invalid quota ledger, starting from zero");
+            day = null;
+            used = 0;
+            calls.clear();
+        }
+    }
+
+    private void save() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("day:").append(day).append("\n");
+        builder.append("used:").append(used).append("\n");
+        for (Map.Entry<ApiCall, Integer> entry : calls.entrySet()) {
+            builder.append(entry.getKey().name()).append(":").append(entry.getValue()).append("\n");
+        }
+        ConfigManager.INSTANCE.saveQuotaLedger(builder.toString());
+    }
+
+    private void onChanged() {
+        Runnable callback;
+        synchronized (this) {
+            callback = changedCallback;
+        }
+        if (callback != null) {
+            callback.run();
+        }
+    }
+}
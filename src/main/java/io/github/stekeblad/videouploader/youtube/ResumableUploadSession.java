@@ -0,0 +1,331 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.*;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.util.ByteStreams;
+import com.google.api.services.youtube.model.Video;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps track of the resumable upload session for a video file so a upload that was stopped (the program was closed
+ * or crashed) can continue where it was instead of starting from the beginning. The session location given by Youtube
+ * and the number of bytes Youtube has confirmed is saved to disc every time they change.
+ * A saved session is only resumed if the video file and the video details are the same as when the session was started,
+ * and only for a few days as Youtube forgets the sessions after about a week.
+ */
+public class ResumableUploadSession {
+    private static final long MAX_SESSION_AGE = 6L * 24 * 60 * 60 * 1000; // 6 days in milliseconds
+    private static final int MAX_CHUNK_FAILURES = 5;
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    private static final String VIDEO_FILE_FORMAT = "video/";
+
+    private final ConfigManager configManager = ConfigManager.INSTANCE;
+    private final File videoFile;
+    private final String sessionName;
+    private final String detailsHash;
+    private String sessionUri = null;
+    private long committedBytes = 0;
+    private long created = 0;
+
+    private ResumableUploadSession(File videoFile, String sessionName, String detailsHash) {
+        this.videoFile = videoFile;
+        this.sessionName = sessionName;
+        this.detailsHash = detailsHash;
+    }
+
+    /**
+     * Creates the session for video and loads the saved session data if the same video has been partly uploaded before
+     * @param video the details of the video that is going to be uploaded
+     * @return the session for video
+     */
+    public static ResumableUploadSession forUpload(UploadDetails video) {
+        File file = video.getVideoFile();
+        String sessionName = fileKey(file);
+        // The same string as VideoUpload.toString(), so this is the same as long as the video details are the same
+        ResumableUploadSession session = new ResumableUploadSession(file, sessionName, sha1(video.toString()));
+        session.load();
+        return session;
+    }
+
+    /**
+     * @return true if there is a saved session that can be attempted to be resumed
+     */
+    public boolean canResume() {
+        return sessionUri != null;
+    }
+
+    /**
+     * @return the number of bytes that Youtube had confirmed when the session was saved
+     */
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    /**
+     * Saves the location of a newly started upload session
+     * @param sessionUri the upload location returned by Youtube when the upload was initiated
+     */
+    public void setSessionUri(String sessionUri) {
+        this.sessionUri = sessionUri;
+        this.committedBytes = 0;
+        this.created = System.currentTimeMillis();
+        save();
+    }
+
+    /**
+     * Saves the number of bytes that Youtube has received
+     * @param committedBytes the number of bytes Youtube has confirmed
+     */
+    public void setCommittedBytes(long committedBytes) {
+        if (sessionUri == null) {
+            return;
+        }
+        this.committedBytes = committedBytes;
+        save();
+    }
+
+    /**
+     * Removes the saved session, call when the upload is finished or should not be resumed
+     */
+    public void delete() {
+        sessionUri = null;
+        committedBytes = 0;
+        configManager.deleteUploadSession(sessionName);
+    }
+
+    /**
+     * Asks Youtube how much of the video it has and uploads the rest. If Youtube does not know about the session
+     * (it has expired) the saved session is deleted and null is returned so the caller can start a new upload.
+     * @param requestFactory a HttpRequestFactory that authenticates the requests
+     * @param videoContent the video file of this session
+     * @param chunkSizeController controller for the size of the chunks, is given the same events as from a MediaHttpUploader
+     * @param progressCallback called with the current state and the number of bytes Youtube has confirmed
+     * @return the uploaded video or null if the session could not be resumed
+     * @throws IOException if the upload is interrupted, the video file can not be read or there is a network error
+     * that does not go away after a few retries
+     */
+    public Video resume(HttpRequestFactory requestFactory, FileChannelContent videoContent,
+                        ChunkSizeController chunkSizeController,
+                        BiConsumer<MediaHttpUploader.UploadState, Long> progressCallback) throws IOException {
+        if (!canResume()) {
+            return null;
+        }
+        long totalBytes = videoFile.length();
+        GenericUrl uploadUrl = new GenericUrl(sessionUri);
+
+        progressCallback.accept(MediaHttpUploader.UploadState.INITIATION_STARTED, 0L);
+        chunkSizeController.onProgress(MediaHttpUploader.UploadState.INITIATION_STARTED, 0);
+        HttpResponse response = queryStatus(requestFactory, uploadUrl, totalBytes);
+        if (isFinished(response)) {
+            return finish(response, chunkSizeController, progressCallback, totalBytes);
+        }
+        if (response.getStatusCode() != STATUS_RESUME_INCOMPLETE) {
+            IOException error = errorFrom(response);
+            if (ApiErrorClass.classify(error) != ApiErrorClass.PERMANENT) {
+                // Like the quota being used, the session is still valid when the error is gone
+                throw error;
+            }
+            // Session is unknown or expired, a new upload needs to be started
+            delete();
+            return null;
+        }
+        long offset = nextByteIndex(response);
+        response.disconnect();
+        setCommittedBytes(offset);
+        chunkSizeController.onProgress(MediaHttpUploader.UploadState.INITIATION_COMPLETE, offset);
+        progressCallback.accept(MediaHttpUploader.UploadState.INITIATION_COMPLETE, offset);
+
+        int failures = 0;
+        try (FileChannelContent.ChannelInputStream videoStream = videoContent.getInputStream(offset)) {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new IOException("INTERRUPTED");
+                }
+                long length = Math.min(chunkSizeController.getChunkSize(), totalBytes - offset);
+                try {
+                    videoStream.seek(offset);
+                    InputStream chunkStream = ByteStreams.limit(videoStream, length);
+                    InputStreamContent chunk = new InputStreamContent(VIDEO_FILE_FORMAT, chunkStream)
+                            .setLength(length).setCloseInputStream(false);
+                    HttpRequest request = requestFactory.buildPutRequest(uploadUrl, chunk);
+                    request.getHeaders().setContentRange("bytes " + offset + "-" + (offset + length - 1) + "/" + totalBytes);
+                    response = execute(request);
+                } catch (IOException e) {
+                    if (Thread.currentThread().isInterrupted() || ++failures > MAX_CHUNK_FAILURES) {
+                        throw e;
+                    }
+                    // Wait a bit and ask Youtube what it got before trying again
+                    chunkSizeController.onChunkFailed();
+                    sleepBeforeRetry(failures);
+                    try {
+                        response = queryStatus(requestFactory, uploadUrl, totalBytes);
+                    } catch (IOException queryException) {
+                        continue; // try the same chunk again
+                    }
+                }
+
+                if (isFinished(response)) {
+                    return finish(response, chunkSizeController, progressCallback, totalBytes);
+                }
+                if (response.getStatusCode() != STATUS_RESUME_INCOMPLETE) {
+                    throw errorFrom(response);
+                }
+                offset = nextByteIndex(response);
+                response.disconnect();
+                failures = 0;
+                setCommittedBytes(offset);
+                chunkSizeController.onProgress(MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS, offset);
+                progressCallback.accept(MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS, offset);
+            }
+        }
+    }
+
+    /**
+     * Sends an empty request to get the number of bytes Youtube has for this session
+     */
+    private HttpResponse queryStatus(HttpRequestFactory requestFactory, GenericUrl uploadUrl, long totalBytes)
+            throws IOException {
+        HttpRequest request = requestFactory.buildPutRequest(uploadUrl, new EmptyContent());
+        request.getHeaders().setContentRange("bytes */" + totalBytes);
+        return execute(request);
+    }
+
+    private HttpResponse execute(HttpRequest request) throws IOException {
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false); // 308 is not a redirect here
+        request.setParser(new JsonObjectParser(Auth.JSON_FACTORY));
+        return request.execute();
+    }
+
+    /**
+     * Creates the same kind of exception as the YouTube client throws for a error response, with the reason Youtube
+     * gave, so ApiErrorClass classifies errors when resuming the same way as when starting a upload. Closes response.
+     */
+    private IOException errorFrom(HttpResponse response) throws IOException {
+        try {
+            return GoogleJsonResponseException.from(Auth.JSON_FACTORY, response);
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private boolean isFinished(HttpResponse response) {
+        return response.isSuccessStatusCode();
+    }
+
+    private Video finish(HttpResponse response, ChunkSizeController chunkSizeController,
+                         BiConsumer<MediaHttpUploader.UploadState, Long> progressCallback, long totalBytes)
+            throws IOException {
+        Video video = response.parseAs(Video.class);
+        chunkSizeController.onProgress(MediaHttpUploader.UploadState.MEDIA_COMPLETE, totalBytes);
+        progressCallback.accept(MediaHttpUploader.UploadState.MEDIA_COMPLETE, totalBytes);
+        delete();
+        return video;
+    }
+
+    /**
+     * Reads the Range header in a 308 response, it looks like "bytes=0-1234" where 1234 is the last received byte
+     * @return the index of the first byte Youtube has not received
+     */
+    private long nextByteIndex(HttpResponse response) {
+        String range = response.getHeaders().getRange();
+        if (range == null) {
+            return 0;
+        }
+        return Long.parseLong(range.substring(range.indexOf('-') + 1)) + 1;
+    }
+
+    private void sleepBeforeRetry(int failures) throws IOException {
+        try {
+            Thread.sleep(1000L << Math.min(failures, 5));
+        } catch (InterruptedException e) {
+            throw new IOException("INTERRUPTED");
+        }
+    }
+
+    /**
+     * Loads the saved session, if it exists and is still valid
+     */
+    private void load() {
+        String saved = configManager.loadUploadSession(sessionName);
+        if (saved == null) {
+            return;
+        }
+        String savedUri = null;
+        String savedDetails = null;
+        for (String line : saved.split("\n")) {
+            int colonIndex = line.indexOf(':');
+            if (colonIndex < 1) {
+                continue;
+            }
+            String value = line.substring(colonIndex + 1);
+            try {
+                switch (line.substring(0, colonIndex)) {
+                    case "_uri":
+                        savedUri = value;
+                        break;
+                    case "_committed":
+                        committedBytes = Long.parseLong(value);
+                        break;
+                    case "_created":
+                        created = Long.parseLong(value);
+                        break;
+                    case "_details":
+                        savedDetails = value;
+                        break;
+                    default:
+                        // unknown, ignore
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value in upload session " + sessionName + ": " + line);
+            }
+        }
+        if (savedUri == null || !detailsHash.equals(savedDetails) ||
+                System.currentTimeMillis() - created > MAX_SESSION_AGE) {
+            // Too old or the video details has been changed, the old session can not be used
+            delete();
+            return;
+        }
+        sessionUri = savedUri;
+    }
+
+    private void save() {
+        configManager.saveUploadSession(sessionName, "_uri:" + sessionUri +
+                "\n_committed:" + committedBytes +
+                "\n_created:" + created +
+                "\n_details:" + detailsHash +
+                "\n_videofile:" + videoFile.getAbsolutePath());
+    }
+
+    /**
+     * @param file a video file
+     * @return a name for the file that is valid as a file name and changes if the file is changed
+     */
+    static String fileKey(File file) {
+        return sha1(file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    private static String sha1(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // All Java implementations must support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+}
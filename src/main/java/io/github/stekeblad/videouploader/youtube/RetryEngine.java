@@ -0,0 +1,204 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Enum-Singleton that decides if and when a failed upload is tried again, depending on the class of the error.
+ * Network and server errors are retried with a exponential backoff, rate limits with a longer backoff and when the
+ * daily quota is used all uploads are parked until the quota is reset. Permanent errors are not retried.
+ * The number of attempts and the time of the next attempt is saved for every video, and the time the queue is parked
+ * until is saved in the settings, so the retries continues after the program is restarted.
+ * All methods are threadsafe.
+ */
+public enum RetryEngine {
+    INSTANCE;
+
+    // Wait a few minutes extra after the quota is reset to not be too early
+    private static final long QUOTA_RESET_MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final double JITTER = 0.2;
+
+    /**
+     * What to do with a failed upload
+     */
+    public static class Decision {
+        private final ApiErrorClass errorClass;
+        private final int attempt;
+        private final long retryAt;
+
+        private Decision(ApiErrorClass errorClass, int attempt, long retryAt) {
+            this.errorClass = errorClass;
+            this.attempt = attempt;
+            this.retryAt = retryAt;
+        }
+
+        public ApiErrorClass getErrorClass() {
+            return errorClass;
+        }
+
+        /**
+         * @return the number of failed attempts so far, quota errors is not counted
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+
+        /**
+         * @return true if the upload should be tried again, false if the error should be shown to the user
+         */
+        public boolean willRetry() {
+            return retryAt > 0;
+        }
+
+        /**
+         * @return the time of the next attempt in epoch milliseconds, 0 if the upload should not be retried
+         */
+        public long getRetryAt() {
+            return retryAt;
+        }
+    }
+
+    /**
+     * Decides what to do with a upload that failed and saves the decision
+     * @param videoFile the video file of the upload that failed
+     * @param error what went wrong
+     * @return if and when to try again
+     */
+    public synchronized Decision onFailure(File videoFile, Throwable error) {
+        ApiErrorClass errorClass = ApiErrorClass.classify(error);
+        String key = ResumableUploadSession.fileKey(videoFile);
+        int attempt = readAttempts(key);
+        long now = System.currentTimeMillis();
+        long retryAt;
+        switch (errorClass) {
+            case TRANSIENT_NETWORK:
+                attempt++;
+                retryAt = attempt > 10 ? 0 : now + backOff(30, 15 * 60, attempt);
+                break;
+            case SERVER_ERROR:
+                attempt++;
+                retryAt = attempt > 6 ? 0 : now + backOff(30, 15 * 60, attempt);
+                break;
+            case RATE_LIMITED:
+                attempt++;
+                retryAt = attempt > 10 ? 0 : now + backOff(60, 30 * 60, attempt);
+                break;
+            case QUOTA_EXCEEDED:
+                // Not the fault of this video, do not count it as a attempt. Everything else waits as well
+                QuotaLedger.INSTANCE.markExhausted();
+                retryAt = QuotaLedger.getNextReset(now) + QUOTA_RESET_MARGIN_MS;
+                parkQueue(retryAt);
+                break;
+            default:
+                retryAt = 0;
+                break;
+        }
+        if (retryAt > 0) {
+            ConfigManager.INSTANCE.saveRetryState(key,
+                    "attempts:" + attempt + "\nerror:" + errorClass.name() + "\nnext:" + retryAt);
+        } else {
+            ConfigManager.INSTANCE.deleteRetryState(key);
+        }
+        return new Decision(errorClass, attempt, retryAt);
+    }
+
+    /**
+     * Forgets the failed attempts of a video, call when it has been uploaded or the user aborts it
+     * @param videoFile the video file
+     */
+    public synchronized void clear(File videoFile) {
+        ConfigManager.INSTANCE.deleteRetryState(ResumableUploadSession.fileKey(videoFile));
+    }
+
+    /**
+     * @param videoFile the video file of a upload
+     * @return true if the upload has failed before and is waiting to be tried again
+     */
+    public synchronized boolean hasRetryState(File videoFile) {
+        return ConfigManager.INSTANCE.loadRetryState(ResumableUploadSession.fileKey(videoFile)) != null;
+    }
+
+    /**
+     * @param videoFile the video file of a upload
+     * @return the number of milliseconds until the upload should be tried again, 0 if it can be uploaded now
+     */
+    public synchronized long getRemainingDelay(File videoFile) {
+        String state = ConfigManager.INSTANCE.loadRetryState(ResumableUploadSession.fileKey(videoFile));
+        long next = readLong(state, "next");
+        return Math.max(0, next - System.currentTimeMillis());
+    }
+
+    /**
+     * @return the time in epoch milliseconds the queue is parked until because the quota is used, 0 if not parked
+     */
+    public synchronized long getQueueParkedUntil() {
+        long parkedUntil = ConfigManager.INSTANCE.getQuotaParkedUntil();
+        return parkedUntil > System.currentTimeMillis() ? parkedUntil : 0;
+    }
+
+    /**
+     * Blocks until the queue is no longer parked, returns directly if it is not
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitQueueOpen() throws InterruptedException {
+        long parkedUntil;
+        while ((parkedUntil = getQueueParkedUntil()) > 0) {
+            // Wake up now and then in case the clock is changed, like when the computer wakes from sleep
+            Thread.sleep(Math.min(parkedUntil - System.currentTimeMillis() + 1, TimeUnit.MINUTES.toMillis(1)));
+        }
+    }
+
+    /**
+     * Parks the queue until the quota is reset, called when there is not enough quota left today for the next upload
+     */
+    public synchronized void parkUntilQuotaReset() {
+        parkQueue(QuotaLedger.getNextReset(System.currentTimeMillis()) + QUOTA_RESET_MARGIN_MS);
+    }
+
+    private void parkQueue(long until) {
+        ConfigManager configManager = ConfigManager.INSTANCE;
+        if (until > configManager.getQuotaParkedUntil()) {
+            configManager.setQuotaParkedUntil(until);
+            configManager.saveSettings();
+        }
+    }
+
+    /**
+     * @return base * 2^(attempt-1) seconds, at most max seconds, with some random jitter so uploads that failed at the
+     * same time does not retry at the same time. In milliseconds.
+     */
+    private static long backOff(long baseSeconds, long maxSeconds, int attempt) {
+        long seconds = Math.min(maxSeconds, baseSeconds << Math.min(attempt - 1, 20));
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return (long) (TimeUnit.SECONDS.toMillis(seconds) * jitter);
+    }
+
+    private static int readAttempts(String key) {
+        return (int) readLong(ConfigManager.INSTANCE.loadRetryState(key), "attempts");
+    }
+
+    /**
+     * @param state a retry state in the format "key:value\n"
+     * @param name the key to read
+     * @return the value of name, 0 if state is null or does not contain a valid number for name
+     */
+    private static long readLong(String state, String name) {
+        if (state == null) {
+            return 0;
+        }
+        for (String line : state.split("\n")) {
+            String[] parts = line.split(":", 2);
+            if (parts.length == 2 && parts[0].equals(name)) {
+                try {
+                    return Long.parseLong(parts[1].trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
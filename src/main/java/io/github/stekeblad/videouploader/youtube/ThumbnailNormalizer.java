@@ -0,0 +1,323 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.github.stekeblad.videouploader.utils.Constants.THUMBNAIL_CACHE_DIR;
+
+/**
+ * A Enum-Singleton that makes thumbnails fit the limits of the Youtube API. Thumbnails that is over 2MB or is not a
+ * jpg or png is decoded, scaled to 1280x720 and saved as a jpg with a lower and lower quality until it fits. Thumbnails
+ * that already fits is used as they are.
+ * The work is done on a small thread pool and the result is saved in the thumbnail cache directory, named by the path,
+ * last modified time and size of the original file. A thumbnail used by many uploads is only converted once, also when
+ * they ask for it at the same time. The cache is shared with FrameExtractor and is kept under MAX_CACHE_SIZE by
+ * deleting the least recently used files, a file is marked as used by setting its last modified time when it is found
+ * in the cache. Files used the last day is never deleted as uploads in the list or the journal may still point to them.
+ * All methods are threadsafe.
+ */
+public enum ThumbnailNormalizer {
+    INSTANCE;
+
+    public static final int TARGET_WIDTH = 1280;
+    public static final int TARGET_HEIGHT = 720;
+    // Tried in order until the image fits
+    private static final float[] JPEG_QUALITIES = {0.92f, 0.85f, 0.75f, 0.65f, 0.5f, 0.35f};
+    private static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+    private static final long MIN_CACHE_AGE_MS = 24L * 60 * 60 * 1000;
+    // The cache directory is listed at most this often when files are added
+    private static final long TRIM_INTERVAL_MS = 60 * 1000;
+    private static final AtomicLong lastTrim = new AtomicLong(0);
+
+    private final ExecutorService exec;
+    // The thumbnails that is being converted, by cache key
+    private final ConcurrentHashMap<String, CompletableFuture<File>> inProgress = new ConcurrentHashMap<>();
+
+    ThumbnailNormalizer() {
+        // Decoding a large image takes a lot of memory, do not do too many at the same time
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadCount = new AtomicInteger(0);
+        exec = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Thumbnail normalizer " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks if a thumbnail needs to be converted before it can be uploaded. Only reads the image header.
+     * @param thumbnail the thumbnail file
+     * @return true if the file is over 2MB or is not a jpg or png
+     */
+    public static boolean needsNormalizing(File thumbnail) {
+        if (thumbnail.length() > VideoInformationBase.MAX_THUMB_SIZE) {
+            return true;
+        }
+        String format = readFormat(thumbnail);
+        return !"jpeg".equals(format) && !"png".equals(format);
+    }
+
+    /**
+     * Starts converting a thumbnail in the background if it needs it and it is not already converted. Never blocks.
+     * Can be called when a thumbnail is selected so it is ready when the upload needs it.
+     * @param thumbnail the thumbnail file
+     * @return a future with the file to upload, the original file if it did not need to be converted. The future is
+     * completed exceptionally with a IOException if the thumbnail could not be read or made small enough.
+     */
+    public CompletableFuture<File> normalize(File thumbnail) {
+        String key = cacheKey(thumbnail.getAbsolutePath() + ":" + thumbnail.lastModified() + ":" + thumbnail.length());
+        File cached = new File(THUMBNAIL_CACHE_DIR, key + ".jpg");
+        if (cached.isFile()) {
+            markUsed(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> running = inProgress.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        exec.execute(() -> {
+            try {
+                future.complete(needsNormalizing(thumbnail) ? convert(thumbnail, cached) : thumbnail);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                inProgress.remove(key, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Like normalize() but waits for the result. Must not be called on the FX thread.
+     * @param thumbnail the thumbnail file
+     * @return the file to upload, the original file if it did not need to be converted
+     * @throws IOException if the thumbnail could not be read or made small enough, or with the message "INTERRUPTED"
+     * if the thread was interrupted while waiting
+     */
+    public File getNormalized(File thumbnail) throws IOException {
+        try {
+            return normalize(thumbnail).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("INTERRUPTED");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not convert the thumbnail \"" + thumbnail.getName() + "\"", e.getCause());
+        }
+    }
+
+    /**
+     * Decodes, scales and encodes the thumbnail and saves it in the cache
+     */
+    private File convert(File thumbnail, File cached) throws IOException {
+        BufferedImage source = ImageIO.read(thumbnail);
+        if (source == null) {
+            throw new IOException("The thumbnail \"" + thumbnail.getName() + "\" is not a image that can be read");
+        }
+        BufferedImage scaled = scale(source);
+        source.flush();
+
+        byte[] encoded = null;
+        for (float quality : JPEG_QUALITIES) {
+            encoded = encodeJpeg(scaled, quality);
+            if (encoded.length <= VideoInformationBase.MAX_THUMB_SIZE) {
+                break;
+            }
+        }
+        scaled.flush();
+        if (encoded.length > VideoInformationBase.MAX_THUMB_SIZE) {
+            throw new IOException("The thumbnail \"" + thumbnail.getName() + "\" could not be made smaller than 2MB");
+        }
+
+        writeToCache(encoded, cached);
+        return cached;
+    }
+
+    /**
+     * Writes to a temporary file first so a half written file is never found in the cache
+     * @param data the content of the file
+     * @param cached the file in the cache directory
+     * @throws IOException if the file could not be written
+     */
+    static void writeToCache(byte[] data, File cached) throws IOException {
+        Path cachePath = cached.toPath();
+        Path tmp = Paths.get(cachePath.toString() + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long now = System.currentTimeMillis();
+        long last = lastTrim.get();
+        if (now - last >= TRIM_INTERVAL_MS && lastTrim.compareAndSet(last, now)) {
+            trimCache(cached.getParentFile(), now);
+        }
+    }
+
+    /**
+     * Marks a file in the cache as recently used so it is deleted last
+     * @param cached the file in the cache directory
+     */
+    static void markUsed(File cached) {
+        if (!cached.setLastModified(System.currentTimeMillis())) {
+            System.err.println("Could not mark \"" + cached.getName() + "\" in the thumbnail cache as used");
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is smaller than MAX_CACHE_SIZE, except the files used
+     * since MIN_CACHE_AGE_MS ago. Also deletes temporary files left by a crash.
+     */
+    private static void trimCache(File cacheDir, long now) {
+        File[] files = cacheDir == null ? null : cacheDir.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        List<File> usedFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                if (now - file.lastModified() > MIN_CACHE_AGE_MS && !file.delete()) {
+                    System.err.println("Could not delete \"" + file.getName() + "\" from the thumbnail cache");
+                }
+                continue;
+            }
+            size += file.length();
+            usedFiles.add(file);
+        }
+        // Least recently used first
+        usedFiles.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : usedFiles) {
+            if (size <= MAX_CACHE_SIZE || now - file.lastModified() < MIN_CACHE_AGE_MS) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            } else {
+                System.err.println("Could not delete \"" + file.getName() + "\" from the thumbnail cache");
+            }
+        }
+    }
+
+    /**
+     * Scales the image to fit inside 1280x720 and puts it in the middle of a black 1280x720 image, like Youtube
+     * shows thumbnails that is not 16:9
+     */
+    private static BufferedImage scale(BufferedImage source) {
+        double ratio = Math.min((double) TARGET_WIDTH / source.getWidth(), (double) TARGET_HEIGHT / source.getHeight());
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage target = new BufferedImage(TARGET_WIDTH, TARGET_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(0, 0, TARGET_WIDTH, TARGET_HEIGHT);
+            graphics.drawImage(source, (TARGET_WIDTH - width) / 2, (TARGET_HEIGHT - height) / 2, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * @param image the image to encode
+     * @param quality the jpg quality, from 0 to 1
+     * @return the image as a jpg file
+     * @throws IOException if the image could not be encoded
+     */
+    static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("There is no jpg encoder");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the lower case name of the image format from the header of the file, or null if it can not be read
+     */
+    private static String readFormat(File thumbnail) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(thumbnail)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+            reader.dispose();
+            return format;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Files in the cache is named by a hash of the path, last modified time and size of the original file so a changed
+     * file gets a new name
+     * @param id the path, last modified time and size of the original file and anything else that changes the result
+     * @return the name of the file in the cache, without extension
+     */
+    static String cacheKey(String id) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
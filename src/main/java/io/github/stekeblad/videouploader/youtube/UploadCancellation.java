@@ -0,0 +1,99 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A cancellation token for one upload. When the upload is aborted the token disconnects the HTTP connection the
+ * upload is using and closes the video file, so a chunk that is being written fails right away instead of when the
+ * next progress callback checks if the thread was interrupted.
+ * The upload gives the token its connections with setConnection() (the transport from
+ * HttpTransportFactory.createCancellable() does that) and its files with closeOnCancel().
+ * All methods are threadsafe.
+ */
+public class UploadCancellation {
+    private volatile boolean cancelled = false;
+    private volatile long cancelledAt = 0;
+    private volatile HttpURLConnection connection = null;
+    private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
+
+    /**
+     * Aborts the upload. Only the first call does anything.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelledAt = System.nanoTime();
+            cancelled = true;
+        }
+        HttpURLConnection current = connection;
+        if (current != null) {
+            // Closes the socket, a blocked write throws a SocketException
+            current.disconnect();
+        }
+        for (Closeable closeable : closeables) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Already closed or failing anyway, the upload is stopping
+            }
+        }
+    }
+
+    /**
+     * @return true if cancel() has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return System.nanoTime() when cancel() was called, 0 if not cancelled
+     */
+    public long getCancelledAt() {
+        return cancelledAt;
+    }
+
+    /**
+     * @throws IOException with the message "INTERRUPTED" if the upload is cancelled
+     */
+    public void throwIfCancelled() throws IOException {
+        if (cancelled) {
+            throw new IOException("INTERRUPTED");
+        }
+    }
+
+    /**
+     * Sets the connection the upload is about to send a request with. Only the latest connection is kept, the requests
+     * of a upload is sent one at a time.
+     * @param connection the connection, it is disconnected if the upload is cancelled
+     * @throws IOException with the message "INTERRUPTED" if the upload is already cancelled
+     */
+    public void setConnection(HttpURLConnection connection) throws IOException {
+        this.connection = connection;
+        // Checked after the connection is set so a cancel() at the same time always disconnects it or stops it here
+        if (cancelled) {
+            connection.disconnect();
+            throw new IOException("INTERRUPTED");
+        }
+    }
+
+    /**
+     * @param closeable something to close when the upload is cancelled, like the video file
+     */
+    public void closeOnCancel(Closeable closeable) {
+        closeables.add(closeable);
+        if (cancelled) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // the upload is stopping
+            }
+        }
+    }
+}
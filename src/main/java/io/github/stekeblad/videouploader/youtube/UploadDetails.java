@@ -0,0 +1,302 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The details of a video or preset without any UI, like a snapshot of a VideoUpload or VideoPreset. Used by Uploader
+ * and the TagProcessors so they can run without JavaFX. Instances are immutable, use the Builder to create them.
+ */
+public class UploadDetails {
+    private static final String FIELD_TITLE = "_title";
+    private static final String FIELD_DESCRIPTION = "_description";
+    private static final String FIELD_CATEGORY = "_category";
+    private static final String FIELD_TAGS = "_tags";
+    private static final String FIELD_PLAYLIST = "_playlist";
+    private static final String FIELD_VISIBILITY = "_visibility";
+    private static final String FIELD_TELLSUBS = "_tellSubs";
+    private static final String FIELD_THUMBNAIL = "_thumbNail";
+    private static final String FIELD_VIDEOFILE = "_videofile";
+    private static final String FIELD_THUMBNAILFRAME = "_thumbnailFrame";
+
+    private final String videoName;
+    private final String videoDescription;
+    private final VisibilityStatus visibility;
+    private final List<String> videoTags;
+    private final String selectedPlaylist;
+    private final String category;
+    private final boolean tellSubs;
+    private final File thumbNail;
+    private final File videoFile;
+    private final FrameExtractor.Position thumbnailFrame;
+
+    private UploadDetails(Builder builder) {
+        this.videoName = builder.videoName;
+        this.videoDescription = builder.videoDescription;
+        this.visibility = builder.visibility == null ? VisibilityStatus.PUBLIC : builder.visibility;
+        this.videoTags = Collections.unmodifiableList(builder.videoTags == null ?
+                new ArrayList<>() : new ArrayList<>(builder.videoTags));
+        this.selectedPlaylist = builder.selectedPlaylist;
+        this.category = builder.category;
+        this.tellSubs = builder.tellSubs;
+        this.thumbNail = builder.thumbNail;
+        this.videoFile = builder.videoFile;
+        this.thumbnailFrame = builder.thumbnailFrame;
+    }
+
+    /**
+     * Reads the details from the string representation of a VideoPreset or VideoUpload, created by their toString()
+     * @param fromString the string representation
+     * @return the details, the video file is null if fromString is from a preset
+     * @throws Exception if the string is not valid
+     */
+    public static UploadDetails fromString(String fromString) throws Exception {
+        Builder builder = new Builder();
+        // Splitting up the data for easy reading, one thing per row -> on thing per array element
+        String[] lines = fromString.split("\n");
+        String line;
+        // For all lines
+        for (int i = 0; i < lines.length; i++) {
+            line = lines[i];
+            // Locate the separator between field name and value
+            int colonIndex = line.indexOf(':');
+            if (colonIndex < 0) {
+                System.err.println(fromString);
+                throw new Exception("Malformed string representation of class. Input: \n\"" + fromString + "\"");
+            }
+            // Switch on field name
+            switch (line.substring(0, colonIndex)) {
+                case FIELD_TITLE:
+                    builder.setVideoName(line.substring(colonIndex + 1));
+                    break;
+                case FIELD_DESCRIPTION:
+                    // A bit special to allow descriptions to be multi-lined with actual enters in.
+                    StringBuilder descBuilder = new StringBuilder();
+                    descBuilder.append(line.substring(colonIndex + 1));
+                    // Skips lines in the outer loop because they are not valid
+                    i++;
+                    // As long as the next line not starts with "_" treat it as a part of the description
+                    while (!lines[i].startsWith("_")) {
+                        descBuilder.append("\n").append(lines[i]);
+                        i++;
+                    }
+                    // Line started with _ ,go back one so the increment in the loop does not cause this line to be skipped
+                    i--;
+                    builder.setVideoDescription(descBuilder.toString());
+                    break;
+                case FIELD_VISIBILITY:
+                    builder.setVisibility(VisibilityStatus.valueOf(line.substring(colonIndex + 1)));
+                    break;
+                case FIELD_TAGS:
+                    line = line.substring(colonIndex + 2, line.length() - 1); // remove brackets
+                    builder.setVideoTags(new ArrayList<>(Arrays.asList(line.split(","))));
+                    break;
+                case FIELD_PLAYLIST:
+                    builder.setSelectedPlaylist(line.substring(colonIndex + 1));
+                    break;
+                case FIELD_CATEGORY:
+                    builder.setCategory(line.substring(colonIndex + 1));
+                    break;
+                case FIELD_TELLSUBS:
+                    builder.setTellSubs(Boolean.parseBoolean(line.substring(colonIndex + 1)));
+                    break;
+                case FIELD_THUMBNAIL:
+                    String thumbnailPath = line.substring(colonIndex + 1);
+                    // "_" means no thumbnail is selected
+                    builder.setThumbNail(thumbnailPath.equals("_") ? null : new File(thumbnailPath));
+                    break;
+                case FIELD_VIDEOFILE:
+                    builder.setVideoFile(new File(line.substring(colonIndex + 1)));
+                    break;
+                case FIELD_THUMBNAILFRAME:
+                    builder.setThumbnailFrame(FrameExtractor.Position.parse(line.substring(colonIndex + 1)));
+                    break;
+                default:
+                    //ignore, might be a child value
+            }
+        }
+        return builder.build();
+    }
+
+    public String getVideoName() {
+        return videoName;
+    }
+
+    public String getVideoDescription() {
+        return videoDescription;
+    }
+
+    public VisibilityStatus getVisibility() {
+        return visibility;
+    }
+
+    /**
+     * @return the tags, the list can not be modified
+     */
+    public List<String> getVideoTags() {
+        return videoTags;
+    }
+
+    public String getSelectedPlaylist() {
+        return selectedPlaylist;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public boolean isTellSubs() {
+        return tellSubs;
+    }
+
+    /**
+     * @return the thumbnail file or null if no custom thumbnail is selected
+     */
+    public File getThumbNail() {
+        return thumbNail;
+    }
+
+    /**
+     * @return the video file or null if this is the details of a preset
+     */
+    public File getVideoFile() {
+        return videoFile;
+    }
+
+    /**
+     * @return where in the video to grab a frame to use as thumbnail if no thumbnail file is selected, or null
+     */
+    public FrameExtractor.Position getThumbnailFrame() {
+        return thumbnailFrame;
+    }
+
+    /**
+     * Creates a string in the same format as VideoUpload.toString() (or VideoPreset without the preset name if there
+     * is no video file) that can be read with fromString()
+     * @return A String representation of this class
+     */
+    @Override
+    public String toString() {
+        String thumbnailSave;
+        if (thumbNail == null) {
+            thumbnailSave = "_"; //no thumbnail set, default is selected
+        } else {
+            try {
+                thumbnailSave = thumbNail.getCanonicalPath();
+            } catch (IOException e) {
+                System.err.println("Failed getting the path of the thumbnail while creating a string of " + videoName);
+                thumbnailSave = "_";
+            }
+        }
+        StringBuilder classString = new StringBuilder();
+        classString.append(FIELD_TITLE).append(":").append(videoName).append("\n")
+                .append(FIELD_DESCRIPTION).append(":").append(videoDescription).append("\n")
+                .append(FIELD_VISIBILITY).append(":").append(visibility.getStatusName().toUpperCase()).append("\n")
+                .append(FIELD_TAGS).append(":").append(videoTags.toString()).append("\n")
+                .append(FIELD_PLAYLIST).append(":").append(selectedPlaylist).append("\n")
+                .append(FIELD_CATEGORY).append(":").append(category).append("\n")
+                .append(FIELD_TELLSUBS).append(":").append(Boolean.toString(tellSubs)).append("\n")
+                .append(FIELD_THUMBNAIL).append(":").append(thumbnailSave);
+        if (videoFile != null) {
+            classString.append("\n").append(FIELD_VIDEOFILE).append(":").append(videoFile.getAbsolutePath());
+        }
+        if (thumbnailFrame != null) {
+            classString.append("\n").append(FIELD_THUMBNAILFRAME).append(":").append(thumbnailFrame);
+        }
+        return classString.toString();
+    }
+
+    /**
+     * @return a Builder with all details of this instance, for creating a changed copy
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .setVideoName(videoName)
+                .setVideoDescription(videoDescription)
+                .setVisibility(visibility)
+                .setVideoTags(videoTags)
+                .setSelectedPlaylist(selectedPlaylist)
+                .setCategory(category)
+                .setTellSubs(tellSubs)
+                .setThumbNail(thumbNail)
+                .setVideoFile(videoFile)
+                .setThumbnailFrame(thumbnailFrame);
+    }
+
+    /**
+     * Used for building a UploadDetails one attribute at the time.
+     * Call build() to get a UploadDetails when you are done setting attributes.
+     */
+    public static class Builder {
+        private String videoName;
+        private String videoDescription;
+        private VisibilityStatus visibility;
+        private List<String> videoTags;
+        private String selectedPlaylist;
+        private String category;
+        private boolean tellSubs;
+        private File thumbNail;
+        private File videoFile;
+        private FrameExtractor.Position thumbnailFrame;
+
+        public Builder setVideoName(String videoName) {
+            this.videoName = videoName;
+            return this;
+        }
+
+        public Builder setVideoDescription(String videoDescription) {
+            this.videoDescription = videoDescription;
+            return this;
+        }
+
+        public Builder setVisibility(VisibilityStatus visibility) {
+            this.visibility = visibility;
+            return this;
+        }
+
+        public Builder setVideoTags(List<String> videoTags) {
+            this.videoTags = videoTags;
+            return this;
+        }
+
+        public Builder setSelectedPlaylist(String selectedPlaylist) {
+            this.selectedPlaylist = selectedPlaylist;
+            return this;
+        }
+
+        public Builder setCategory(String category) {
+            this.category = category;
+            return this;
+        }
+
+        public Builder setTellSubs(boolean tellSubs) {
+            this.tellSubs = tellSubs;
+            return this;
+        }
+
+        public Builder setThumbNail(File thumbNail) {
+            this.thumbNail = thumbNail;
+            return this;
+        }
+
+        public Builder setVideoFile(File videoFile) {
+            this.videoFile = videoFile;
+            return this;
+        }
+
+        public Builder setThumbnailFrame(FrameExtractor.Position thumbnailFrame) {
+            this.thumbnailFrame = thumbnailFrame;
+            return this;
+        }
+
+        public UploadDetails build() {
+            return new UploadDetails(this);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the SHA-256 of a video file from the bytes that is sent while it is uploaded, so the file does not need to
+ * be read a second time. The bytes must be given in the order they appear in the file, bytes that has already been
+ * hashed (like a chunk that is sent again) is skipped.
+ * It also calculates a partial fingerprint from the file size and the first and last MiB of the file, the same
+ * fingerprint can be calculated directly for a file with fingerprint() to quickly find files that has been uploaded.
+ * All methods are threadsafe.
+ */
+public class UploadHasher {
+    public static final int FINGERPRINT_PART_SIZE = 1024 * 1024;
+
+    private final long length;
+    private final MessageDigest contentDigest;
+    private final MessageDigest fingerprintDigest;
+    private long hashedUpTo = 0;
+
+    /**
+     * @param length the size of the file that is hashed
+     */
+    public UploadHasher(long length) {
+        this.length = length;
+        contentDigest = newSha256();
+        fingerprintDigest = newSha256();
+        fingerprintDigest.update(ByteBuffer.allocate(8).putLong(length).array());
+    }
+
+    /**
+     * @return the position in the file the next byte to hash is at
+     */
+    public synchronized long getHashedUpTo() {
+        return hashedUpTo;
+    }
+
+    /**
+     * Hashes bytes read from the file
+     * @param position the position in the file of the first byte in b
+     * @param b the read bytes
+     * @param off the offset in b of the first read byte
+     * @param len the number of read bytes
+     * @return false if there is a gap between the bytes already hashed and position, nothing is hashed then
+     */
+    public synchronized boolean update(long position, byte[] b, int off, int len) {
+        if (position > hashedUpTo) {
+            return false;
+        }
+        // Skip what has already been hashed
+        int skip = (int) Math.min(len, hashedUpTo - position);
+        if (skip == len) {
+            return true;
+        }
+        long start = position + skip;
+        int count = len - skip;
+        contentDigest.update(b, off + skip, count);
+        updateFingerprint(start, b, off + skip, count);
+        hashedUpTo = start + count;
+        return true;
+    }
+
+    /**
+     * @return true if the entire file has been hashed
+     */
+    public synchronized boolean isComplete() {
+        return hashedUpTo >= length;
+    }
+
+    /**
+     * @return the SHA-256 of the file as hex, or null if the entire file has not been hashed
+     */
+    public synchronized String getSha256() {
+        return isComplete() ? toHex(cloneDigest(contentDigest).digest()) : null;
+    }
+
+    /**
+     * @return the partial fingerprint of the file as hex, or null if the entire file has not been hashed
+     */
+    public synchronized String getFingerprint() {
+        return isComplete() ? toHex(cloneDigest(fingerprintDigest).digest()) : null;
+    }
+
+    /**
+     * Calculates the partial fingerprint of file by only reading the first and last MiB
+     * @param file the file
+     * @return the same fingerprint as getFingerprint() gives after hashing the entire file
+     * @throws IOException if the file could not be read
+     */
+    public static String fingerprint(File file) throws IOException {
+        long length = file.length();
+        UploadHasher hasher = new UploadHasher(length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readInto(channel, 0, Math.min(length, FINGERPRINT_PART_SIZE), hasher.fingerprintDigest);
+            long tailStart = tailStart(length);
+            readInto(channel, tailStart, length - tailStart, hasher.fingerprintDigest);
+        }
+        return toHex(hasher.fingerprintDigest.digest());
+    }
+
+    /**
+     * Adds the parts of the bytes that is in the first or last MiB to the fingerprint
+     */
+    private void updateFingerprint(long position, byte[] b, int off, int len) {
+        long headEnd = Math.min(length, FINGERPRINT_PART_SIZE);
+        long tailStart = tailStart(length);
+        long end = position + len;
+        if (position < headEnd) {
+            int count = (int) (Math.min(end, headEnd) - position);
+            fingerprintDigest.update(b, off, count);
+        }
+        if (end > tailStart) {
+            long from = Math.max(position, tailStart);
+            fingerprintDigest.update(b, off + (int) (from - position), (int) (end - from));
+        }
+    }
+
+    /**
+     * @return where the last part of the fingerprint starts, never before the end of the first part so no byte is
+     * counted twice for small files
+     */
+    private static long tailStart(long length) {
+        return Math.max(Math.min(length, FINGERPRINT_PART_SIZE), length - FINGERPRINT_PART_SIZE);
+    }
+
+    private static void readInto(FileChannel channel, long position, long count, MessageDigest digest)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long end = position + count;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The file got shorter while it was read");
+            }
+            digest.update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // All Java implementations must support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MessageDigest cloneDigest(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            // The SHA-256 implementations in the JDK can be cloned
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
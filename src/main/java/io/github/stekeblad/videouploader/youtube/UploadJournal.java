@@ -0,0 +1,606 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A append-only journal of the upload queue. Every upload that is added, every state change, progress checkpoint,
+ * priority change and removal is appended to the file when it happens, so the queue can be rebuilt after the program
+ * was closed, crashed or the computer lost power. open() reads the file from start to end once and returns the
+ * uploads that was not finished.
+ * Every record has its length and a CRC32 of its content before it. A record that was only partly written when the
+ * program stopped is detected by the checksum, it and everything after it is cut off when the journal is opened.
+ * The records are collected in memory and written by a background thread a few milliseconds later, so the methods
+ * never waits for the disk and can be called from the FX thread. Many records added at the same time, like when a
+ * preset is applied to hundreds of files, is written together and forced to the disk once (group commit). A batch
+ * with records that changes what uploads exists is forced to the disk, a batch with only progress checkpoints is not as
+ * they are written often and losing the last one only makes the resumed upload ask Youtube for the position.
+ * The file grows with every record, it is compacted in the background by writing the unfinished uploads to a new file
+ * that replaces the old one.
+ * All methods are threadsafe.
+ */
+public class UploadJournal {
+    private static final int MAGIC = 0x53564a31; // "SVJ1"
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    // Compacted when the file is larger than this and more than twice as large as the unfinished uploads needs
+    private static final long COMPACT_MIN_SIZE = 256 * 1024;
+    private static final long COMPACT_INTERVAL_SECONDS = 60;
+    // How long records are collected before they are written, records added during this time shares one force
+    private static final long GROUP_COMMIT_MS = 10;
+
+    private static final byte ENQUEUED = 1;
+    private static final byte STATE = 2;
+    private static final byte PROGRESS = 3;
+    private static final byte PRIORITY = 4;
+    private static final byte DEADLINE = 5;
+    private static final byte REMOVED = 6;
+
+    private final Path file;
+    // The unfinished uploads in the order they was added, kept up to date with every record so compacting does not
+    // need to read the file
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // Held while writing to and forcing the file, taken before the lock on this. Appending only needs the lock on this
+    // so it never waits for the disk.
+    private final Object writeLock = new Object();
+    private FileChannel channel = null;
+    // Records that has been applied to entries but not written yet
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean pendingForce = false;
+    private boolean flushScheduled = false;
+    // Writes the pending records and compacts the file
+    private ScheduledExecutorService writer = null;
+
+    /**
+     * A upload in the journal
+     */
+    public static class Entry {
+        private final String cancelName;
+        private final String details;
+        private int priority;
+        private LocalDateTime deadline;
+        private UploadRegistry.State state = UploadRegistry.State.QUEUED;
+        private long committedBytes = 0;
+
+        private Entry(String cancelName, String details, int priority, LocalDateTime deadline) {
+            this.cancelName = cancelName;
+            this.details = details;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        public String getCancelName() {
+            return cancelName;
+        }
+
+        /**
+         * @return the string representation of the UploadDetails of the upload, in the same format as
+         * VideoUpload.toString()
+         */
+        public String getDetails() {
+            return details;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return the deadline of the upload, or null
+         */
+        public LocalDateTime getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return the last state the upload was in
+         */
+        public UploadRegistry.State getState() {
+            return state;
+        }
+
+        /**
+         * @return the number of bytes of the video file Youtube had confirmed at the last checkpoint
+         */
+        public long getCommittedBytes() {
+            return committedBytes;
+        }
+    }
+
+    /**
+     * @param file the file of the journal, it is created if it does not exist
+     */
+    public UploadJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the journal, cuts off a damaged end of it and opens it for writing. Starts the background compaction.
+     * @return the uploads that was not finished when the journal was last written, in the order they was added
+     * @throws IOException if the file could not be read or opened
+     */
+    public synchronized List<Entry> open() throws IOException {
+        if (channel != null) {
+            return copyEntries();
+        }
+        entries.clear();
+        long validSize = Files.exists(file) ? replay() : 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validSize == 0) {
+            // New or unreadable from the start, begin with a empty journal
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC));
+            channel.force(true);
+        } else if (channel.size() > validSize) {
+            System.err.println("The upload journal was damaged after byte " + validSize + ", the rest of it is ignored");
+            channel.truncate(validSize);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+
+        pending.reset();
+        pendingForce = false;
+        flushScheduled = false;
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Upload journal writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::compactIfNeeded, COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        return copyEntries();
+    }
+
+    /**
+     * @return copies of the entries, the originals are changed by new records
+     */
+    private List<Entry> copyEntries() {
+        List<Entry> copies = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            Entry copy = new Entry(entry.cancelName, entry.details, entry.priority, entry.deadline);
+            copy.state = entry.state;
+            copy.committedBytes = entry.committedBytes;
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Writes and forces the records that has not been written yet, stops the background thread and closes the file
+     */
+    public void close() {
+        flush();
+        synchronized (writeLock) {
+            synchronized (this) {
+                if (writer != null) {
+                    writer.shutdownNow();
+                    writer = null;
+                }
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param details the string representation of the UploadDetails of the upload
+     * @param priority the priority of the upload
+     * @param deadline the deadline of the upload, or null
+     */
+    public void enqueued(String cancelName, String details, int priority, LocalDateTime deadline) {
+        append(true, cancelName, ENQUEUED, out -> {
+            writeString(out, details);
+            out.writeInt(priority);
+            out.writeLong(toEpochSecond(deadline));
+        });
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param state the new state of the upload, a finished state is written as the upload being removed
+     */
+    public void stateChanged(String cancelName, UploadRegistry.State state) {
+        if (state.isFinished()) {
+            removed(cancelName);
+            return;
+        }
+        append(true, cancelName, STATE, out -> out.writeUTF(state.name()));
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param committedBytes the number of bytes of the video file Youtube has confirmed
+     */
+    public void progress(String cancelName, long committedBytes) {
+        append(false, cancelName, PROGRESS, out -> out.writeLong(committedBytes));
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param priority the new priority of the upload
+     */
+    public void priorityChanged(String cancelName, int priority) {
+        append(true, cancelName, PRIORITY, out -> out.writeInt(priority));
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param deadline the new deadline of the upload, or null
+     */
+    public void deadlineChanged(String cancelName, LocalDateTime deadline) {
+        append(true, cancelName, DEADLINE, out -> out.writeLong(toEpochSecond(deadline)));
+    }
+
+    /**
+     * @param cancelName the name of a upload that is finished, failed or was aborted
+     */
+    public void removed(String cancelName) {
+        append(true, cancelName, REMOVED, out -> {});
+    }
+
+    /**
+     * Removes all uploads from the journal
+     */
+    public void clear() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                entries.clear();
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Could not clear the upload journal");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Writing
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Applies a record to the unfinished uploads and adds it to the records that is written by the background thread
+     * @param force true to force the record to the disk when it is written
+     */
+    private void append(boolean force, String cancelName, byte type, RecordWriter content) {
+        byte[] record;
+        try {
+            record = record(cancelName, type, content);
+        } catch (IOException e) {
+            // Writing to memory, does not happen
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            if (channel == null) {
+                return; // not opened or closed
+            }
+            try {
+                apply(record, 8);
+            } catch (IOException e) {
+                System.err.println("Invalid upload journal record");
+                e.printStackTrace();
+                return;
+            }
+            pending.write(record, 0, record.length);
+            pendingForce |= force;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(this::flush, GROUP_COMMIT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records to the file and forces them to the disk if any of them needs it. Runs on the
+     * background thread, and by close().
+     */
+    private void flush() {
+        synchronized (writeLock) {
+            byte[] records;
+            boolean force;
+            FileChannel currentChannel;
+            synchronized (this) {
+                flushScheduled = false;
+                if (channel == null || pending.size() == 0) {
+                    return;
+                }
+                records = pending.toByteArray();
+                force = pendingForce;
+                pending.reset();
+                pendingForce = false;
+                currentChannel = channel;
+            }
+            // The channel is only replaced while holding writeLock, appends can continue while this waits for the disk
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    currentChannel.write(buffer);
+                }
+                if (force) {
+                    currentChannel.force(false);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not write to the upload journal");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return a record with its length and checksum before it
+     */
+    private static byte[] record(String cancelName, byte type, RecordWriter content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeUTF(cancelName);
+        content.write(out);
+        out.flush();
+        return frame(bytes.toByteArray());
+    }
+
+    /**
+     * @return payload with its length and checksum before it
+     */
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return buffer.array();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        // writeUTF() is limited to 64 KiB, a description with many non-latin characters can be larger
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time == null ? Long.MIN_VALUE : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long epochSecond) {
+        return epochSecond == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    // Reading
+
+    /**
+     * Reads every record in the file and applies them to entries
+     * @return the number of bytes from the start of the file that is valid, 0 if the file does not start with the
+     * header
+     */
+    private long replay() throws IOException {
+        try (InputStream fileIn = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, 64 * 1024))) {
+            try {
+                if (in.readInt() != MAGIC) {
+                    System.err.println("The upload journal has a unknown format and is ignored");
+                    return 0;
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+            long validSize = 4;
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        return validSize;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        return validSize;
+                    }
+                } catch (EOFException e) {
+                    return validSize; // the end of the file, possibly in the middle of a record
+                }
+                try {
+                    apply(record, 0);
+                } catch (IOException e) {
+                    // Correct checksum but not a valid record, written by a newer version?
+                    return validSize;
+                }
+                validSize += 8 + record.length;
+            }
+        }
+    }
+
+    /**
+     * Applies a record to entries
+     * @param record the record
+     * @param offset where the payload starts in record
+     * @throws IOException if the record is not valid
+     */
+    private void apply(byte[] record, int offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, offset, record.length - offset));
+        byte type = in.readByte();
+        String cancelName = in.readUTF();
+        Entry entry = entries.get(cancelName);
+        switch (type) {
+            case ENQUEUED:
+                String details = readString(in);
+                int priority = in.readInt();
+                LocalDateTime deadline = fromEpochSecond(in.readLong());
+                // A name that is used again is a new upload
+                entries.remove(cancelName);
+                entries.put(cancelName, new Entry(cancelName, details, priority, deadline));
+                break;
+            case STATE:
+                UploadRegistry.State state;
+                try {
+                    state = UploadRegistry.State.valueOf(in.readUTF());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e);
+                }
+                if (entry != null) {
+                    entry.state = state;
+                }
+                break;
+            case PROGRESS:
+                long committedBytes = in.readLong();
+                if (entry != null) {
+                    entry.committedBytes = committedBytes;
+                }
+                break;
+            case PRIORITY:
+                int newPriority = in.readInt();
+                if (entry != null) {
+                    entry.priority = newPriority;
+                }
+                break;
+            case DEADLINE:
+                LocalDateTime newDeadline = fromEpochSecond(in.readLong());
+                if (entry != null) {
+                    entry.deadline = newDeadline;
+                }
+                break;
+            case REMOVED:
+                entries.remove(cancelName);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    // Compaction
+
+    private void compactIfNeeded() {
+        try {
+            synchronized (writeLock) {
+                synchronized (this) {
+                    if (channel == null) {
+                        return;
+                    }
+                    long size = channel.size() + pending.size();
+                    if (size > COMPACT_MIN_SIZE && size > 2 * snapshot().length) {
+                        compact();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not compact the upload journal");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the unfinished uploads to a new file and replaces the journal with it. The new file is forced to the disk
+     * before it replaces the old, if the program stops in the middle the old file is still there. The directory is
+     * forced after the rename so the new file is still the journal after a power loss.
+     * Must hold writeLock and the lock on this.
+     */
+    private void compact() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        byte[] snapshot = snapshot();
+        // The pending records is already applied to entries and is part of the snapshot
+        pending.reset();
+        pendingForce = false;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            while (buffer.hasRemaining()) {
+                tempChannel.write(buffer);
+            }
+            tempChannel.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(file.toAbsolutePath().getParent());
+        } finally {
+            // Continue appending to the file that is there now
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+
+    /**
+     * Forces the directory entries of dir to the disk, a rename is not durable before that on Linux and macOS.
+     * Directories can not be opened on Windows, there the rename is durable when the move returns.
+     */
+    private static void forceDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            // Not supported on this system
+        }
+    }
+
+    /**
+     * @return the header and the records that recreates the unfinished uploads
+     */
+    private byte[] snapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(MAGIC);
+        for (Entry entry : entries.values()) {
+            bytes.write(record(entry.cancelName, ENQUEUED, out -> {
+                writeString(out, entry.details);
+                out.writeInt(entry.priority);
+                out.writeLong(toEpochSecond(entry.deadline));
+            }));
+            if (entry.state != UploadRegistry.State.QUEUED) {
+                bytes.write(record(entry.cancelName, STATE, out -> out.writeUTF(entry.state.name())));
+            }
+            if (entry.committedBytes > 0) {
+                bytes.write(record(entry.cancelName, PROGRESS, out -> out.writeLong(entry.committedBytes)));
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
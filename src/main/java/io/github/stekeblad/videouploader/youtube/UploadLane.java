@@ -0,0 +1,75 @@
+package io.github.stekeblad.videouploader.youtube;
+
+/**
+ * Holds the state of one upload lane in Uploader. Every lane is one worker thread that uploads one video at the time,
+ * this class keeps track of what it is doing right now and what it has done so far. All getters are safe to call
+ * from any thread.
+ */
+public class UploadLane {
+    private final int laneNumber;
+    private volatile String currentUpload = null;
+    private volatile long currentUploadStarted = 0;
+    private volatile int uploadsHandled = 0;
+
+    UploadLane(int laneNumber) {
+        this.laneNumber = laneNumber;
+    }
+
+    /**
+     * @return the number of this lane, the first lane is lane 1
+     */
+    public int getLaneNumber() {
+        return laneNumber;
+    }
+
+    /**
+     * @return the cancelName of the upload this lane is working on or null if the lane is idle
+     */
+    public String getCurrentUpload() {
+        return currentUpload;
+    }
+
+    /**
+     * @return true if the lane is not working on a upload right now
+     */
+    public boolean isIdle() {
+        return currentUpload == null;
+    }
+
+    /**
+     * @return the System.currentTimeMillis() value from when the current upload was started on this lane or 0 if idle
+     */
+    public long getCurrentUploadStarted() {
+        return currentUploadStarted;
+    }
+
+    /**
+     * @return the number of uploads this lane has finished, failed or been aborted on
+     */
+    public int getUploadsHandled() {
+        return uploadsHandled;
+    }
+
+    /**
+     * Called by the lane's worker thread when it picks up a new upload
+     * @param cancelName the cancelName of the upload
+     */
+    void begin(String cancelName) {
+        currentUploadStarted = System.currentTimeMillis();
+        currentUpload = cancelName;
+    }
+
+    /**
+     * Called by the lane's worker thread when it is done with the current upload, no matter how it ended
+     */
+    void end() {
+        currentUpload = null;
+        currentUploadStarted = 0;
+        uploadsHandled++;
+    }
+
+    @Override
+    public String toString() {
+        return "Lane " + laneNumber + (isIdle() ? ": idle" : ": " + currentUpload);
+    }
+}
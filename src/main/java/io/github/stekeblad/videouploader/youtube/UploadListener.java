@@ -0,0 +1,40 @@
+package io.github.stekeblad.videouploader.youtube;
+
+/**
+ * Receives the progress and result of the uploads in a Uploader. The methods are called through the Executor given to
+ * the Uploader, like Platform::runLater for the UI or Runnable::run when running without a UI. All uploads are
+ * identified by the cancelName given when they was added to the Uploader.
+ */
+public interface UploadListener {
+
+    /**
+     * Called at most a few times per second while the video file is uploaded, and with the last status after the
+     * thumbnail and playlist has been handled. The call with the last status is the last call for the upload, no
+     * earlier progress is given after it
+     * @param cancelName the cancelName of the upload
+     * @param progress how much of the video file that has been sent, between 0 and 1
+     * @param statusText the progress as text, like the percentage, speed and estimated time left
+     * @param link the URL of the uploaded video when the upload is done, otherwise null
+     */
+    void onProgress(String cancelName, double progress, String statusText, String link);
+
+    /**
+     * Called when a upload is not uploading but waiting for something, like a retry or the quota to be reset
+     * @param cancelName the cancelName of the upload
+     * @param text describes what the upload is waiting for
+     */
+    void onStatus(String cancelName, String text);
+
+    /**
+     * Called when a upload has finished without errors
+     * @param cancelName the cancelName of the upload
+     */
+    void onFinished(String cancelName);
+
+    /**
+     * Called when a upload has failed and it will not be retried
+     * @param cancelName the cancelName of the upload
+     * @param error what went wrong
+     */
+    void onFailed(String cancelName, Throwable error);
+}
@@ -0,0 +1,329 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Enum-Singleton that measures how the uploads performs: counters for uploads, retries, chunks and bytes and latency
+ * histograms for the stages of a upload (waiting in the queue, waiting for quota, authentication, every chunk, the
+ * video file, the thumbnail and the playlist) and the throughput of every upload.
+ * The values are published with JMX under "io.github.stekeblad.videouploader:type=UploadMetrics" (see them in JConsole
+ * or VisualVM) and a snapshot is appended to the metrics file in the data directory every metrics_interval_seconds.
+ * The file is comma separated with the counters since the program was started and the histograms for the values
+ * recorded since the previous line, so it can be graphed directly. Lines are only written while something happens.
+ * All methods are threadsafe.
+ */
+public enum UploadMetrics implements UploadMetricsMXBean {
+    INSTANCE;
+
+    private static final String JMX_DOMAIN = "io.github.stekeblad.videouploader";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final LongAdder uploadsStarted = new LongAdder();
+    private final LongAdder uploadsFinished = new LongAdder();
+    private final LongAdder uploadsFailed = new LongAdder();
+    private final LongAdder uploadRetries = new LongAdder();
+    private final LongAdder postUploadRetries = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder chunksSent = new LongAdder();
+    private final LongAdder chunksFailed = new LongAdder();
+    private final AtomicInteger activeUploads = new AtomicInteger(0);
+
+    private final MetricsHistogram queueWait = new MetricsHistogram("queue_wait", "ms");
+    private final MetricsHistogram quotaWait = new MetricsHistogram("quota_wait", "ms");
+    private final MetricsHistogram auth = new MetricsHistogram("auth", "ms");
+    private final MetricsHistogram chunkLatency = new MetricsHistogram("chunk_latency", "ms");
+    private final MetricsHistogram videoUpload = new MetricsHistogram("video_upload", "ms");
+    private final MetricsHistogram uploadThroughput = new MetricsHistogram("upload_throughput", "B/s");
+    private final MetricsHistogram thumbnail = new MetricsHistogram("thumbnail", "ms");
+    private final MetricsHistogram playlist = new MetricsHistogram("playlist", "ms");
+    private final MetricsHistogram abortLatency = new MetricsHistogram("abort_latency", "ms");
+    private final List<MetricsHistogram> histograms = Collections.unmodifiableList(Arrays.asList(
+            queueWait, quotaWait, auth, chunkLatency, videoUpload, uploadThroughput, thumbnail, playlist,
+            abortLatency));
+
+    private boolean started = false;
+    private ScheduledExecutorService fileWriter = null;
+    // What the previous line in the metrics file was calculated from
+    private final List<MetricsHistogram.Snapshot> lastSnapshots = new ArrayList<>();
+    private long lastBytesSent = 0;
+    private long lastWriteNanos = 0;
+
+    /**
+     * Publishes the metrics with JMX and starts writing the metrics file, if it is not already done.
+     * ConfigManager must be initialized before this is called.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        registerMBeans();
+        for (MetricsHistogram histogram : histograms) {
+            lastSnapshots.add(histogram.snapshot());
+        }
+        lastBytesSent = bytesSent.sum();
+        lastWriteNanos = System.nanoTime();
+
+        int interval = ConfigManager.INSTANCE.getMetricsIntervalSeconds();
+        if (interval > 0) {
+            fileWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Upload metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fileWriter.scheduleAtFixedRate(this::writeSnapshot, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes what has been recorded since the last line to the metrics file and stops writing it, call it when the
+     * program is closing
+     */
+    public synchronized void stop() {
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+            fileWriter = null;
+            writeSnapshot();
+        }
+    }
+
+    private void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=UploadMetrics"));
+            for (MetricsHistogram histogram : histograms) {
+                server.registerMBean(histogram,
+                        new ObjectName(JMX_DOMAIN + ":type=UploadMetrics,name=" + histogram.getName()));
+            }
+        } catch (JMException e) {
+            // The metrics file and the getters still works
+            System.err.println("Could not publish the upload metrics with JMX");
+            e.printStackTrace();
+        }
+    }
+
+    // Recording
+
+    /**
+     * A upload has been taken from the queue by a lane
+     * @param queuedNanos System.nanoTime() when it was added to the queue
+     */
+    public void onUploadStarted(long queuedNanos) {
+        uploadsStarted.increment();
+        queueWait.recordSince(queuedNanos);
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the upload started waiting for quota
+     */
+    public void onQuotaWaited(long startNanos) {
+        quotaWait.recordSince(startNanos);
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the authentication started
+     */
+    public void onAuthenticated(long startNanos) {
+        auth.recordSince(startNanos);
+    }
+
+    /**
+     * The upload of a video file has started (or resumed)
+     */
+    public void onVideoStarted() {
+        activeUploads.incrementAndGet();
+    }
+
+    /**
+     * The upload of a video file has stopped, call it even if it failed
+     * @param startNanos System.nanoTime() when onVideoStarted() was called
+     * @param bytes the number of bytes sent, 0 if the upload failed. The throughput is only recorded if it is
+     *              larger than 0
+     */
+    public void onVideoStopped(long startNanos, long bytes) {
+        activeUploads.decrementAndGet();
+        if (bytes > 0) {
+            long nanos = Math.max(1, System.nanoTime() - startNanos);
+            videoUpload.record(nanos / 1_000_000);
+            uploadThroughput.record((long) (bytes * 1e9 / nanos));
+        }
+    }
+
+    /**
+     * @param bytes the number of bytes Youtube confirmed for the chunk
+     * @param millis the time it took to send the chunk and get the response
+     */
+    public void onChunkSent(long bytes, long millis) {
+        chunksSent.increment();
+        bytesSent.add(Math.max(0, bytes));
+        chunkLatency.record(millis);
+    }
+
+    public void onChunkFailed() {
+        chunksFailed.increment();
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the thumbnail started to be set
+     */
+    public void onThumbnailSet(long startNanos) {
+        thumbnail.recordSince(startNanos);
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the playlist request was added to a batch
+     */
+    public void onPlaylistAdded(long startNanos) {
+        playlist.recordSince(startNanos);
+    }
+
+    /**
+     * @param cancelledNanos System.nanoTime() when the upload was aborted, the time until the upload thread stopped
+     *                       is recorded
+     */
+    public void onUploadAborted(long cancelledNanos) {
+        abortLatency.recordSince(cancelledNanos);
+    }
+
+    public void onPostUploadRetry() {
+        postUploadRetries.increment();
+    }
+
+    public void onUploadRetry() {
+        uploadRetries.increment();
+    }
+
+    public void onUploadFinished() {
+        uploadsFinished.increment();
+    }
+
+    public void onUploadFailed() {
+        uploadsFailed.increment();
+    }
+
+    // Reading
+
+    @Override
+    public long getUploadsStarted() {
+        return uploadsStarted.sum();
+    }
+
+    @Override
+    public long getUploadsFinished() {
+        return uploadsFinished.sum();
+    }
+
+    @Override
+    public long getUploadsFailed() {
+        return uploadsFailed.sum();
+    }
+
+    @Override
+    public long getUploadRetries() {
+        return uploadRetries.sum();
+    }
+
+    @Override
+    public long getPostUploadRetries() {
+        return postUploadRetries.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getChunksSent() {
+        return chunksSent.sum();
+    }
+
+    @Override
+    public long getChunksFailed() {
+        return chunksFailed.sum();
+    }
+
+    @Override
+    public int getActiveUploads() {
+        return activeUploads.get();
+    }
+
+    /**
+     * @return all latency and throughput histograms
+     */
+    public List<MetricsHistogram> getHistograms() {
+        return histograms;
+    }
+
+    // Metrics file
+
+    /**
+     * @return the first line of the metrics file
+     */
+    private String header() {
+        StringBuilder builder = new StringBuilder("time,uploads_started,uploads_finished,uploads_failed," +
+                "upload_retries,post_upload_retries,bytes_sent,chunks_sent,chunks_failed,active_uploads,bytes_per_second");
+        for (MetricsHistogram histogram : histograms) {
+            String prefix = "," + histogram.getName() + "_" + histogram.getUnit().replace("/", "p") + "_";
+            builder.append(prefix).append("count")
+                    .append(prefix).append("mean")
+                    .append(prefix).append("p50")
+                    .append(prefix).append("p95")
+                    .append(prefix).append("p99");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends a line to the metrics file with the values since the previous line, if anything has happened
+     */
+    private synchronized void writeSnapshot() {
+        long now = System.nanoTime();
+        long bytes = bytesSent.sum();
+        List<MetricsHistogram.Snapshot> intervals = new ArrayList<>();
+        boolean changed = bytes != lastBytesSent || activeUploads.get() > 0;
+        for (int i = 0; i < histograms.size(); i++) {
+            MetricsHistogram.Snapshot snapshot = histograms.get(i).snapshot();
+            MetricsHistogram.Snapshot interval = snapshot.minus(lastSnapshots.get(i));
+            changed |= interval.getCount() > 0;
+            intervals.add(interval);
+            lastSnapshots.set(i, snapshot);
+        }
+        double seconds = Math.max(1e-3, (now - lastWriteNanos) / 1e9);
+        long bytesPerSecond = (long) ((bytes - lastBytesSent) / seconds);
+        lastBytesSent = bytes;
+        lastWriteNanos = now;
+        if (!changed) {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder(TIME_FORMAT.format(LocalDateTime.now().withNano(0)));
+        for (long value : new long[]{getUploadsStarted(), getUploadsFinished(), getUploadsFailed(),
+                getUploadRetries(), getPostUploadRetries(), bytes, getChunksSent(), getChunksFailed(),
+                getActiveUploads(), bytesPerSecond}) {
+            line.append(',').append(value);
+        }
+        for (MetricsHistogram.Snapshot interval : intervals) {
+            line.append(',').append(interval.getCount())
+                    .append(',').append(Math.round(interval.getMean()))
+                    .append(',').append(interval.getPercentile(0.50))
+                    .append(',').append(interval.getPercentile(0.95))
+                    .append(',').append(interval.getPercentile(0.99));
+        }
+        ConfigManager.INSTANCE.appendMetrics(header(), line.toString());
+    }
+}
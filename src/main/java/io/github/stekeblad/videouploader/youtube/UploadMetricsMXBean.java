@@ -0,0 +1,38 @@
+package io.github.stekeblad.videouploader.youtube;
+
+/**
+ * The counters of UploadMetrics that is published with JMX, all values are since the program was started.
+ * The latency histograms are published as separate MetricsHistogramMXBeans.
+ */
+public interface UploadMetricsMXBean {
+
+    long getUploadsStarted();
+
+    long getUploadsFinished();
+
+    long getUploadsFailed();
+
+    /**
+     * @return the number of times a failed upload has been scheduled to be tried again
+     */
+    long getUploadRetries();
+
+    /**
+     * @return the number of times setting a thumbnail was tried again
+     */
+    long getPostUploadRetries();
+
+    /**
+     * @return the number of bytes of video files Youtube has confirmed
+     */
+    long getBytesSent();
+
+    long getChunksSent();
+
+    long getChunksFailed();
+
+    /**
+     * @return the number of uploads currently sending their video file
+     */
+    int getActiveUploads();
+}
@@ -0,0 +1,446 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
+import io.github.stekeblad.videouploader.utils.translation.Translations;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects the progress of all active uploads and gives it to a UploadListener at a fixed frame rate. The upload threads
+ * only write the latest state to the bus, that is cheap and never touches the FX thread. A sampler thread reads the
+ * number of sent bytes of every upload once per frame, calculates the throughput and the estimated time left and gives
+ * at most one frame per frame interval to the callback executor (Platform::runLater for the UI), the frame calls the
+ * listener for all uploads that has changed. If the executor is busy and has not handled the last frame yet no new
+ * frame is posted, the next frame will contain the latest values anyway.
+ * All methods are threadsafe.
+ */
+public class UploadProgressBus {
+    private static final long FRAME_INTERVAL_MS = 250; // 4 frames per second
+    // How much the latest frame affects the instantaneous throughput, the rest is from earlier frames
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private final Map<String, UploadProgress> uploads = new ConcurrentHashMap<>();
+    private final AtomicBoolean frameQueued = new AtomicBoolean(false);
+    private final ScheduledExecutorService sampler;
+    private final Translations translationsUpload;
+    private final Executor callbackExecutor;
+    private volatile UploadListener listener = null;
+
+    /**
+     * @param callbackExecutor the executor the frames are given to, the listener is called on its thread
+     */
+    public UploadProgressBus(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        translationsUpload = TranslationsManager.getTranslation(TranslationBundles.UPLOADER);
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Upload progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, FRAME_INTERVAL_MS, FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the listener that is given the progress of the uploads
+     * @param listener the listener, or null for not showing the progress
+     */
+    public void setListener(UploadListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts tracking the progress of a upload
+     * @param cancelName the cancelName of the upload that is about to be started
+     * @param totalBytes the size of the video file
+     * @param bytesSent returns the number of bytes of the video file that has been sent so far, it is called from the
+     *                  sampler thread once per frame
+     */
+    public void startUpload(String cancelName, long totalBytes, LongSupplier bytesSent) {
+        uploads.put(cancelName, new UploadProgress(totalBytes, bytesSent));
+    }
+
+    /**
+     * Saves the state of the upload, called by the upload thread every time MediaHttpUploader reports progress
+     * @param cancelName the cancelName of the upload
+     * @param state the state the upload is in
+     * @param confirmedBytes the number of bytes Youtube has confirmed
+     */
+    public void setState(String cancelName, MediaHttpUploader.UploadState state, long confirmedBytes) {
+        UploadProgress progress = uploads.get(cancelName);
+        if (progress != null) {
+            progress.setState(state, confirmedBytes);
+        }
+    }
+
+    /**
+     * Shows text as the status of a upload instead of the upload progress, used for the steps after the video file
+     * has been uploaded
+     * @param cancelName the cancelName of the upload
+     * @param text the text to show
+     */
+    public void setStatus(String cancelName, String text) {
+        UploadProgress progress = uploads.get(cancelName);
+        if (progress != null) {
+            progress.setStatus(text, null, false, null);
+        }
+    }
+
+    /**
+     * Shows the last status of a upload and stops tracking it after that has been shown
+     * @param cancelName the cancelName of the upload
+     * @param text the text to show
+     * @param link the URL of the uploaded video, or null
+     * @param onShown run on the thread of the callback executor right after the listener has been given the last
+     *                status, so anything it calls on the listener comes after the last progress. Can be null
+     */
+    public void complete(String cancelName, String text, String link, Runnable onShown) {
+        UploadProgress progress = uploads.get(cancelName);
+        if (progress == null || !progress.setStatus(text, link, true, onShown)) {
+            // Not tracked, there is no last status to wait for
+            if (onShown != null) {
+                callbackExecutor.execute(onShown);
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a upload, updates that has not been shown yet are dropped unless complete() has been called.
+     * Call this when the upload fails or is aborted.
+     * @param cancelName the cancelName of the upload to stop tracking
+     */
+    public void stopUpload(String cancelName) {
+        uploads.computeIfPresent(cancelName, (name, progress) -> progress.status.completed ? progress : null);
+    }
+
+    /**
+     * @param cancelName the cancelName of a upload that is uploading
+     * @return the current progress of the upload or null if it is not uploading
+     */
+    public ProgressSnapshot getProgress(String cancelName) {
+        UploadProgress progress = uploads.get(cancelName);
+        return progress == null ? null : progress.frame.snapshot;
+    }
+
+    /**
+     * Stops the sampler thread, no more updates will be shown. The uploads that has been completed but not shown yet
+     * is given to the callback executor one last time so their onShown is not lost.
+     */
+    public void shutdown() {
+        sampler.shutdownNow();
+        try {
+            sampler.awaitTermination(FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean completed = false;
+        long now = System.nanoTime();
+        for (UploadProgress progress : uploads.values()) {
+            if (progress.status.completed) {
+                progress.sample(now);
+                completed = true;
+            }
+        }
+        if (completed) {
+            try {
+                callbackExecutor.execute(this::showFrame);
+            } catch (RuntimeException e) {
+                // The executor is shutting down as well
+            }
+        }
+    }
+
+    /**
+     * Runs on the sampler thread once per frame
+     */
+    private void sample() {
+        if (uploads.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean changes = false;
+        for (UploadProgress progress : uploads.values()) {
+            changes |= progress.sample(now);
+        }
+        if (changes && frameQueued.compareAndSet(false, true)) {
+            try {
+                callbackExecutor.execute(this::showFrame);
+            } catch (RuntimeException e) {
+                // The executor is shutting down, try again next frame
+                frameQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Runs on the thread of the callback executor, gives the listener all uploads that has changed since the last frame.
+     * Everything that is shown is taken from the latest Frame of the upload, so the status text, the link and if the
+     * upload is completed always belongs together.
+     */
+    private void showFrame() {
+        frameQueued.set(false);
+        UploadListener currentListener = listener;
+        for (Map.Entry<String, UploadProgress> entry : uploads.entrySet()) {
+            UploadProgress progress = entry.getValue();
+            if (!progress.dirty.getAndSet(false)) {
+                continue;
+            }
+            String cancelName = entry.getKey();
+            Frame frame = progress.frame;
+            if (currentListener != null) {
+                currentListener.onProgress(cancelName, frame.snapshot.getProgress(), frame.statusText, frame.link);
+            }
+            if (frame.completed) {
+                uploads.remove(cancelName, progress);
+                if (frame.onShown != null) {
+                    frame.onShown.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats a number of bytes per second like "1.5 MB/s"
+     */
+    public static String formatThroughput(long bytesPerSecond) {
+        if (bytesPerSecond < 1000 * 1000) {
+            return String.format("%.0f kB/s", bytesPerSecond / 1000.0);
+        }
+        return String.format("%.1f MB/s", bytesPerSecond / (1000.0 * 1000));
+    }
+
+    /**
+     * Formats a number of seconds like "1:02:03" or "2:03"
+     */
+    public static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+        }
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * The progress of a upload at one frame
+     */
+    public static class ProgressSnapshot {
+        private final long bytesSent;
+        private final long totalBytes;
+        private final long throughput;
+        private final long averageThroughput;
+        private final long eta;
+
+        ProgressSnapshot(long bytesSent, long totalBytes, long throughput, long averageThroughput, long eta) {
+            this.bytesSent = bytesSent;
+            this.totalBytes = totalBytes;
+            this.throughput = throughput;
+            this.averageThroughput = averageThroughput;
+            this.eta = eta;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return how much of the video file that has been sent, between 0 and 1
+         */
+        public double getProgress() {
+            return totalBytes <= 0 ? 0 : Math.min(1, (double) bytesSent / totalBytes);
+        }
+
+        /**
+         * @return the upload speed of the last few frames in bytes per second
+         */
+        public long getThroughput() {
+            return throughput;
+        }
+
+        /**
+         * @return the upload speed since the upload of the video file started in bytes per second
+         */
+        public long getAverageThroughput() {
+            return averageThroughput;
+        }
+
+        /**
+         * @return estimated number of seconds until the video file is uploaded, -1 if unknown
+         */
+        public long getEta() {
+            return eta;
+        }
+    }
+
+    /**
+     * Everything that is shown for a upload at one frame. Made by the sampler thread from one read of the status so a
+     * frame that was sampled before complete() was called can never be shown as completed, and a completed frame
+     * always has the last status text and link.
+     */
+    private static class Frame {
+        private final ProgressSnapshot snapshot;
+        private final String statusText;
+        private final String link;
+        private final boolean completed;
+        private final Runnable onShown;
+
+        Frame(ProgressSnapshot snapshot, String statusText, String link, boolean completed, Runnable onShown) {
+            this.snapshot = snapshot;
+            this.statusText = statusText;
+            this.link = link;
+            this.completed = completed;
+            this.onShown = onShown;
+        }
+    }
+
+    /**
+     * The status text set by setStatus() or complete(), replaced as a whole so the sampler never sees the text of one
+     * call and the link of another
+     */
+    private static class Status {
+        private static final Status NONE = new Status(null, null, false, null);
+
+        private final String text;
+        private final String link;
+        private final boolean completed;
+        private final Runnable onShown;
+
+        Status(String text, String link, boolean completed, Runnable onShown) {
+            this.text = text;
+            this.link = link;
+            this.completed = completed;
+            this.onShown = onShown;
+        }
+    }
+
+    /**
+     * The progress of one upload. The set methods are called by the upload thread, sample() by the sampler thread and
+     * the dirty flag is cleared by the thread of the callback executor.
+     */
+    private class UploadProgress {
+        private final long totalBytes;
+        private final LongSupplier bytesSent;
+        private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+        private volatile MediaHttpUploader.UploadState state = MediaHttpUploader.UploadState.NOT_STARTED;
+        private volatile long confirmedBytes = 0;
+        private volatile Status status = Status.NONE;
+        private volatile boolean stateChanged = false;
+
+        // Only written by the sampler thread (and read by the callback executor after dirty is set)
+        private volatile Frame frame;
+        private long startTime = 0;
+        private long startBytes = 0;
+        private long lastSampleTime = 0;
+        private long lastSampleBytes = 0;
+        private double throughput = 0; // bytes per second, smoothed
+
+        UploadProgress(long totalBytes, LongSupplier bytesSent) {
+            this.totalBytes = totalBytes;
+            this.bytesSent = bytesSent;
+            this.frame = new Frame(new ProgressSnapshot(0, totalBytes, 0, 0, -1), "", null, false, null);
+        }
+
+        void setState(MediaHttpUploader.UploadState state, long confirmedBytes) {
+            if (status.completed) {
+                return;
+            }
+            this.confirmedBytes = confirmedBytes;
+            this.state = state;
+            stateChanged = true;
+        }
+
+        /**
+         * @return true if the status was set, false if the upload is already completed
+         */
+        synchronized boolean setStatus(String text, String link, boolean completed, Runnable onShown) {
+            // Nothing can replace the last status of a completed upload
+            if (status.completed) {
+                return false;
+            }
+            status = new Status(text, link, completed, onShown);
+            stateChanged = true;
+            return true;
+        }
+
+        /**
+         * Reads the number of sent bytes and updates the snapshot and the status text
+         * @param now System.nanoTime() of this frame
+         * @return true if something has changed and the UI needs to be updated
+         */
+        boolean sample(long now) {
+            Frame lastFrame = frame;
+            if (lastFrame.completed) {
+                return false; // Waiting to be shown and removed
+            }
+            // Cleared before the status and state is read, a change made while sampling is picked up by the next frame
+            boolean changed = stateChanged;
+            stateChanged = false;
+            Status currentStatus = status;
+            MediaHttpUploader.UploadState currentState = state;
+            boolean sending = currentState == MediaHttpUploader.UploadState.INITIATION_COMPLETE ||
+                    currentState == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS;
+            long bytes = currentState == MediaHttpUploader.UploadState.MEDIA_COMPLETE ? totalBytes : confirmedBytes;
+            if (sending) {
+                // Bytes that has been sent but not confirmed yet, never less than what Youtube has confirmed
+                bytes = Math.min(totalBytes, Math.max(confirmedBytes, bytesSent.getAsLong()));
+                if (startTime == 0) {
+                    // The first frame of the upload, a resumed upload does not start at zero
+                    startTime = now;
+                    startBytes = bytes;
+                    lastSampleTime = now;
+                    lastSampleBytes = bytes;
+                } else if (now > lastSampleTime) {
+                    double frameThroughput = (bytes - lastSampleBytes) * 1e9 / (now - lastSampleTime);
+                    throughput = throughput == 0 ? Math.max(0, frameThroughput) :
+                            Math.max(0, throughput * (1 - THROUGHPUT_SMOOTHING) + frameThroughput * THROUGHPUT_SMOOTHING);
+                    lastSampleTime = now;
+                    lastSampleBytes = bytes;
+                }
+            }
+            if (!changed && bytes == lastFrame.snapshot.getBytesSent()) {
+                return false;
+            }
+
+            long average = now > startTime && startTime != 0 ? (long) ((bytes - startBytes) * 1e9 / (now - startTime)) : 0;
+            long speed = throughput > 0 ? (long) throughput : average;
+            long eta = speed > 0 ? (totalBytes - bytes) / speed : -1;
+            ProgressSnapshot snapshot = new ProgressSnapshot(bytes, totalBytes, (long) throughput, average, eta);
+            String statusText = currentStatus.text != null ? currentStatus.text : makeStatusText(currentState, snapshot);
+            frame = new Frame(snapshot, statusText, currentStatus.link, currentStatus.completed,
+                    currentStatus.onShown);
+            dirty.set(true);
+            return true;
+        }
+
+        private String makeStatusText(MediaHttpUploader.UploadState currentState, ProgressSnapshot snapshot) {
+            switch (currentState) {
+                case INITIATION_STARTED:
+                    return translationsUpload.getString("preparing");
+                case INITIATION_COMPLETE:
+                case MEDIA_IN_PROGRESS:
+                    int percent = (int) Math.floor(snapshot.getProgress() * 100);
+                    if (snapshot.getEta() < 0 && currentState == MediaHttpUploader.UploadState.INITIATION_COMPLETE) {
+                        return translationsUpload.getString("starting");
+                    } else if (snapshot.getEta() < 0) {
+                        return String.format(translationsUpload.getString("uploadWithProgress"), percent);
+                    }
+                    return String.format(translationsUpload.getString("uploadWithEta"), percent,
+                            formatThroughput(snapshot.getThroughput()), formatDuration(snapshot.getEta()));
+                case MEDIA_COMPLETE:
+                    return translationsUpload.getString("finished");
+                default:
+                    return translationsUpload.getString("notStarted");
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The queue of uploads that is waiting for a free upload lane. Uploads with a higher priority is always started first,
+ * uploads with the same priority is ordered after the selected Order and then in the order they was added.
+ * The priority and deadline of a upload can be changed while it is waiting, the queue is then reordered.
+ * All methods are threadsafe.
+ */
+public class UploadQueue {
+
+    /**
+     * How uploads with the same priority is ordered
+     */
+    public enum Order {
+        /** In the order they was added */
+        ADDED,
+        /** The smallest video file first */
+        SHORTEST_FILE_FIRST,
+        /** The upload with the earliest deadline first, uploads without a deadline last */
+        DEADLINE
+    }
+
+    private final PriorityBlockingQueue<Runnable> queue;
+    private final AtomicLong sequence = new AtomicLong(0);
+    private volatile Order order;
+    private Runnable changedCallback = null;
+
+    /**
+     * @param order how uploads with the same priority should be ordered
+     */
+    public UploadQueue(Order order) {
+        this.order = order;
+        queue = new PriorityBlockingQueue<>(16, (a, b) -> compare((QueuedUpload) a, (QueuedUpload) b));
+    }
+
+    /**
+     * The executor must have all its core threads started (prestartAllCoreThreads()), a thread that is started by
+     * execute() runs its first upload directly without it going through the queue.
+     * @return the queue to give to the ThreadPoolExecutor of the upload lanes, only QueuedUpload may be added to it
+     */
+    BlockingQueue<Runnable> getBlockingQueue() {
+        return queue;
+    }
+
+    /**
+     * Sets a method to be called every time the order of the queue changes, including when a upload is taken from the
+     * queue by a lane. It is called on the thread that made the change.
+     * @param callback the method to call, or null
+     */
+    public synchronized void setChangedCallback(Runnable callback) {
+        this.changedCallback = callback;
+    }
+
+    /**
+     * Creates a QueuedUpload for task, give it to submit() when it is registered so it can be cancelled
+     * @param task what to run when the upload is started
+     * @param cancelName the name of the upload
+     * @param fileSize the size of the video file
+     * @param priority the priority, higher is uploaded first
+     * @param deadline when the upload should be finished, or null
+     * @return the QueuedUpload, can be used to cancel the upload
+     */
+    QueuedUpload create(Runnable task, String cancelName, long fileSize, int priority, LocalDateTime deadline) {
+        return new QueuedUpload(task, cancelName, fileSize, sequence.incrementAndGet(), priority, deadline);
+    }
+
+    /**
+     * Gives a QueuedUpload from create() to exec, it waits in the queue for a lane
+     * @param exec the executor of the upload lanes, must use getBlockingQueue() as its queue
+     * @param queuedUpload the upload
+     */
+    synchronized void submit(ThreadPoolExecutor exec, QueuedUpload queuedUpload) {
+        exec.execute(queuedUpload);
+        onChanged();
+    }
+
+    /**
+     * Changes the order of uploads with the same priority, uploads that is already waiting are reordered
+     * @param order the new order
+     */
+    public synchronized void setOrder(Order order) {
+        if (order == this.order) {
+            return;
+        }
+        // The queue must be empty when the order is changed, the comparator is used for the elements already in it
+        List<Runnable> waiting = new ArrayList<>();
+        queue.drainTo(waiting);
+        this.order = order;
+        queue.addAll(waiting);
+        onChanged();
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Changes a waiting upload, like its priority or deadline, and moves it to its new place in the queue
+     * @param cancelName the name of the upload
+     * @param change what to change
+     * @return true if the upload was changed, false if it is not waiting in the queue (it may have been started)
+     */
+    synchronized boolean update(String cancelName, Consumer<QueuedUpload> change) {
+        for (Runnable runnable : queue) {
+            QueuedUpload queuedUpload = (QueuedUpload) runnable;
+            if (queuedUpload.getCancelName().equals(cancelName)) {
+                // Only change it when it is outside the queue
+                if (!queue.remove(queuedUpload)) {
+                    return false; // taken by a lane right now
+                }
+                change.accept(queuedUpload);
+                queue.add(queuedUpload);
+                onChanged();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a cancelled upload from the queue so it does not wait for its turn before it is discarded
+     * @param queuedUpload the upload to remove
+     */
+    synchronized void remove(QueuedUpload queuedUpload) {
+        if (queue.remove(queuedUpload)) {
+            onChanged();
+        }
+    }
+
+    /**
+     * Removes the upload with the name from the queue, if it is waiting in it
+     * @param cancelName the name of a cancelled upload
+     */
+    synchronized void remove(String cancelName) {
+        if (queue.removeIf(runnable -> ((QueuedUpload) runnable).getCancelName().equals(cancelName))) {
+            onChanged();
+        }
+    }
+
+    /**
+     * Called by a lane when it takes a upload from the queue
+     */
+    void onTaken() {
+        onChanged();
+    }
+
+    /**
+     * @return the highest priority of the waiting uploads, 0 if the queue is empty
+     */
+    public int getHighestPriority() {
+        QueuedUpload first = (QueuedUpload) queue.peek();
+        return first == null ? 0 : first.getPriority();
+    }
+
+    /**
+     * @return the waiting uploads in the order they will be started
+     */
+    public List<QueuedUpload> getWaiting() {
+        List<QueuedUpload> waiting = new ArrayList<>();
+        for (Runnable runnable : queue.toArray(new Runnable[0])) {
+            QueuedUpload queuedUpload = (QueuedUpload) runnable;
+            if (!queuedUpload.isCancelled()) {
+                waiting.add(queuedUpload);
+            }
+        }
+        waiting.sort(this::compare);
+        return waiting;
+    }
+
+    private void onChanged() {
+        Runnable callback;
+        synchronized (this) {
+            callback = changedCallback;
+        }
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private int compare(QueuedUpload a, QueuedUpload b) {
+        int result = Integer.compare(b.getPriority(), a.getPriority()); // highest first
+        if (result != 0) {
+            return result;
+        }
+        switch (order) {
+            case SHORTEST_FILE_FIRST:
+                result = Long.compare(a.getFileSize(), b.getFileSize());
+                break;
+            case DEADLINE:
+                if (a.getDeadline() == null || b.getDeadline() == null) {
+                    // The one without a deadline last
+                    result = a.getDeadline() == null ? (b.getDeadline() == null ? 0 : 1) : -1;
+                } else {
+                    result = a.getDeadline().compareTo(b.getDeadline());
+                }
+                break;
+            default:
+                break;
+        }
+        return result != 0 ? result : Long.compare(a.getSequence(), b.getSequence());
+    }
+
+    /**
+     * A upload in the queue, cancel it to abort the upload
+     */
+    public static class QueuedUpload extends FutureTask<Void> {
+        private final String cancelName;
+        private final long fileSize;
+        private final long sequence;
+        private volatile int priority;
+        private volatile LocalDateTime deadline;
+
+        QueuedUpload(Runnable task, String cancelName, long fileSize, long sequence, int priority,
+                     LocalDateTime deadline) {
+            super(task, null);
+            this.cancelName = cancelName;
+            this.fileSize = fileSize;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        public String getCancelName() {
+            return cancelName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        /**
+         * @return a number that tells in what order the uploads was added
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        void setPriority(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * @return when the upload should be finished, or null if it does not have a deadline
+         */
+        public LocalDateTime getDeadline() {
+            return deadline;
+        }
+
+        void setDeadline(LocalDateTime deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the uploads of a Uploader that is not finished, what state they are in, the task that is running the
+ * current stage and the cancellation token of the current attempt. A upload is removed from the registry when it
+ * reaches one of the finished states (DONE, FAILED or CANCELLED).
+ * A state change is a single compare-and-set, when two threads tries to finish the same upload (like abortUpload()
+ * and a upload that just completed) exactly one of them succeeds. No method takes a lock.
+ * All methods are threadsafe.
+ */
+public class UploadRegistry {
+
+    /**
+     * The lifecycle of a upload
+     */
+    public enum State {
+        /** Waiting in the upload queue or for the time of its next attempt */
+        QUEUED,
+        /** Has a lane, waiting for quota or getting the access token */
+        AUTHORIZING,
+        /** Sending the video file */
+        TRANSFERRING,
+        /** The video is on Youtube, setting the thumbnail and adding it to a playlist */
+        POST_PROCESSING,
+        DONE,
+        FAILED,
+        CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+    // The number of uploads in each unfinished state now, and the number of uploads that ended in each finished state
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(State.values().length);
+
+    /**
+     * Adds a upload in the QUEUED state
+     * @param cancelName the name of the upload
+     * @return true if it was added, false if a unfinished upload with the same name already exists
+     */
+    public boolean register(String cancelName) {
+        // Counted before it is added so it is never in the registry without being counted
+        counts.incrementAndGet(State.QUEUED.ordinal());
+        if (entries.putIfAbsent(cancelName, new Entry(sequence.incrementAndGet())) != null) {
+            counts.decrementAndGet(State.QUEUED.ordinal());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves a unfinished upload to a new state. If the new state is a finished state the upload is removed.
+     * @param cancelName the name of the upload
+     * @param state the new state
+     * @return true if the state was changed, false if the upload is finished (for example cancelled) or not registered
+     */
+    public boolean setState(String cancelName, State state) {
+        Entry entry = entries.get(cancelName);
+        if (entry == null) {
+            return false;
+        }
+        // The new state is counted before the compare-and-set and the old state is uncounted after it, or the new
+        // state is uncounted again if it fails. The upload is always counted in at least one of the states.
+        counts.incrementAndGet(state.ordinal());
+        while (true) {
+            State previous = entry.state.get();
+            if (previous.isFinished()) {
+                counts.decrementAndGet(state.ordinal());
+                return false;
+            }
+            if (entry.state.compareAndSet(previous, state)) {
+                counts.decrementAndGet(previous.ordinal());
+                break;
+            }
+        }
+        if (state.isFinished()) {
+            entries.remove(cancelName, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels a unfinished upload: sets it to CANCELLED, cancels its cancellation token and cancels its current task
+     * with interrupt. A task or token given to the upload after this is cancelled right away.
+     * @param cancelName the name of the upload
+     * @return true if the upload was cancelled, false if it is finished or not registered
+     */
+    public boolean cancel(String cancelName) {
+        Entry entry = entries.get(cancelName);
+        if (entry == null || !setState(cancelName, State.CANCELLED)) {
+            return false;
+        }
+        UploadCancellation cancellation = entry.cancellation;
+        if (cancellation != null) {
+            // Before the task is interrupted, stops the request that is being sent
+            cancellation.cancel();
+        }
+        Future<?> task = entry.task;
+        if (task != null) {
+            task.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the task that runs the current stage of a upload
+     * @param cancelName the name of the upload
+     * @param task the task, cancelled by cancel()
+     * @return true if the task was set, false if the upload is finished and the task has been cancelled
+     */
+    public boolean setTask(String cancelName, Future<?> task) {
+        Entry entry = entries.get(cancelName);
+        if (entry != null) {
+            entry.task = task;
+            // Checked after the task is set so a cancel() at the same time either sees the task or is seen here
+            if (!entry.state.get().isFinished()) {
+                return true;
+            }
+        }
+        task.cancel(true);
+        return false;
+    }
+
+    /**
+     * Sets the cancellation token of the current attempt of a upload
+     * @param cancelName the name of the upload
+     * @param cancellation the token, cancelled by cancel()
+     * @return true if the token was set, false if the upload is finished and the token has been cancelled
+     */
+    public boolean setCancellation(String cancelName, UploadCancellation cancellation) {
+        Entry entry = entries.get(cancelName);
+        if (entry != null) {
+            entry.cancellation = cancellation;
+            if (!entry.state.get().isFinished()) {
+                return true;
+            }
+        }
+        cancellation.cancel();
+        return false;
+    }
+
+    /**
+     * Calls action with the cancellation token of every unfinished upload that has one, without changing their state
+     * @param action the action to call
+     */
+    public void forEachCancellation(Consumer<UploadCancellation> action) {
+        for (Entry entry : entries.values()) {
+            UploadCancellation cancellation = entry.cancellation;
+            if (cancellation != null) {
+                action.accept(cancellation);
+            }
+        }
+    }
+
+    /**
+     * @param cancelName the name of a upload
+     * @return the state of the upload, null if it is finished or not registered
+     */
+    public State getState(String cancelName) {
+        Entry entry = entries.get(cancelName);
+        if (entry == null) {
+            return null;
+        }
+        State state = entry.state.get();
+        return state.isFinished() ? null : state;
+    }
+
+    /**
+     * @return true if a upload is not finished
+     */
+    public boolean hasUnfinished() {
+        return !entries.isEmpty();
+    }
+
+    /**
+     * Does not lock or look at the uploads, the counts is updated together with the state changes. The count is
+     * approximate while uploads changes state: for a moment a upload can be counted both in its old and its new state,
+     * and a upload that failed to change state can be counted in the state it tried to change to. It is for showing and
+     * metrics and not for decisions. The counts never drift, they are exact when no upload is changing state.
+     * @param state a state
+     * @return the number of uploads in state now for the unfinished states, the number of uploads that has ended in
+     * state since the registry was created for the finished states
+     */
+    public int getCount(State state) {
+        return counts.get(state.ordinal());
+    }
+
+    /**
+     * @return the name and state of all unfinished uploads, in the order they was registered. Every state was the
+     * state of the upload at some point while the snapshot was taken.
+     */
+    public Map<String, State> snapshot() {
+        List<Map.Entry<String, Entry>> unfinished = new ArrayList<>(entries.entrySet());
+        unfinished.sort(Comparator.comparingLong(e -> e.getValue().sequence));
+        Map<String, State> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> e : unfinished) {
+            State state = e.getValue().state.get();
+            if (!state.isFinished()) {
+                snapshot.put(e.getKey(), state);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return a copy of the names of all unfinished uploads, in the order they was registered
+     */
+    public Set<String> getUnfinished() {
+        return new LinkedHashSet<>(snapshot().keySet());
+    }
+
+    private static class Entry {
+        private final long sequence;
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private volatile Future<?> task = null;
+        private volatile UploadCancellation cancellation = null;
+
+        Entry(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -1,99 +1,396 @@
 package io.github.stekeblad.videouploader.youtube;
 
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.media.MediaHttpUploader;
 import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
 import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.InputStreamContent;
 import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.*;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
 import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
-import javafx.application.Platform;
-import javafx.concurrent.Task;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 /**
  * Uploader handles the actual uploading to Youtube and contains a queue for all uploads. New uploads can be added,
  * existing once can be aborted all at the same time or just a specific. It is possible to get if their is a upload
- * in progress and set a method to be called for all finished uploads with the Id of the upload as the only parameter.
- * The uploading is performed in a separate thread and the class is partly threadsafe, check the methods documentation 
+ * in progress and set a UploadListener that is given the progress and result of all uploads. The Uploader does not use
+ * JavaFX, the listener is called through a Executor so the UI can give Platform::runLater and code without a UI can
+ * call it directly.
+ * The uploading is performed on a configurable number of upload lanes (worker threads) that takes uploads from a
+ * UploadQueue, ordered by priority and then by the order selected in the settings. When the video file is uploaded
+ * the thumbnail and playlist is handled by a small separate executor so the lane can start on the next upload
+ * directly. Uploads that fails is given to the RetryEngine
+ * and if it decides to retry, the upload is added to the queue again when it is time for the next attempt.
+ * A lane only starts a upload if the QuotaLedger has enough quota left today for it. If the quota is only taken by
+ * the reservations of uploads in progress the lane waits for them, if it is used the queue waits for the quota to be
+ * reset.
+ * The class is partly threadsafe, check the methods documentation
  * to see if the particular method is threadsafe
  */
 public class Uploader {
     private final String VIDEO_FILE_FORMAT = "video/";
+    private static final int POST_UPLOAD_THREADS = 2;
+    private static final int POST_UPLOAD_ATTEMPTS = 4;
+    // How often a upload waiting for other uploads reservations checks the quota again if nothing is released
+    private static final long QUOTA_RESERVATION_WAIT_MS = 60 * 1000;
+    private static final DateTimeFormatter RETRY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
-    private final Map<String, Future> tasks;
+    private final UploadRegistry registry;
+    private volatile UploadJournal journal = null;
     private final CategoryUtils categoryUtils;
     private final PlaylistUtils playlistUtils;
-    private Consumer<String> uploadFinishedCallback = null;
-    private BiConsumer<VideoUpload, Throwable> uploadErredCallback = null;
-    private final ExecutorService exec;
+    private volatile UploadListener uploadListener = null;
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor exec;
+    private final UploadQueue uploadQueue;
+    private final ExecutorService postUploadExec;
+    private final List<UploadLane> lanes;
+    private final AtomicInteger laneCounter;
+    private final ThreadLocal<UploadLane> currentLane = new ThreadLocal<>();
+    private final UploadProgressBus progressBus;
+    private final MetadataBatcher metadataBatcher;
+    private final RetryEngine retryEngine;
+    private final QuotaLedger quotaLedger;
+    private final UploadMetrics metrics;
+    private final Map<String, Integer> projectedCosts;
+    private final ScheduledExecutorService retryScheduler;
+    private final Map<String, UploadDetails> waitingRetries;
+    private volatile boolean killed = false;
     private final Translations translationsUpload;
     private final Translations translationsBasic;
 
 
-    public Uploader() {
+    /**
+     * @param callbackExecutor the executor the UploadListener is called through, like Platform::runLater for calling
+     *                         it on the FX thread or Runnable::run for calling it on the upload threads
+     */
+    public Uploader(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
         translationsUpload = TranslationsManager.getTranslation(TranslationBundles.UPLOADER);
         translationsBasic = TranslationsManager.getTranslation(TranslationBundles.BASE);
-        tasks = Collections.synchronizedMap(new HashMap<>());
+        registry = new UploadRegistry();
         categoryUtils = CategoryUtils.INSTANCE;
         playlistUtils = PlaylistUtils.INSTANCE;
-        exec = Executors.newSingleThreadExecutor(Thread::new);
+        lanes = new CopyOnWriteArrayList<>();
+        laneCounter = new AtomicInteger(0);
+        progressBus = new UploadProgressBus(callbackExecutor);
+        metadataBatcher = new MetadataBatcher();
+        retryEngine = RetryEngine.INSTANCE;
+        quotaLedger = QuotaLedger.INSTANCE;
+        metrics = UploadMetrics.INSTANCE;
+        metrics.start();
+        projectedCosts = new ConcurrentHashMap<>();
+        waitingRetries = new ConcurrentHashMap<>();
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Upload retry scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // One thread per lane, the lanes picks up uploads in the order decided by the upload queue
+        uploadQueue = new UploadQueue(readQueueOrder());
+        int laneCount = ConfigManager.INSTANCE.getUploadLanes();
+        exec = new ThreadPoolExecutor(laneCount, laneCount, 0L, TimeUnit.MILLISECONDS,
+                uploadQueue.getBlockingQueue(), this::newLaneThread);
+        // A new core thread runs the task it was started for without taking it from the queue, so a upload could
+        // skip uploads with a higher priority. With all lanes started every upload goes through the queue
+        exec.prestartAllCoreThreads();
+        // Setting the thumbnail and adding to a playlist is quick, a few threads is enough for all lanes
+        AtomicInteger postUploadCounter = new AtomicInteger(0);
+        postUploadExec = Executors.newFixedThreadPool(POST_UPLOAD_THREADS,
+                r -> new Thread(r, "Post upload " + postUploadCounter.incrementAndGet()));
+    }
+
+    /**
+     * ThreadFactory for the upload executor, gives every worker thread its own UploadLane
+     * @param r the runnable the executor wants to run in the new thread
+     * @return a new thread that is registered as a lane
+     */
+    private Thread newLaneThread(Runnable r) {
+        UploadLane lane = new UploadLane(laneCounter.incrementAndGet());
+        return new Thread(() -> {
+            currentLane.set(lane);
+            lanes.add(lane);
+            try {
+                r.run();
+            } finally {
+                // The thread is shutting down (lane count lowered or the Uploader is killed)
+                lanes.remove(lane);
+            }
+        }, "Upload lane " + lane.getLaneNumber());
+    }
+
+    /**
+     * Changes the number of uploads that can be uploaded at the same time. Uploads that are in progress are not affected,
+     * if the number of lanes is lowered the extra lanes will be closed when they have finished their current upload.
+     * The new value is not saved, use ConfigManager for that. This method is threadsafe.
+     * @param laneCount the number of lanes to use, must be at least 1
+     * @throws IllegalArgumentException if laneCount is less than 1
+     */
+    public void setLaneCount(int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("There must be at least one upload lane");
+        }
+        // Change the order depending on direction so core size is never larger than max size
+        if (laneCount > exec.getMaximumPoolSize()) {
+            exec.setMaximumPoolSize(laneCount);
+            exec.setCorePoolSize(laneCount);
+            exec.prestartAllCoreThreads();
+        } else {
+            exec.setCorePoolSize(laneCount);
+            exec.setMaximumPoolSize(laneCount);
+        }
+    }
+
+    /**
+     * This method is threadsafe.
+     * @return the number of uploads that can be uploaded at the same time
+     */
+    public int getLaneCount() {
+        return exec.getCorePoolSize();
+    }
+
+    /**
+     * Returns the state of all lanes that has been started. All lanes is started when the Uploader is created or the
+     * lane count is raised, a lane can be missing for a short time while its thread is starting.
+     * This method is threadsafe.
+     * @return a list with the currently running lanes
+     */
+    public List<UploadLane> getLanes() {
+        return new ArrayList<>(lanes);
+    }
+
+    /**
+     * This method is threadsafe.
+     * @param cancelName the cancelName that was given when the add() method was called
+     * @return the progress, throughput and estimated time left of the upload, or null if it is not uploading
+     */
+    public UploadProgressBus.ProgressSnapshot getProgress(String cancelName) {
+        return progressBus.getProgress(cancelName);
+    }
+
+    /**
+     * Calculates how much API quota the uploads that is not finished will use. For uploads that has been started the
+     * quota that is still reserved is counted, for the others the estimated cost of the entire upload.
+     * This method is threadsafe.
+     * @return the number of quota units the unfinished uploads is expected to use
+     */
+    public int getProjectedQuotaUse() {
+        int projected = 0;
+        for (String cancelName : registry.getUnfinished()) {
+            int reserved = quotaLedger.getReservation(cancelName);
+            projected += reserved >= 0 ? reserved : projectedCosts.getOrDefault(cancelName, 0);
+        }
+        return projected;
+    }
 
+    /**
+     * @param video a video
+     * @return the number of quota units uploading video, setting its thumbnail and adding it to a playlist costs
+     */
+    private int estimateQuotaCost(UploadDetails video) {
+        int cost = QuotaLedger.ApiCall.VIDEOS_INSERT.getCost();
+        // A thumbnail frame is grabbed and set as the thumbnail if no thumbnail file is selected
+        if (video.getThumbNail() != null || video.getThumbnailFrame() != null) {
+            cost += QuotaLedger.ApiCall.THUMBNAILS_SET.getCost();
+        }
+        if (hasPlaylist(video)) {
+            cost += QuotaLedger.ApiCall.PLAYLIST_ITEMS_INSERT.getCost();
+        }
+        return cost;
     }
 
     /**
-     * Sets a method to be called every time a upload finishes. The parameter given to the callback will be the cancelName
-     * that was given in the add() method. Setting this callback is not required. This method is not threadsafe. It is 
-     * recommended to call this method shortly after an instance of the class is created and before any uploads are added.
-     * @param callback the callback to be called after every finished upload.
+     * @param video a video
+     * @return true if a playlist is selected for video
      */
-    public void setUploadFinishedCallback(Consumer<String> callback) {
-        this.uploadFinishedCallback = callback;
+    private boolean hasPlaylist(UploadDetails video) {
+        // Not null, empty or the "no selected" default value
+        String playlistString = video.getSelectedPlaylist();
+        return playlistString != null && !playlistString.equals("null") && !playlistString.equals("") &&
+                !playlistString.equals(translationsBasic.getString("noSelected"));
     }
 
     /**
-     * Sets a method to be called when a upload fails and it can not be handled by this class. The parameters given to the
-     * callback will be the VideoUpload that erred and the exception that could not be handled.
-     * Setting this callback is not required. This method is not threadsafe. It is 
-     * recommended to call this method shortly after an instance of the class is created and before any uploads are added.
-     * @param callback the callback to be called when an upload errors
+     * Reads the queue order from the settings again and reorders the waiting uploads. This method is threadsafe.
      */
-    public void setUploadErredCallback(BiConsumer<VideoUpload, Throwable> callback) {
-        this.uploadErredCallback = callback;
+    public void updateQueueOrder() {
+        uploadQueue.setOrder(readQueueOrder());
+    }
+
+    private UploadQueue.Order readQueueOrder() {
+        try {
+            return UploadQueue.Order.valueOf(ConfigManager.INSTANCE.getUploadQueueOrder());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown upload queue order in settings: " + ConfigManager.INSTANCE.getUploadQueueOrder());
+            return UploadQueue.Order.ADDED;
+        }
     }
 
     /**
-     * Aborts a single upload, scheduled or active. This method is threadsafe.
+     * Changes the priority of a upload that has not been started yet. This method is threadsafe.
+     * @param cancelName the cancelName that was given when the add() method was called
+     * @param priority the new priority, higher is uploaded first
+     * @return true if the priority was changed, false if the upload is not waiting in the queue
+     */
+    public boolean setPriority(String cancelName, int priority) {
+        return onPriorityChanged(cancelName, priority,
+                uploadQueue.update(cancelName, queuedUpload -> queuedUpload.setPriority(priority)));
+    }
+
+    /**
+     * Moves a upload that has not been started yet first in the queue so it is started when the next lane is free.
+     * This method is threadsafe.
+     * @param cancelName the cancelName that was given when the add() method was called
+     * @return true if the upload was moved, false if the upload is not waiting in the queue
+     */
+    public boolean prioritize(String cancelName) {
+        int priority = uploadQueue.getHighestPriority() + 1;
+        return onPriorityChanged(cancelName, priority,
+                uploadQueue.update(cancelName, queuedUpload -> queuedUpload.setPriority(priority)));
+    }
+
+    /**
+     * Writes a changed priority to the journal
+     * @param changed true if the priority was changed
+     * @return changed
+     */
+    private boolean onPriorityChanged(String cancelName, int priority, boolean changed) {
+        UploadJournal currentJournal = journal;
+        if (changed && currentJournal != null) {
+            currentJournal.priorityChanged(cancelName, priority);
+        }
+        return changed;
+    }
+
+    /**
+     * Changes the deadline of a upload that has not been started yet, only affects the order if the queue is ordered
+     * by deadline. This method is threadsafe.
+     * @param cancelName the cancelName that was given when the add() method was called
+     * @param deadline when the upload should be finished, or null for no deadline
+     * @return true if the deadline was changed, false if the upload is not waiting in the queue
+     */
+    public boolean setDeadline(String cancelName, LocalDateTime deadline) {
+        boolean changed = uploadQueue.update(cancelName, queuedUpload -> queuedUpload.setDeadline(deadline));
+        UploadJournal currentJournal = journal;
+        if (changed && currentJournal != null) {
+            currentJournal.deadlineChanged(cancelName, deadline);
+        }
+        return changed;
+    }
+
+    /**
+     * This method is threadsafe.
+     * @return the cancelName of all uploads that is waiting for a lane, in the order they will be started
+     */
+    public List<String> getWaitingUploads() {
+        List<String> waiting = new ArrayList<>();
+        for (UploadQueue.QueuedUpload queuedUpload : uploadQueue.getWaiting()) {
+            waiting.add(queuedUpload.getCancelName());
+        }
+        return waiting;
+    }
+
+    /**
+     * Sets a method to be called every time the order of the waiting uploads changes (uploads added, started, aborted
+     * or reprioritized). The callback is called on the thread that made the change. This method is threadsafe.
+     * @param callback the callback, or null to remove it
+     */
+    public void setQueueChangedCallback(Runnable callback) {
+        uploadQueue.setChangedCallback(callback);
+    }
+
+    /**
+     * Sets the listener that is given the progress of all uploads and is told when they finish or fail. The listener
+     * is called through the executor given to the constructor. Setting a listener is not required. It is recommended
+     * to call this method shortly after an instance of the class is created and before any uploads are added.
+     * This method is threadsafe.
+     * @param listener the listener, or null to remove it
+     */
+    public void setUploadListener(UploadListener listener) {
+        this.uploadListener = listener;
+        progressBus.setListener(listener);
+    }
+
+    /**
+     * Sets the journal every added upload and every change to the uploads is written to. The journal should be opened
+     * and this method called before any uploads are added. This method is threadsafe.
+     * @param journal a opened journal, or null to not write one
+     */
+    public void setJournal(UploadJournal journal) {
+        this.journal = journal;
+    }
+
+    private void notifyStatus(String cancelName, String text) {
+        UploadListener listener = uploadListener;
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onStatus(cancelName, text));
+        }
+    }
+
+    /**
+     * Shows the last status of a finished upload and tells the listener after that, so onFinished always comes after
+     * the last onProgress
+     */
+    private void notifyFinished(String cancelName, String text, String link) {
+        metrics.onUploadFinished();
+        progressBus.complete(cancelName, text, link, () -> {
+            UploadListener listener = uploadListener;
+            if (listener != null) {
+                listener.onFinished(cancelName);
+            }
+        });
+    }
+
+    private void notifyFailed(String cancelName, Throwable error) {
+        metrics.onUploadFailed();
+        UploadListener listener = uploadListener;
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onFailed(cancelName, error));
+        }
+    }
+
+    /**
+     * Aborts a single upload, scheduled, active or waiting to be retried. This method is threadsafe and does not wait
+     * for the upload to stop.
      * @param cancelName the cancelName that was given when the add() method was called
      * @return true if the upload was aborted or no upload with the given name exists,
      * false if it for some reason is not possible to abort it.
      */
     public boolean abortUpload(String cancelName) {
-        if (tasks.containsKey(cancelName)) {
-            boolean success;
-            success = tasks.get(cancelName).cancel(true);
-            if (success) {
-                tasks.remove(cancelName);
-            }
-            return success;
+        // Cancels the token and the task of the upload, unless it finished first
+        if (!registry.cancel(cancelName)) {
+            return true;
+        }
+        UploadJournal currentJournal = journal;
+        if (currentJournal != null && !killed) {
+            currentJournal.removed(cancelName);
+        }
+        releaseTask(cancelName);
+        uploadQueue.remove(cancelName);
+        // Aborted while waiting for the next attempt, do not retry it after a restart
+        UploadDetails retrying = waitingRetries.remove(cancelName);
+        if (retrying != null) {
+            retryEngine.clear(retrying.getVideoFile());
         }
         return true;
     }
@@ -103,69 +400,379 @@ public class Uploader {
      * @return true if a upload is in progress, false if not.
      */
     public boolean getIsActive() {
-        return !tasks.keySet().isEmpty();
+        return registry.hasUnfinished();
+    }
+
+    /**
+     * This method is threadsafe.
+     * @param cancelName the cancelName that was given when the add() method was called
+     * @return the state of the upload, or null if it is finished or does not exist
+     */
+    public UploadRegistry.State getState(String cancelName) {
+        return registry.getState(cancelName);
+    }
+
+    /**
+     * This method is threadsafe and does not lock. The count is approximate while uploads changes state, see
+     * UploadRegistry.getCount().
+     * @param state a state
+     * @return the number of uploads in the state now, or for DONE, FAILED and CANCELLED the number of uploads that
+     * has ended that way
+     */
+    public int getUploadCount(UploadRegistry.State state) {
+        return registry.getCount(state);
     }
 
     /**
      * Aborts all uploads. This method is intended to be used when the program is about to shut down and the safety for
      * any following calls to the same instance of this class is untested.
-     * @return a Set with the cancelName of all unfinished uploads.
+     * @return a copy of the cancelName of all unfinished uploads, in the order they was added.
      */
     public Set<String> kill() {
+        killed = true;
+        Set<String> unfinished = registry.getUnfinished();
+        registry.forEachCancellation(UploadCancellation::cancel);
         exec.shutdownNow();
-        return tasks.keySet();
+        postUploadExec.shutdownNow();
+        retryScheduler.shutdownNow();
+        metadataBatcher.shutdown();
+        progressBus.shutdown();
+        metrics.stop();
+        return unfinished;
+    }
+
+    /**
+     * Adds video to the upload list with the default priority and no deadline. This method is threadsafe.
+     * @param video the details of the video to upload, must have a video file
+     * @param cancelName String to use for aborting the upload (and used to report its progress to the listener)
+     */
+    public void add(UploadDetails video, String cancelName) {
+        add(video, cancelName, 0, null);
+    }
+
+    /**
+     * Adds video to the upload list. If the video has failed before and the time for its next attempt has not come
+     * yet, it is added to the queue first at that time. This method is threadsafe.
+     * @param video the details of the video to upload, must have a video file
+     * @param cancelName String to use for aborting the upload (and used to report its progress to the listener), must
+     *                   not be the same as the name of a unfinished upload
+     * @param priority uploads with a higher priority is started first, 0 is the default
+     * @param deadline when the video should be uploaded, used if the queue is ordered by deadline. null for no deadline
+     */
+    public void add(UploadDetails video, String cancelName, int priority, LocalDateTime deadline) {
+        if (!registry.register(cancelName)) {
+            System.err.println("A upload with the cancelName \"" + cancelName + "\" is already added, not adding it again");
+            return;
+        }
+        UploadJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.enqueued(cancelName, video.toString(), priority, deadline);
+        }
+        long retryDelay = retryEngine.getRemainingDelay(video.getVideoFile());
+        projectedCosts.put(cancelName, estimateQuotaCost(video));
+        if (retryDelay > 0) {
+            scheduleRetry(video, cancelName, priority, deadline, retryDelay);
+        } else {
+            enqueue(video, cancelName, priority, deadline);
+        }
+    }
+
+    /**
+     * Adds video to the queue after delay milliseconds, unless it is aborted before that
+     */
+    private void scheduleRetry(UploadDetails video, String cancelName, int priority, LocalDateTime deadline,
+                               long delay) {
+        waitingRetries.put(cancelName, video);
+        FutureTask<Void> waiting = new FutureTask<>(() -> {
+            if (registry.getState(cancelName) != null) { // not aborted
+                waitingRetries.remove(cancelName);
+                enqueue(video, cancelName, priority, deadline);
+            }
+        }, null);
+        // Registered before it is scheduled so it can not run and set the task of the next attempt before this is set
+        if (!registry.setTask(cancelName, waiting)) {
+            // Aborted while this attempt was scheduled
+            waitingRetries.remove(cancelName);
+            retryEngine.clear(video.getVideoFile());
+            return;
+        }
+        retryScheduler.schedule(waiting, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Adds video to the upload list. This method is threadsafe.
-     * @param video video to upload
-     * @param cancelName String to use for aborting the upload (and used to report that its finished if a callback is set)
+     * Creates the task that uploads video and gives it to the upload queue. The task and a new cancellation token is
+     * set in the registry before the task is queued so abortUpload() can stop the attempt.
      */
-    public void add(VideoUpload video, String cancelName) {
+    private void enqueue(UploadDetails video, String cancelName, int priority, LocalDateTime deadline) {
+        // If the upload fails and it should be tried again, add it to the queue again later with the same priority
+        LongConsumer retry = delay -> scheduleRetry(video, cancelName, priority, deadline, delay);
+        long queuedNanos = System.nanoTime();
+        // Every attempt gets its own token
+        UploadCancellation cancellation = new UploadCancellation();
+        if (!registry.setCancellation(cancelName, cancellation)) {
+            return; // aborted
+        }
         // Create the task
-        Task newTask = new Task<Void>() {
-            @Override
-            // Define what it does
-            protected Void call() {
-                try {
-                    // Do the uploading
-                    upload(video);
-                } catch (Exception e) {
-                    // if not interrupted by the user, print the error and call error handler if it is set
-                    if (! e.getMessage().equals("INTERRUPTED")) {
-                        e.printStackTrace();
-                        if (uploadErredCallback != null) {
-                            Platform.runLater(() -> uploadErredCallback.accept(video, e));
-                        }
-                    }
-                    tasks.remove(cancelName);
-                    return null;
-                }
-                // If upload finished without errors and callback is set, give the cancel name to the callback
-                if(uploadFinishedCallback != null) {
-                    uploadFinishedCallback.accept(cancelName);
+        Runnable newTask = () -> {
+            try {
+                runUpload(video, cancelName, cancellation, queuedNanos, retry);
+            } catch (RuntimeException e) {
+                // A bug, not a upload error. Report it so the upload does not look like it is running forever
+                e.printStackTrace();
+                if (finishTask(cancelName, UploadRegistry.State.FAILED)) {
+                    notifyFailed(cancelName, e);
                 }
-                // Remove the task from the list
-                tasks.remove(cancelName);
-                return null;
             }
         };
-        newTask.setOnFailed(event -> {
-            if (uploadErredCallback != null) {
-                Platform.runLater(() -> uploadErredCallback.accept(video, newTask.getException()));
+        UploadQueue.QueuedUpload queued = uploadQueue.create(newTask, cancelName, video.getVideoFile().length(),
+                priority, deadline);
+        // Registered before a lane can take it, so abortUpload() always finds the task of a running upload
+        if (!registry.setTask(cancelName, queued)) {
+            return; // aborted, setTask has cancelled it
+        }
+        uploadQueue.submit(exec, queued);
+    }
+
+    /**
+     * Runs on a upload lane, waits for quota and uploads the video file. The thumbnail and playlist is then handled
+     * on the post upload executor.
+     * @param video the video to upload
+     * @param cancelName the cancelName of the upload
+     * @param cancellation the cancellation token of this attempt
+     * @param queuedNanos System.nanoTime() when the upload was added to the queue
+     * @param retry adds the upload to the queue again after the given number of milliseconds
+     */
+    private void runUpload(UploadDetails video, String cancelName, UploadCancellation cancellation, long queuedNanos,
+                           LongConsumer retry) {
+        uploadQueue.onTaken();
+        if (!setState(cancelName, UploadRegistry.State.AUTHORIZING)) {
+            return; // aborted just as it was taken from the queue
+        }
+        metrics.onUploadStarted(queuedNanos);
+        long quotaWaitStart = System.nanoTime();
+        try {
+            // If the daily quota is used, no upload can start before it is reset
+            while (true) {
+                long parkedUntil = retryEngine.getQueueParkedUntil();
+                if (parkedUntil > 0) {
+                    String waitText = String.format(translationsUpload.getString("quotaWait"),
+                            formatTime(parkedUntil));
+                    notifyStatus(cancelName, waitText);
+                    retryEngine.awaitQueueOpen();
+                }
+                int units = estimateQuotaCost(video);
+                long seenChanges = quotaLedger.getChangeCount();
+                if (quotaLedger.tryReserve(cancelName, units)) {
+                    break;
+                }
+                if (quotaLedger.isUsedUp(units)) {
+                    // Not enough quota left today for this upload
+                    retryEngine.parkUntilQuotaReset();
+                } else {
+                    // The quota is reserved by uploads in progress, it may fit when they are done
+                    notifyStatus(cancelName, translationsUpload.getString("quotaReservedWait"));
+                    quotaLedger.awaitChange(seenChanges, QUOTA_RESERVATION_WAIT_MS);
+                }
             }
-        });
-        Future upload = exec.submit(newTask);
-        tasks.put(cancelName, upload); // save the future to be able to abort upload
+            metrics.onQuotaWaited(quotaWaitStart);
+        } catch (InterruptedException e) {
+            onAborted(video, cancelName, cancellation);
+            return;
+        }
+        UploadLane lane = currentLane.get();
+        if (lane != null) {
+            lane.begin(cancelName);
+        }
+        Video uploadedVideo;
+        try {
+            // Do the uploading
+            uploadedVideo = upload(video, cancelName, cancellation);
+        } catch (Exception e) {
+            if (cancellation.isCancelled()) {
+                // The error is from the closed connection or file, not a real error
+                onAborted(video, cancelName, cancellation);
+            } else {
+                onUploadFailed(video, cancelName, e, retry);
+            }
+            return;
+        } finally {
+            if (lane != null) {
+                lane.end();
+            }
+        }
+        // The video is on Youtube, errors after this is not retried as that would upload it again
+        retryEngine.clear(video.getVideoFile());
+        if (cancellation.isCancelled() || Thread.currentThread().isInterrupted() ||
+                !setState(cancelName, UploadRegistry.State.POST_PROCESSING)) {
+            // Aborted just as the video file was uploaded
+            onAborted(video, cancelName, cancellation);
+            return;
+        }
+        // Set the thumbnail and add to playlist on another thread so this lane can start the next upload now
+        FutureTask<Void> postUpload = new FutureTask<>(() -> {
+            CompletableFuture<?> finished;
+            try {
+                finished = postUpload(video, cancelName, uploadedVideo);
+            } catch (Exception e) {
+                onUploadFailed(video, cancelName, e, null);
+                return;
+            }
+            // Wait for the batched requests without blocking this thread, abortUpload() cancels them if aborted
+            registry.setTask(cancelName, finished);
+            finished.whenComplete((result, error) -> {
+                if (error != null) {
+                    onUploadFailed(video, cancelName, error, null);
+                    return;
+                }
+                // Remove the task from the registry, unless it was aborted at the last moment
+                if (finishTask(cancelName, UploadRegistry.State.DONE)) {
+                    String link = "https://youtu.be/" + uploadedVideo.getId();
+                    // If upload finished without errors tell the listener, after the last status is shown
+                    notifyFinished(cancelName, String.format(translationsUpload.getString("doneWithLink"), link),
+                            link);
+                }
+            });
+        }, null);
+        // abortUpload() now stops the post upload stages
+        if (registry.setTask(cancelName, postUpload)) {
+            postUploadExec.execute(postUpload);
+        }
+    }
+
+    /**
+     * Called when the upload stage of a upload has stopped because it was aborted, records how long it took to stop
+     * @param video the video that was aborted
+     * @param cancelName the cancelName of the upload
+     * @param cancellation the cancellation token of the attempt
+     */
+    private void onAborted(UploadDetails video, String cancelName, UploadCancellation cancellation) {
+        if (cancellation.isCancelled()) {
+            metrics.onUploadAborted(cancellation.getCancelledAt());
+        }
+        onUploadFailed(video, cancelName, new IOException("INTERRUPTED"), null);
+    }
+
+    /**
+     * Called when a upload failed or was aborted
+     * @param video the video that failed
+     * @param cancelName the cancelName of the upload
+     * @param error what went wrong
+     * @param retry adds the upload to the queue again after the given number of milliseconds, null if the upload can
+     *              not be retried
+     */
+    private void onUploadFailed(UploadDetails video, String cancelName, Throwable error, LongConsumer retry) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        // A cancelled batched request is the same as a interrupted upload
+        Throwable e = error instanceof CancellationException ? new IOException("INTERRUPTED") : error;
+        // Stop showing progress before the error is shown so a late frame can not hide the error
+        progressBus.stopUpload(cancelName);
+        // if not interrupted by the user, print the error and call error handler if it is set
+        if (!"INTERRUPTED".equals(e.getMessage())) {
+            RetryEngine.Decision decision = retry == null || killed ? null : retryEngine.onFailure(video.getVideoFile(), e);
+            if (decision != null && decision.willRetry()) {
+                metrics.onUploadRetry();
+                System.err.println("Upload of \"" + video.getVideoName() + "\" failed with " +
+                        decision.getErrorClass() + ", trying again at " + formatTime(decision.getRetryAt()) +
+                        ": " + e.getMessage());
+                String retryText = String.format(translationsUpload.getString("retryScheduled"),
+                        translationsUpload.getString("error_" + decision.getErrorClass().name()),
+                        formatTime(decision.getRetryAt()), decision.getAttempt() + 1);
+                notifyStatus(cancelName, retryText);
+                // Quota is reserved again when the next attempt starts
+                quotaLedger.release(cancelName);
+                if (setState(cancelName, UploadRegistry.State.QUEUED)) {
+                    retry.accept(Math.max(0, decision.getRetryAt() - System.currentTimeMillis()));
+                } else {
+                    retryEngine.clear(video.getVideoFile()); // aborted while failing
+                }
+                return;
+            }
+            e.printStackTrace();
+            if (finishTask(cancelName, UploadRegistry.State.FAILED)) {
+                notifyFailed(cancelName, e);
+            }
+            return;
+        } else if (!killed) {
+            // Aborted by the user, do not resume or retry this upload later. (If killed the program is closing
+            // and the upload may be resumed next time)
+            ResumableUploadSession.forUpload(video).delete();
+            retryEngine.clear(video.getVideoFile());
+        }
+        finishTask(cancelName, UploadRegistry.State.CANCELLED);
+    }
+
+    /**
+     * Moves a upload to a finished state and releases the quota it reserved
+     * @param cancelName the cancelName of the upload
+     * @param state DONE, FAILED or CANCELLED
+     * @return true if the state was changed, false if the upload already was finished (like aborted by the user)
+     */
+    private boolean finishTask(String cancelName, UploadRegistry.State state) {
+        boolean changed = setState(cancelName, state);
+        releaseTask(cancelName);
+        return changed;
+    }
+
+    /**
+     * Changes the state of a upload in the registry and writes the change to the journal
+     * @param cancelName the cancelName of the upload
+     * @param state the new state
+     * @return true if the state was changed, false if the upload is finished
+     */
+    private boolean setState(String cancelName, UploadRegistry.State state) {
+        if (!registry.setState(cancelName, state)) {
+            return false;
+        }
+        UploadJournal currentJournal = journal;
+        // Uploads stopped by kill() is kept in the journal so they are continued the next time the program starts
+        if (currentJournal != null && !(killed && state == UploadRegistry.State.CANCELLED)) {
+            currentJournal.stateChanged(cancelName, state);
+        }
+        return true;
     }
 
     /**
-     * Does the uploading.
-     * @param video a VideoUpload with all the details needed for uploading
+     * Writes how much of the video file Youtube has confirmed to the journal
+     * @param cancelName the cancelName of the upload
+     * @param state the state of the MediaHttpUploader
+     * @param committedBytes the number of bytes Youtube has confirmed
+     */
+    private void checkpoint(String cancelName, MediaHttpUploader.UploadState state, long committedBytes) {
+        UploadJournal currentJournal = journal;
+        if (currentJournal != null && state == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS) {
+            currentJournal.progress(cancelName, committedBytes);
+        }
+    }
+
+    /**
+     * Releases the quota and forgets the estimated cost of a upload that is finished, failed or aborted
+     * @param cancelName the cancelName of the upload
+     */
+    private void releaseTask(String cancelName) {
+        projectedCosts.remove(cancelName);
+        quotaLedger.release(cancelName);
+    }
+
+    /**
+     * @param epochMillis a time
+     * @return the time as local date and time for showing to the user
+     */
+    private static String formatTime(long epochMillis) {
+        return RETRY_TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * Uploads the video file.
+     * @param video the details of the video to upload
+     * @param cancelName the cancelName of the upload, the quota is reserved with this name
+     * @param cancellation the cancellation token of the upload, it is given the connections and the video file
+     * @return the uploaded video
      * @throws IOException if the user aborts the upload while it is uploading, there is a exception while reading the video
-     * or thumbnail file or there is a network error that could not be handled.
+     * file or there is a network error that could not be handled.
      */
-    private void upload(VideoUpload video) throws IOException {
+    private Video upload(UploadDetails video, String cancelName, UploadCancellation cancellation) throws IOException {
 
         // debug thing to force error
         if (video.getVideoName().equals("forceUploadFailure")) {
@@ -183,14 +790,232 @@ public class Uploader {
                     "name will ALWAYS fail");
         }
 
-        // Auth the user and create the Youtube object
-        Credential creds = Auth.authUser();
-        YouTube myTube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, request -> {
-            creds.initialize(request);
-            // Tell Youtube to attempt resume upload if a network error occur.
-            request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()));
-        }).setApplicationName("Stekeblads Video Uploader").build();
+        // Get the shared credential and create a Youtube object. The upload needs its own Youtube object because the
+        // request initializer below and the transport is specific for this upload.
+        long authStart = System.nanoTime();
+        Auth.authUser();
+        metrics.onAuthenticated(authStart);
+        if (!setState(cancelName, UploadRegistry.State.TRANSFERRING)) {
+            throw new IOException("INTERRUPTED");
+        }
+        ChunkSizeController chunkSizeController = new ChunkSizeController();
+        ResumableUploadSession session = ResumableUploadSession.forUpload(video);
+        HttpTransport transport = HttpTransportFactory.createCancellable(cancellation);
+        YouTube myTube = Auth.newYouTubeBuilder(transport, request -> {
+            Auth.initializeRequest(request);
+            // Tell Youtube to attempt resume upload if a network error occur, and send smaller chunks after that
+            HttpBackOffIOExceptionHandler backOffHandler = new HttpBackOffIOExceptionHandler(new ExponentialBackOff());
+            request.setIOExceptionHandler((failedRequest, supportsRetry) -> {
+                if (cancellation.isCancelled()) {
+                    return false; // the connection was closed by abortUpload()
+                }
+                chunkSizeController.onChunkFailed();
+                return backOffHandler.handleIOException(failedRequest, supportsRetry);
+            });
+            // Save the location of the upload session when it is started so it can be resumed after a restart
+            request.setResponseInterceptor(response -> {
+                HttpRequest sentRequest = response.getRequest();
+                if ("POST".equals(sentRequest.getRequestMethod()) &&
+                        "resumable".equals(sentRequest.getUrl().getFirst("uploadType")) &&
+                        response.getHeaders().getLocation() != null) {
+                    session.setSessionUri(response.getHeaders().getLocation());
+                }
+            });
+        }).build();
 
+        FileChannelContent videoContent;
+        // The file is hashed while it is sent, for finding duplicates of it later
+        UploadHasher hasher = new UploadHasher(video.getVideoFile().length());
+        try {
+            videoContent = new FileChannelContent(VIDEO_FILE_FORMAT, video.getVideoFile())
+                    .setBandwidthGovernor(BandwidthGovernor.INSTANCE)
+                    .setHasher(hasher);
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException("Could not find the video file \"" + video.getVideoFile().getAbsolutePath() +
+                    "\". It may have been deleted, moved or renamed since the upload was queued");
+        }
+        cancellation.closeOnCancel(videoContent::closeCurrentStream);
+        // The progress is shown by the progress bus, sampling how far into the file the upload has read
+        progressBus.startUpload(cancelName, videoContent.getLength(), videoContent::getBytesRead);
+
+        // If the video was partly uploaded before the program was closed, continue on that upload
+        Video uploadedVideo = null;
+        long videoStart = System.nanoTime();
+        long resumedAt = session.canResume() ? session.getCommittedBytes() : 0;
+        metrics.onVideoStarted();
+        try {
+            if (session.canResume()) {
+                uploadedVideo = session.resume(transport.createRequestFactory(Auth::initializeRequest),
+                        videoContent, chunkSizeController,
+                        (state, bytesUploaded) -> {
+                            checkpoint(cancelName, state, bytesUploaded);
+                            progressBus.setState(cancelName, state, bytesUploaded);
+                        });
+            }
+            if (uploadedVideo == null) {
+                resumedAt = 0;
+                uploadedVideo = uploadFromStart(video, cancelName, cancellation, videoContent, myTube,
+                        chunkSizeController, session);
+            }
+        } finally {
+            // The throughput is only measured on the part of the file that was sent now
+            metrics.onVideoStopped(videoStart, uploadedVideo == null ? 0 : videoContent.getLength() - resumedAt);
+        }
+        DuplicateIndex.INSTANCE.add(hasher, video.getVideoFile(), uploadedVideo.getId());
+        return uploadedVideo;
+    }
+
+    /**
+     * Gets the thumbnail to use for a upload, grabs a frame from the video if the preset has a thumbnail frame and no
+     * thumbnail file is selected. The frame is usually already grabbed when the preset was applied, it is grabbed again
+     * if the thumbnail is a grabbed frame that has been deleted from the thumbnail cache.
+     * @param video the upload
+     * @return the thumbnail file, or null if there is no thumbnail or the frame could not be grabbed
+     * @throws IOException with the message "INTERRUPTED" if the user aborts the upload while the frame is grabbed
+     */
+    private File getThumbnail(UploadDetails video) throws IOException {
+        File thumbnail = video.getThumbNail();
+        if (video.getThumbnailFrame() == null || (thumbnail != null && thumbnail.isFile())) {
+            return thumbnail;
+        }
+        try {
+            return FrameExtractor.INSTANCE.getExtracted(video.getVideoFile(), video.getThumbnailFrame());
+        } catch (IOException e) {
+            if ("INTERRUPTED".equals(e.getMessage())) {
+                throw e;
+            }
+            // The video is already uploaded, it is better to let Youtube pick a thumbnail than to fail the upload
+            System.err.println("Could not grab a thumbnail from \"" + video.getVideoFile().getName() + "\"");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Sets the thumbnail and adds the video to a playlist, if selected. Runs on the post upload executor. Every step is
+     * tried a few times before giving up. The thumbnail is set directly, adding to playlist is sent in a batch with other
+     * uploads that finishes at about the same time.
+     * @param video the video that has been uploaded
+     * @param cancelName the cancelName of the upload, the quota is reserved with this name
+     * @param uploadedVideo the video returned by Youtube when the video file was uploaded
+     * @return a future that is completed when the video is added to the playlist (or directly if no playlist is
+     * selected), or completed exceptionally if that fails
+     * @throws IOException if the user aborts the upload, the thumbnail file can not be read or setting the thumbnail
+     * fails after being retried
+     */
+    private CompletableFuture<?> postUpload(UploadDetails video, String cancelName, Video uploadedVideo)
+            throws IOException {
+        YouTube youtube = Auth.getYouTube();
+
+        // Set thumbnail if selected
+        File thumbnail = getThumbnail(video);
+        if (thumbnail != null) {
+            progressBus.setStatus(cancelName, translationsUpload.getString("thumbnail"));
+            long thumbnailStart = System.nanoTime();
+            // Converted in the background if it is too large, most of the time it is already done or not needed
+            File thumbFile = ThumbnailNormalizer.INSTANCE.getNormalized(thumbnail);
+            String contentType = Files.probeContentType(Paths.get(thumbFile.toURI()));
+            withRetries(() -> {
+                // A new stream for every attempt
+                InputStreamContent thumbnailFileContent;
+                try {
+                    thumbnailFileContent = new InputStreamContent(
+                            contentType, new BufferedInputStream(new FileInputStream(thumbFile)));
+                    thumbnailFileContent.setLength(thumbFile.length());
+                } catch (FileNotFoundException e) {
+                    throw new FileNotFoundException("Could not find the thumbnail file \"" + thumbFile.getAbsolutePath() +
+                            "\". It may have been deleted, moved or renamed since the upload was queued");
+                }
+                YouTube.Thumbnails.Set thumbnailSet = youtube.thumbnails().set(uploadedVideo.getId(), thumbnailFileContent);
+                quotaLedger.record(QuotaLedger.ApiCall.THUMBNAILS_SET, cancelName);
+                thumbnailSet.execute();
+            });
+            metrics.onThumbnailSet(thumbnailStart);
+        }
+        // Add to playlist if selected
+        if (hasPlaylist(video)) {
+            progressBus.setStatus(cancelName, String.format(translationsUpload.getString("playlist"), video.getSelectedPlaylist()));
+            ResourceId resourceId = new ResourceId();
+            resourceId.setKind("youtube#video");
+            resourceId.setVideoId(uploadedVideo.getId());
+
+            PlaylistItemSnippet playlistSnippet = new PlaylistItemSnippet();
+            playlistSnippet.setPlaylistId(playlistUtils.getPlaylistId(video.getSelectedPlaylist()));
+            playlistSnippet.setResourceId(resourceId);
+
+            PlaylistItem playlistItem = new PlaylistItem();
+            playlistItem.setSnippet(playlistSnippet);
+            YouTube.PlaylistItems.Insert playlistInsert = youtube.playlistItems().insert("snippet,contentDetails", playlistItem);
+            // The batcher retries on its own and every attempt uses quota. Cancelling the future removes the request
+            // from the batch
+            long playlistStart = System.nanoTime();
+            CompletableFuture<PlaylistItem> added = metadataBatcher.submit(playlistInsert,
+                    () -> quotaLedger.record(QuotaLedger.ApiCall.PLAYLIST_ITEMS_INSERT, cancelName));
+            added.thenRun(() -> metrics.onPlaylistAdded(playlistStart));
+            return added;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Runs call and tries again after a short wait if it fails with a network error or a server error.
+     * Errors that will fail again (like a missing file or a invalid request) are thrown directly.
+     * @param call the API call to make
+     * @throws IOException the error from the last attempt, or "INTERRUPTED" if the thread is interrupted
+     */
+    private void withRetries(ApiCall call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (Thread.interrupted()) {
+                throw new IOException("INTERRUPTED");
+            }
+            try {
+                call.execute();
+                return;
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (HttpResponseException e) {
+                // 4xx except 429 Too Many Requests is a problem with the request, it will not work next time either
+                if (attempt >= POST_UPLOAD_ATTEMPTS || (e.getStatusCode() < 500 && e.getStatusCode() != 429)) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                if (attempt >= POST_UPLOAD_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            metrics.onPostUploadRetry();
+            try {
+                Thread.sleep(2000L << (attempt - 1));
+            } catch (InterruptedException e) {
+                throw new IOException("INTERRUPTED");
+            }
+        }
+    }
+
+    /**
+     * A call to the Youtube API
+     */
+    private interface ApiCall {
+        void execute() throws IOException;
+    }
+
+    /**
+     * Starts a new resumable upload for video and uploads the entire video file
+     * @param video the video to upload
+     * @param cancelName the cancelName of the upload, the quota is reserved with this name
+     * @param cancellation the cancellation token of the upload
+     * @param videoContent the video file
+     * @param myTube a YouTube object to use for the upload
+     * @param chunkSizeController controller for the size of the chunks
+     * @param session the session for this upload, it is told how much of the video Youtube has confirmed
+     * @return the uploaded video
+     * @throws IOException if the user aborts the upload while it is uploading, there is a exception while reading
+     * the video file or there is a network error that could not be handled.
+     */
+    private Video uploadFromStart(UploadDetails video, String cancelName, UploadCancellation cancellation,
+                                  FileChannelContent videoContent, YouTube myTube,
+                                  ChunkSizeController chunkSizeController, ResumableUploadSession session)
+            throws IOException {
         // Start building the Youtube Video object
         Video videoObject = new Video();
 
@@ -203,100 +1028,37 @@ public class Uploader {
         videoMetaData.setCategoryId(categoryUtils.getCategoryId(video.getCategory()));
 
         videoObject.setSnippet(videoMetaData);
-        InputStreamContent videoFileStream;
-        try {
-            videoFileStream = new InputStreamContent(VIDEO_FILE_FORMAT,
-                    new BufferedInputStream(new FileInputStream(video.getVideoFile())));
-
-        } catch (FileNotFoundException e) {
-            throw new FileNotFoundException("Could not find the video file \"" + video.getVideoFile().getAbsolutePath() +
-                    "\". It may have been deleted, moved or renamed since the upload was queued");
-        }
 
         YouTube.Videos.Insert videoInsert = myTube.videos()
-                .insert("snippet,statistics,status", videoObject, videoFileStream);
+                .insert("snippet,statistics,status", videoObject, videoContent);
         videoInsert.setNotifySubscribers(video.isTellSubs());
 
         // getMediaHttpUploader for being able to report progress
         MediaHttpUploader uploader = videoInsert.getMediaHttpUploader();
         uploader.setDirectUploadEnabled(false); // makes the upload resumable?
+        chunkSizeController.attach(uploader);
 
         MediaHttpUploaderProgressListener progressListener = uploader1 -> {
             // If abortUpload() has been called for this upload while it is uploading
+            cancellation.throwIfCancelled();
             if(Thread.interrupted()) {
                 // Throw an exception (Only IOException allowed)
                 throw new IOException("INTERRUPTED");
             }
-            switch (uploader1.getUploadState()) {
-                case INITIATION_STARTED:
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("preparing")));
-                    break;
-                case INITIATION_COMPLETE:
-                    Platform.runLater(() -> video.setProgressBarProgress(0));
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("starting")));
-                    break;
-                case MEDIA_IN_PROGRESS: // uploader1.getProgress() errors, this is not a perfect replacement as
-                    // the upload is slightly larger than the video file, but for longer videos it will be close enough
-                    double progress = ((double) uploader1.getNumBytesUploaded() / video.getVideoFile().length());
-                    Platform.runLater(() -> video.setProgressBarProgress(progress));
-                    String newStatusText = String.format(
-                            translationsUpload.getString("uploadWithProgress"), (int) Math.floor(progress * 100));
-                    Platform.runLater(() -> video.setStatusLabelText(newStatusText));
-                    break;
-                case MEDIA_COMPLETE:
-                    Platform.runLater(() -> video.setProgressBarProgress(1)); // 100% full
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("finished")));
-                    break;
-                case NOT_STARTED:
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("notStarted")));
-                    break;
+            // Measure the last chunk and set the size of the next
+            chunkSizeController.onProgress(uploader1.getUploadState(), uploader1.getNumBytesUploaded());
+            if (uploader1.getUploadState() == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS) {
+                session.setCommittedBytes(uploader1.getNumBytesUploaded());
             }
+            checkpoint(cancelName, uploader1.getUploadState(), uploader1.getNumBytesUploaded());
+            progressBus.setState(cancelName, uploader1.getUploadState(), uploader1.getNumBytesUploaded());
         };
         uploader.setProgressListener(progressListener);
 
-        // finally ready for upload!
+        // finally ready for upload! The quota is used even if the upload fails
+        quotaLedger.record(QuotaLedger.ApiCall.VIDEOS_INSERT, cancelName);
         Video uploadedVideo = videoInsert.execute();
-
-        // Set thumbnail if selected
-        if (video.getThumbNail() != null) {
-            Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("thumbnail")));
-            File thumbFile = video.getThumbNail();
-            String contentType = Files.probeContentType(Paths.get(thumbFile.toURI()));
-
-            InputStreamContent thumbnailFileContent;
-            try {
-                thumbnailFileContent = new InputStreamContent(
-                        contentType, new BufferedInputStream(new FileInputStream(thumbFile)));
-                thumbnailFileContent.setLength(thumbFile.length());
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException("Could not find the thumbnail file \"" + thumbFile.getAbsolutePath() +
-                        "\". It may have been deleted, moved or renamed since the upload was queued");
-            }
-            YouTube.Thumbnails.Set thumbnailSet = myTube.thumbnails().set(uploadedVideo.getId(), thumbnailFileContent);
-            thumbnailSet.execute();
-        }
-        // Add to playlist if it is not null, empty or the "no selected" default value
-        String playlistString = video.getSelectedPlaylist();
-        if (playlistString != null && !playlistString.equals("null") && !playlistString.equals("") &&
-                !playlistString.equals(translationsBasic.getString("noSelected"))) {
-            String newStatusText = String.format(translationsUpload.getString("playlist"), video.getSelectedPlaylist());
-            Platform.runLater(() -> video.setStatusLabelText(newStatusText));
-            ResourceId resourceId = new ResourceId();
-            resourceId.setKind("youtube#video");
-            resourceId.setVideoId(uploadedVideo.getId());
-
-            PlaylistItemSnippet playlistSnippet = new PlaylistItemSnippet();
-            playlistSnippet.setPlaylistId(playlistUtils.getPlaylistId(video.getSelectedPlaylist()));
-            playlistSnippet.setResourceId(resourceId);
-
-            PlaylistItem playlistItem = new PlaylistItem();
-            playlistItem.setSnippet(playlistSnippet);
-            YouTube.PlaylistItems.Insert playlistInsert = myTube.playlistItems().insert("snippet,contentDetails", playlistItem);
-            playlistInsert.execute();
-        }
-        String link = "https://youtu.be/" + uploadedVideo.getId();
-        String newStatusText = String.format(translationsUpload.getString("doneWithLink"), link);
-        Platform.runLater(() -> video.setStatusLabelText(newStatusText));
-        Platform.runLater(() -> video.setStatusLabelOnClickUrl(link));
+        session.delete();
+        return uploadedVideo;
     }
 }
@@ -155,6 +155,22 @@ public class VideoInformationBase {
         }
     }
 
+    /**
+     * @return the details currently entered in the UI, for giving to code that does not use the UI like Uploader
+     */
+    public UploadDetails getDetails() {
+        return new UploadDetails.Builder()
+                .setVideoName(getVideoName())
+                .setVideoDescription(getVideoDescription())
+                .setVisibility(getVisibility())
+                .setVideoTags(getVideoTags())
+                .setSelectedPlaylist(getSelectedPlaylist())
+                .setCategory(getCategory())
+                .setTellSubs(isTellSubs())
+                .setThumbNail(getThumbNail())
+                .build();
+    }
+
     /**
      * @return returns the id of the Pane
      */
@@ -238,16 +254,30 @@ public class VideoInformationBase {
         if (!allowEdit) {
             throw new Exception("Edit not allowed");
         } else {
-            if (thumbnail == null) {
-                //reset to default
-                thumbNailFile = null;
-                ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
-                        new Image(this.getClass().getResourceAsStream("/images/no_image.png")));
-            } else {
-                ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
-                        new Image(new FileInputStream(thumbnail)));
-                thumbNailFile = thumbnail;
-            }
+            showThumbNail(thumbnail);
+        }
+    }
+
+    /**
+     * Sets a thumbnail that was made by the program, like a frame grabbed from the video. Allowed also when editing
+     * is not allowed.
+     * @param thumbnail the thumbnail image file
+     * @throws FileNotFoundException if the thumbnail file does not exist
+     */
+    public void setGeneratedThumbNail(File thumbnail) throws FileNotFoundException {
+        showThumbNail(thumbnail);
+    }
+
+    private void showThumbNail(File thumbnail) throws FileNotFoundException {
+        if (thumbnail == null) {
+            //reset to default
+            thumbNailFile = null;
+            ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
+                    new Image(this.getClass().getResourceAsStream("/images/no_image.png")));
+        } else {
+            ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
+                    new Image(new FileInputStream(thumbnail)));
+            thumbNailFile = thumbnail;
         }
     }
 
@@ -367,78 +397,12 @@ public class VideoInformationBase {
 
         this.paneId = paneId;
 
-        String videoName = null;
-        String videoDescription = null;
-        VisibilityStatus visibility = null;
-        ArrayList<String> videoTags = null;
-        String selectedPlaylist = null;
-        String category = null;
-        boolean tellSubs = false;
-        String thumbnailPath = null;
-
-        // Splitting up the data for easy reading, one thing per row -> on thing per array element
-        String[] lines = fromString.split("\n");
-        String line;
-        // For all lines
-        for(int i = 0; i < lines.length; i++) {
-            line = lines[i];
-            // Locate the separator between field name and value
-            int colonIndex = line.indexOf(':');
-            if (colonIndex < 0) {
-                System.err.println(fromString);
-                throw new Exception("Malformed string representation of class. Input: \n\"" + fromString + "\"");
-            } else {
-                // Switch on field name
-                switch (line.substring(0, colonIndex)) {
-                    case NODE_ID_TITLE:
-                        videoName = line.substring(colonIndex + 1);
-                        break;
-                    case NODE_ID_DESCRIPTION:
-                        // A bit special to allow descriptions to be multi-lined with actual enters in.
-                        StringBuilder descBuilder = new StringBuilder();
-                        descBuilder.append(line.substring(colonIndex + 1));
-                        // Skips lines in the outer loop because they are not valid
-                        i++;
-                        // As long as the next line not starts with "_" treat it as a part of the description
-                        while(!lines[i].startsWith("_")) {
-                            descBuilder.append("\n").append(lines[i]);
-                            i++;
-                        }
-                        // Line started with _ ,go back one so the increment in the loop does not cause this line to be skipped
-                        i--;
-                        videoDescription = descBuilder.toString();
-                        break;
-                    case NODE_ID_VISIBILITY:
-                        visibility = VisibilityStatus.valueOf(line.substring(colonIndex + 1));
-                        break;
-                    case NODE_ID_TAGS:
-                        line = line.substring(colonIndex + 2, line.length() - 1); // remove brackets
-                        videoTags = new ArrayList<>(Arrays.asList(line.split(",")));
-                        break;
-                    case NODE_ID_PLAYLIST:
-                        selectedPlaylist = line.substring(colonIndex + 1);
-                        break;
-                    case NODE_ID_CATEGORY:
-                        category = line.substring(colonIndex + 1);
-                        break;
-                    case NODE_ID_TELLSUBS:
-                        tellSubs = Boolean.parseBoolean(line.substring(colonIndex + 1));
-                        break;
-                    case NODE_ID_THUMBNAIL:
-                        thumbnailPath = line.substring(colonIndex + 1);
-                        if(thumbnailPath.equals("_")) {
-                            this.thumbNailFile = null; // use default
-                        } else {
-                            this.thumbNailFile = new File(thumbnailPath);
-                        }
-                        break;
-                    default:
-                        //ignore, might be a child value
-                }
-            }
-        }
-        makeVideoBasePane(videoName, videoDescription, visibility, videoTags, selectedPlaylist,
-                category, tellSubs, thumbnailPath);
+        // The parsing is shared with the details used when uploading without the UI
+        UploadDetails details = UploadDetails.fromString(fromString);
+        this.thumbNailFile = details.getThumbNail(); // null is the default
+        makeVideoBasePane(details.getVideoName(), details.getVideoDescription(), details.getVisibility(),
+                details.getVideoTags(), details.getSelectedPlaylist(), details.getCategory(), details.isTellSubs(),
+                thumbNailFile == null ? null : thumbNailFile.getPath());
     }
 
     /**
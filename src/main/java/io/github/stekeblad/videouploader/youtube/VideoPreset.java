@@ -1,5 +1,7 @@
 package io.github.stekeblad.videouploader.youtube;
 
+import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
 import javafx.collections.ObservableList;
 import javafx.scene.control.Button;
@@ -17,6 +19,7 @@ import java.util.List;
 public class VideoPreset extends VideoInformationBase {
 
     private static final String NODE_ID_PRESETNAME = "_presetName";
+    private static final String NODE_ID_THUMBNAILFRAME = "_thumbnailFrame";
 
     private GridPane presetPane;
 
@@ -30,6 +33,36 @@ public class VideoPreset extends VideoInformationBase {
         return ((TextField) presetPane.lookup("#" + getPaneId() + NODE_ID_PRESETNAME)).getText();
     }
 
+    /**
+     * @param thumbnailFrame where in the video to grab a frame to use as thumbnail, like "10s" or "25%", or a empty
+     *                       string to not grab a frame
+     */
+    public void setThumbnailFrame(String thumbnailFrame) {
+        ((TextField) presetPane.lookup("#" + getPaneId() + NODE_ID_THUMBNAILFRAME)).setText(thumbnailFrame);
+    }
+
+    /**
+     * @return the text in the thumbnail frame field, see FrameExtractor.Position for the format
+     */
+    public String getThumbnailFrame() {
+        return ((TextField) presetPane.lookup("#" + getPaneId() + NODE_ID_THUMBNAILFRAME)).getText();
+    }
+
+    /**
+     * @return the details currently entered in the UI with the thumbnail frame, the thumbnail frame is null if it is
+     * empty or not valid
+     */
+    @Override
+    public UploadDetails getDetails() {
+        FrameExtractor.Position thumbnailFrame;
+        try {
+            thumbnailFrame = FrameExtractor.Position.parse(getThumbnailFrame());
+        } catch (IllegalArgumentException e) {
+            thumbnailFrame = null;
+        }
+        return super.getDetails().toBuilder().setThumbnailFrame(thumbnailFrame).build();
+    }
+
     /**
      * @return returns the entire UI pane for placement on screen
      */
@@ -41,6 +74,7 @@ public class VideoPreset extends VideoInformationBase {
     public void setEditable(boolean newEditStatus) {
         super.setEditable(newEditStatus);
         ((TextField) presetPane.lookup("#" + getPaneId() + NODE_ID_PRESETNAME)).setEditable(newEditStatus);
+        ((TextField) presetPane.lookup("#" + getPaneId() + NODE_ID_THUMBNAILFRAME)).setEditable(newEditStatus);
     }
 
     /**
@@ -62,7 +96,7 @@ public class VideoPreset extends VideoInformationBase {
                        String thumbNailPath, String paneId, String presetName) {
         super(videoName, videoDescription, visibility, videoTags, selectedPlaylist,
                 category, tellSubs, thumbNailPath, paneId);
-        makePresetPane(presetName);
+        makePresetPane(presetName, "");
     }
 
     /**
@@ -75,6 +109,7 @@ public class VideoPreset extends VideoInformationBase {
         super(fromString, paneId);
 
         String presetName = null;
+        String thumbnailFrame = ""; // not in presets saved before it was added
 
         String[] lines = fromString.split("\n");
         for (String line : lines) {
@@ -84,6 +119,9 @@ public class VideoPreset extends VideoInformationBase {
                     case NODE_ID_PRESETNAME:
                         presetName = line.substring(colonIndex + 1);
                         break;
+                    case NODE_ID_THUMBNAILFRAME:
+                        thumbnailFrame = line.substring(colonIndex + 1);
+                        break;
                     default:
                         // likely belong to parent
                 }
@@ -92,7 +130,7 @@ public class VideoPreset extends VideoInformationBase {
         if (presetName == null) {
             throw new Exception("String representation of class does not have presetName");
         }
-        makePresetPane(presetName);
+        makePresetPane(presetName, thumbnailFrame);
     }
 
     /**
@@ -113,8 +151,10 @@ public class VideoPreset extends VideoInformationBase {
         } else {
             thumbnailPath = getThumbNail().getAbsolutePath();
         }
-        return new VideoPreset(getVideoName(), getVideoDescription(), getVisibility(), getVideoTags(), getSelectedPlaylist(),
+        VideoPreset copy = new VideoPreset(getVideoName(), getVideoDescription(), getVisibility(), getVideoTags(), getSelectedPlaylist(),
                 getCategory(), isTellSubs(), thumbnailPath, paneIdForCopy, getPresetName());
+        copy.setThumbnailFrame(getThumbnailFrame());
+        return copy;
     }
 
     /**
@@ -123,15 +163,25 @@ public class VideoPreset extends VideoInformationBase {
      */
     public static class Builder extends VideoInformationBase.Builder{
         String presetName;
+        String thumbnailFrame = "";
 
         public String getPresetName() {
             return presetName;
         }
 
+        public String getThumbnailFrame() {
+            return thumbnailFrame;
+        }
+
         public VideoPreset.Builder setPresetName(String presetName) {
             this.presetName = presetName;
             return this;
         }
+
+        public VideoPreset.Builder setThumbnailFrame(String thumbnailFrame) {
+            this.thumbnailFrame = thumbnailFrame;
+            return this;
+        }
         
         // Re-implementation of setters in super to get the right return type
         public VideoPreset.Builder setVideoName(String videoName) {
@@ -180,16 +230,19 @@ public class VideoPreset extends VideoInformationBase {
         }
 
         public VideoPreset build() {
-            return new VideoPreset(getVideoName(), getVideoDescription(), getVisibility(), getVideoTags(), getSelectedPlaylist(),
+            VideoPreset preset = new VideoPreset(getVideoName(), getVideoDescription(), getVisibility(), getVideoTags(), getSelectedPlaylist(),
                     getCategory(), isTellSubs(), getThumbNailPath(), getPresetName(), presetName);
+            preset.setThumbnailFrame(thumbnailFrame);
+            return preset;
         }
     }
 
     /**
      * Creates the UI Pane so it can be be retrieved by front end code with getPane()
      * @param name The preset name
+     * @param thumbnailFrame The text of the thumbnail frame field
      */
-    private void makePresetPane(String name) {
+    private void makePresetPane(String name, String thumbnailFrame) {
         // The base class has already done most of the work
         presetPane = super.getPane();
 
@@ -199,6 +252,13 @@ public class VideoPreset extends VideoInformationBase {
         presetName.setText(name);
         presetName.setEditable(false);
 
+        TextField thumbnailFrameField = new TextField();
+        thumbnailFrameField.setId(getPaneId() + NODE_ID_THUMBNAILFRAME);
+        thumbnailFrameField.setPromptText(TranslationsManager.getTranslation(TranslationBundles.PRESET_UPLOAD)
+                .getString(NODE_ID_THUMBNAILFRAME + "_pt"));
+        thumbnailFrameField.setText(thumbnailFrame);
+        thumbnailFrameField.setEditable(false);
+
         Button ghostBtn1 = new Button("");
         ghostBtn1.setVisible(false);
         Button ghostBtn2 = new Button("");
@@ -211,6 +271,7 @@ public class VideoPreset extends VideoInformationBase {
         // Add new Nodes on new row at the bottom
         presetPane.add(presetName, 0, 3);
         presetPane.add(buttonsBox, 1, 3);
+        presetPane.add(thumbnailFrameField, 2, 3);
 
         // Sizing
         RowConstraints newRow = new RowConstraints(30);
@@ -229,7 +290,12 @@ public class VideoPreset extends VideoInformationBase {
      * @return A String representation of this class
      */
     public String toString() {
-        return super.toString() + "\n" +
+        String classString = super.toString() + "\n" +
                 NODE_ID_PRESETNAME + ":" + getPresetName();
+        // Only saved if it is used so presets without it look the same as before
+        if (!getThumbnailFrame().isEmpty()) {
+            classString += "\n" + NODE_ID_THUMBNAILFRAME + ":" + getThumbnailFrame();
+        }
+        return classString;
     }
 }
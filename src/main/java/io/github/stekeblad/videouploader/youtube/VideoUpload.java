@@ -278,6 +278,14 @@ public class VideoUpload extends VideoInformationBase{
         uploadPane.getRowConstraints().add(newRow);
     }
 
+    /**
+     * @return the details currently entered in the UI and the video file, for giving to Uploader
+     */
+    @Override
+    public UploadDetails getDetails() {
+        return super.getDetails().toBuilder().setVideoFile(videoFile).build();
+    }
+
     /**
      * Creates a string representation of the class that can be saved and later used to recreate the class as it
      * looked like before with the VideoUpload(String, String) constructor
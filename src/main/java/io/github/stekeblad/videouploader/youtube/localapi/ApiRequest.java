@@ -0,0 +1,152 @@
+package io.github.stekeblad.videouploader.youtube.localapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A request to the LocalApiServer, either a real HTTP request or one of the requests in a batch request.
+ * The body is read when it is needed so uploaded video data does not need to be kept in memory.
+ */
+class ApiRequest {
+    private final String method;
+    private final String path;
+    private final Map<String, String> query;
+    private final Map<String, String> headers;
+    private InputStream body;
+    private final String baseUrl;
+    private boolean bodyRead = false;
+
+    /**
+     * @param method the HTTP method, like GET
+     * @param pathAndQuery the path and query string, like /youtube/v3/playlists?mine=true
+     * @param headers the headers of the request, the names in lowercase
+     * @param body the body of the request
+     * @param baseUrl the URL of the server with a / at the end, used in links to the server itself
+     */
+    ApiRequest(String method, String pathAndQuery, Map<String, String> headers, InputStream body, String baseUrl) {
+        this.method = method.toUpperCase();
+        this.headers = headers;
+        this.body = body;
+        this.baseUrl = baseUrl;
+        int queryIndex = pathAndQuery.indexOf('?');
+        this.path = queryIndex < 0 ? pathAndQuery : pathAndQuery.substring(0, queryIndex);
+        this.query = parseQuery(queryIndex < 0 ? "" : pathAndQuery.substring(queryIndex + 1));
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * @param name the name of a query parameter
+     * @return the value of the parameter or null if it is not in the request
+     */
+    String getQuery(String name) {
+        return query.get(name);
+    }
+
+    /**
+     * @param name the name of a header, in lowercase
+     * @return the value of the header or null if it is not in the request
+     */
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return the entire body as a UTF-8 string
+     * @throws IOException if the body could not be read
+     */
+    String readBody() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        InputStream in = openBody();
+        while ((read = in.read(buffer)) != -1) {
+            data.write(buffer, 0, read);
+        }
+        bodyRead = true;
+        return new String(data.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads and throws away the body, used for uploaded video data
+     * @return the number of bytes in the body
+     * @throws IOException if the body could not be read, like if the client closed the connection
+     */
+    long consumeBody() throws IOException {
+        if (bodyRead) {
+            return 0;
+        }
+        long count = 0;
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        InputStream in = openBody();
+        while ((read = in.read(buffer)) != -1) {
+            count += read;
+        }
+        bodyRead = true;
+        return count;
+    }
+
+    /**
+     * @return the body, decompressed if the client sent it gzipped (the Google client does that by default)
+     */
+    private InputStream openBody() throws IOException {
+        if ("gzip".equalsIgnoreCase(headers.get("content-encoding")) && !(body instanceof GZIPInputStream)) {
+            body = new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    private static Map<String, String> parseQuery(String queryString) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : queryString.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equalsIndex = parameter.indexOf('=');
+            try {
+                if (equalsIndex < 0) {
+                    parameters.put(URLDecoder.decode(parameter, "UTF-8"), "");
+                } else {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, equalsIndex), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(equalsIndex + 1), "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException e) {
+                // All Java implementations must support UTF-8
+                throw new RuntimeException(e);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * @param headers header names and values
+     * @return a copy of headers with the names in lowercase and only the first value of every header
+     */
+    static Map<String, String> lowerCaseHeaders(Map<String, ? extends Iterable<String>> headers) {
+        Map<String, String> lowerCase = new HashMap<>();
+        headers.forEach((name, values) -> {
+            if (name != null && values.iterator().hasNext()) {
+                lowerCase.putIfAbsent(name.toLowerCase(), values.iterator().next());
+            }
+        });
+        return lowerCase;
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.stekeblad.videouploader.youtube.localapi;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.jackson2.JacksonFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A response from the LocalApiServer
+ */
+class ApiResponse {
+    static final JacksonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final byte[] body;
+
+    private ApiResponse(int status, byte[] body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    /**
+     * @param status the HTTP status
+     * @param data the object to send as JSON, like a Video
+     * @return a response with data as the body
+     */
+    static ApiResponse json(int status, Object data) {
+        try {
+            ApiResponse response = new ApiResponse(status, JSON_FACTORY.toByteArray(data));
+            return response.setHeader("Content-Type", "application/json; charset=UTF-8");
+        } catch (IOException e) {
+            // Only happens if data can not be converted to JSON, a bug in the server
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param status the HTTP status
+     * @param contentType the content type of body
+     * @param body the body
+     * @return a response with body as UTF-8
+     */
+    static ApiResponse text(int status, String contentType, String body) {
+        return new ApiResponse(status, body.getBytes(StandardCharsets.UTF_8)).setHeader("Content-Type", contentType);
+    }
+
+    /**
+     * @param status the HTTP status
+     * @return a response without a body
+     */
+    static ApiResponse empty(int status) {
+        return new ApiResponse(status, new byte[0]);
+    }
+
+    /**
+     * Creates a error in the same format as the Youtube API, so the client library creates a
+     * GoogleJsonResponseException with the reason in it
+     * @param status the HTTP status
+     * @param reason the reason, like quotaExceeded
+     * @param message a text describing the error
+     * @return the error response
+     */
+    static ApiResponse error(int status, String reason, String message) {
+        GenericJson errorInfo = new GenericJson();
+        errorInfo.set("domain", "youtube.localapi");
+        errorInfo.set("reason", reason);
+        errorInfo.set("message", message);
+        GenericJson error = new GenericJson();
+        error.set("code", status);
+        error.set("message", message);
+        error.set("errors", Collections.singletonList(errorInfo));
+        GenericJson root = new GenericJson();
+        root.set("error", error);
+        return json(status, root);
+    }
+
+    ApiResponse setHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the body as a UTF-8 string
+     */
+    String getBodyString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
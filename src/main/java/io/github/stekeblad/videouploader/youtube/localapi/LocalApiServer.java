@@ -0,0 +1,615 @@
+package io.github.stekeblad.videouploader.youtube.localapi;
+
+import com.google.api.services.youtube.model.Playlist;
+import com.google.api.services.youtube.model.Video;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A HTTP server on localhost that pretends to be the parts of the Youtube Data API this program uses, for testing
+ * uploads without a internet connection, a Google account or using any quota:
+ * the resumable upload protocol of MediaHttpUploader for videos.insert and thumbnails.set, playlistItems.insert,
+ * playlists.list, playlists.insert, videoCategories.list and batch requests.
+ *
+ * The network and the API can be made worse while the server is running: a latency before every response, a
+ * bandwidth limit shared by all uploads (like a real uplink), a share of requests that fails with a server error or
+ * is rate limited, a share of upload chunks where the connection is closed half way and a daily quota that gives
+ * quotaExceeded errors when it is used. Specific errors can also be queued to be returned by the next requests.
+ *
+ * Point the program at it with the setting api_root_url (or Auth.useLocalApi() in the same process), requests are
+ * then sent to this server with a fake access token instead of asking the user for permission.
+ * Run main() to start it as its own program. All methods are threadsafe.
+ */
+public class LocalApiServer {
+    private static final String BATCH_PATH = "/batch/youtube/v3";
+    private static final String CRLF = "\r\n";
+    private static final int THROTTLE_BLOCK = 16 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LocalApiState state = new LocalApiState();
+    private final Queue<InjectedError> injectedErrors = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicInteger droppedCount = new AtomicInteger(0);
+    private final Object bandwidthLock = new Object();
+    private long linkFreeAt = 0; // System.nanoTime() when the shared link has sent everything given to it
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile double dropRate;
+
+    /**
+     * A error queued with injectErrors()
+     */
+    private static class InjectedError {
+        final int status;
+        final String reason;
+
+        InjectedError(int status, String reason) {
+            this.status = status;
+            this.reason = reason;
+        }
+    }
+
+    private LocalApiServer(Builder builder) throws IOException {
+        latencyMillis = builder.latencyMillis;
+        bytesPerSecond = builder.bytesPerSecond;
+        errorRate = builder.errorRate;
+        rateLimitRate = builder.rateLimitRate;
+        dropRate = builder.dropRate;
+        state.setQuotaLimit(builder.quotaLimit);
+        for (String title : builder.playlists) {
+            state.addPlaylist(title, null);
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Local API " + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::serve);
+        server.start();
+    }
+
+    /**
+     * Stops the server, requests in progress are given a second to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the URL to use as api_root_url, like http://127.0.0.1:8081/
+     */
+    public String getRootUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/";
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Faults, can be changed while uploads are running
+
+    /**
+     * @param millis time to wait before every response, like the round trip time to a real server
+     */
+    public void setLatency(long millis) {
+        latencyMillis = Math.max(0, millis);
+    }
+
+    /**
+     * @param bytesPerSecond the max speed all uploads together can send with, 0 for no limit
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * @param rate the share of requests (0 to 1) that fails with 503 backendError
+     */
+    public void setErrorRate(double rate) {
+        errorRate = rate;
+    }
+
+    /**
+     * @param rate the share of requests (0 to 1) that fails with 403 rateLimitExceeded
+     */
+    public void setRateLimitRate(double rate) {
+        rateLimitRate = rate;
+    }
+
+    /**
+     * @param rate the share of upload chunks (0 to 1) where the connection is closed after half of the chunk is
+     *             received, like a lost connection
+     */
+    public void setDropRate(double rate) {
+        dropRate = rate;
+    }
+
+    /**
+     * @param units the number of quota units that can be used before requests fails with quotaExceeded, 0 for no limit
+     */
+    public void setQuotaLimit(int units) {
+        state.setQuotaLimit(units);
+    }
+
+    /**
+     * Starts a new quota day, all quota is available again
+     */
+    public void resetQuota() {
+        state.resetQuota();
+    }
+
+    /**
+     * Makes the next count requests fail with the given error, before the random errors is considered
+     * @param count the number of requests to fail
+     * @param status the HTTP status, like 500
+     * @param reason the reason in the error, like backendError or quotaExceeded
+     */
+    public void injectErrors(int count, int status, String reason) {
+        for (int i = 0; i < count; i++) {
+            injectedErrors.add(new InjectedError(status, reason));
+        }
+    }
+
+    // Results
+
+    /**
+     * @return all videos that has been uploaded to this server
+     */
+    public List<Video> getVideos() {
+        return state.getVideos();
+    }
+
+    /**
+     * @param playlistId the id of a playlist
+     * @return the ids of the videos that has been added to the playlist, in order
+     */
+    public List<String> getPlaylistVideoIds(String playlistId) {
+        return state.getPlaylistVideoIds(playlistId);
+    }
+
+    /**
+     * @param title the name of the new playlist
+     * @return the id of the new playlist
+     */
+    public String addPlaylist(String title) {
+        Playlist playlist = state.addPlaylist(title, null);
+        return playlist.getId();
+    }
+
+    public int getQuotaUsed() {
+        return state.getQuotaUsed();
+    }
+
+    /**
+     * @return the number of bytes received in uploads, including chunks that was sent more than once
+     */
+    public long getBytesReceived() {
+        return state.getBytesReceived();
+    }
+
+    /**
+     * @return the number of HTTP requests received, a batch request counts as one
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of upload chunks where the connection was closed on purpose
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // Serving
+
+    private void serve(HttpExchange exchange) {
+        requestCount.incrementAndGet();
+        try {
+            Map<String, String> headers = ApiRequest.lowerCaseHeaders(exchange.getRequestHeaders());
+            String host = headers.getOrDefault("host", getRootUrl().substring("http://".length()));
+            ApiRequest request = new ApiRequest(exchange.getRequestMethod(), exchange.getRequestURI().toString(),
+                    headers, new ThrottledInputStream(exchange.getRequestBody()), "http://" + host + "/");
+
+            if (isUploadChunk(request) && ThreadLocalRandom.current().nextDouble() < dropRate) {
+                drop(exchange, request);
+                return;
+            }
+            sleep(latencyMillis);
+            ApiResponse response;
+            if (headers.get("authorization") == null) {
+                response = ApiResponse.error(401, "authError", "No access token in the request");
+            } else {
+                response = dispatch(request);
+            }
+            // What is left of the body must be read before the connection can be used for the next request
+            request.consumeBody();
+
+            response.getHeaders().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+            byte[] body = response.getBody();
+            exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (IOException e) {
+            // The client closed the connection, nothing more to do
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            try {
+                exchange.sendResponseHeaders(500, -1);
+            } catch (IOException ignored) {
+                // already closed
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads half of the chunk and closes the connection without a response
+     */
+    private void drop(HttpExchange exchange, ApiRequest request) throws IOException {
+        droppedCount.incrementAndGet();
+        String length = request.getHeader("content-length");
+        long half = length == null ? 0 : Long.parseLong(length) / 2;
+        InputStream body = exchange.getRequestBody();
+        byte[] buffer = new byte[8192];
+        while (half > 0) {
+            int read = body.read(buffer, 0, (int) Math.min(buffer.length, half));
+            if (read < 0) {
+                break;
+            }
+            half -= read;
+        }
+        // Closing the exchange before the response headers is sent closes the connection
+        exchange.close();
+    }
+
+    private static boolean isUploadChunk(ApiRequest request) {
+        return "PUT".equals(request.getMethod()) && request.getQuery("upload_id") != null;
+    }
+
+    /**
+     * Returns a injected or random error, or lets the state handle the request
+     */
+    private ApiResponse dispatch(ApiRequest request) throws IOException {
+        InjectedError injected = injectedErrors.poll();
+        if (injected != null) {
+            return ApiResponse.error(injected.status, injected.reason, "Injected error");
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < errorRate) {
+            return ApiResponse.error(503, "backendError", "Random server error");
+        }
+        if (random.nextDouble() < rateLimitRate) {
+            return ApiResponse.error(403, "rateLimitExceeded", "Random rate limit");
+        }
+        if (BATCH_PATH.equals(request.getPath()) && "POST".equals(request.getMethod())) {
+            return handleBatch(request);
+        }
+        return state.handle(request);
+    }
+
+    /**
+     * Handles a multipart/mixed batch request, every part is a HTTP request that is handled on its own
+     */
+    private ApiResponse handleBatch(ApiRequest batchRequest) throws IOException {
+        String contentType = batchRequest.getHeader("content-type");
+        int boundaryIndex = contentType == null ? -1 : contentType.indexOf("boundary=");
+        if (boundaryIndex < 0) {
+            return ApiResponse.error(400, "badRequest", "The batch request has no boundary");
+        }
+        String boundary = contentType.substring(boundaryIndex + "boundary=".length()).replace("\"", "");
+        String body = batchRequest.readBody();
+
+        String responseBoundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+        StringBuilder responseBody = new StringBuilder();
+        for (String part : body.split("--" + boundary)) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty() || trimmed.equals("--")) {
+                continue;
+            }
+            // The part headers, then the HTTP request
+            String[] partSections = part.replaceFirst("^\\r?\\n", "").split("\\r?\\n\\r?\\n", 2);
+            if (partSections.length < 2) {
+                continue;
+            }
+            String contentId = null;
+            for (String header : partSections[0].split("\\r?\\n")) {
+                if (header.toLowerCase().startsWith("content-id:")) {
+                    contentId = header.substring("content-id:".length()).trim().replaceAll("[<>]", "");
+                }
+            }
+            ApiResponse response = dispatchBatchPart(partSections[1], batchRequest.getBaseUrl());
+
+            responseBody.append("--").append(responseBoundary).append(CRLF)
+                    .append("Content-Type: application/http").append(CRLF);
+            if (contentId != null) {
+                responseBody.append("Content-ID: <response-").append(contentId).append(">").append(CRLF);
+            }
+            responseBody.append(CRLF)
+                    .append("HTTP/1.1 ").append(response.getStatus()).append(" ").append(reasonPhrase(response.getStatus()))
+                    .append(CRLF);
+            response.getHeaders().forEach((name, value) -> responseBody.append(name).append(": ").append(value).append(CRLF));
+            String partBody = response.getBodyString();
+            responseBody.append("Content-Length: ").append(partBody.getBytes(StandardCharsets.UTF_8).length).append(CRLF)
+                    .append(CRLF)
+                    .append(partBody).append(CRLF);
+        }
+        responseBody.append("--").append(responseBoundary).append("--").append(CRLF);
+
+        return ApiResponse.text(200, "multipart/mixed; boundary=" + responseBoundary, responseBody.toString());
+    }
+
+    /**
+     * @param httpRequest a request in a batch, the request line, headers and body
+     * @param baseUrl the URL of this server
+     * @return the response to the request
+     */
+    private ApiResponse dispatchBatchPart(String httpRequest, String baseUrl) throws IOException {
+        String[] sections = httpRequest.split("\\r?\\n\\r?\\n", 2);
+        String[] headerLines = sections[0].split("\\r?\\n");
+        String[] requestLine = headerLines[0].split(" ");
+        if (requestLine.length < 2) {
+            return ApiResponse.error(400, "badRequest", "Invalid request line in batch: " + headerLines[0]);
+        }
+        // The client library writes the full URL, only the path and query is needed
+        String target = requestLine[1];
+        if (target.startsWith("http")) {
+            URI uri = URI.create(target);
+            target = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < headerLines.length; i++) {
+            int colonIndex = headerLines[i].indexOf(':');
+            if (colonIndex > 0) {
+                headers.put(headerLines[i].substring(0, colonIndex).trim().toLowerCase(),
+                        headerLines[i].substring(colonIndex + 1).trim());
+            }
+        }
+        String body = sections.length > 1 ? sections[1].replaceFirst("\\r?\\n$", "") : "";
+        ApiRequest request = new ApiRequest(requestLine[0], target, headers,
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), baseUrl);
+        InjectedError injected = injectedErrors.poll();
+        if (injected != null) {
+            return ApiResponse.error(injected.status, injected.reason, "Injected error");
+        }
+        return state.handle(request);
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 308:
+                return "Resume Incomplete";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status " + status;
+        }
+    }
+
+    /**
+     * Waits until the shared link has room for bytes more bytes
+     */
+    private void throttle(int bytes) throws IOException {
+        long limit = bytesPerSecond;
+        if (limit <= 0 || bytes <= 0) {
+            return;
+        }
+        long waitUntil;
+        synchronized (bandwidthLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, linkFreeAt);
+            linkFreeAt = start + TimeUnit.SECONDS.toNanos(bytes) / limit;
+            waitUntil = linkFreeAt;
+        }
+        long waitNanos = waitUntil - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("INTERRUPTED");
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("INTERRUPTED");
+        }
+    }
+
+    /**
+     * Reads the request body at the speed of the bandwidth limit
+     */
+    private class ThrottledInputStream extends FilterInputStream {
+
+        ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                throttle(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            // Small blocks so the speed is even and many uploads share the link fairly
+            int read = super.read(buffer, offset, Math.min(length, THROTTLE_BLOCK));
+            throttle(read);
+            return read;
+        }
+    }
+
+    /**
+     * Used for building a LocalApiServer one setting at the time. Call build() to start the server.
+     */
+    public static class Builder {
+        private int port = 0;
+        private long latencyMillis = 0;
+        private long bytesPerSecond = 0;
+        private double errorRate = 0;
+        private double rateLimitRate = 0;
+        private double dropRate = 0;
+        private int quotaLimit = 0;
+        private final List<String> playlists = new ArrayList<>();
+
+        /**
+         * @param port the port to listen on, 0 (the default) for any free port
+         */
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder setLatency(long millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        public Builder setBandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Builder setErrorRate(double rate) {
+            this.errorRate = rate;
+            return this;
+        }
+
+        public Builder setRateLimitRate(double rate) {
+            this.rateLimitRate = rate;
+            return this;
+        }
+
+        public Builder setDropRate(double rate) {
+            this.dropRate = rate;
+            return this;
+        }
+
+        public Builder setQuotaLimit(int units) {
+            this.quotaLimit = units;
+            return this;
+        }
+
+        /**
+         * @param title the name of a playlist that exists when the server starts
+         */
+        public Builder addPlaylist(String title) {
+            playlists.add(title);
+            return this;
+        }
+
+        /**
+         * Starts the server
+         * @return the running server
+         * @throws IOException if the port could not be opened
+         */
+        public LocalApiServer build() throws IOException {
+            return new LocalApiServer(this);
+        }
+    }
+
+    /**
+     * Starts a server as its own program.
+     * Usage: [--port N] [--latency ms] [--bandwidth bytes/s] [--error-rate 0-1] [--rate-limit-rate 0-1]
+     * [--drop-rate 0-1] [--quota units] [--playlist title]...
+     */
+    public static void main(String[] args) {
+        Builder builder = new Builder().setPort(8081);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        builder.setPort(Integer.parseInt(args[++i]));
+                        break;
+                    case "--latency":
+                        builder.setLatency(Long.parseLong(args[++i]));
+                        break;
+                    case "--bandwidth":
+                        builder.setBandwidth(Long.parseLong(args[++i]));
+                        break;
+                    case "--error-rate":
+                        builder.setErrorRate(Double.parseDouble(args[++i]));
+                        break;
+                    case "--rate-limit-rate":
+                        builder.setRateLimitRate(Double.parseDouble(args[++i]));
+                        break;
+                    case "--drop-rate":
+                        builder.setDropRate(Double.parseDouble(args[++i]));
+                        break;
+                    case "--quota":
+                        builder.setQuotaLimit(Integer.parseInt(args[++i]));
+                        break;
+                    case "--playlist":
+                        builder.addPlaylist(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: LocalApiServer [--port N] [--latency ms] [--bandwidth bytes/s] " +
+                    "[--error-rate 0-1] [--rate-limit-rate 0-1] [--drop-rate 0-1] [--quota units] [--playlist title]...");
+            System.exit(2);
+        }
+        try {
+            LocalApiServer localApi = builder.build();
+            System.out.println("Local API running, set api_root_url=" + localApi.getRootUrl() + " in the settings " +
+                    "to use it");
+        } catch (IOException e) {
+            System.err.println("Could not start the local API");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
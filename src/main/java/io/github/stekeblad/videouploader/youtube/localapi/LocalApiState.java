@@ -0,0 +1,420 @@
+package io.github.stekeblad.videouploader.youtube.localapi;
+
+import com.google.api.services.youtube.model.*;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Youtube account and API the LocalApiServer pretends to be: the uploaded videos, the playlists, the video
+ * categories, the resumable upload sessions and the quota. The quota costs are the same as in QuotaLedger.
+ * All methods are threadsafe.
+ */
+class LocalApiState {
+    private static final String UPLOAD_PREFIX = "/upload/youtube/v3/";
+    private static final String API_PREFIX = "/youtube/v3/";
+    private static final int PAGE_SIZE = 25;
+    private static final String ID_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private final Random random = new SecureRandom();
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Video> videos = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> playlistItems = new ConcurrentHashMap<>();
+    // LinkedHashMap to list the playlists in the order they was created
+    private final Map<String, Playlist> playlists = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, String> categories = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicLong bytesReceived = new AtomicLong(0);
+    private int quotaLimit = 0; // 0 = unlimited
+    private int quotaUsed = 0;
+
+    /**
+     * A resumable upload of a video or a thumbnail
+     */
+    private static class UploadSession {
+        final String id;
+        final Video video; // the video being uploaded, or null for a thumbnail
+        final String thumbnailVideoId; // the video the thumbnail is for, or null for a video
+        long total;
+        long received = 0;
+        Object result = null; // the response when all bytes is received
+
+        UploadSession(String id, Video video, String thumbnailVideoId, long total) {
+            this.id = id;
+            this.video = video;
+            this.thumbnailVideoId = thumbnailVideoId;
+            this.total = total;
+        }
+    }
+
+    LocalApiState() {
+        categories.put("1", "Film & Animation");
+        categories.put("10", "Music");
+        categories.put("20", "Gaming");
+        categories.put("22", "People & Blogs");
+        categories.put("24", "Entertainment");
+        categories.put("27", "Education");
+    }
+
+    /**
+     * Handles a request to the API (not a batch request)
+     * @param request the request
+     * @return the response
+     * @throws IOException if the body of the request could not be read
+     */
+    ApiResponse handle(ApiRequest request) throws IOException {
+        try {
+            return route(request);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(400, "parseError", "The request body could not be parsed: " + e.getMessage());
+        }
+    }
+
+    private ApiResponse route(ApiRequest request) throws IOException {
+        String path = request.getPath();
+        if (path.startsWith(UPLOAD_PREFIX)) {
+            return handleUpload(request, path.substring(UPLOAD_PREFIX.length()));
+        }
+        if (!path.startsWith(API_PREFIX)) {
+            return ApiResponse.error(404, "notFound", "Unknown path " + path);
+        }
+        String resource = path.substring(API_PREFIX.length());
+        switch (request.getMethod() + " " + resource) {
+            case "POST playlistItems":
+                return insertPlaylistItem(request);
+            case "GET playlists":
+                return listPlaylists(request);
+            case "POST playlists":
+                return insertPlaylist(request);
+            case "GET videoCategories":
+                return listCategories(request);
+            default:
+                return ApiResponse.error(404, "notFound", request.getMethod() + " " + path + " is not supported");
+        }
+    }
+
+    // Uploads
+
+    private ApiResponse handleUpload(ApiRequest request, String resource) throws IOException {
+        String uploadId = request.getQuery("upload_id");
+        if (uploadId != null) {
+            UploadSession session = sessions.get(uploadId);
+            if (session == null) {
+                request.consumeBody();
+                return ApiResponse.error(404, "notFound", "The upload session does not exist or has expired");
+            }
+            return uploadChunk(request, session);
+        }
+        if (!"POST".equals(request.getMethod())) {
+            return ApiResponse.error(405, "methodNotAllowed", "Uploads are started with POST");
+        }
+        String uploadType = request.getQuery("uploadType");
+        switch (resource) {
+            case "videos":
+                if (!chargeQuota(QuotaLedger.ApiCall.VIDEOS_INSERT)) {
+                    return quotaExceeded(request);
+                }
+                Video video = "resumable".equals(uploadType) ?
+                        parseBody(request, Video.class) : new Video();
+                return startUpload(request, uploadType, video, null);
+            case "thumbnails/set":
+                String videoId = request.getQuery("videoId");
+                if (videoId == null || !videos.containsKey(videoId)) {
+                    request.consumeBody();
+                    return ApiResponse.error(404, "videoNotFound", "The video the thumbnail is for does not exist");
+                }
+                if (!chargeQuota(QuotaLedger.ApiCall.THUMBNAILS_SET)) {
+                    return quotaExceeded(request);
+                }
+                return startUpload(request, uploadType, null, videoId);
+            default:
+                request.consumeBody();
+                return ApiResponse.error(404, "notFound", "Uploads to " + resource + " is not supported");
+        }
+    }
+
+    /**
+     * Starts a resumable upload, or receives the entire file directly for the other upload types
+     */
+    private ApiResponse startUpload(ApiRequest request, String uploadType, Video video, String thumbnailVideoId)
+            throws IOException {
+        String lengthHeader = request.getHeader("x-upload-content-length");
+        long total = lengthHeader == null ? -1 : Long.parseLong(lengthHeader);
+        UploadSession session = new UploadSession(newId(20), video, thumbnailVideoId, total);
+        if (!"resumable".equals(uploadType)) {
+            // media or multipart, the file is in this request
+            session.received = request.consumeBody();
+            bytesReceived.addAndGet(session.received);
+            return ApiResponse.json(200, complete(session));
+        }
+        sessions.put(session.id, session);
+        String resource = video != null ? "videos" : "thumbnails/set";
+        return ApiResponse.empty(200).setHeader("Location",
+                request.getBaseUrl() + UPLOAD_PREFIX.substring(1) + resource + "?uploadType=resumable&upload_id=" +
+                        session.id);
+    }
+
+    /**
+     * Receives a chunk of a resumable upload, or answers how much is received if the chunk is empty
+     * ("Content-Range: bytes *&#47;total")
+     */
+    private ApiResponse uploadChunk(ApiRequest request, UploadSession session) throws IOException {
+        String contentRange = request.getHeader("content-range");
+        long start = -1;
+        if (contentRange != null && contentRange.startsWith("bytes ")) {
+            String range = contentRange.substring("bytes ".length());
+            int slashIndex = range.indexOf('/');
+            String totalString = slashIndex < 0 ? "*" : range.substring(slashIndex + 1);
+            String startEnd = slashIndex < 0 ? range : range.substring(0, slashIndex);
+            synchronized (session) {
+                if (!"*".equals(totalString)) {
+                    session.total = Long.parseLong(totalString);
+                }
+            }
+            if (!startEnd.startsWith("*")) {
+                start = Long.parseLong(startEnd.substring(0, startEnd.indexOf('-')));
+            }
+        }
+        if (start >= 0) {
+            long count = request.consumeBody();
+            bytesReceived.addAndGet(count);
+            synchronized (session) {
+                // A chunk after a gap is thrown away, the client is told what is missing and sends it again
+                if (start <= session.received) {
+                    session.received = Math.max(session.received, start + count);
+                }
+            }
+        } else {
+            request.consumeBody();
+        }
+
+        synchronized (session) {
+            if (session.result == null && session.total >= 0 && session.received >= session.total) {
+                session.result = complete(session);
+            }
+            if (session.result != null) {
+                return ApiResponse.json(200, session.result);
+            }
+            ApiResponse incomplete = ApiResponse.empty(308);
+            if (session.received > 0) {
+                incomplete.setHeader("Range", "bytes=0-" + (session.received - 1));
+            }
+            return incomplete;
+        }
+    }
+
+    /**
+     * Creates the video or sets the thumbnail of a upload that has all bytes
+     * @return the response to the last request of the upload
+     */
+    private Object complete(UploadSession session) {
+        if (session.video != null) {
+            Video video = session.video;
+            video.setId(newId(11));
+            video.setKind("youtube#video");
+            videos.put(video.getId(), video);
+            return video;
+        }
+        Thumbnail thumbnail = new Thumbnail()
+                .setUrl("https://i.ytimg.com/vi/" + session.thumbnailVideoId + "/default.jpg")
+                .setWidth(120L).setHeight(90L);
+        return new ThumbnailSetResponse()
+                .setKind("youtube#thumbnailSetResponse")
+                .setItems(Collections.singletonList(new ThumbnailDetails().setDefault(thumbnail)));
+    }
+
+    // Playlists and categories
+
+    private ApiResponse insertPlaylistItem(ApiRequest request) throws IOException {
+        PlaylistItem item = parseBody(request, PlaylistItem.class);
+        if (!chargeQuota(QuotaLedger.ApiCall.PLAYLIST_ITEMS_INSERT)) {
+            return quotaExceeded(request);
+        }
+        if (item.getSnippet() == null || item.getSnippet().getResourceId() == null) {
+            return ApiResponse.error(400, "invalidValue", "The playlist item has no snippet or resourceId");
+        }
+        String playlistId = item.getSnippet().getPlaylistId();
+        String videoId = item.getSnippet().getResourceId().getVideoId();
+        if (playlistId == null || !playlists.containsKey(playlistId)) {
+            return ApiResponse.error(404, "playlistNotFound", "The playlist " + playlistId + " does not exist");
+        }
+        if (videoId == null || !videos.containsKey(videoId)) {
+            return ApiResponse.error(404, "videoNotFound", "The video " + videoId + " does not exist");
+        }
+        List<String> items = playlistItems.computeIfAbsent(playlistId, id -> Collections.synchronizedList(new ArrayList<>()));
+        items.add(videoId);
+        item.setId(newId(34));
+        item.setKind("youtube#playlistItem");
+        item.getSnippet().setPosition((long) items.size() - 1);
+        return ApiResponse.json(200, item);
+    }
+
+    private ApiResponse listPlaylists(ApiRequest request) throws IOException {
+        if (!chargeQuota(QuotaLedger.ApiCall.PLAYLISTS_LIST)) {
+            return quotaExceeded(request);
+        }
+        List<Playlist> all;
+        synchronized (playlists) {
+            all = new ArrayList<>(playlists.values());
+        }
+        int pageSize = PAGE_SIZE;
+        int first = 0;
+        try {
+            if (request.getQuery("maxResults") != null) {
+                pageSize = Math.max(1, Integer.parseInt(request.getQuery("maxResults")));
+            }
+            if (request.getQuery("pageToken") != null) {
+                first = Integer.parseInt(request.getQuery("pageToken"));
+            }
+        } catch (NumberFormatException e) {
+            return ApiResponse.error(400, "invalidPageToken", "Invalid maxResults or pageToken");
+        }
+        int last = Math.min(all.size(), first + pageSize);
+        PlaylistListResponse response = new PlaylistListResponse()
+                .setKind("youtube#playlistListResponse")
+                .setItems(first < last ? all.subList(first, last) : Collections.emptyList());
+        if (last < all.size()) {
+            response.setNextPageToken(String.valueOf(last));
+        }
+        return ApiResponse.json(200, response);
+    }
+
+    private ApiResponse insertPlaylist(ApiRequest request) throws IOException {
+        Playlist playlist = parseBody(request, Playlist.class);
+        if (!chargeQuota(QuotaLedger.ApiCall.PLAYLISTS_INSERT)) {
+            return quotaExceeded(request);
+        }
+        if (playlist.getSnippet() == null || playlist.getSnippet().getTitle() == null) {
+            return ApiResponse.error(400, "playlistTitleRequired", "The playlist has no title");
+        }
+        return ApiResponse.json(200, addPlaylist(playlist.getSnippet().getTitle(), playlist.getStatus()));
+    }
+
+    private ApiResponse listCategories(ApiRequest request) throws IOException {
+        if (!chargeQuota(QuotaLedger.ApiCall.VIDEO_CATEGORIES_LIST)) {
+            return quotaExceeded(request);
+        }
+        List<VideoCategory> items = new ArrayList<>();
+        synchronized (categories) {
+            categories.forEach((id, title) -> items.add(new VideoCategory()
+                    .setKind("youtube#videoCategory")
+                    .setId(id)
+                    .setSnippet(new VideoCategorySnippet().setTitle(title).setAssignable(true))));
+        }
+        return ApiResponse.json(200, new VideoCategoryListResponse()
+                .setKind("youtube#videoCategoryListResponse")
+                .setItems(items));
+    }
+
+    /**
+     * Creates a playlist
+     * @param title the name of the playlist
+     * @param status the privacy status, or null for public
+     * @return the new playlist
+     */
+    Playlist addPlaylist(String title, PlaylistStatus status) {
+        Playlist playlist = new Playlist()
+                .setKind("youtube#playlist")
+                .setId("PL" + newId(32))
+                .setSnippet(new PlaylistSnippet().setTitle(title))
+                .setStatus(status != null ? status : new PlaylistStatus().setPrivacyStatus("public"));
+        playlists.put(playlist.getId(), playlist);
+        return playlist;
+    }
+
+    // Quota
+
+    synchronized void setQuotaLimit(int units) {
+        quotaLimit = Math.max(0, units);
+    }
+
+    synchronized int getQuotaUsed() {
+        return quotaUsed;
+    }
+
+    /**
+     * Starts a new quota day
+     */
+    synchronized void resetQuota() {
+        quotaUsed = 0;
+    }
+
+    /**
+     * Uses quota for a call, if there is enough left
+     * @return true if the call can be made, false if the quota is exceeded
+     */
+    private synchronized boolean chargeQuota(QuotaLedger.ApiCall call) {
+        if (quotaLimit > 0 && quotaUsed + call.getCost() > quotaLimit) {
+            return false;
+        }
+        quotaUsed += call.getCost();
+        return true;
+    }
+
+    private ApiResponse quotaExceeded(ApiRequest request) throws IOException {
+        request.consumeBody();
+        return ApiResponse.error(403, "quotaExceeded", "The request cannot be completed because you have exceeded " +
+                "your quota");
+    }
+
+    // Statistics
+
+    /**
+     * @return all uploaded videos
+     */
+    List<Video> getVideos() {
+        return new ArrayList<>(videos.values());
+    }
+
+    /**
+     * @param playlistId the id of a playlist
+     * @return the ids of the videos in the playlist, in order
+     */
+    List<String> getPlaylistVideoIds(String playlistId) {
+        List<String> items = playlistItems.get(playlistId);
+        if (items == null) {
+            return Collections.emptyList();
+        }
+        synchronized (items) {
+            return new ArrayList<>(items);
+        }
+    }
+
+    /**
+     * @return the number of bytes received in uploads, including chunks that was sent more than once
+     */
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    private String newId(int length) {
+        StringBuilder id = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            id.append(ID_CHARACTERS.charAt(random.nextInt(ID_CHARACTERS.length())));
+        }
+        return id.toString();
+    }
+
+    /**
+     * @param request the request with a JSON body
+     * @param type the class to parse the body as
+     * @return the parsed body, a empty object if the body is empty
+     * @throws IOException if the body could not be read
+     * @throws IllegalArgumentException if the body is not valid JSON
+     */
+    private static <T> T parseBody(ApiRequest request, Class<T> type) throws IOException {
+        String json = request.readBody();
+        // The parser does not accept a empty string
+        if (json.trim().isEmpty()) {
+            json = "{}";
+        }
+        try {
+            return ApiResponse.JSON_FACTORY.fromString(json, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+}
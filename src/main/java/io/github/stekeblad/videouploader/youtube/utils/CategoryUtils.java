@@ -1,11 +1,11 @@
 package io.github.stekeblad.videouploader.youtube.utils;
 
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.VideoCategory;
 import com.google.api.services.youtube.model.VideoCategoryListResponse;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.youtube.Auth;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -39,15 +39,14 @@ public enum CategoryUtils {
         }
 
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Video Uploader").build();
+            // Get the shared, authenticated Youtube object
+            YouTube youtube = Auth.getYouTube();
 
             // Prepare and send request
             YouTube.VideoCategories.List videoCategoriesListForRegionRequest = youtube.videoCategories().list("snippet");
             videoCategoriesListForRegionRequest.setHl(lang);
             videoCategoriesListForRegionRequest.setRegionCode(region);
+            QuotaLedger.INSTANCE.record(QuotaLedger.ApiCall.VIDEO_CATEGORIES_LIST);
             VideoCategoryListResponse response = videoCategoriesListForRegionRequest.execute();
 
             // Process result
@@ -1,6 +1,5 @@
 package io.github.stekeblad.videouploader.youtube.utils;
 
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.Playlist;
 import com.google.api.services.youtube.model.PlaylistListResponse;
@@ -11,6 +10,7 @@ import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.youtube.Auth;
 import io.github.stekeblad.videouploader.youtube.LocalPlaylist;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -34,10 +34,8 @@ public enum PlaylistUtils {
      */
     public void refreshPlaylist() {
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Youtube Uploader").build();
+            // Get the shared, authenticated Youtube object
+            YouTube youtube = Auth.getYouTube();
 
             // Prepare request
             YouTube.Playlists.List userPlaylists = youtube.playlists().list("snippet,contentDetails");
@@ -51,6 +49,7 @@ public enum PlaylistUtils {
             // Get playlists
             PlaylistListResponse response;
             do {
+                QuotaLedger.INSTANCE.record(QuotaLedger.ApiCall.PLAYLISTS_LIST);
                 response = userPlaylists.execute();
                 List<Playlist> playlists = response.getItems();
                 for (Playlist aPlaylist : playlists) {
@@ -158,10 +157,8 @@ public enum PlaylistUtils {
      */
     public LocalPlaylist addPlaylist(String name, String privacy) {
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Youtube Uploader").build();
+            // Get the shared, authenticated Youtube object
+            YouTube youtube = Auth.getYouTube();
 
             // prepare playlist
             PlaylistSnippet snippet = new PlaylistSnippet();
@@ -174,6 +171,7 @@ public enum PlaylistUtils {
             unsyncedPlaylist.setStatus(status);
 
             YouTube.Playlists.Insert playlistInserter = youtube.playlists().insert("snippet,status", unsyncedPlaylist);
+            QuotaLedger.INSTANCE.record(QuotaLedger.ApiCall.PLAYLISTS_INSERT);
             Playlist syncedPlaylist = playlistInserter.execute();
 
             LocalPlaylist localPlaylist = new LocalPlaylist(
@@ -0,0 +1,123 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.Playlist;
+import com.google.api.services.youtube.model.PlaylistSnippet;
+import com.google.api.services.youtube.model.VideoCategoryListResponse;
+import io.github.stekeblad.videouploader.youtube.localapi.LocalApiServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sends requests to a LocalApiServer over plain HTTP with the connections from HttpTransportFactory
+ */
+public class HttpTransportFactoryTest {
+    private static final int SEND_BUFFER_SIZE = 128 * 1024;
+
+    private LocalApiServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new LocalApiServer.Builder().addPlaylist("Existing").build();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void sendBufferIsSetOnPlainHttpConnections() throws Exception {
+        HttpURLConnection connection = HttpTransportFactory.connectionFactory(SEND_BUFFER_SIZE)
+                .openConnection(new URL(server.getRootUrl() + "youtube/v3/videoCategories?part=snippet&regionCode=SE"));
+        assertTrue(connection instanceof PlainHttpConnection);
+        connection.setRequestProperty("Authorization", "Bearer test");
+        connection.connect();
+        try {
+            // The OS may round the size up (Linux doubles it) but never gives less than asked for
+            assertTrue(((PlainHttpConnection) connection).getSocketSendBufferSize() >= SEND_BUFFER_SIZE);
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(readAll(connection.getInputStream()).contains("youtube#videoCategory"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void requestBodyIsSentWithFixedLengthAndChunked() throws Exception {
+        String body = "{\"snippet\":{\"title\":\"From test\"}}";
+        for (boolean chunked : new boolean[]{false, true}) {
+            HttpURLConnection connection = HttpTransportFactory.connectionFactory(SEND_BUFFER_SIZE)
+                    .openConnection(new URL(server.getRootUrl() + "youtube/v3/playlists?part=snippet"));
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Authorization", "Bearer test");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            if (chunked) {
+                connection.setChunkedStreamingMode(0);
+            } else {
+                connection.setFixedLengthStreamingMode(bytes.length);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(readAll(connection.getInputStream()).contains("From test"));
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void youTubeClientWorksThroughTheTransport() throws Exception {
+        HttpTransport transport = HttpTransportFactory.create(2, true, SEND_BUFFER_SIZE);
+        YouTube youTube = new YouTube.Builder(transport, new JacksonFactory(),
+                request -> request.getHeaders().setAuthorization("Bearer test"))
+                .setRootUrl(server.getRootUrl())
+                .setApplicationName("HttpTransportFactoryTest")
+                .build();
+
+        VideoCategoryListResponse categories = youTube.videoCategories().list("snippet").setRegionCode("SE").execute();
+        assertFalse(categories.getItems().isEmpty());
+
+        Playlist playlist = new Playlist().setSnippet(new PlaylistSnippet().setTitle("Created"));
+        Playlist created = youTube.playlists().insert("snippet", playlist).execute();
+        assertNotNull(created.getId());
+        assertEquals("Created", created.getSnippet().getTitle());
+    }
+
+    @Test
+    public void errorResponsesAreReadFromTheErrorStream() throws Exception {
+        HttpURLConnection connection = HttpTransportFactory.connectionFactory(SEND_BUFFER_SIZE)
+                .openConnection(new URL(server.getRootUrl() + "youtube/v3/videoCategories?part=snippet"));
+        // No access token
+        assertEquals(401, connection.getResponseCode());
+        assertNotNull(connection.getErrorStream());
+        assertTrue(readAll(connection.getErrorStream()).contains("authError"));
+        connection.disconnect();
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}